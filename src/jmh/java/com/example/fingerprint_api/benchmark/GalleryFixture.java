@@ -0,0 +1,283 @@
+package com.example.fingerprint_api.benchmark;
+
+import ch.qos.logback.classic.Level;
+import com.digitalpersona.uareu.Fmd;
+import com.example.fingerprint_api.config.ReaderScopeProperties;
+import com.example.fingerprint_api.engine.SimulatedFingerprintEngine;
+import com.example.fingerprint_api.engine.VectorMinutiaeEngine;
+import com.example.fingerprint_api.model.Empleado;
+import com.example.fingerprint_api.model.Huella;
+import com.example.fingerprint_api.repository.EmpleadoRepository;
+import com.example.fingerprint_api.repository.HuellaHighWaterMark;
+import com.example.fingerprint_api.repository.HuellaCambioRepository;
+import com.example.fingerprint_api.repository.HuellaRepository;
+import com.example.fingerprint_api.repository.HuellaTemplateProjection;
+import com.example.fingerprint_api.repository.HuellaVersionProjection;
+import com.example.fingerprint_api.service.*;
+import com.example.fingerprint_api.util.CryptoUtils;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.data.domain.Pageable;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contexto mínimo de Spring para los benchmarks: los servicios reales de la galería con un motor en Java puro
+ * (simulado o comparador de minucias) y repositorios en memoria (sin MySQL). La galería sintética tiene dos
+ * huellas por empleado y cada huella es un sujeto distinto (huella i = sujeto i).
+ */
+public final class GalleryFixture implements AutoCloseable {
+
+    public static final int HUELLAS_POR_EMPLEADO = 2;
+    private static final LocalDateTime UPDATED_AT = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    private final AnnotationConfigApplicationContext context;
+    private final int templates;
+
+    private GalleryFixture(AnnotationConfigApplicationContext context, int templates) {
+        this.context = context;
+        this.templates = templates;
+    }
+
+    /**
+     * Levanta el contexto con {@code templates} huellas sintéticas y espera a que la galería quede lista.
+     */
+    public static GalleryFixture start(int templates, long compareCostNanos) throws Exception {
+        return start(templates, "simulated", compareCostNanos);
+    }
+
+    /**
+     * Igual que {@link #start(int, long)} con otro motor ({@code fingerprint.engine.type}: simulated o vector).
+     */
+    public static GalleryFixture start(int templates, String engineType, long compareCostNanos) throws Exception {
+        return start(templates, engineType, compareCostNanos, "HEAP");
+    }
+
+    /**
+     * Igual que {@link #start(int, String, long)} con otro almacenamiento de templates
+     * ({@code fingerprint.gallery.storage}: HEAP u OFF_HEAP).
+     */
+    public static GalleryFixture start(int templates, String engineType, long compareCostNanos, String storage) throws Exception {
+        return start(templates, Map.of(
+                "fingerprint.engine.type", engineType,
+                "fingerprint.engine.simulated.compare-cost-ns", String.valueOf(compareCostNanos),
+                "fingerprint.gallery.storage", storage
+        ));
+    }
+
+    /**
+     * Igual que los anteriores con propiedades arbitrarias (p. ej. el archivo local de galería).
+     */
+    public static GalleryFixture start(int templates, Map<String, String> properties) throws Exception {
+        // El logging por huella de los servicios distorsiona las mediciones
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        List<Empleado> empleados = new ArrayList<>();
+        for (int id = 1; id <= (templates + HUELLAS_POR_EMPLEADO - 1) / HUELLAS_POR_EMPLEADO; id++) {
+            Empleado empleado = new Empleado();
+            empleado.setId(id);
+            empleado.setPrimerNombre("Empleado");
+            empleado.setPrimerApellido(String.valueOf(id));
+            empleado.setRfc("RFC" + id);
+            empleado.setEstatusId(1);
+            empleados.add(empleado);
+        }
+        List<HuellaTemplateProjection> rows = new ArrayList<>(templates);
+        for (int huellaId = 1; huellaId <= templates; huellaId++) {
+            byte[] encrypted = CryptoUtils.encrypt(SimulatedFingerprintEngine.syntheticTemplate(huellaId, 0).getData());
+            rows.add(new Row(huellaId, empleadoOf(huellaId), encrypted));
+        }
+
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(new DefaultConversionService());
+        Map<String, Object> environment = new HashMap<>(Map.of(
+                "fingerprint.engine.type", "simulated",
+                "fingerprint.gallery.warmup-policy", "WAIT",
+                "fingerprint.sync.enabled", "false"
+        ));
+        environment.putAll(properties);
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", environment));
+        context.registerBean(PropertySourcesPlaceholderConfigurer.class);
+        context.registerBean(HuellaRepository.class, () -> huellaRepository(rows));
+        context.registerBean(EmpleadoRepository.class, () -> empleadoRepository(empleados));
+        context.registerBean(HuellaCambioRepository.class, GalleryFixture::huellaCambioRepository);
+        context.register(SimulatedFingerprintEngine.class, VectorMinutiaeEngine.class, ReaderScopeProperties.class, EmpleadoIdentityCache.class,
+                HotSetRegistry.class, ReaderScopeService.class, CandidateBinning.class, GalleryTemplateStorage.class, GalleryPartition.class, GalleryLoader.class, GallerySnapshotFile.class, HuellaChangeOutbox.class, UserService.class);
+        context.refresh();
+
+        GalleryFixture fixture = new GalleryFixture(context, templates);
+        fixture.awaitReady();
+        return fixture;
+    }
+
+    public static int empleadoOf(int huellaId) {
+        return (huellaId - 1) / HUELLAS_POR_EMPLEADO + 1;
+    }
+
+    public UserService userService() {
+        return context.getBean(UserService.class);
+    }
+
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public int templates() {
+        return templates;
+    }
+
+    /**
+     * Capturas de huellas enroladas (otra variante del mismo sujeto), elegidas de forma reproducible.
+     */
+    public Fmd[] knownProbes(int count) {
+        SplittableRandom random = new SplittableRandom(42);
+        Fmd[] probes = new Fmd[count];
+        for (int i = 0; i < count; i++) {
+            probes[i] = SimulatedFingerprintEngine.syntheticTemplate(1 + random.nextInt(templates), 1 + random.nextInt(5));
+        }
+        return probes;
+    }
+
+    /**
+     * Capturas de personas no enroladas: recorren toda la galería sin coincidencia (peor caso).
+     */
+    public Fmd[] unknownProbes(int count) {
+        Fmd[] probes = new Fmd[count];
+        for (int i = 0; i < count; i++) {
+            probes[i] = SimulatedFingerprintEngine.syntheticTemplate(templates + 1 + i, 1);
+        }
+        return probes;
+    }
+
+    public void awaitReady() throws InterruptedException {
+        UserService userService = userService();
+        while (userService.getReadiness() != GalleryReadiness.READY || userService.isReloading()) {
+            if (userService.getReadiness() == GalleryReadiness.FAILED) {
+                throw new IllegalStateException("La carga de la galería sintética falló.");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+
+    private static HuellaRepository huellaRepository(List<HuellaTemplateProjection> rows) {
+        AtomicInteger nextId = new AtomicInteger(rows.size());
+        return (HuellaRepository) Proxy.newProxyInstance(HuellaRepository.class.getClassLoader(),
+                new Class<?>[]{HuellaRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "countTemplates":
+                        case "countTemplatesByEstatus":
+                            return (long) rows.size();
+                        case "findTemplatesAfter":
+                        case "findTemplatesAfterByEstatus": {
+                            // Los ids son consecutivos desde 1: la página empieza en la posición afterId
+                            int from = Math.min(rows.size(), (Integer) args[0]);
+                            Pageable pageable = (Pageable) args[args.length - 1];
+                            return rows.subList(from, Math.min(rows.size(), from + pageable.getPageSize()));
+                        }
+                        case "findByEmpleadoId":
+                            return List.of();
+                        case "findHighWaterMark":
+                        case "findHighWaterMarkByEstatus":
+                            return highWaterMark(rows.size());
+                        case "findTemplateVersions":
+                        case "findTemplateVersionsByEstatus": {
+                            List<HuellaVersionProjection> versions = new ArrayList<>(rows.size());
+                            for (HuellaTemplateProjection row : rows) {
+                                versions.add(version(row));
+                            }
+                            return versions;
+                        }
+                        case "findTemplatesByIdIn": {
+                            List<HuellaTemplateProjection> found = new ArrayList<>();
+                            for (Object id : (Collection<?>) args[0]) {
+                                int index = (Integer) id - 1;
+                                if (index >= 0 && index < rows.size()) found.add(rows.get(index));
+                            }
+                            return found;
+                        }
+                        case "save": {
+                            Huella huella = (Huella) args[0];
+                            huella.setId(nextId.incrementAndGet());
+                            return huella;
+                        }
+                        default:
+                            return objectMethod(proxy, method.getName(), args);
+                    }
+                });
+    }
+
+    // Ids consecutivos desde 1 y una fecha de modificación fija: la galería sintética no cambia
+    private static HuellaHighWaterMark highWaterMark(int rows) {
+        return new HuellaHighWaterMark() {
+            @Override public Integer getMaxId() { return rows; }
+            @Override public LocalDateTime getMaxUpdatedAt() { return UPDATED_AT; }
+            @Override public Long getCount() { return (long) rows; }
+        };
+    }
+
+    private static HuellaVersionProjection version(HuellaTemplateProjection row) {
+        return new HuellaVersionProjection() {
+            @Override public Integer getId() { return row.getId(); }
+            @Override public Integer getEmpleadoId() { return row.getEmpleadoId(); }
+            @Override public LocalDateTime getUpdatedAt() { return UPDATED_AT; }
+        };
+    }
+
+    private static EmpleadoRepository empleadoRepository(List<Empleado> empleados) {
+        return (EmpleadoRepository) Proxy.newProxyInstance(EmpleadoRepository.class.getClassLoader(),
+                new Class<?>[]{EmpleadoRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findAll":
+                            return empleados;
+                        case "findById": {
+                            int id = (Integer) args[0];
+                            return id >= 1 && id <= empleados.size() ? Optional.of(empleados.get(id - 1)) : Optional.empty();
+                        }
+                        default:
+                            return objectMethod(proxy, method.getName(), args);
+                    }
+                });
+    }
+
+    // Sin feed de cambios: la sincronización entre instancias está deshabilitada en los benchmarks
+    private static HuellaCambioRepository huellaCambioRepository() {
+        return (HuellaCambioRepository) Proxy.newProxyInstance(HuellaCambioRepository.class.getClassLoader(),
+                new Class<?>[]{HuellaCambioRepository.class}, (proxy, method, args) -> objectMethod(proxy, method.getName(), args));
+    }
+
+    private static Object objectMethod(Object proxy, String name, Object[] args) {
+        switch (name) {
+            case "toString": return "BenchmarkRepository";
+            case "hashCode": return System.identityHashCode(proxy);
+            case "equals": return proxy == args[0];
+            default: throw new UnsupportedOperationException("No soportado en el repositorio de benchmark: " + name);
+        }
+    }
+
+    private static final class Row implements HuellaTemplateProjection {
+        private final Integer id;
+        private final Integer empleadoId;
+        private final byte[] templateFmd;
+
+        Row(Integer id, Integer empleadoId, byte[] templateFmd) {
+            this.id = id;
+            this.empleadoId = empleadoId;
+            this.templateFmd = templateFmd;
+        }
+
+        @Override public Integer getId() { return id; }
+        @Override public Integer getEmpleadoId() { return empleadoId; }
+        @Override public byte[] getTemplateFmd() { return templateFmd; }
+    }
+}
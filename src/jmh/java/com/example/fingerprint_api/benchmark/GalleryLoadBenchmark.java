@@ -0,0 +1,46 @@
+package com.example.fingerprint_api.benchmark;
+
+import com.example.fingerprint_api.service.GallerySnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recarga completa de la galería ({@code loadFmdsIntoMemory}): lectura paginada, desencriptado e importación.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GalleryLoadBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int galleryTemplates;
+
+    // Con -prof gc muestra cuánto heap asigna cada modo de almacenamiento por recarga
+    @Param({"HEAP", "OFF_HEAP"})
+    public String storage;
+
+    private GalleryFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = GalleryFixture.start(galleryTemplates, "simulated", 0, storage);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public GallerySnapshot loadFmdsIntoMemory() {
+        GallerySnapshot loaded = fixture.userService().loadFmdsIntoMemory();
+        if (loaded == null || loaded.size() != fixture.templates()) {
+            throw new IllegalStateException("Recarga incompleta de la galería sintética.");
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.fingerprint_api.benchmark;
+
+import com.digitalpersona.uareu.Fmd;
+import com.example.fingerprint_api.engine.SimulatedFingerprintEngine;
+import com.example.fingerprint_api.model.Huella;
+import com.example.fingerprint_api.service.EmpleadoIdentity;
+import com.example.fingerprint_api.service.UserService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Altas y bajas de huellas mientras varios lectores identifican: mide cuánto afecta publicar nuevas
+ * versiones de la galería a la identificación concurrente, y el costo de cada alta/baja.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Group)
+public class GalleryMutationBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int galleryTemplates;
+
+    private GalleryFixture fixture;
+    private UserService userService;
+    private Fmd[] known;
+    private byte[] newTemplate;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = GalleryFixture.start(galleryTemplates, 0);
+        userService = fixture.userService();
+        known = fixture.knownProbes(256);
+        newTemplate = SimulatedFingerprintEngine.syntheticTemplate(-1, 0).getData();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    @Group("readersWithWriter")
+    @GroupThreads(3)
+    public Optional<EmpleadoIdentity> identify(Cursor cursor) throws Exception {
+        return userService.identifyUser(known[cursor.next++ & (known.length - 1)]);
+    }
+
+    @Benchmark
+    @Group("readersWithWriter")
+    @GroupThreads(1)
+    public int addRemove() throws Exception {
+        Huella saved = userService.saveNewHuella(1, "benchmark", newTemplate);
+        userService.removeFmdDataFromMemory(saved.getId());
+        return saved.getId();
+    }
+}
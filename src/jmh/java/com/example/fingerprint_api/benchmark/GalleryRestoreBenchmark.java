@@ -0,0 +1,67 @@
+package com.example.fingerprint_api.benchmark;
+
+import com.example.fingerprint_api.service.GallerySnapshot;
+import com.example.fingerprint_api.service.GallerySnapshotFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Arranque desde el archivo local de galería: mapeo, desencriptado, validación contra la marca de agua
+ * e importación. Se compara con {@link GalleryLoadBenchmark} (carga completa desde la BD).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GalleryRestoreBenchmark {
+
+    @Param({"10000", "50000"})
+    public int galleryTemplates;
+
+    private Path directory;
+    private GalleryFixture fixture;
+    private GallerySnapshotFile snapshotFile;
+    private GallerySnapshotFile.HighWaterMark mark;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("gallery-restore");
+        Path file = directory.resolve("gallery.snap");
+        fixture = GalleryFixture.start(galleryTemplates, Map.of(
+                "fingerprint.gallery.snapshot.enabled", "true",
+                "fingerprint.gallery.snapshot.path", file.toString()
+        ));
+        // La primera carga (desde la BD) escribe el archivo en segundo plano
+        while (!Files.exists(file)) {
+            Thread.sleep(50);
+        }
+        snapshotFile = fixture.bean(GallerySnapshotFile.class);
+        mark = snapshotFile.readHighWaterMark();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.close();
+        try (var files = Files.list(directory)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(f);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public GallerySnapshot restore() {
+        GallerySnapshot restored = snapshotFile.restore(1, 1, 256, mark);
+        if (restored == null || restored.size() != fixture.templates()) {
+            throw new IllegalStateException("Restauración incompleta de la galería sintética.");
+        }
+        return restored;
+    }
+}
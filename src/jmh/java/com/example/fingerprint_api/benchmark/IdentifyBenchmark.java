@@ -0,0 +1,74 @@
+package com.example.fingerprint_api.benchmark;
+
+import com.digitalpersona.uareu.Fmd;
+import com.example.fingerprint_api.service.EmpleadoIdentity;
+import com.example.fingerprint_api.service.UserService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Identificación 1:N ({@link UserService#identifyUser}) contra galerías sintéticas de 1k, 10k y 100k templates.
+ * El modo SampleTime reporta percentiles (p99); la tasa de asignación se obtiene con -prof gc.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class IdentifyBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int galleryTemplates;
+
+    // simulated: motor simulado; vector: comparador de minucias (Vector API)
+    @Param({"simulated", "vector"})
+    public String engine;
+
+    // Costo artificial por comparación del motor simulado
+    @Param({"0"})
+    public long compareCostNanos;
+
+    private GalleryFixture fixture;
+    private UserService userService;
+    private Fmd[] known;
+    private Fmd[] unknown;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = GalleryFixture.start(galleryTemplates, engine, compareCostNanos);
+        userService = fixture.userService();
+        known = fixture.knownProbes(256);
+        unknown = fixture.unknownProbes(64);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    /**
+     * Checada de un empleado enrolado.
+     */
+    @Benchmark
+    public Optional<EmpleadoIdentity> identifyKnown(Cursor cursor) throws Exception {
+        Fmd probe = known[cursor.next++ & (known.length - 1)];
+        return userService.identifyUser(probe);
+    }
+
+    /**
+     * Huella no enrolada: recorre toda la galería sin coincidencia.
+     */
+    @Benchmark
+    public Optional<EmpleadoIdentity> identifyUnknown(Cursor cursor) throws Exception {
+        Fmd probe = unknown[cursor.next++ & (unknown.length - 1)];
+        return userService.identifyUser(probe);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.fingerprint_api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Alcances (sedes) de los lectores checadores. Cada alcance agrupa departamentos y/o empleados
+ * explícitos, y los lectores asignados a él identifican solo contra esa parte de la galería.
+ *
+ * Ejemplo en application.properties:
+ * fingerprint.scopes.definitions[0].name=campus-norte
+ * fingerprint.scopes.definitions[0].departamentos=10,11,12
+ * fingerprint.scopes.definitions[0].readers=Lector Entrada Norte
+ */
+@Configuration
+@ConfigurationProperties(prefix = "fingerprint.scopes")
+public class ReaderScopeProperties {
+
+    // Si no hay coincidencia en la galería del alcance, buscar en la galería completa
+    private boolean globalFallback = true;
+
+    private List<Scope> definitions = new ArrayList<>();
+
+    public static class Scope {
+        private String name;
+        private Set<Integer> departamentos = new HashSet<>(); // Académicos o administrativos
+        private Set<Integer> empleados = new HashSet<>();     // Lista explícita adicional
+        private List<String> readers = new ArrayList<>();
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        public Set<Integer> getDepartamentos() { return departamentos; }
+        public void setDepartamentos(Set<Integer> departamentos) { this.departamentos = departamentos; }
+        public Set<Integer> getEmpleados() { return empleados; }
+        public void setEmpleados(Set<Integer> empleados) { this.empleados = empleados; }
+        public List<String> getReaders() { return readers; }
+        public void setReaders(List<String> readers) { this.readers = readers; }
+    }
+
+    public boolean isGlobalFallback() { return globalFallback; }
+    public void setGlobalFallback(boolean globalFallback) { this.globalFallback = globalFallback; }
+    public List<Scope> getDefinitions() { return definitions; }
+    public void setDefinitions(List<Scope> definitions) { this.definitions = definitions; }
+}
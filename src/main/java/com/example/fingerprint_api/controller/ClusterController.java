@@ -0,0 +1,114 @@
+package com.example.fingerprint_api.controller;
+
+import com.digitalpersona.uareu.Fmd;
+import com.digitalpersona.uareu.UareUException;
+import com.example.fingerprint_api.dto.IdentifyRequestDto;
+import com.example.fingerprint_api.engine.FeatureExtractor;
+import com.example.fingerprint_api.service.ClusterIdentificationService;
+import com.example.fingerprint_api.service.IdentificationMatch;
+import com.example.fingerprint_api.service.IdentificationOptions;
+import com.example.fingerprint_api.service.IdentificationResult;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Endpoints internos del clúster: la búsqueda en la partición de este nodo a pedido del nodo coordinador.
+ */
+@RestController
+@RequestMapping("/api/cluster")
+public class ClusterController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterController.class);
+
+    @Autowired
+    private ClusterIdentificationService clusterService;
+    @Autowired
+    private FeatureExtractor featureExtractor;
+
+    /**
+     * Cuerpo: {"templates": [base64 ANSI 378...], "readers": [lector o null...], "k", "threshold", "deadlineMs"}.
+     * Respuesta: {"results": [{"partial", "candidates": [{"empleadoId", "huellaId", "score"}...]}...]} en el mismo orden.
+     */
+    @PostMapping("/identify")
+    public ResponseEntity<?> identify(@RequestHeader(value = ClusterIdentificationService.TOKEN_HEADER, required = false) String token,
+                                      @Valid @RequestBody IdentifyRequestDto request) {
+        if (!clusterService.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "El modo clúster no está habilitado."));
+        }
+        if (!clusterService.isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "Token de clúster inválido."));
+        }
+        List<String> templates = request.getTemplates();
+        List<String> readers = request.getReaders();
+        if (readers != null && readers.size() != templates.size()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Se requiere un lector por template."));
+        }
+        IdentificationOptions options;
+        try {
+            options = IdentificationOptions.of(request.getK(), request.getThreshold(), request.getDeadlineMs());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        // Un template que no se puede decodificar o importar es un error del nodo que lo envió, no de este
+        Fmd[] probes = new Fmd[templates.size()];
+        String[] readerNames = new String[templates.size()];
+        for (int i = 0; i < probes.length; i++) {
+            byte[] decoded = decodeTemplate(templates.get(i));
+            if (decoded == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "El template " + i + " no es Base64 válido."));
+            }
+            try {
+                probes[i] = featureExtractor.importFmd(decoded);
+            } catch (IllegalArgumentException | UareUException e) {
+                logger.warn("POST /api/cluster/identify - template {} inválido: {}", i, e.getMessage());
+                return ResponseEntity.badRequest().body(Map.of("error", "El template " + i + " no es un FMD ANSI 378 válido."));
+            }
+            readerNames[i] = readers == null ? null : readers.get(i);
+        }
+        try {
+            IdentificationResult[] results = clusterService.identifyPartition(probes, readerNames, options);
+            List<Map<String, Object>> body = new ArrayList<>(results.length);
+            for (IdentificationResult result : results) {
+                List<Map<String, Object>> candidates = new ArrayList<>();
+                for (IdentificationMatch match : result.getCandidates()) {
+                    Map<String, Object> m = new LinkedHashMap<>();
+                    m.put("empleadoId", match.getEmpleadoId());
+                    m.put("huellaId", match.getHuellaId());
+                    m.put("score", match.getScore());
+                    candidates.add(m);
+                }
+                Map<String, Object> r = new LinkedHashMap<>();
+                r.put("partial", result.isPartial());
+                r.put("candidates", candidates);
+                body.add(r);
+            }
+            return ResponseEntity.ok(Map.of("results", body));
+        } catch (Exception e) {
+            logger.error("Error al identificar en la partición local: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "Error al identificar: " + e.getMessage()));
+        }
+    }
+
+    // null si el texto no es Base64 válido (o falta)
+    private static byte[] decodeTemplate(String template) {
+        if (template == null || template.isEmpty()) {
+            return null;
+        }
+        try {
+            return Base64.getDecoder().decode(template);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.fingerprint_api.controller;
+
+import com.example.fingerprint_api.service.CandidateBinning;
+import com.example.fingerprint_api.service.ClusterIdentificationService;
+import com.example.fingerprint_api.service.DuplicateAuditService;
+import com.example.fingerprint_api.service.EmpleadoIdentityCache;
+import com.example.fingerprint_api.service.GalleryLoader;
+import com.example.fingerprint_api.service.GallerySnapshot;
+import com.example.fingerprint_api.service.GalleryReadiness;
+import com.example.fingerprint_api.service.GallerySyncService;
+import com.example.fingerprint_api.service.GalleryTemplateStorage;
+import com.example.fingerprint_api.service.HotSetRegistry;
+import com.example.fingerprint_api.service.IdentificationDispatcher;
+import com.example.fingerprint_api.service.ReaderScopeService;
+import com.example.fingerprint_api.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Endpoints de administración de la galería de huellas en memoria.
+ */
+@RestController
+@RequestMapping("/api/admin/gallery")
+public class GalleryAdminController {
+
+    private static final Logger logger = LoggerFactory.getLogger(GalleryAdminController.class);
+
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private GalleryLoader galleryLoader;
+    @Autowired
+    private EmpleadoIdentityCache identityCache;
+    @Autowired
+    private HotSetRegistry hotSetRegistry;
+    @Autowired
+    private ReaderScopeService readerScopeService;
+    @Autowired
+    private IdentificationDispatcher identificationDispatcher;
+    @Autowired
+    private CandidateBinning candidateBinning;
+    @Autowired
+    private GalleryTemplateStorage templateStorage;
+    @Autowired
+    private GallerySyncService gallerySyncService;
+    @Autowired
+    private ClusterIdentificationService clusterService;
+    @Autowired
+    private DuplicateAuditService duplicateAuditService;
+
+    @GetMapping("/status")
+    public ResponseEntity<?> getStatus() {
+        GallerySnapshot snapshot = userService.getGallerySnapshot();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("readiness", userService.getReadiness());
+        status.put("version", snapshot.getVersion());
+        status.put("templates", snapshot.size());
+        status.put("shards", snapshot.getShardCount());
+        status.put("reloading", userService.isReloading());
+        status.put("identities", identityCache.size());
+        status.put("hotSet", hotSetRegistry.getStats());
+        status.put("scopes", readerScopeService.getStatus());
+        status.put("binning", candidateBinning.getStats());
+        status.put("storage", templateStorage.getStats(snapshot));
+        status.put("sync", gallerySyncService.getStats());
+        status.put("cluster", clusterService.getStats());
+        status.put("batching", Map.of(
+                "enabled", identificationDispatcher.isEnabled(),
+                "batches", identificationDispatcher.getBatches(),
+                "requests", identificationDispatcher.getRequests(),
+                "queued", identificationDispatcher.getQueued(),
+                "fallbacks", identificationDispatcher.getFallbacks()
+        ));
+        status.put("partialSearches", userService.getPartialSearches());
+        status.put("audit", duplicateAuditService.getState());
+        status.put("loader", Map.of(
+                "running", galleryLoader.isRunning(),
+                "total", galleryLoader.getTotal(),
+                "processed", galleryLoader.getProcessed(),
+                "failed", galleryLoader.getFailed()
+        ));
+        return ResponseEntity.ok(status);
+    }
+
+    /**
+     * Recarga la galería desde la BD sin interrumpir la identificación de los checadores.
+     */
+    @PostMapping("/reload")
+    public ResponseEntity<?> reload() {
+        logger.info("POST /api/admin/gallery/reload solicitado");
+        long start = System.currentTimeMillis();
+        GallerySnapshot published = userService.loadFmdsIntoMemory();
+        if (published == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "Ya hay una recarga de galería en curso."));
+        }
+        return ResponseEntity.ok(Map.of(
+                "version", published.getVersion(),
+                "templates", published.size(),
+                "elapsedMs", System.currentTimeMillis() - start
+        ));
+    }
+
+    /**
+     * Asigna un lector checador a un alcance (sede/departamentos). Sin parámetro scope se quita la asignación.
+     */
+    @PutMapping("/scopes/readers/{readerName}")
+    public ResponseEntity<?> assignReaderScope(@PathVariable String readerName, @RequestParam(required = false) String scope) {
+        logger.info("PUT /api/admin/gallery/scopes/readers/{} - alcance: {}", readerName, scope);
+        if (!readerScopeService.assignReader(readerName, scope)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Alcance no configurado: " + scope));
+        }
+        return ResponseEntity.ok(readerScopeService.getStatus());
+    }
+
+    /**
+     * Inicia la auditoría N×N de enrolamientos duplicados, o la continúa desde su archivo de control.
+     * Con restart=true empieza de cero.
+     */
+    @PostMapping("/audit")
+    public ResponseEntity<?> startAudit(@RequestParam(defaultValue = "false") boolean restart) {
+        logger.info("POST /api/admin/gallery/audit - restart: {}", restart);
+        if (userService.getReadiness() != GalleryReadiness.READY) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", "La galería aún no está lista."));
+        }
+        if (!duplicateAuditService.start(restart)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "Ya hay una auditoría de duplicados en curso."));
+        }
+        return ResponseEntity.accepted().body(duplicateAuditService.getProgress());
+    }
+
+    /**
+     * Detiene la auditoría en curso; se puede continuar después con POST /audit.
+     */
+    @DeleteMapping("/audit")
+    public ResponseEntity<?> stopAudit() {
+        logger.info("DELETE /api/admin/gallery/audit");
+        if (!duplicateAuditService.stop()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "No hay una auditoría de duplicados en curso."));
+        }
+        return ResponseEntity.accepted().body(duplicateAuditService.getProgress());
+    }
+
+    @GetMapping("/audit")
+    public ResponseEntity<?> getAuditProgress() {
+        return ResponseEntity.ok(duplicateAuditService.getProgress());
+    }
+
+    /**
+     * Posibles duplicados encontrados hasta ahora, agrupados por par de empleados.
+     */
+    @GetMapping("/audit/duplicates")
+    public ResponseEntity<?> getAuditDuplicates() {
+        return ResponseEntity.ok(Map.of(
+                "audit", duplicateAuditService.getProgress(),
+                "duplicates", duplicateAuditService.getDuplicates()
+        ));
+    }
+}
@@ -1,13 +1,16 @@
 package com.example.fingerprint_api.controller;
 
 import com.digitalpersona.uareu.UareUException;
+import com.example.fingerprint_api.exception.ApiException;
 import com.example.fingerprint_api.exception.ResourceNotFoundException; // Importar nuestra excepción
 import org.slf4j.Logger; // *** CAMBIO: Importar SLF4J Logger ***
 import org.slf4j.LoggerFactory; // *** CAMBIO: Importar SLF4J LoggerFactory ***
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import java.util.stream.Collectors;
 // import java.util.logging.Level; // ELIMINAR
 // import java.util.logging.Logger; // ELIMINAR
 
@@ -41,6 +44,26 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.NOT_FOUND); // Devuelve 404
     }
 
+    /**
+     * Maneja ApiException con el estado que trae (400 datos inválidos, 409 duplicados...).
+     */
+    @ExceptionHandler(ApiException.class)
+    public ResponseEntity<String> handleApiException(ApiException ex) {
+        logger.warn("Solicitud rechazada ({}): {}", ex.getStatus(), ex.getMessage());
+        return new ResponseEntity<>(ex.getMessage(), ex.getStatus());
+    }
+
+    /**
+     * Maneja los errores de validación de @Valid (400) con el mensaje de cada campo.
+     */
+    @ExceptionHandler(MethodArgumentNotValidException.class)
+    public ResponseEntity<String> handleValidationException(MethodArgumentNotValidException ex) {
+        String errorMessage = ex.getBindingResult().getFieldErrors().stream()
+                .map(error -> error.getField() + ": " + error.getDefaultMessage())
+                .collect(Collectors.joining("; "));
+        logger.warn("Solicitud inválida: {}", errorMessage);
+        return new ResponseEntity<>(errorMessage, HttpStatus.BAD_REQUEST);
+    }
 
     /**
      * Maneja cualquier otra excepción no capturada específicamente.
@@ -0,0 +1,100 @@
+package com.example.fingerprint_api.controller;
+
+import com.digitalpersona.uareu.Fmd;
+import com.digitalpersona.uareu.UareUException;
+import com.example.fingerprint_api.dto.IdentifyRequestDto;
+import com.example.fingerprint_api.engine.FeatureExtractor;
+import com.example.fingerprint_api.service.EmpleadoIdentity;
+import com.example.fingerprint_api.service.EmpleadoIdentityCache;
+import com.example.fingerprint_api.service.IdentificationDispatcher;
+import com.example.fingerprint_api.service.IdentificationMatch;
+import com.example.fingerprint_api.service.IdentificationOptions;
+import com.example.fingerprint_api.service.IdentificationResult;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Identificación 1:N por API: los k mejores candidatos (uno por empleado) con su puntuación de disimilitud,
+ * con umbral y plazo por solicitud. Si se cumple el plazo se devuelve lo encontrado, con partial=true.
+ */
+@RestController
+@RequestMapping("/api/identify")
+public class IdentificationController {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdentificationController.class);
+
+    @Autowired
+    private IdentificationDispatcher identificationDispatcher;
+    @Autowired
+    private FeatureExtractor featureExtractor;
+    @Autowired
+    private EmpleadoIdentityCache identityCache;
+
+    @PostMapping
+    public ResponseEntity<?> identify(@Valid @RequestBody IdentifyRequestDto request) throws UareUException {
+        List<String> templates = request.getTemplates();
+        List<String> readers = request.getReaders();
+        if (readers != null && readers.size() != templates.size()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Se requiere un lector por template."));
+        }
+        IdentificationOptions options;
+        try {
+            options = IdentificationOptions.of(request.getK(), request.getThreshold(), request.getDeadlineMs());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        // Un template que no se puede decodificar o importar es un error del cliente, no del servidor
+        Fmd[] probes = new Fmd[templates.size()];
+        for (int i = 0; i < probes.length; i++) {
+            String template = templates.get(i);
+            try {
+                if (template == null) {
+                    throw new IllegalArgumentException("falta el template");
+                }
+                probes[i] = featureExtractor.importFmd(Base64.getDecoder().decode(template));
+            } catch (IllegalArgumentException | UareUException e) {
+                logger.warn("POST /api/identify - template {} inválido: {}", i, e.getMessage());
+                return ResponseEntity.badRequest().body(Map.of("error",
+                        "El template " + i + " no es un FMD ANSI 378 válido en Base64."));
+            }
+        }
+        String[] readerNames = readers == null ? new String[probes.length] : readers.toArray(new String[0]);
+        logger.info("POST /api/identify - {} template(s), {}", probes.length, options);
+
+        long start = System.currentTimeMillis();
+        IdentificationResult[] results = identificationDispatcher.identifyBatch(probes, readerNames, options);
+        List<Map<String, Object>> body = new ArrayList<>(results.length);
+        for (IdentificationResult result : results) {
+            List<Map<String, Object>> candidates = new ArrayList<>();
+            for (IdentificationMatch match : result.getCandidates()) {
+                Map<String, Object> m = new LinkedHashMap<>();
+                m.put("empleadoId", match.getEmpleadoId());
+                m.put("huellaId", match.getHuellaId());
+                m.put("score", match.getScore());
+                Optional<EmpleadoIdentity> identity = identityCache.get(match.getEmpleadoId());
+                m.put("nombreCompleto", identity.map(EmpleadoIdentity::getNombreCompleto).orElse(null));
+                m.put("rfc", identity.map(EmpleadoIdentity::getRfc).orElse(null));
+                candidates.add(m);
+            }
+            Map<String, Object> r = new LinkedHashMap<>();
+            r.put("partial", result.isPartial());
+            r.put("candidates", candidates);
+            body.add(r);
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("elapsedMs", System.currentTimeMillis() - start);
+        response.put("results", body);
+        return ResponseEntity.ok(response);
+    }
+}
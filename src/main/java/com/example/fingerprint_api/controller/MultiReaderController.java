@@ -1,6 +1,7 @@
 package com.example.fingerprint_api.controller;
 
 import com.digitalpersona.uareu.UareUException;
+import com.example.fingerprint_api.service.CapturePipeline;
 import com.example.fingerprint_api.service.MultiReaderFingerprintService;
 import org.slf4j.Logger; // *** CAMBIO: Usar SLF4J Logger ***
 import org.slf4j.LoggerFactory; // *** CAMBIO: Usar SLF4J LoggerFactory ***
@@ -8,11 +9,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus; // Necesario para error
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.Base64; // Eliminar si ya no se usa aquí
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 // import java.util.logging.Logger; // ELIMINAR
 
 @RestController
@@ -24,6 +30,8 @@ public class MultiReaderController {
 
     @Autowired
     private MultiReaderFingerprintService multiService;
+    @Autowired
+    private CapturePipeline capturePipeline;
 
     // --- Endpoints de Gestión de Lectores y Captura (sin cambios lógicos, solo logging) ---
     @GetMapping("/auto-select")
@@ -51,6 +59,12 @@ public class MultiReaderController {
         return ResponseEntity.ok(readers);
     }
 
+    // Estado de cada lector (IDLE, RESERVED, CAPTURING, CHECADOR, ENROLLING, DISCONNECTED) y su reserva
+    @GetMapping("/readers/status")
+    public ResponseEntity<?> getReadersStatus() {
+        return ResponseEntity.ok(multiService.getReaderStates());
+    }
+
     @PostMapping("/reserve/{readerName}")
     public ResponseEntity<?> reserveReader(@PathVariable String readerName, @RequestParam String sessionId) {
         // *** CAMBIO: Logging SLF4J ***
@@ -64,6 +78,16 @@ public class MultiReaderController {
         }
     }
 
+    // Renueva el lease de la reserva; sin renovación la reserva vence (fingerprint.reservation.lease-ms)
+    @PostMapping("/reserve/renew")
+    public ResponseEntity<?> renewReservation(@RequestParam String sessionId) {
+        logger.debug("Renovando reserva de sesión {}", sessionId);
+        if (!multiService.renewReservation(sessionId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("La sesión " + sessionId + " no tiene lector reservado.");
+        }
+        return ResponseEntity.ok("Reserva renovada para sesión: " + sessionId);
+    }
+
     @PostMapping("/release/{readerName}")
     public ResponseEntity<?> releaseReader(@PathVariable String readerName, @RequestParam(required = false) String sessionId) {
         if (sessionId != null) {
@@ -136,6 +160,15 @@ public class MultiReaderController {
         return ResponseEntity.ok(Map.of("readerName", readerName, "base64Image", base64));
     }
 
+    // Hilos de captura y colas/tiempos de las etapas del pipeline (encode / extract / identify)
+    @GetMapping("/pipeline/status")
+    public ResponseEntity<?> getPipelineStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("capture", multiService.getCaptureStats());
+        status.putAll(capturePipeline.getStats());
+        return ResponseEntity.ok(status);
+    }
+
 
     // --- Endpoints Modo Checador (sin cambios lógicos, solo logging) ---
     @PostMapping("/checador/start/{readerName}")
@@ -183,47 +216,70 @@ public class MultiReaderController {
      * Si el enrolamiento se completa, devuelve el template en Base64.
      * YA NO GUARDA AUTOMÁTICAMENTE EN LA BASE DE DATOS.
      * El cliente debe tomar el 'template' devuelto y llamar a POST /api/empleados/{id}/huellas.
+     * <p>
+     * La respuesta es asíncrona: el hilo del servlet se libera mientras el empleado pone el dedo. timeoutMs
+     * (opcional) es el tiempo de espera de esta captura; si el cliente se desconecta la captura se cancela.
      */
     @PostMapping("/enroll/capture/{readerName}/{sessionId}")
-    public ResponseEntity<?> captureEnrollment(
+    public DeferredResult<ResponseEntity<?>> captureEnrollment(
             @PathVariable String readerName,
-            @PathVariable String sessionId
-            // *** CAMBIO: ELIMINAR @RequestParam userId ***
+            @PathVariable String sessionId,
+            @RequestParam(required = false) Integer timeoutMs
     ) {
-        try {
-            // *** CAMBIO: Logging SLF4J ***
-            logger.info("Solicitud de captura para enrolamiento en {}, sesión {}", readerName, sessionId);
-            // multiService ya maneja excepciones UareU y de Interrupción
-            Map<String, Object> result = multiService.captureForEnrollment(readerName, sessionId);
-
-            // *** CAMBIO: ELIMINAR EL BLOQUE DE GUARDADO AUTOMÁTICO ***
-            /*
-            if (Boolean.TRUE.equals(result.get("complete")) && userId != null) {
-                String base64Template = (String) result.get("template");
-                byte[] fmdBytes = Base64.getDecoder().decode(base64Template);
-                // multiService.userService.saveFingerprintTemplate(userId, fmdBytes); // YA NO SE HACE AQUÍ
-            }
-            */
-
-            return ResponseEntity.ok(result); // Devuelve {complete: boolean, remaining?: int, template?: string}
-        } catch (UareUException e) {
-            // *** CAMBIO: Logging SLF4J ***
-            logger.error("Error UareU durante captura de enrolamiento en {}, sesión {}: Código {}, Mensaje {}",
-                    readerName, sessionId, e.getCode(), e.getMessage(), e);
-            // Devolver error específico de UareU si es necesario
-            if (e.getCode() == 96075796 /* Sesión inválida */ || e.getCode() == 96075788 /* Timeout/Fallo captura */) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error en captura de enrolamiento: " + e.toString());
-            }
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error en captura de enrolamiento: " + e.getMessage());
-        } catch (InterruptedException e) {
+        // *** CAMBIO: Logging SLF4J ***
+        logger.info("Solicitud de captura para enrolamiento en {}, sesión {}", readerName, sessionId);
+        int captureTimeoutMs = multiService.resolveCaptureTimeout(timeoutMs);
+        // El future de la captura vence antes (timeout + 1 s); este es solo el límite de la petición
+        DeferredResult<ResponseEntity<?>> deferred = new DeferredResult<>(captureTimeoutMs + 5000L);
+        CompletableFuture<Map<String, Object>> capture = multiService.captureForEnrollmentAsync(readerName, sessionId, captureTimeoutMs);
+
+        deferred.onTimeout(() -> {
+            logger.warn("Captura de enrolamiento en {}, sesión {} sin respuesta; se cancela.", readerName, sessionId);
+            // Primero la respuesta: al cancelar, whenComplete intentaría responder 409
+            deferred.setErrorResult(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body("Tiempo de espera agotado en la captura."));
+            capture.cancel(true);
+        });
+        // Cliente desconectado: no tiene sentido seguir esperando el dedo
+        deferred.onError(error -> capture.cancel(true));
+
+        // Devuelve {complete: boolean, remaining?: int, template?: string}
+        capture.whenComplete((result, error) -> deferred.setResult(
+                error == null ? ResponseEntity.ok(result) : enrollmentCaptureError(readerName, sessionId, error)));
+        return deferred;
+    }
+
+    /**
+     * Cancela la captura de enrolamiento en curso en el lector (la petición de captura responde 409).
+     */
+    @PostMapping("/enroll/cancel/{readerName}")
+    public ResponseEntity<?> cancelEnrollmentCapture(@PathVariable String readerName) {
+        logger.info("Solicitud para cancelar captura de enrolamiento en {}", readerName);
+        if (!multiService.cancelSingleCapture(readerName)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No hay captura de enrolamiento en curso en " + readerName);
+        }
+        return ResponseEntity.ok("Captura cancelada en " + readerName);
+    }
+
+    private ResponseEntity<?> enrollmentCaptureError(String readerName, String sessionId, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof CancellationException) {
             // *** CAMBIO: Logging SLF4J ***
-            logger.warn("Captura de enrolamiento interrumpida en {}, sesión {}", readerName, sessionId);
-            Thread.currentThread().interrupt();
-            return ResponseEntity.status(HttpStatus.CONFLICT).body("Captura interrumpida."); // 409 Conflict podría ser
-        } catch (Exception e) { // Otros errores (ej. Base64 al devolver template)
+            logger.warn("Captura de enrolamiento cancelada en {}, sesión {}", readerName, sessionId);
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Captura cancelada."); // 409 Conflict podría ser
+        }
+        UareUException e = MultiReaderFingerprintService.asUareUException(cause);
+        if (e.getCode() == 96075787 && e.getCause() != null) { // Otros errores (ej. Base64 al devolver template)
             // *** CAMBIO: Logging SLF4J ***
-            logger.error("Error inesperado durante captura de enrolamiento en {}, sesión {}: {}", readerName, sessionId, e.getMessage(), e);
+            logger.error("Error inesperado durante captura de enrolamiento en {}, sesión {}: {}", readerName, sessionId, e.getCause().getMessage(), e.getCause());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error inesperado en enrolamiento.");
         }
+        // *** CAMBIO: Logging SLF4J ***
+        logger.error("Error UareU durante captura de enrolamiento en {}, sesión {}: Código {}, Mensaje {}",
+                readerName, sessionId, e.getCode(), e.getMessage(), e);
+        // Devolver error específico de UareU si es necesario
+        if (e.getCode() == 96075796 /* Sesión inválida */ || e.getCode() == 96075788 /* Timeout/Fallo captura */) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error en captura de enrolamiento: " + e.toString());
+        }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error en captura de enrolamiento: " + e.getMessage());
     }
 }
\ No newline at end of file
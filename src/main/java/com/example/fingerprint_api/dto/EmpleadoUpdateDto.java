@@ -35,7 +35,7 @@ public class EmpleadoUpdateDto {
     private String tipoNombramientoSecundario;
 
     // --- Campos Añadidos (Opcional) ---
-    // private Integer estatusId; // Si quieres poder cambiar el estatus
+    private Integer estatusId; // Cambiar el estatus también actualiza la galería de huellas en memoria
 
     // @Size(max = 50, message = "Correo no puede exceder 50 caracteres")
     // @Email(message = "Formato de correo inválido")
@@ -64,8 +64,8 @@ public class EmpleadoUpdateDto {
     public String getTipoNombramientoSecundario() { return tipoNombramientoSecundario; }
     public void setTipoNombramientoSecundario(String tipoNombramientoSecundario) { this.tipoNombramientoSecundario = tipoNombramientoSecundario; }
 
-    // public Integer getEstatusId() { return estatusId; }
-    // public void setEstatusId(Integer estatusId) { this.estatusId = estatusId; }
+    public Integer getEstatusId() { return estatusId; }
+    public void setEstatusId(Integer estatusId) { this.estatusId = estatusId; }
     // public String getCorreoInstitucional() { return correoInstitucional; }
     // public void setCorreoInstitucional(String correoInstitucional) { this.correoInstitucional = correoInstitucional; }
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.example.fingerprint_api.dto;
+
+import com.example.fingerprint_api.service.IdentificationOptions;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * Solicitud de identificación 1:N: uno o varios templates ANSI 378 (Base64) y las opciones de búsqueda.
+ * Los campos omitidos usan los valores por defecto (k = 1, umbral FAR 1 en 100k, sin plazo).
+ * A lo sumo {@link IdentificationOptions#MAX_PROBES} templates por solicitud.
+ */
+public class IdentifyRequestDto {
+
+    @NotEmpty(message = "Se requiere al menos un template (Base64)")
+    @Size(max = IdentificationOptions.MAX_PROBES, message = "A lo sumo " + IdentificationOptions.MAX_PROBES + " templates por solicitud")
+    private List<String> templates;
+
+    private List<String> readers; // Lector de cada template (opcional)
+    private Integer k;
+    private Integer threshold;
+    private Long deadlineMs;
+
+    public List<String> getTemplates() {
+        return templates;
+    }
+
+    public void setTemplates(List<String> templates) {
+        this.templates = templates;
+    }
+
+    public List<String> getReaders() {
+        return readers;
+    }
+
+    public void setReaders(List<String> readers) {
+        this.readers = readers;
+    }
+
+    public Integer getK() {
+        return k;
+    }
+
+    public void setK(Integer k) {
+        this.k = k;
+    }
+
+    public Integer getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(Integer threshold) {
+        this.threshold = threshold;
+    }
+
+    public Long getDeadlineMs() {
+        return deadlineMs;
+    }
+
+    public void setDeadlineMs(Long deadlineMs) {
+        this.deadlineMs = deadlineMs;
+    }
+}
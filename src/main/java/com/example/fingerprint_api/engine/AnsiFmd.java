@@ -0,0 +1,198 @@
+package com.example.fingerprint_api.engine;
+
+import com.digitalpersona.uareu.Fmd;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * FMD ANSI 378-2004 implementado en Java: lee y escribe el registro binario y expone las minucias
+ * de la primera vista en arreglos paralelos (x, y, ángulo, tipo, calidad).
+ *
+ * Estructura del registro: encabezado "FMR\0" + versión + longitud (2 bytes, o 0 seguido de 4 bytes)
+ * + equipo + tamaño y resolución de imagen + número de vistas; por vista, posición del dedo,
+ * calidad, número de minucias y 6 bytes por minucia; al final el bloque de datos extendidos.
+ */
+public final class AnsiFmd implements Fmd {
+
+    private static final byte[] MAGIC = {'F', 'M', 'R', 0};
+    private static final byte[] VERSION = {' ', '2', '0', 0};
+    private static final int HEADER_SIZE = 26;
+    private static final int VIEW_HEADER_SIZE = 4;
+    private static final int MINUTIA_SIZE = 6;
+
+    private final byte[] data;
+    private final int cbeffId;
+    private final int equipment;
+    private final int width;
+    private final int height;
+    private final int resolution;
+    private final int viewCount;
+    private final View view;
+
+    // Minucias de la primera vista
+    private final int[] x;
+    private final int[] y;
+    private final int[] angle;   // Unidades de 2 grados (0..179)
+    private final int[] type;
+    private final int[] quality;
+
+    private AnsiFmd(byte[] data, int cbeffId, int equipment, int width, int height, int resolution, int viewCount,
+                    int fingerPosition, int viewNumber, int impressionType, int fingerQuality,
+                    int viewFrom, int viewTo, byte[] extBlock, int[] x, int[] y, int[] angle, int[] type, int[] quality) {
+        this.data = data;
+        this.cbeffId = cbeffId;
+        this.equipment = equipment;
+        this.width = width;
+        this.height = height;
+        this.resolution = resolution;
+        this.viewCount = viewCount;
+        this.x = x;
+        this.y = y;
+        this.angle = angle;
+        this.type = type;
+        this.quality = quality;
+        this.view = new View(fingerPosition, viewNumber, impressionType, fingerQuality, x.length,
+                Arrays.copyOfRange(data, viewFrom, viewTo), extBlock);
+    }
+
+    /**
+     * Interpreta un registro ANSI 378-2004 (solo se conservan las minucias de la primera vista).
+     *
+     * @throws IllegalArgumentException si los bytes no son un registro válido.
+     */
+    public static AnsiFmd parse(byte[] data) {
+        if (data == null || data.length < HEADER_SIZE || !Arrays.equals(Arrays.copyOf(data, 4), MAGIC)) {
+            throw new IllegalArgumentException("No es un registro ANSI 378-2004.");
+        }
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        buf.position(8);
+        int recordLength = buf.getShort() & 0xFFFF;
+        if (recordLength == 0) {
+            recordLength = buf.getInt(); // Formato largo
+        }
+        if (recordLength > data.length) {
+            throw new IllegalArgumentException("Registro ANSI truncado: " + data.length + " de " + recordLength + " bytes.");
+        }
+        int cbeffId = buf.getInt();
+        int equipment = buf.getShort() & 0xFFFF;
+        int width = buf.getShort() & 0xFFFF;
+        int height = buf.getShort() & 0xFFFF;
+        int resolution = buf.getShort() & 0xFFFF;
+        buf.getShort(); // Resolución Y
+        int viewCount = buf.get() & 0xFF;
+        buf.get(); // Reservado
+        if (viewCount == 0 || buf.remaining() < VIEW_HEADER_SIZE) {
+            throw new IllegalArgumentException("Registro ANSI sin vistas.");
+        }
+
+        int viewFrom = buf.position();
+        int fingerPosition = buf.get() & 0xFF;
+        int viewImpression = buf.get() & 0xFF;
+        int fingerQuality = buf.get() & 0xFF;
+        int count = buf.get() & 0xFF;
+        if (buf.remaining() < count * MINUTIA_SIZE) {
+            throw new IllegalArgumentException("Registro ANSI truncado en las minucias.");
+        }
+        int[] x = new int[count];
+        int[] y = new int[count];
+        int[] angle = new int[count];
+        int[] type = new int[count];
+        int[] quality = new int[count];
+        for (int i = 0; i < count; i++) {
+            int tx = buf.getShort() & 0xFFFF;
+            int ry = buf.getShort() & 0xFFFF;
+            type[i] = tx >>> 14;
+            x[i] = tx & 0x3FFF;
+            y[i] = ry & 0x3FFF;
+            angle[i] = buf.get() & 0xFF;
+            quality[i] = buf.get() & 0xFF;
+        }
+        int viewTo = buf.position();
+        // Bloque de datos extendidos de la vista (p. ej. núcleos y deltas), sin su longitud
+        byte[] extBlock = new byte[0];
+        if (buf.remaining() >= 2) {
+            int extLength = buf.getShort() & 0xFFFF;
+            if (extLength > 0 && buf.remaining() >= extLength) {
+                extBlock = new byte[extLength];
+                buf.get(extBlock);
+            }
+        }
+        return new AnsiFmd(data, cbeffId, equipment, width, height, resolution, viewCount,
+                fingerPosition, viewImpression >>> 4, viewImpression & 0x0F, fingerQuality,
+                viewFrom, viewTo, extBlock, x, y, angle, type, quality);
+    }
+
+    /**
+     * Construye un registro de una sola vista con las minucias indicadas.
+     */
+    public static AnsiFmd build(int width, int height, int resolution, int fingerPosition, int fingerQuality,
+                                int[] x, int[] y, int[] angle, int[] type, int[] quality) {
+        int count = x.length;
+        int length = HEADER_SIZE + VIEW_HEADER_SIZE + count * MINUTIA_SIZE + 2;
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        buf.put(MAGIC).put(VERSION);
+        buf.putShort((short) length);
+        buf.putInt(0);               // CBEFF product id
+        buf.putShort((short) 0);     // Equipo de captura
+        buf.putShort((short) width).putShort((short) height);
+        buf.putShort((short) resolution).putShort((short) resolution);
+        buf.put((byte) 1).put((byte) 0);
+        buf.put((byte) fingerPosition).put((byte) 0).put((byte) fingerQuality).put((byte) count);
+        for (int i = 0; i < count; i++) {
+            buf.putShort((short) ((type[i] << 14) | (x[i] & 0x3FFF)));
+            buf.putShort((short) (y[i] & 0x3FFF));
+            buf.put((byte) angle[i]).put((byte) quality[i]);
+        }
+        buf.putShort((short) 0);     // Sin datos extendidos
+        return parse(buf.array());
+    }
+
+    public int getMinutiaCount() { return x.length; }
+    public int getX(int i) { return x[i]; }
+    public int getY(int i) { return y[i]; }
+    public int getAngle(int i) { return angle[i]; }
+    public int getType(int i) { return type[i]; }
+    public int getMinutiaQuality(int i) { return quality[i]; }
+    public int getFingerQuality() { return view.getQuality(); }
+    public int getFingerPosition() { return view.getFingerPosition(); }
+
+    @Override public int getCbeffId() { return cbeffId; }
+    @Override public int getCaptureEquipmentCompliance() { return equipment >>> 12; }
+    @Override public int getCaptureEquipmentId() { return equipment & 0x0FFF; }
+    @Override public int getWidth() { return width; }
+    @Override public int getHeight() { return height; }
+    @Override public int getResolution() { return resolution; }
+    @Override public int getViewCnt() { return viewCount; }
+    @Override public Format getFormat() { return Format.ANSI_378_2004; }
+    @Override public Fmv[] getViews() { return new Fmv[]{view}; }
+    @Override public byte[] getData() { return data.clone(); }
+
+    private static final class View implements Fmv {
+        private final int fingerPosition;
+        private final int viewNumber;
+        private final int impressionType;
+        private final int quality;
+        private final int minutiaCount;
+        private final byte[] data;
+        private final byte[] extBlock;
+
+        View(int fingerPosition, int viewNumber, int impressionType, int quality, int minutiaCount, byte[] data, byte[] extBlock) {
+            this.fingerPosition = fingerPosition;
+            this.viewNumber = viewNumber;
+            this.impressionType = impressionType;
+            this.quality = quality;
+            this.minutiaCount = minutiaCount;
+            this.data = data;
+            this.extBlock = extBlock;
+        }
+
+        @Override public int getFingerPosition() { return fingerPosition; }
+        @Override public int getViewNumber() { return viewNumber; }
+        @Override public int getImpressionType() { return impressionType; }
+        @Override public int getQuality() { return quality; }
+        @Override public int getMinutiaCnt() { return minutiaCount; }
+        @Override public byte[] getData() { return data.clone(); }
+        @Override public byte[] getExtBlockData() { return extBlock.clone(); }
+    }
+}
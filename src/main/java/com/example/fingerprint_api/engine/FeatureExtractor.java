@@ -0,0 +1,29 @@
+package com.example.fingerprint_api.engine;
+
+import com.digitalpersona.uareu.Fid;
+import com.digitalpersona.uareu.Fmd;
+import com.digitalpersona.uareu.UareUException;
+
+import java.util.List;
+
+/**
+ * Extracción de templates ANSI 378-2004: a partir de una imagen capturada, de varias capturas
+ * de enrolamiento, o de los bytes guardados en la BD.
+ */
+public interface FeatureExtractor {
+
+    /**
+     * Crea el FMD de una imagen capturada por un lector.
+     */
+    Fmd createFmd(Fid image) throws UareUException;
+
+    /**
+     * Combina las capturas de un enrolamiento en el FMD final que se guarda.
+     */
+    Fmd createEnrollmentFmd(List<Fmd> captures) throws UareUException;
+
+    /**
+     * Reconstruye un FMD a partir de sus bytes ANSI 378-2004 (ya desencriptados).
+     */
+    Fmd importFmd(byte[] data) throws UareUException;
+}
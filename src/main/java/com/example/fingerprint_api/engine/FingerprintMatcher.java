@@ -0,0 +1,41 @@
+package com.example.fingerprint_api.engine;
+
+import com.digitalpersona.uareu.Engine;
+import com.digitalpersona.uareu.Fmd;
+import com.digitalpersona.uareu.UareUException;
+
+/**
+ * Comparación e identificación de templates (FMD). Las puntuaciones son de disimilitud en la escala
+ * del SDK U.are.U: 0 es idéntico y {@link #PROBABILITY_ONE} es la máxima diferencia.
+ */
+public interface FingerprintMatcher {
+
+    int PROBABILITY_ONE = Engine.PROBABILITY_ONE;
+
+    /**
+     * Busca en la galería el template más parecido al capturado.
+     *
+     * @param probe     FMD capturado.
+     * @param gallery   Templates contra los que se busca.
+     * @param threshold Disimilitud máxima aceptada.
+     * @return El mejor candidato (índice dentro de {@code gallery}) o null si ninguno pasa el umbral.
+     */
+    MatchCandidate identify(Fmd probe, Fmd[] gallery, int threshold) throws UareUException;
+
+    /**
+     * Busca en la galería los {@code k} templates más parecidos al capturado.
+     *
+     * @return Hasta k candidatos bajo el umbral, de menor a mayor disimilitud (vacío si ninguno pasa).
+     */
+    MatchCandidate[] identifyTopK(Fmd probe, Fmd[] gallery, int threshold, int k) throws UareUException;
+
+    /**
+     * Puntuación de disimilitud entre dos templates (primera vista de cada uno).
+     */
+    int compare(Fmd probe, Fmd candidate) throws UareUException;
+
+    /**
+     * Nombre del motor, para diagnóstico.
+     */
+    String getName();
+}
@@ -0,0 +1,18 @@
+package com.example.fingerprint_api.engine;
+
+/**
+ * Resultado de una identificación: posición del template en la galería buscada y su disimilitud.
+ */
+public final class MatchCandidate {
+
+    private final int index;
+    private final int score;
+
+    public MatchCandidate(int index, int score) {
+        this.index = index;
+        this.score = score;
+    }
+
+    public int getIndex() { return index; }
+    public int getScore() { return score; }
+}
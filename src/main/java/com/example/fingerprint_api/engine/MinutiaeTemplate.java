@@ -0,0 +1,98 @@
+package com.example.fingerprint_api.engine;
+
+import com.digitalpersona.uareu.Fmd;
+
+import java.util.Arrays;
+
+/**
+ * Template ANSI 378-2004 preparado para comparación: minucias en arreglos paralelos (estructura de arreglos)
+ * ordenadas por ángulo, con las coordenadas centradas en la mediana del template y rellenadas hasta un
+ * múltiplo de {@link #PADDING} para que el kernel vectorial recorra bloques completos sin cola escalar.
+ * Un índice por ángulo permite recorrer solo las minucias de ángulo compatible.
+ * Sigue siendo un {@link Fmd}: delega en el registro original.
+ */
+public final class MinutiaeTemplate implements Fmd {
+
+    // Múltiplo de relleno: cubre 16 carriles int (AVX-512) y por tanto 8 (AVX2) y 4 (SSE/NEON)
+    static final int PADDING = 16;
+    // Coordenada de relleno: nunca queda dentro de la tolerancia de una minucia real
+    static final int FAR = 1 << 20;
+
+    private final AnsiFmd source;
+    private final int count;
+    private final int[] x;
+    private final int[] y;
+    private final int[] angle;
+    // angleStart[a] = primera posición con ángulo >= a (angleStart[180] = count)
+    private final int[] angleStart;
+
+    private MinutiaeTemplate(AnsiFmd source, int count, int[] x, int[] y, int[] angle, int[] angleStart) {
+        this.source = source;
+        this.count = count;
+        this.x = x;
+        this.y = y;
+        this.angle = angle;
+        this.angleStart = angleStart;
+    }
+
+    public static MinutiaeTemplate of(AnsiFmd source) {
+        int n = source.getMinutiaCount();
+        int padded = Math.max(PADDING, (n + PADDING - 1) / PADDING * PADDING);
+        int[] x = new int[padded];
+        int[] y = new int[padded];
+        int[] angle = new int[padded];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(source.getAngle(a) % 180, source.getAngle(b) % 180));
+        for (int i = 0; i < n; i++) {
+            x[i] = source.getX(order[i]);
+            y[i] = source.getY(order[i]);
+            angle[i] = source.getAngle(order[i]) % 180;
+        }
+        int[] angleStart = new int[181];
+        for (int a = 0, i = 0; a <= 180; a++) {
+            while (i < n && angle[i] < a) i++;
+            angleStart[a] = i;
+        }
+        // Centrar en la mediana acota los desplazamientos que luego vota el comparador
+        int cx = median(x, n);
+        int cy = median(y, n);
+        for (int i = 0; i < n; i++) {
+            x[i] -= cx;
+            y[i] -= cy;
+        }
+        Arrays.fill(x, n, padded, FAR);
+        Arrays.fill(y, n, padded, FAR);
+        return new MinutiaeTemplate(source, n, x, y, angle, angleStart);
+    }
+
+    private static int median(int[] values, int n) {
+        if (n == 0) return 0;
+        int[] sorted = Arrays.copyOf(values, n);
+        Arrays.sort(sorted);
+        return sorted[n / 2];
+    }
+
+    public int getCount() { return count; }
+    /** Longitud de los arreglos (múltiplo de {@link #PADDING}). */
+    public int getPaddedLength() { return x.length; }
+    int[] xs() { return x; }
+    int[] ys() { return y; }
+    int[] angles() { return angle; }
+    /** Primera posición con ángulo >= {@code a} (0..180). */
+    int angleStart(int a) { return angleStart[a]; }
+    public AnsiFmd getSource() { return source; }
+
+    @Override public int getCbeffId() { return source.getCbeffId(); }
+    @Override public int getCaptureEquipmentCompliance() { return source.getCaptureEquipmentCompliance(); }
+    @Override public int getCaptureEquipmentId() { return source.getCaptureEquipmentId(); }
+    @Override public int getWidth() { return source.getWidth(); }
+    @Override public int getHeight() { return source.getHeight(); }
+    @Override public int getResolution() { return source.getResolution(); }
+    @Override public int getViewCnt() { return source.getViewCnt(); }
+    @Override public Format getFormat() { return source.getFormat(); }
+    @Override public Fmv[] getViews() { return source.getViews(); }
+    @Override public byte[] getData() { return source.getData(); }
+}
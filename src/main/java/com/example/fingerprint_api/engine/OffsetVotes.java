@@ -0,0 +1,58 @@
+package com.example.fingerprint_api.engine;
+
+/**
+ * Histograma de desplazamientos (dx, dy) entre minucias compatibles de probe y candidato: el bin con más
+ * votos da la traslación que alinea ambos templates (transformada de Hough). Se reutiliza por hilo y solo
+ * se limpian los bins tocados.
+ */
+final class OffsetVotes {
+
+    static final int RANGE = 128;  // Desplazamiento máximo considerado, en píxeles
+    private static final int BIN_SHIFT = 3; // Bins de 8 píxeles
+    private static final int BINS = (2 * RANGE) >> BIN_SHIFT;
+
+    private final int[] count = new int[BINS * BINS];
+    private final int[] sumX = new int[BINS * BINS];
+    private final int[] sumY = new int[BINS * BINS];
+    private final int[] touched = new int[BINS * BINS];
+    private int touchedCount;
+    private int bestBin = -1;
+
+    void vote(int dx, int dy) {
+        if (dx <= -RANGE || dx >= RANGE || dy <= -RANGE || dy >= RANGE) return;
+        int bin = ((dx + RANGE) >> BIN_SHIFT) * BINS + ((dy + RANGE) >> BIN_SHIFT);
+        if (count[bin] == 0) {
+            touched[touchedCount++] = bin;
+        }
+        count[bin]++;
+        sumX[bin] += dx;
+        sumY[bin] += dy;
+        if (bestBin < 0 || count[bin] > count[bestBin]) {
+            bestBin = bin;
+        }
+    }
+
+    boolean isEmpty() {
+        return bestBin < 0;
+    }
+
+    /** Traslación media (redondeada) de los votos del mejor bin. */
+    int bestOffsetX() {
+        return Math.round((float) sumX[bestBin] / count[bestBin]);
+    }
+
+    int bestOffsetY() {
+        return Math.round((float) sumY[bestBin] / count[bestBin]);
+    }
+
+    void reset() {
+        for (int i = 0; i < touchedCount; i++) {
+            int bin = touched[i];
+            count[bin] = 0;
+            sumX[bin] = 0;
+            sumY[bin] = 0;
+        }
+        touchedCount = 0;
+        bestBin = -1;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.fingerprint_api.engine;
+
+/**
+ * Emparejamiento de minucias acelerado para {@link VectorMinutiaeEngine}. La implementación con la Vector API
+ * (VectorMinutiaeKernel) vive en src/vector/java y solo se compila con el perfil Maven "vector"; sin ella el
+ * comparador usa su bucle escalar.
+ */
+interface PairingKernel {
+
+    /**
+     * Cuenta las minucias del probe, desplazadas por (offsetX, offsetY), que tienen al menos una minucia del
+     * candidato dentro de la tolerancia de posición y ángulo. Los arreglos del candidato tienen longitud
+     * {@code paddedLength} (múltiplo de {@link MinutiaeTemplate#PADDING}).
+     */
+    int countPaired(int[] px, int[] py, int[] pa, int n, int offsetX, int offsetY,
+                    int[] cx, int[] cy, int[] ca, int paddedLength,
+                    int positionTolerance, int angleTolerance);
+
+    // Para el log de arranque
+    String describe();
+}
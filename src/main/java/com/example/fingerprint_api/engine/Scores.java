@@ -0,0 +1,19 @@
+package com.example.fingerprint_api.engine;
+
+/**
+ * Conversión común de la proporción de minucias emparejadas a disimilitud en la escala del SDK.
+ */
+final class Scores {
+
+    private Scores() {
+    }
+
+    /**
+     * Curva empinada: ~0.9 de minucias emparejadas queda muy por debajo del umbral de identificación
+     * ({@code PROBABILITY_ONE / 100000}) y menos de ~0.75 queda por encima.
+     */
+    static int dissimilarity(double pairedRatio) {
+        double ratio = Math.max(0.0, Math.min(1.0, pairedRatio));
+        return (int) (FingerprintMatcher.PROBABILITY_ONE * Math.pow(1.0 - ratio, 8));
+    }
+}
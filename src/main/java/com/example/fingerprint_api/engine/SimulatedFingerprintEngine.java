@@ -0,0 +1,205 @@
+package com.example.fingerprint_api.engine;
+
+import com.digitalpersona.uareu.Fid;
+import com.digitalpersona.uareu.Fmd;
+import com.digitalpersona.uareu.UareUException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Motor simulado en Java puro, determinista, para pruebas de carga sin el runtime nativo ni lectores.
+ * Trabaja con registros ANSI 378-2004 reales (también importa los de la BD): dos templates coinciden
+ * según la proporción de minucias que se emparejan por posición y ángulo, sin alineación.
+ * Cada comparación puede tener un costo artificial adicional para imitar al motor real.
+ */
+@Component
+@ConditionalOnProperty(name = "fingerprint.engine.type", havingValue = "simulated")
+public class SimulatedFingerprintEngine implements FingerprintMatcher, FeatureExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulatedFingerprintEngine.class);
+
+    // Tolerancias de emparejamiento de minucias
+    private static final int POSITION_TOLERANCE = 8;  // Píxeles
+    private static final int ANGLE_TOLERANCE = 8;     // Unidades de 2 grados
+
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 500;
+    private static final int RESOLUTION = 197; // Píxeles por cm (500 dpi)
+
+    // Tiempo de CPU adicional por comparación, en nanosegundos (0 = solo el costo del emparejamiento)
+    @Value("${fingerprint.engine.simulated.compare-cost-ns:0}")
+    private long compareCostNanos;
+
+    public SimulatedFingerprintEngine() {
+    }
+
+    public SimulatedFingerprintEngine(long compareCostNanos) {
+        this.compareCostNanos = compareCostNanos;
+    }
+
+    @Override
+    public MatchCandidate identify(Fmd probe, Fmd[] gallery, int threshold) throws UareUException {
+        AnsiFmd p = asAnsi(probe);
+        int bestIndex = -1;
+        int bestScore = Integer.MAX_VALUE;
+        for (int i = 0; i < gallery.length; i++) {
+            int score = score(p, asAnsi(gallery[i]));
+            if (score < bestScore) {
+                bestScore = score;
+                bestIndex = i;
+            }
+        }
+        return bestIndex >= 0 && bestScore < threshold ? new MatchCandidate(bestIndex, bestScore) : null;
+    }
+
+    @Override
+    public MatchCandidate[] identifyTopK(Fmd probe, Fmd[] gallery, int threshold, int k) throws UareUException {
+        AnsiFmd p = asAnsi(probe);
+        TopCandidates top = new TopCandidates(k);
+        for (int i = 0; i < gallery.length; i++) {
+            int score = score(p, asAnsi(gallery[i]));
+            if (score < top.bar(threshold)) {
+                top.offer(i, score);
+            }
+        }
+        return top.toArray();
+    }
+
+    @Override
+    public int compare(Fmd probe, Fmd candidate) throws UareUException {
+        return score(asAnsi(probe), asAnsi(candidate));
+    }
+
+    /**
+     * El "extractor" simulado deriva el template de un hash de la imagen: capturas idénticas producen
+     * el mismo template, capturas distintas producen sujetos distintos.
+     */
+    @Override
+    public Fmd createFmd(Fid image) throws UareUException {
+        return syntheticTemplate(Arrays.hashCode(image.getData()), 0);
+    }
+
+    @Override
+    public Fmd createEnrollmentFmd(List<Fmd> captures) throws UareUException {
+        if (captures.isEmpty()) {
+            throw new UareUException(96075787);
+        }
+        // Se conserva la primera captura como template de enrolamiento
+        return asAnsi(captures.get(0));
+    }
+
+    @Override
+    public Fmd importFmd(byte[] data) throws UareUException {
+        try {
+            return AnsiFmd.parse(data);
+        } catch (IllegalArgumentException e) {
+            logger.debug("Template no importable en el motor simulado: {}", e.getMessage());
+            throw new UareUException(96075787);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "simulated";
+    }
+
+    /**
+     * Genera el template de un sujeto sintético. Con la misma variante el resultado es idéntico; con variantes
+     * distintas las minucias se desplazan un poco y algunas desaparecen o aparecen, como en capturas reales
+     * del mismo dedo. Sujetos distintos no coinciden.
+     */
+    public static AnsiFmd syntheticTemplate(long subject, int variant) {
+        SplittableRandom base = new SplittableRandom(mix(subject));
+        int count = 30 + base.nextInt(21);
+        int[] x = new int[count + 2];
+        int[] y = new int[count + 2];
+        int[] angle = new int[count + 2];
+        int[] type = new int[count + 2];
+        int[] quality = new int[count + 2];
+        SplittableRandom noise = variant == 0 ? null : new SplittableRandom(mix(mix(subject) + variant));
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int mx = 20 + base.nextInt(WIDTH - 40);
+            int my = 20 + base.nextInt(HEIGHT - 40);
+            int ma = base.nextInt(180);
+            int mt = 1 + base.nextInt(2);
+            int mq = 40 + base.nextInt(61);
+            if (noise != null) {
+                if (noise.nextInt(20) == 0) continue; // Minucia perdida
+                mx += noise.nextInt(7) - 3;
+                my += noise.nextInt(7) - 3;
+                ma = Math.floorMod(ma + noise.nextInt(5) - 2, 180);
+            }
+            x[n] = mx; y[n] = my; angle[n] = ma; type[n] = mt; quality[n] = mq;
+            n++;
+        }
+        if (noise != null) {
+            // Minucias espurias de la captura
+            for (int i = 0; i < 2; i++) {
+                x[n] = 20 + noise.nextInt(WIDTH - 40);
+                y[n] = 20 + noise.nextInt(HEIGHT - 40);
+                angle[n] = noise.nextInt(180);
+                type[n] = 1;
+                quality[n] = 40;
+                n++;
+            }
+        }
+        return AnsiFmd.build(WIDTH, HEIGHT, RESOLUTION, 1 + (int) Math.floorMod(subject, 10L), 60 + base.nextInt(41),
+                Arrays.copyOf(x, n), Arrays.copyOf(y, n), Arrays.copyOf(angle, n), Arrays.copyOf(type, n), Arrays.copyOf(quality, n));
+    }
+
+    private int score(AnsiFmd a, AnsiFmd b) {
+        if (compareCostNanos > 0) {
+            long until = System.nanoTime() + compareCostNanos;
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+        }
+        int na = a.getMinutiaCount();
+        int nb = b.getMinutiaCount();
+        if (na == 0 || nb == 0) {
+            return PROBABILITY_ONE;
+        }
+        boolean[] used = new boolean[nb];
+        int matched = 0;
+        for (int i = 0; i < na; i++) {
+            for (int j = 0; j < nb; j++) {
+                if (!used[j]
+                        && Math.abs(a.getX(i) - b.getX(j)) <= POSITION_TOLERANCE
+                        && Math.abs(a.getY(i) - b.getY(j)) <= POSITION_TOLERANCE
+                        && angleDistance(a.getAngle(i), b.getAngle(j)) <= ANGLE_TOLERANCE) {
+                    used[j] = true;
+                    matched++;
+                    break;
+                }
+            }
+        }
+        return Scores.dissimilarity(2.0 * matched / (na + nb));
+    }
+
+    // Mezcla de bits (finalizador de MurmurHash3) para que semillas consecutivas den secuencias independientes
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static int angleDistance(int a, int b) {
+        int d = Math.abs(a - b);
+        return Math.min(d, 180 - d);
+    }
+
+    private AnsiFmd asAnsi(Fmd fmd) throws UareUException {
+        if (fmd instanceof AnsiFmd) {
+            return (AnsiFmd) fmd;
+        }
+        return (AnsiFmd) importFmd(fmd.getData());
+    }
+}
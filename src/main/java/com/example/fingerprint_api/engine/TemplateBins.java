@@ -0,0 +1,87 @@
+package com.example.fingerprint_api.engine;
+
+import com.digitalpersona.uareu.Fmd;
+
+/**
+ * Clave de bin de un template a partir de datos baratos del registro ANSI 378-2004 (sin comparar minucias):
+ * rango de número de minucias, posición del dedo, presencia de núcleo/delta y tamaño de imagen.
+ * Empaquetada en un int: bits 0-5 rango de minucias, 6-9 dedo, 10 núcleo, 11 delta,
+ * 12-21 ancho/16 y 22-31 alto/16.
+ */
+public final class TemplateBins {
+
+    // Minucias por rango
+    public static final int MINUTIA_BUCKET_WIDTH = 8;
+    // Tipo de dato extendido ANSI 378 con núcleos y deltas
+    private static final int CORE_DELTA_TYPE = 0x0002;
+    private static final int INCOMPATIBLE = Integer.MAX_VALUE;
+
+    private TemplateBins() {
+    }
+
+    public static int keyOf(Fmd fmd) {
+        int minutiae = 0;
+        int finger = 0;
+        boolean core = false;
+        boolean delta = false;
+        try {
+            Fmd.Fmv[] views = fmd.getViews();
+            if (views != null && views.length > 0) {
+                minutiae = views[0].getMinutiaCnt();
+                finger = views[0].getFingerPosition();
+                int coreDelta = parseCoreDelta(views[0].getExtBlockData());
+                core = (coreDelta & 1) != 0;
+                delta = (coreDelta & 2) != 0;
+            }
+        } catch (RuntimeException e) {
+            // Vista ilegible: el template queda en el bin de "sin datos" de su tamaño de imagen
+        }
+        return Math.min(63, minutiae / MINUTIA_BUCKET_WIDTH)
+                | (finger & 0xF) << 6
+                | (core ? 1 : 0) << 10
+                | (delta ? 1 : 0) << 11
+                | Math.min(0x3FF, fmd.getWidth() >> 4) << 12
+                | Math.min(0x3FF, fmd.getHeight() >> 4) << 22;
+    }
+
+    /**
+     * Distancia entre la clave del probe y la de un bin: 0 es el bin más probable; cada rango de minucias
+     * o diferencia de núcleo/delta suma 1. Tamaño de imagen distinto, o dedos conocidos distintos, es incompatible.
+     */
+    public static int distance(int probeKey, int binKey) {
+        if ((probeKey >>> 12) != (binKey >>> 12)) return INCOMPATIBLE;
+        int probeFinger = (probeKey >>> 6) & 0xF;
+        int binFinger = (binKey >>> 6) & 0xF;
+        if (probeFinger != 0 && binFinger != 0 && probeFinger != binFinger) return INCOMPATIBLE; // 0 = desconocido
+        return Math.abs((probeKey & 0x3F) - (binKey & 0x3F))
+                + ((probeKey >>> 10) & 1 ^ (binKey >>> 10) & 1)
+                + ((probeKey >>> 11) & 1 ^ (binKey >>> 11) & 1);
+    }
+
+    public static boolean isCompatible(int distance) {
+        return distance != INCOMPATIBLE;
+    }
+
+    // Bloque extendido: registros (tipo 2 bytes, longitud 2 bytes incluyendo el encabezado, datos).
+    // En el de núcleos/deltas, los 4 bits bajos del primer byte son el número de núcleos y, tras ellos,
+    // otro byte con el número de deltas. Devuelve bit 0 = hay núcleo, bit 1 = hay delta.
+    private static int parseCoreDelta(byte[] ext) {
+        if (ext == null) return 0;
+        int pos = 0;
+        while (pos + 4 <= ext.length) {
+            int type = (ext[pos] & 0xFF) << 8 | (ext[pos + 1] & 0xFF);
+            int length = (ext[pos + 2] & 0xFF) << 8 | (ext[pos + 3] & 0xFF);
+            if (length < 4 || pos + length > ext.length) return 0;
+            if (type == CORE_DELTA_TYPE && length > 4) {
+                int info = ext[pos + 4] & 0xFF;
+                int cores = info & 0x0F;
+                int coreSize = (info >>> 6) == 1 ? 5 : 4; // Con ángulo: 5 bytes por núcleo
+                int deltaPos = pos + 5 + cores * coreSize;
+                int deltas = deltaPos < pos + length ? ext[deltaPos] & 0x0F : 0;
+                return (cores > 0 ? 1 : 0) | (deltas > 0 ? 2 : 0);
+            }
+            pos += length;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.fingerprint_api.engine;
+
+import java.util.Arrays;
+
+/**
+ * Los k candidatos de menor disimilitud vistos hasta el momento (k es pequeño: inserción ordenada).
+ * Con grupo (p. ej. el empleado de cada template) se conserva solo el mejor candidato de cada grupo.
+ */
+public final class TopCandidates {
+
+    private final int k;
+    private final int[] indices;
+    private final int[] scores;
+    private final int[] groups;
+    private int size;
+
+    public TopCandidates(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k debe ser al menos 1");
+        }
+        this.k = k;
+        this.indices = new int[k];
+        this.scores = new int[k];
+        this.groups = new int[k];
+    }
+
+    /**
+     * Propone un candidato; se queda si está entre los k mejores.
+     */
+    public void offer(int index, int score) {
+        if (size == k && score >= scores[k - 1]) {
+            return;
+        }
+        insert(size < k ? size++ : k - 1, index, score, index);
+    }
+
+    /**
+     * Propone un candidato de un grupo: si el grupo ya tiene uno, solo lo reemplaza si es mejor,
+     * así los k lugares son de k grupos distintos. No mezclar con {@link #offer(int, int)} en la misma instancia.
+     */
+    public void offer(int index, int score, int group) {
+        if (size == k && score >= scores[k - 1]) {
+            return;
+        }
+        int held = -1;
+        for (int i = 0; i < size; i++) {
+            if (groups[i] == group) {
+                held = i;
+                break;
+            }
+        }
+        if (held >= 0 && scores[held] <= score) {
+            return;
+        }
+        insert(held >= 0 ? held : size < k ? size++ : k - 1, index, score, group);
+    }
+
+    // Coloca el candidato en la posición libre (o reemplazada) pos y lo sube hasta su lugar
+    private void insert(int pos, int index, int score, int group) {
+        while (pos > 0 && scores[pos - 1] > score) {
+            indices[pos] = indices[pos - 1];
+            scores[pos] = scores[pos - 1];
+            groups[pos] = groups[pos - 1];
+            pos--;
+        }
+        indices[pos] = index;
+        scores[pos] = score;
+        groups[pos] = group;
+    }
+
+    /**
+     * Disimilitud que debe mejorar un candidato para entrar (el umbral, mientras no haya k).
+     */
+    public int bar(int threshold) {
+        return size < k ? threshold : Math.min(threshold, scores[k - 1]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Candidatos de mejor a peor.
+     */
+    public MatchCandidate[] toArray() {
+        MatchCandidate[] result = new MatchCandidate[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = new MatchCandidate(indices[i], scores[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "TopCandidates" + Arrays.toString(Arrays.copyOf(scores, size));
+    }
+}
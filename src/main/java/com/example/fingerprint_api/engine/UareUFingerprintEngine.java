@@ -0,0 +1,102 @@
+package com.example.fingerprint_api.engine;
+
+import com.digitalpersona.uareu.Engine;
+import com.digitalpersona.uareu.Fid;
+import com.digitalpersona.uareu.Fmd;
+import com.digitalpersona.uareu.UareUException;
+import com.digitalpersona.uareu.UareUGlobal;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Motor del SDK DigitalPersona U.are.U (requiere el runtime nativo). Es el motor por defecto.
+ */
+@Component
+@ConditionalOnProperty(name = "fingerprint.engine.type", havingValue = "uareu", matchIfMissing = true)
+public class UareUFingerprintEngine implements FingerprintMatcher, FeatureExtractor {
+
+    @Override
+    public MatchCandidate identify(Fmd probe, Fmd[] gallery, int threshold) throws UareUException {
+        if (gallery.length == 0) {
+            return null;
+        }
+        Engine engine = UareUGlobal.GetEngine();
+        Engine.Candidate[] candidates = engine.Identify(
+                probe,
+                0, // first view
+                gallery,
+                threshold,
+                1 // Máximo 1 resultado (el mejor)
+        );
+        if (candidates.length == 0) {
+            return null;
+        }
+        Engine.Candidate candidate = candidates[0];
+        // Identify solo devuelve el índice; la puntuación permite comparar candidatos de distintas galerías
+        int score = engine.Compare(probe, 0, gallery[candidate.fmd_index], candidate.view_index);
+        return new MatchCandidate(candidate.fmd_index, score);
+    }
+
+    @Override
+    public MatchCandidate[] identifyTopK(Fmd probe, Fmd[] gallery, int threshold, int k) throws UareUException {
+        if (gallery.length == 0) {
+            return new MatchCandidate[0];
+        }
+        Engine engine = UareUGlobal.GetEngine();
+        Engine.Candidate[] candidates = engine.Identify(probe, 0, gallery, threshold, k);
+        // Identify no devuelve puntuaciones: se compara cada candidato para ordenarlos
+        TopCandidates top = new TopCandidates(k);
+        for (Engine.Candidate candidate : candidates) {
+            top.offer(candidate.fmd_index, engine.Compare(probe, 0, gallery[candidate.fmd_index], candidate.view_index));
+        }
+        return top.toArray();
+    }
+
+    @Override
+    public int compare(Fmd probe, Fmd candidate) throws UareUException {
+        return UareUGlobal.GetEngine().Compare(probe, 0, candidate, 0);
+    }
+
+    @Override
+    public Fmd createFmd(Fid image) throws UareUException {
+        return UareUGlobal.GetEngine().CreateFmd(image, Fmd.Format.ANSI_378_2004);
+    }
+
+    @Override
+    public Fmd createEnrollmentFmd(List<Fmd> captures) throws UareUException {
+        return UareUGlobal.GetEngine().CreateEnrollmentFmd(Fmd.Format.ANSI_378_2004, new EnrollmentCallbackImpl(captures));
+    }
+
+    @Override
+    public Fmd importFmd(byte[] data) throws UareUException {
+        return UareUGlobal.GetImporter().ImportFmd(
+                data,
+                Fmd.Format.ANSI_378_2004, // Formato estándar para comparación
+                Fmd.Format.ANSI_378_2004
+        );
+    }
+
+    @Override
+    public String getName() {
+        return "uareu";
+    }
+
+    private static class EnrollmentCallbackImpl implements Engine.EnrollmentCallback {
+        private final Iterator<Fmd> iterator;
+        EnrollmentCallbackImpl(List<Fmd> fmds) { this.iterator = fmds.iterator(); }
+        @Override
+        public Engine.PreEnrollmentFmd GetFmd(Fmd.Format format) {
+            if (iterator.hasNext()) {
+                Fmd fmd = iterator.next();
+                Engine.PreEnrollmentFmd pre = new Engine.PreEnrollmentFmd();
+                pre.fmd = fmd;
+                pre.view_index = 0;
+                return pre;
+            }
+            return null;
+        }
+    }
+}
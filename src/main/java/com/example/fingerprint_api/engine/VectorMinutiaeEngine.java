@@ -0,0 +1,238 @@
+package com.example.fingerprint_api.engine;
+
+import com.digitalpersona.uareu.Fid;
+import com.digitalpersona.uareu.Fmd;
+import com.digitalpersona.uareu.UareUException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Comparador de minucias en Java puro sobre templates ANSI 378-2004, alternativo al motor del SDK.
+ * Los templates de la galería se importan una sola vez a {@link MinutiaeTemplate} (arreglos paralelos
+ * centrados en la mediana); el probe se prepara una vez por identificación con algunas rotaciones.
+ * Para cada rotación, la traslación se estima votando los desplazamientos entre minucias de ángulo
+ * compatible, y el candidato se puntúa con la proporción de minucias emparejadas en la mejor alineación.
+ *
+ * La votación recorre solo rangos de ángulo compatible; el emparejamiento usa la Vector API si el kernel se
+ * compiló (perfil Maven "vector") y el módulo jdk.incubator.vector está cargado (--add-modules
+ * jdk.incubator.vector), y si no un bucle escalar equivalente.
+ * La extracción desde imágenes de lector sigue siendo la del SDK.
+ */
+@Component
+@ConditionalOnProperty(name = "fingerprint.engine.type", havingValue = "vector")
+public class VectorMinutiaeEngine implements FingerprintMatcher, FeatureExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorMinutiaeEngine.class);
+
+    private static final int POSITION_TOLERANCE = 8;  // Píxeles
+    private static final int ANGLE_TOLERANCE = 8;     // Unidades de 2 grados
+    private static final int[] ROTATIONS_DEGREES = {-10, -5, 0, 5, 10};
+
+    // Histograma de traslaciones reutilizado por hilo (la identificación corre en varios hilos a la vez)
+    private static final ThreadLocal<OffsetVotes> VOTES = ThreadLocal.withInitial(OffsetVotes::new);
+
+    private static final String VECTOR_KERNEL_CLASS = "com.example.fingerprint_api.engine.VectorMinutiaeKernel";
+
+    private final FeatureExtractor imageExtractor = new UareUFingerprintEngine();
+    private final PairingKernel kernel; // null = bucle escalar
+
+    // Permite forzar el bucle escalar para comparar rendimiento
+    public VectorMinutiaeEngine(@Value("${fingerprint.engine.vector.enabled:true}") boolean useVectorApi) {
+        this.kernel = useVectorApi ? loadVectorKernel() : null;
+        if (kernel != null) {
+            logger.info("Comparador de minucias: {}.", kernel.describe());
+        }
+    }
+
+    // El kernel solo existe si se compiló con el perfil "vector", y solo funciona con el módulo en la JVM
+    private static PairingKernel loadVectorKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            logger.warn("Módulo jdk.incubator.vector no disponible (falta --add-modules jdk.incubator.vector); se usa el bucle escalar.");
+            return null;
+        }
+        try {
+            return (PairingKernel) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            logger.warn("Kernel Vector API no compilado (construir con -Pvector); se usa el bucle escalar.");
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.warn("No se pudo cargar el kernel Vector API ({}); se usa el bucle escalar.", e.toString());
+        }
+        return null;
+    }
+
+    // Probe con sus minucias ya rotadas para cada hipótesis de rotación
+    private static final class Probe {
+        final int count;
+        final int[][] x;
+        final int[][] y;
+        final int[][] angle;
+
+        Probe(MinutiaeTemplate template) {
+            count = template.getCount();
+            x = new int[ROTATIONS_DEGREES.length][count];
+            y = new int[ROTATIONS_DEGREES.length][count];
+            angle = new int[ROTATIONS_DEGREES.length][count];
+            for (int r = 0; r < ROTATIONS_DEGREES.length; r++) {
+                double rad = Math.toRadians(ROTATIONS_DEGREES[r]);
+                double cos = Math.cos(rad);
+                double sin = Math.sin(rad);
+                // Coordenadas de imagen (y hacia abajo): la rotación de puntos es horaria y el ángulo ANSI antihorario
+                int angleShift = -ROTATIONS_DEGREES[r] / 2;
+                for (int i = 0; i < count; i++) {
+                    int tx = template.xs()[i];
+                    int ty = template.ys()[i];
+                    x[r][i] = (int) Math.round(tx * cos - ty * sin);
+                    y[r][i] = (int) Math.round(tx * sin + ty * cos);
+                    angle[r][i] = Math.floorMod(template.angles()[i] + angleShift, 180);
+                }
+            }
+        }
+    }
+
+    @Override
+    public MatchCandidate identify(Fmd probe, Fmd[] gallery, int threshold) throws UareUException {
+        Probe p = new Probe(asTemplate(probe));
+        int bestIndex = -1;
+        int bestScore = Integer.MAX_VALUE;
+        for (int i = 0; i < gallery.length; i++) {
+            int score = score(p, asTemplate(gallery[i]));
+            if (score < bestScore) {
+                bestScore = score;
+                bestIndex = i;
+            }
+        }
+        return bestIndex >= 0 && bestScore < threshold ? new MatchCandidate(bestIndex, bestScore) : null;
+    }
+
+    @Override
+    public MatchCandidate[] identifyTopK(Fmd probe, Fmd[] gallery, int threshold, int k) throws UareUException {
+        Probe p = new Probe(asTemplate(probe));
+        TopCandidates top = new TopCandidates(k);
+        for (int i = 0; i < gallery.length; i++) {
+            int score = score(p, asTemplate(gallery[i]));
+            if (score < top.bar(threshold)) {
+                top.offer(i, score);
+            }
+        }
+        return top.toArray();
+    }
+
+    @Override
+    public int compare(Fmd probe, Fmd candidate) throws UareUException {
+        return score(new Probe(asTemplate(probe)), asTemplate(candidate));
+    }
+
+    private int score(Probe probe, MinutiaeTemplate candidate) {
+        int n = probe.count;
+        int m = candidate.getCount();
+        if (n == 0 || m == 0) {
+            return PROBABILITY_ONE;
+        }
+        OffsetVotes votes = VOTES.get();
+        int best = 0;
+        for (int r = 0; r < ROTATIONS_DEGREES.length; r++) {
+            // 1) Traslación más votada para esta rotación; 2) minucias emparejadas con esa traslación
+            votes.reset();
+            vote(probe.x[r], probe.y[r], probe.angle[r], n, candidate, votes);
+            if (votes.isEmpty()) continue;
+            int ox = votes.bestOffsetX();
+            int oy = votes.bestOffsetY();
+            int paired = kernel != null
+                    ? kernel.countPaired(probe.x[r], probe.y[r], probe.angle[r], n, ox, oy,
+                            candidate.xs(), candidate.ys(), candidate.angles(), candidate.getPaddedLength(),
+                            POSITION_TOLERANCE, ANGLE_TOLERANCE)
+                    : countPairedScalar(probe.x[r], probe.y[r], probe.angle[r], n, ox, oy,
+                            candidate.xs(), candidate.ys(), candidate.angles(), m);
+            best = Math.max(best, paired);
+        }
+        return Scores.dissimilarity(2.0 * best / (n + m));
+    }
+
+    // Solo recorre las minucias del candidato con ángulo compatible (rango contiguo, el template está ordenado por ángulo)
+    private static void vote(int[] px, int[] py, int[] pa, int n, MinutiaeTemplate candidate, OffsetVotes votes) {
+        int[] cx = candidate.xs();
+        int[] cy = candidate.ys();
+        for (int i = 0; i < n; i++) {
+            int lo = pa[i] - ANGLE_TOLERANCE;
+            int hi = pa[i] + ANGLE_TOLERANCE + 1; // Exclusivo
+            if (lo < 0) {
+                voteRange(px[i], py[i], cx, cy, candidate.angleStart(lo + 180), candidate.angleStart(180), votes);
+                lo = 0;
+            }
+            if (hi > 180) {
+                voteRange(px[i], py[i], cx, cy, candidate.angleStart(0), candidate.angleStart(hi - 180), votes);
+                hi = 180;
+            }
+            voteRange(px[i], py[i], cx, cy, candidate.angleStart(lo), candidate.angleStart(hi), votes);
+        }
+    }
+
+    private static void voteRange(int x, int y, int[] cx, int[] cy, int from, int to, OffsetVotes votes) {
+        for (int j = from; j < to; j++) {
+            votes.vote(cx[j] - x, cy[j] - y);
+        }
+    }
+
+    private static int countPairedScalar(int[] px, int[] py, int[] pa, int n, int offsetX, int offsetY,
+                                         int[] cx, int[] cy, int[] ca, int m) {
+        int paired = 0;
+        for (int i = 0; i < n; i++) {
+            int x = px[i] + offsetX;
+            int y = py[i] + offsetY;
+            for (int j = 0; j < m; j++) {
+                int da = Math.abs(ca[j] - pa[i]);
+                if (Math.abs(cx[j] - x) <= POSITION_TOLERANCE
+                        && Math.abs(cy[j] - y) <= POSITION_TOLERANCE
+                        && Math.min(da, 180 - da) <= ANGLE_TOLERANCE) {
+                    paired++;
+                    break;
+                }
+            }
+        }
+        return paired;
+    }
+
+    @Override
+    public Fmd createFmd(Fid image) throws UareUException {
+        return imageExtractor.createFmd(image);
+    }
+
+    @Override
+    public Fmd createEnrollmentFmd(List<Fmd> captures) throws UareUException {
+        return imageExtractor.createEnrollmentFmd(captures);
+    }
+
+    @Override
+    public Fmd importFmd(byte[] data) throws UareUException {
+        try {
+            return MinutiaeTemplate.of(AnsiFmd.parse(data));
+        } catch (IllegalArgumentException e) {
+            logger.debug("Template no importable en el comparador de minucias: {}", e.getMessage());
+            throw new UareUException(96075787);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return kernel != null ? "vector" : "vector-scalar";
+    }
+
+    public boolean isVectorized() {
+        return kernel != null;
+    }
+
+    private MinutiaeTemplate asTemplate(Fmd fmd) throws UareUException {
+        if (fmd instanceof MinutiaeTemplate) {
+            return (MinutiaeTemplate) fmd;
+        }
+        if (fmd instanceof AnsiFmd) {
+            return MinutiaeTemplate.of((AnsiFmd) fmd);
+        }
+        return (MinutiaeTemplate) importFmd(fmd.getData());
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.fingerprint_api.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Cambio de la galería de huellas (outbox): se inserta en la misma transacción que el alta o baja,
+ * y las demás instancias de la API lo leen en orden de id para aplicarlo a su galería en memoria.
+ */
+@Entity
+@Table(name = "rh_personal_huellas_cambios", indexes = @Index(name = "idx_huellas_cambios_created", columnList = "createdAt"))
+public class HuellaCambio {
+
+    public enum Tipo {
+        ALTA,    // Huella nueva: se lee su template de rh_personal_huellas
+        BAJA,    // Huella eliminada
+        ESTATUS  // Cambió el estatus del empleado: entran o salen todos sus templates
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "tipo", length = 10, nullable = false)
+    private Tipo tipo;
+
+    @Column(name = "huella_id")
+    private Integer huellaId;
+
+    @Column(name = "rh_personal_id", nullable = false)
+    private Integer empleadoId;
+
+    @Column(name = "estatus")
+    private Integer estatusId;
+
+    // Instancia que originó el cambio (ya lo aplicó en su propia memoria)
+    @Column(name = "nodo", length = 64, nullable = false)
+    private String nodo;
+
+    @CreationTimestamp
+    @Column(name = "createdAt", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    public HuellaCambio() {}
+
+    public HuellaCambio(Tipo tipo, Integer huellaId, Integer empleadoId, Integer estatusId, String nodo) {
+        this.tipo = tipo;
+        this.huellaId = huellaId;
+        this.empleadoId = empleadoId;
+        this.estatusId = estatusId;
+        this.nodo = nodo;
+    }
+
+    public Long getId() { return id; }
+    public Tipo getTipo() { return tipo; }
+    public Integer getHuellaId() { return huellaId; }
+    public Integer getEmpleadoId() { return empleadoId; }
+    public Integer getEstatusId() { return estatusId; }
+    public String getNodo() { return nodo; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+}
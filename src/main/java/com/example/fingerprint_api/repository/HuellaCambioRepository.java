@@ -0,0 +1,30 @@
+package com.example.fingerprint_api.repository;
+
+import com.example.fingerprint_api.model.HuellaCambio;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface HuellaCambioRepository extends JpaRepository<HuellaCambio, Long> {
+
+    // Siguiente página del feed de cambios (paginación por clave: id > afterId)
+    List<HuellaCambio> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+    // Último cambio registrado (0 si no hay)
+    @Query("select coalesce(max(c.id), 0) from HuellaCambio c")
+    Long findMaxId();
+
+    // Limpieza de cambios que todas las instancias ya aplicaron
+    @Modifying
+    @Transactional
+    @Query("delete from HuellaCambio c where c.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,12 @@
+package com.example.fingerprint_api.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Marca de agua de la tabla de huellas: permite saber sin leer BLOBs si una copia local sigue al día.
+ */
+public interface HuellaHighWaterMark {
+    Integer getMaxId();
+    LocalDateTime getMaxUpdatedAt();
+    Long getCount();
+}
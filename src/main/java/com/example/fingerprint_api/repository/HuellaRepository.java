@@ -2,8 +2,12 @@ package com.example.fingerprint_api.repository;
 
 import com.example.fingerprint_api.model.Huella;
 import com.example.fingerprint_api.model.Empleado; // Necesario si usas el método findByEmpleado
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -22,6 +26,50 @@ public interface HuellaRepository extends JpaRepository<Huella, Integer> {
     // Borrar una huella específica (útil para la API)
     void deleteByIdAndEmpleadoId(Integer huellaId, Integer empleadoId);
 
+    // Página de templates para la carga de la galería (paginación por clave: id > afterId).
+    // Solo trae las columnas necesarias; el tamaño de página acota cuántos BLOBs se leen de una vez
+    @Query("select h.id as id, h.empleado.id as empleadoId, h.templateFmd as templateFmd " +
+            "from Huella h where h.id > :afterId and h.templateFmd is not null order by h.id")
+    List<HuellaTemplateProjection> findTemplatesAfter(@Param("afterId") Integer afterId, Pageable pageable);
+
+    // Igual que findTemplatesAfter, pero solo para empleados con alguno de los estatus indicados
+    @Query("select h.id as id, h.empleado.id as empleadoId, h.templateFmd as templateFmd " +
+            "from Huella h where h.id > :afterId and h.templateFmd is not null " +
+            "and h.empleado.estatusId in :estatusIds order by h.id")
+    List<HuellaTemplateProjection> findTemplatesAfterByEstatus(@Param("afterId") Integer afterId,
+                                                               @Param("estatusIds") Collection<Integer> estatusIds,
+                                                               Pageable pageable);
+
+    // Totales para el progreso de la carga: mismo filtro que findTemplatesAfter / findTemplatesAfterByEstatus
+    @Query("select count(h) from Huella h where h.templateFmd is not null")
+    long countTemplates();
+
+    @Query("select count(h) from Huella h where h.templateFmd is not null and h.empleado.estatusId in :estatusIds")
+    long countTemplatesByEstatus(@Param("estatusIds") Collection<Integer> estatusIds);
+
+    // Templates de las huellas indicadas (filas nuevas o modificadas al restaurar el archivo de galería)
+    @Query("select h.id as id, h.empleado.id as empleadoId, h.templateFmd as templateFmd " +
+            "from Huella h where h.id in :ids and h.templateFmd is not null")
+    List<HuellaTemplateProjection> findTemplatesByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // Marca de agua de las huellas con template: id máximo, updatedAt máximo y total
+    @Query("select max(h.id) as maxId, max(h.updatedAt) as maxUpdatedAt, count(h) as count " +
+            "from Huella h where h.templateFmd is not null")
+    HuellaHighWaterMark findHighWaterMark();
+
+    @Query("select max(h.id) as maxId, max(h.updatedAt) as maxUpdatedAt, count(h) as count " +
+            "from Huella h where h.templateFmd is not null and h.empleado.estatusId in :estatusIds")
+    HuellaHighWaterMark findHighWaterMarkByEstatus(@Param("estatusIds") Collection<Integer> estatusIds);
+
+    // Id, empleado y updatedAt de cada huella con template (sin los BLOBs) para detectar cambios
+    @Query("select h.id as id, h.empleado.id as empleadoId, h.updatedAt as updatedAt " +
+            "from Huella h where h.templateFmd is not null")
+    List<HuellaVersionProjection> findTemplateVersions();
+
+    @Query("select h.id as id, h.empleado.id as empleadoId, h.updatedAt as updatedAt " +
+            "from Huella h where h.templateFmd is not null and h.empleado.estatusId in :estatusIds")
+    List<HuellaVersionProjection> findTemplateVersionsByEstatus(@Param("estatusIds") Collection<Integer> estatusIds);
+
     // Podrías necesitar buscar por dedo específico de un empleado
     // Optional<Huella> findByEmpleadoIdAndNombreDedo(Integer empleadoId, String nombreDedo);
 }
\ No newline at end of file
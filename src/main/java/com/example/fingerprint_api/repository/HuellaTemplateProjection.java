@@ -0,0 +1,11 @@
+package com.example.fingerprint_api.repository;
+
+/**
+ * Proyección mínima de una huella para cargar la galería en memoria.
+ * Evita materializar la entidad completa y el proxy de Empleado por cada fila.
+ */
+public interface HuellaTemplateProjection {
+    Integer getId();
+    Integer getEmpleadoId(); // rh_personal_id
+    byte[] getTemplateFmd();  // FMD encriptado
+}
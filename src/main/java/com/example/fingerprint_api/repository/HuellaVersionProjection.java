@@ -0,0 +1,12 @@
+package com.example.fingerprint_api.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Identidad y fecha de modificación de una huella, sin el template.
+ */
+public interface HuellaVersionProjection {
+    Integer getId();
+    Integer getEmpleadoId(); // rh_personal_id
+    LocalDateTime getUpdatedAt();
+}
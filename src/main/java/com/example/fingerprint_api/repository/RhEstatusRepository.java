@@ -0,0 +1,10 @@
+package com.example.fingerprint_api.repository;
+
+import com.example.fingerprint_api.model.RhEstatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface RhEstatusRepository extends JpaRepository<RhEstatus, Integer> {
+    // Métodos CRUD básicos heredados (catálogo de estatus de personal)
+}
@@ -0,0 +1,109 @@
+package com.example.fingerprint_api.service;
+
+import com.example.fingerprint_api.engine.TemplateBins;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prefiltro de candidatos por bins del encabezado ANSI 378 (ver {@link TemplateBins}): ordena los bins
+ * de la galería por cercanía a la clave del probe para buscar primero los más probables y ampliar
+ * solo si no hay una coincidencia clara. También lleva la métrica de cuántas comparaciones se evitaron.
+ */
+@Component
+public class CandidateBinning {
+
+    @Value("${fingerprint.identify.binning.enabled:true}")
+    private boolean enabled;
+
+    // Distancia máxima de bin que se busca antes de recurrir a la galería completa
+    @Value("${fingerprint.identify.binning.max-distance:2}")
+    private int maxDistance;
+
+    // En galerías pequeñas la búsqueda completa ya es barata
+    @Value("${fingerprint.identify.binning.min-gallery-size:1000}")
+    private int minGallerySize;
+
+    // Fracción del umbral bajo la que una coincidencia en los bins se acepta sin buscar en el resto de la galería
+    // (1.0 acepta cualquier coincidencia bajo el umbral)
+    @Value("${fingerprint.identify.binning.confident-ratio:0.1}")
+    private double confidentRatio;
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder binHits = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder compared = new LongAdder();
+    private final LongAdder galleryTotal = new LongAdder();
+
+    public boolean appliesTo(GallerySnapshot snapshot) {
+        return enabled && snapshot.size() >= minGallerySize;
+    }
+
+    /**
+     * Bins compatibles con la clave del probe agrupados por etapa: la etapa d contiene los bins a distancia d
+     * (0..max-distance). Las etapas vacías se omiten.
+     */
+    public List<List<GallerySnapshot.Bin>> stages(GallerySnapshot snapshot, int probeKey) {
+        List<List<GallerySnapshot.Bin>> byDistance = new ArrayList<>(maxDistance + 1);
+        for (int d = 0; d <= maxDistance; d++) {
+            byDistance.add(new ArrayList<>());
+        }
+        for (GallerySnapshot.Bin bin : snapshot.getBins()) {
+            int distance = TemplateBins.distance(probeKey, bin.getKey());
+            if (TemplateBins.isCompatible(distance) && distance <= maxDistance) {
+                byDistance.get(distance).add(bin);
+            }
+        }
+        byDistance.removeIf(List::isEmpty);
+        return byDistance;
+    }
+
+    /**
+     * Si una coincidencia de los bins es lo bastante clara para no seguir buscando. Las coincidencias
+     * débiles (bajo el umbral pero cerca de él) pueden ser falsos positivos del bin, así que la búsqueda sigue
+     * con las demás etapas y la galería completa, y gana el mejor candidato.
+     */
+    public boolean isConfident(int score, int threshold) {
+        return score < threshold * confidentRatio;
+    }
+
+    /**
+     * Registra una identificación con prefiltro.
+     *
+     * @param binnedCompared Templates comparados en los bins.
+     * @param hit            Si los bins dieron una coincidencia clara (si no, se buscó además en el resto de la galería,
+     *                       sin repetir los bins ya comparados).
+     * @param gallerySize    Templates de la galería (lo que habría costado buscar sin prefiltro).
+     */
+    public void record(long binnedCompared, boolean hit, int gallerySize) {
+        searches.increment();
+        (hit ? binHits : fallbacks).increment();
+        compared.add(hit ? binnedCompared : gallerySize);
+        galleryTotal.add(gallerySize);
+    }
+
+    /**
+     * Estadísticas acumuladas; prunedRatio es la fracción de comparaciones evitadas respecto a buscar siempre
+     * en la galería completa (una búsqueda sin coincidencia clara en los bins cuesta lo mismo que sin prefiltro).
+     */
+    public Map<String, Object> getStats() {
+        long total = searches.sum();
+        long gallery = galleryTotal.sum();
+        return Map.of(
+                "enabled", enabled,
+                "maxDistance", maxDistance,
+                "confidentRatio", confidentRatio,
+                "minGallerySize", minGallerySize,
+                "searches", total,
+                "binHits", binHits.sum(),
+                "fallbacks", fallbacks.sum(),
+                "binHitRate", total == 0 ? 0.0 : (double) binHits.sum() / total,
+                "comparisons", compared.sum(),
+                "prunedRatio", gallery == 0 ? 0.0 : 1.0 - (double) compared.sum() / gallery
+        );
+    }
+}
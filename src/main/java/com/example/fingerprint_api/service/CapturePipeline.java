@@ -0,0 +1,387 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fid;
+import com.digitalpersona.uareu.Fmd;
+import com.example.fingerprint_api.engine.FeatureExtractor;
+import com.example.fingerprint_api.util.FingerprintImageUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Procesamiento de las capturas de los lectores en etapas, para que el hilo del lector vuelva a capturar
+ * en cuanto tiene la imagen:
+ * <ul>
+ *   <li>encode: PNG/Base64 de la vista previa y publicación por WebSocket;</li>
+ *   <li>extract: extracción del FMD (solo checadores);</li>
+ *   <li>identify: identificación 1:N (micro-lotes del {@link IdentificationDispatcher}) y publicación del evento.</li>
+ * </ul>
+ * Cada etapa tiene su propio pool y una cola acotada con una política de desborde explícita: las vistas previas
+ * pueden descartarse, las checadas no; con BLOCK el lector espera a que haya lugar. De las vistas previas cada lector
+ * tiene un solo lugar con su imagen más reciente y a lo más una tarea en la cola de encode: una imagen nueva
+ * reemplaza a la anterior del mismo lector sin desplazar las de los demás.
+ * Al detenerse, las checadas que quedan en las colas se procesan (hasta drain-timeout-ms) y las que no alcanzan
+ * se registran en el log.
+ */
+@Component
+public class CapturePipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(CapturePipeline.class);
+
+    public enum OverflowPolicy {
+        DROP_OLDEST, // Descarta la tarea más antigua de la cola
+        DROP_NEWEST, // Descarta la tarea que llega
+        BLOCK        // El productor (hilo del lector) espera a que haya lugar
+    }
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+    @Autowired
+    private IdentificationDispatcher identificationDispatcher;
+    @Autowired
+    private FeatureExtractor featureExtractor;
+
+    @Value("${fingerprint.pipeline.encode.threads:2}")
+    private int encodeThreads;
+    @Value("${fingerprint.pipeline.encode.queue:16}")
+    private int encodeQueue;
+    @Value("${fingerprint.pipeline.encode.overflow:DROP_NEWEST}")
+    private OverflowPolicy encodeOverflow;
+
+    // <= 0 usa el número de núcleos
+    @Value("${fingerprint.pipeline.extract.threads:0}")
+    private int extractThreads;
+    @Value("${fingerprint.pipeline.extract.queue:64}")
+    private int extractQueue;
+    // Solo BLOCK, igual que identify (ver init)
+    @Value("${fingerprint.pipeline.extract.overflow:BLOCK}")
+    private OverflowPolicy extractOverflow;
+
+    // Hilos que esperan la identificación; con varios en espera el dispatcher arma lotes más grandes
+    @Value("${fingerprint.pipeline.identify.threads:8}")
+    private int identifyThreads;
+    @Value("${fingerprint.pipeline.identify.queue:64}")
+    private int identifyQueue;
+    @Value("${fingerprint.pipeline.identify.overflow:BLOCK}")
+    private OverflowPolicy identifyOverflow;
+
+    // Espera máxima al detenerse para procesar las checadas encoladas
+    @Value("${fingerprint.pipeline.drain-timeout-ms:5000}")
+    private long drainTimeoutMs;
+
+    private Stage encodeStage;
+    private Stage extractStage;
+    private Stage identifyStage;
+
+    // Última imagen (Base64) de cada lector
+    private final Map<String, String> lastImages = new ConcurrentHashMap<>();
+    // Secuencia de captura por lector: una vista previa más vieja que la ya publicada se descarta
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Long> publishedSequence = new ConcurrentHashMap<>();
+    // Imagen más reciente de cada lector aún sin codificar; presente mientras su tarea de encode está pendiente
+    private final Map<String, PendingPreview> pendingPreviews = new ConcurrentHashMap<>();
+
+    private static final class PendingPreview {
+        final String reservationId;
+        final Fid image;
+        final long seq;
+
+        PendingPreview(String reservationId, Fid image, long seq) {
+            this.reservationId = reservationId;
+            this.image = image;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * Etapa: pool fijo con cola acotada y política de desborde.
+     */
+    static final class Stage {
+        final String name;
+        final OverflowPolicy overflow;
+        final int capacity;
+        final ThreadPoolExecutor executor;
+        final LongAdder submitted = new LongAdder();
+        final LongAdder completed = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder busyNanos = new LongAdder();
+        final LongAdder blockedNanos = new LongAdder();
+
+        Stage(String name, int threads, int capacity, OverflowPolicy overflow) {
+            this.name = name;
+            this.overflow = overflow;
+            this.capacity = Math.max(1, capacity);
+            AtomicInteger threadCounter = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(this.capacity), r -> {
+                Thread t = new Thread(r, "pipeline-" + name + "-" + threadCounter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.AbortPolicy());
+            // Con BLOCK las tareas se ponen directo en la cola: los hilos tienen que existir desde el inicio
+            executor.prestartAllCoreThreads();
+        }
+
+        // Tarea medida; onDrop se avisa si se descarta sin correr
+        private final class Task implements Runnable {
+            final Runnable body;
+            final Runnable onDrop;
+
+            Task(Runnable body, Runnable onDrop) {
+                this.body = body;
+                this.onDrop = onDrop;
+            }
+
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    body.run();
+                    completed.increment();
+                } catch (Exception e) {
+                    failed.increment();
+                    logger.error("Error en la etapa {} del pipeline de captura: {}", name, e.getMessage(), e);
+                } finally {
+                    busyNanos.add(System.nanoTime() - start);
+                }
+            }
+
+            void drop() {
+                dropped.increment();
+                if (onDrop != null) {
+                    onDrop.run();
+                }
+            }
+        }
+
+        boolean submit(Runnable task) throws InterruptedException {
+            return submit(task, null);
+        }
+
+        /**
+         * Encola la tarea según la política de desborde.
+         *
+         * @param onDrop se ejecuta si la tarea se descarta sin correr (puede ser null).
+         * @return false si la tarea se descartó.
+         */
+        boolean submit(Runnable task, Runnable onDrop) throws InterruptedException {
+            Task timed = new Task(task, onDrop);
+            submitted.increment();
+            while (!executor.isShutdown()) {
+                try {
+                    executor.execute(timed);
+                    return true;
+                } catch (RejectedExecutionException full) {
+                    if (executor.isShutdown()) {
+                        break;
+                    }
+                    switch (overflow) {
+                        case DROP_NEWEST:
+                            timed.drop();
+                            return false;
+                        case DROP_OLDEST:
+                            Runnable oldest = executor.getQueue().poll();
+                            if (oldest != null) {
+                                ((Task) oldest).drop();
+                            }
+                            break; // Reintenta con el lugar liberado
+                        case BLOCK:
+                            long start = System.nanoTime();
+                            executor.getQueue().put(timed);
+                            blockedNanos.add(System.nanoTime() - start);
+                            return true;
+                    }
+                }
+            }
+            timed.drop();
+            return false;
+        }
+
+        Map<String, Object> getStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            long done = completed.sum() + failed.sum();
+            stats.put("threads", executor.getCorePoolSize());
+            stats.put("active", executor.getActiveCount());
+            stats.put("queued", executor.getQueue().size());
+            stats.put("capacity", capacity);
+            stats.put("overflow", overflow);
+            stats.put("submitted", submitted.sum());
+            stats.put("completed", completed.sum());
+            stats.put("dropped", dropped.sum());
+            stats.put("failed", failed.sum());
+            stats.put("avgMs", done == 0 ? 0 : busyNanos.sum() / done / 1_000_000.0);
+            stats.put("blockedMs", blockedNanos.sum() / 1_000_000);
+            return stats;
+        }
+
+        /**
+         * Deja de aceptar tareas y procesa las encoladas hasta drainMs; las que no alcanzan se descartan.
+         *
+         * @return tareas descartadas.
+         */
+        int shutdown(long drainMs) {
+            executor.shutdown();
+            try {
+                if (drainMs > 0 && executor.awaitTermination(drainMs, TimeUnit.MILLISECONDS)) {
+                    return 0;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            List<Runnable> pending = executor.shutdownNow();
+            for (Runnable task : pending) {
+                ((Task) task).drop();
+            }
+            return pending.size();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        // Una checada descartada en silencio es un registro de asistencia perdido
+        if (extractOverflow != OverflowPolicy.BLOCK || identifyOverflow != OverflowPolicy.BLOCK) {
+            throw new IllegalStateException("Las etapas extract e identify solo admiten overflow BLOCK (extract="
+                    + extractOverflow + ", identify=" + identifyOverflow + "): las checadas no se descartan.");
+        }
+        int extract = extractThreads > 0 ? extractThreads : Runtime.getRuntime().availableProcessors();
+        encodeStage = new Stage("encode", Math.max(1, encodeThreads), encodeQueue, encodeOverflow);
+        extractStage = new Stage("extract", extract, extractQueue, extractOverflow);
+        identifyStage = new Stage("identify", Math.max(1, identifyThreads), identifyQueue, identifyOverflow);
+        logger.info("Pipeline de captura: encode {} hilos (cola {}, {}), extract {} hilos (cola {}, {}), identify {} hilos (cola {}, {}).",
+                encodeStage.executor.getCorePoolSize(), encodeStage.capacity, encodeOverflow,
+                extract, extractStage.capacity, extractOverflow,
+                identifyStage.executor.getCorePoolSize(), identifyStage.capacity, identifyOverflow);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        encodeStage.shutdown(0); // Vistas previas: nadie las espera
+        // En orden: la extracción todavía encola en identify
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMs);
+        int lostExtract = extractStage.shutdown(drainTimeoutMs);
+        int lostIdentify = identifyStage.shutdown(Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        if (lostExtract + lostIdentify > 0) {
+            logger.warn("Pipeline de captura detenido con {} checadas sin procesar ({} sin extraer, {} sin identificar).",
+                    lostExtract + lostIdentify, lostExtract, lostIdentify);
+        } else {
+            logger.info("Pipeline de captura detenido; no quedaron checadas pendientes.");
+        }
+    }
+
+    /**
+     * Vista previa de una captura: se codifica y se publica en /topic/fingerprints/{reserva}/{lector}.
+     *
+     * @return false si se descartó por desborde.
+     */
+    public boolean submitPreview(String readerName, String reservationId, Fid image) throws InterruptedException {
+        PendingPreview preview = new PendingPreview(reservationId, image, sequence.incrementAndGet());
+        if (pendingPreviews.put(readerName, preview) != null) {
+            // La tarea ya encolada de este lector codificará esta imagen; la anterior se descarta
+            encodeStage.submitted.increment();
+            encodeStage.dropped.increment();
+            return true;
+        }
+        return encodeStage.submit(() -> encodePreview(readerName),
+                () -> pendingPreviews.remove(readerName)); // Descartada: la siguiente imagen vuelve a encolar
+    }
+
+    private void encodePreview(String readerName) {
+        PendingPreview preview = pendingPreviews.remove(readerName);
+        if (preview == null) {
+            return;
+        }
+        String base64Image;
+        try {
+            base64Image = FingerprintImageUtils.convertFidToBase64(preview.image);
+        } catch (Exception e) {
+            throw new IllegalStateException("No se pudo convertir la imagen de " + readerName, e);
+        }
+        // Con varios hilos de encode, una imagen vieja puede terminar después de una nueva
+        long latest = publishedSequence.merge(readerName, preview.seq, Math::max);
+        if (latest != preview.seq) {
+            return;
+        }
+        lastImages.put(readerName, base64Image);
+        publishFingerprintEvent(readerName, preview.reservationId, base64Image);
+    }
+
+    /**
+     * Checada: extracción del FMD, identificación y publicación en /topic/checador/{lector}.
+     *
+     * @return false si se descartó por desborde (con la política por defecto, BLOCK, nunca).
+     */
+    public boolean submitPunch(String readerName, Fid image) throws InterruptedException {
+        return extractStage.submit(() -> {
+            Fmd fmd;
+            try {
+                fmd = featureExtractor.createFmd(image);
+            } catch (Exception e) {
+                throw new IllegalStateException("No se pudo extraer el FMD de " + readerName, e);
+            }
+            try {
+                if (!identifyStage.submit(() -> identifyAndPublish(readerName, fmd))) {
+                    logger.warn("Checada de {} perdida: la etapa de identificación la descartó.", readerName);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Checada de {} perdida: el pipeline se detuvo antes de identificarla.", readerName);
+            }
+        });
+    }
+
+    private void identifyAndPublish(String readerName, Fmd fmd) {
+        Optional<EmpleadoIdentity> empleadoOpt;
+        try {
+            empleadoOpt = identificationDispatcher.identify(fmd, readerName);
+        } catch (Exception e) {
+            throw new IllegalStateException("Error al identificar la huella de " + readerName, e);
+        }
+        String topic = "/topic/checador/" + URLEncoder.encode(readerName, StandardCharsets.UTF_8);
+        if (empleadoOpt.isPresent()) {
+            EmpleadoIdentity empleado = empleadoOpt.get();
+            logger.info("Empleado identificado: ID {}, Lector: {}. Enviando a topic: {}", empleado.getId(), readerName, topic);
+            messagingTemplate.convertAndSend(topic, new MultiReaderFingerprintService.ChecadorEvent(readerName, empleado));
+        } else {
+            logger.debug("Huella no identificada en modo checador (Lector: {})", readerName);
+            messagingTemplate.convertAndSend(topic, new MultiReaderFingerprintService.ChecadorEvent(readerName));
+        }
+    }
+
+    private void publishFingerprintEvent(String readerName, String reservationId, String base64Fingerprint) {
+        // Destino: /topic/fingerprints/{reservationId}/{readerName}; "_" si el lector no tiene reserva
+        String safeReservationId = (reservationId == null || reservationId.isEmpty()) ? "_" : reservationId;
+        String destination = "/topic/fingerprints/" + safeReservationId + "/" + readerName;
+        var payload = new MultiReaderFingerprintService.FingerprintImageEvent(readerName, safeReservationId, base64Fingerprint);
+        messagingTemplate.convertAndSend(destination, payload);
+        logger.debug("Evento de imagen enviado a {}", destination);
+    }
+
+    public String getLastImage(String readerName) {
+        return lastImages.get(readerName);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("encode", encodeStage.getStats());
+        stats.put("extract", extractStage.getStats());
+        stats.put("identify", identifyStage.getStats());
+        return stats;
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fmd;
+import com.digitalpersona.uareu.UareUException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Identificación distribuida (scatter-gather) en modo clúster: el nodo que recibe la huella busca en su
+ * partición y, en paralelo, la envía por HTTP a las demás particiones; al final se queda con los k candidatos
+ * de menor puntuación. Cada partición, incluida la local, tiene el mismo plazo ({@code fingerprint.cluster.timeout-ms});
+ * las que no responden a tiempo se omiten y el resultado se marca como parcial. Los nodos se autentican entre sí
+ * con el secreto compartido {@code fingerprint.cluster.token}.
+ */
+@Service
+public class ClusterIdentificationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterIdentificationService.class);
+
+    public static final String TOKEN_HEADER = "X-Cluster-Token";
+
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private GalleryPartition partition;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private HuellaChangeOutbox changeOutbox;
+
+    // Plazo de cada partición remota, incluida la conexión
+    @Value("${fingerprint.cluster.timeout-ms:500}")
+    private long timeoutMs;
+
+    // Margen que se descuenta al plazo enviado a las particiones remotas (red y serialización)
+    @Value("${fingerprint.cluster.remote-margin-ms:50}")
+    private long remoteMarginMs;
+
+    // Secreto compartido entre los nodos; obligatorio en modo clúster
+    @Value("${fingerprint.cluster.token:}")
+    private String token;
+
+    private HttpClient httpClient;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder remoteCalls = new LongAdder();
+    private final LongAdder remoteTimeouts = new LongAdder();
+    private final LongAdder remoteErrors = new LongAdder();
+    private final LongAdder partialResults = new LongAdder();
+    private final LongAdder remoteNanos = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        if (!partition.isPartitioned()) {
+            return;
+        }
+        if (token == null || token.isBlank()) {
+            // Sin token /api/cluster/identify quedaría abierto a cualquiera que alcance el puerto
+            throw new IllegalStateException("El modo clúster requiere fingerprint.cluster.token (secreto compartido entre los nodos).");
+        }
+        if (!changeOutbox.isEnabled()) {
+            // Las altas de empleados de esta partición recibidas por otro nodo solo llegan por el feed de cambios
+            throw new IllegalStateException("El modo clúster requiere fingerprint.sync.enabled=true (feed de cambios entre los nodos).");
+        }
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(timeoutMs))
+                .build();
+        logger.info("Identificación distribuida en {} particiones, plazo {} ms por partición.",
+                partition.getPartitionCount(), timeoutMs);
+    }
+
+    public boolean isEnabled() {
+        return partition.isPartitioned();
+    }
+
+    /**
+     * Si el token recibido es el del clúster (comparación en tiempo constante). Sin token configurado no
+     * autoriza nada: el modo clúster no arranca sin él.
+     */
+    public boolean isAuthorized(String requestToken) {
+        return token != null && !token.isBlank() && requestToken != null
+                && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), requestToken.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Identifica las huellas en todas las particiones del clúster y combina los k mejores candidatos.
+     * El plazo de cada partición es el menor entre el de la solicitud y timeout-ms; a las remotas se les pide
+     * terminar remote-margin-ms antes, para que devuelvan su resultado parcial en lugar de no responder.
+     *
+     * @return Un resultado por FMD, en el mismo orden.
+     */
+    public IdentificationResult[] identifyBatch(Fmd[] probes, String[] readerNames, IdentificationOptions options,
+                                                long startNanos) throws UareUException {
+        requests.add(probes.length);
+        long budgetMs = options.hasDeadline() ? Math.min(options.getDeadlineMs(), timeoutMs) : timeoutMs;
+        long deadline = startNanos + TimeUnit.MILLISECONDS.toNanos(budgetMs);
+
+        // Scatter: primero las particiones remotas, para que busquen mientras este nodo busca en la suya
+        long remainingMs = Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+        IdentificationOptions remoteOptions = new IdentificationOptions(options.getK(), options.getThreshold(),
+                Math.max(1, remainingMs - remoteMarginMs));
+        byte[] body = requestBody(probes, readerNames, remoteOptions);
+        Map<Integer, CompletableFuture<IdentificationResult[]>> remote = new LinkedHashMap<>();
+        for (int p = 0; p < partition.getPartitionCount(); p++) {
+            if (p != partition.getPartitionIndex()) {
+                remote.put(p, identifyRemote(partition.getNodes().get(p), body, probes.length, remainingMs));
+            }
+        }
+        // La partición local tiene el mismo plazo que las remotas
+        IdentificationOptions localOptions = new IdentificationOptions(options.getK(), options.getThreshold(), budgetMs);
+        IdentificationResult[] local = userService.identifyBatch(probes, readerNames, localOptions, startNanos);
+
+        // Gather: el plazo es común; una partición lenta no alarga la espera de las demás
+        List<List<IdentificationResult>> perProbe = new ArrayList<>(probes.length);
+        for (IdentificationResult result : local) {
+            perProbe.add(new ArrayList<>(List.of(result)));
+        }
+        boolean partial = false;
+        for (Map.Entry<Integer, CompletableFuture<IdentificationResult[]>> entry : remote.entrySet()) {
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                IdentificationResult[] results = entry.getValue().get(remaining, TimeUnit.NANOSECONDS);
+                for (int i = 0; i < probes.length; i++) {
+                    perProbe.get(i).add(results[i]);
+                }
+            } catch (TimeoutException e) {
+                entry.getValue().cancel(true);
+                remoteTimeouts.increment();
+                partial = true;
+                logger.warn("La partición {} no respondió en {} ms; se omite.", entry.getKey(), budgetMs);
+            } catch (ExecutionException e) {
+                remoteErrors.increment();
+                partial = true;
+                logger.warn("Error al identificar en la partición {}: {}", entry.getKey(), e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                remote.values().forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new UareUException(96075787);
+            }
+        }
+        if (partial) {
+            partialResults.increment();
+        }
+
+        IdentificationResult[] merged = new IdentificationResult[probes.length];
+        for (int i = 0; i < probes.length; i++) {
+            merged[i] = IdentificationResult.merge(perProbe.get(i), options.getK(), partial);
+        }
+        return merged;
+    }
+
+    /**
+     * Búsqueda en la partición de este nodo, a pedido de otro nodo del clúster.
+     * El plazo es el de la solicitud, a lo sumo timeout-ms (también si la solicitud no trae plazo).
+     *
+     * @param probes Huellas capturadas, ya importadas (el controlador rechaza las inválidas).
+     */
+    public IdentificationResult[] identifyPartition(Fmd[] probes, String[] readerNames,
+                                                    IdentificationOptions options) throws UareUException {
+        long start = System.nanoTime();
+        long deadlineMs = options.hasDeadline() ? Math.min(options.getDeadlineMs(), timeoutMs) : timeoutMs;
+        IdentificationOptions bounded = new IdentificationOptions(options.getK(), options.getThreshold(), deadlineMs);
+        return userService.identifyBatch(probes, readerNames, bounded, start);
+    }
+
+    private CompletableFuture<IdentificationResult[]> identifyRemote(String node, byte[] body, int expected, long timeoutMs) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(node + "/api/cluster/identify"))
+                .timeout(Duration.ofMillis(Math.max(1, timeoutMs)))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        request.header(TOKEN_HEADER, token);
+        remoteCalls.increment();
+        long start = System.nanoTime();
+        return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    remoteNanos.add(System.nanoTime() - start);
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("HTTP " + response.statusCode() + " de " + node);
+                    }
+                    return parseResults(response.body(), expected);
+                });
+    }
+
+    private byte[] requestBody(Fmd[] probes, String[] readerNames, IdentificationOptions options) {
+        ObjectNode root = objectMapper.createObjectNode();
+        ArrayNode templates = root.putArray("templates");
+        ArrayNode readers = root.putArray("readers");
+        for (int i = 0; i < probes.length; i++) {
+            templates.add(probes[i].getData()); // Jackson lo escribe en Base64
+            readers.add(readerNames[i]);
+        }
+        root.put("k", options.getK());
+        root.put("threshold", options.getThreshold());
+        root.put("deadlineMs", options.getDeadlineMs());
+        try {
+            return objectMapper.writeValueAsBytes(root);
+        } catch (Exception e) {
+            throw new IllegalStateException("No se pudo serializar la solicitud de identificación", e);
+        }
+    }
+
+    private IdentificationResult[] parseResults(byte[] body, int expected) {
+        try {
+            JsonNode results = objectMapper.readTree(body).path("results");
+            if (results.size() != expected) {
+                throw new IllegalStateException("Se esperaban " + expected + " resultados y llegaron " + results.size());
+            }
+            IdentificationResult[] parsed = new IdentificationResult[expected];
+            for (int i = 0; i < expected; i++) {
+                JsonNode result = results.get(i);
+                List<IdentificationMatch> candidates = new ArrayList<>();
+                for (JsonNode m : result.path("candidates")) {
+                    candidates.add(new IdentificationMatch(m.get("empleadoId").asInt(), m.get("huellaId").asInt(), m.get("score").asInt()));
+                }
+                parsed[i] = new IdentificationResult(candidates, result.path("partial").asBoolean());
+            }
+            return parsed;
+        } catch (java.io.IOException e) {
+            throw new IllegalStateException("Respuesta de identificación ilegible", e);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("partition", partition.getPartitionIndex());
+        stats.put("partitions", partition.getPartitionCount());
+        stats.put("timeoutMs", timeoutMs);
+        stats.put("requests", requests.sum());
+        stats.put("remoteCalls", remoteCalls.sum());
+        stats.put("remoteTimeouts", remoteTimeouts.sum());
+        stats.put("remoteErrors", remoteErrors.sum());
+        stats.put("partialResults", partialResults.sum());
+        long calls = remoteCalls.sum();
+        stats.put("avgRemoteMs", calls == 0 ? 0 : remoteNanos.sum() / calls / 1_000_000.0);
+        return stats;
+    }
+}
@@ -0,0 +1,684 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fmd;
+import com.digitalpersona.uareu.UareUException;
+import com.example.fingerprint_api.engine.FingerprintMatcher;
+import com.example.fingerprint_api.engine.MatchCandidate;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Auditoría N×N de enrolamientos duplicados: compara cada template de la galería en memoria contra todos los
+ * demás para encontrar a la misma persona enrolada como dos empleados distintos.
+ *
+ * La galería se ordena por huellaId y se divide en bloques; el trabajo son los mosaicos (bloque fila, bloque
+ * columna) del triángulo superior, repartidos entre varios hilos de baja prioridad. Antes de cada template los
+ * hilos ceden mientras haya identificaciones en curso, así los checadores no compiten con la auditoría.
+ * Los mosaicos terminados y los hallazgos se guardan periódicamente en un archivo de control (JSON), desde el que
+ * la auditoría continúa tras detenerla o reiniciar la API; el universo (huellaIds y empleados) no cambia durante la
+ * auditoría y se escribe una sola vez, al iniciarla, en un archivo binario junto al de control. Las huellas enroladas después de iniciar una auditoría
+ * no entran en ella; en modo cluster solo se compara la partición local.
+ */
+@Service
+public class DuplicateAuditService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateAuditService.class);
+
+    private static final int FORMAT_VERSION = 2;
+
+    public enum AuditState {
+        IDLE,       // Sin auditoría en este arranque
+        RUNNING,
+        STOPPED,    // Detenida; se puede continuar desde el archivo de control
+        COMPLETED,
+        FAILED
+    }
+
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private FingerprintMatcher matcher;
+    @Autowired
+    private GalleryTemplateStorage templateStorage;
+    @Autowired
+    private GalleryPartition partition;
+    @Autowired
+    private EmpleadoIdentityCache identityCache;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Hilos de la auditoría; <= 0 usa todos los núcleos
+    @Value("${fingerprint.audit.threads:0}")
+    private int configuredThreads;
+
+    // Templates por bloque: cada mosaico compara block-size x block-size templates
+    @Value("${fingerprint.audit.block-size:512}")
+    private int blockSize;
+
+    // Disimilitud máxima para reportar un par; 0 usa el umbral de la identificación
+    @Value("${fingerprint.audit.threshold:0}")
+    private int configuredThreshold;
+
+    // Coincidencias que se reportan por template y bloque
+    @Value("${fingerprint.audit.max-matches-per-template:5}")
+    private int maxMatchesPerTemplate;
+
+    @Value("${fingerprint.audit.max-findings:10000}")
+    private int maxFindings;
+
+    // Pausa de los hilos de la auditoría mientras haya identificaciones en curso
+    @Value("${fingerprint.audit.yield-ms:20}")
+    private long yieldMs;
+
+    @Value("${fingerprint.audit.checkpoint-path:data/duplicate-audit.json}")
+    private String checkpointPath;
+
+    @Value("${fingerprint.audit.checkpoint-interval-ms:10000}")
+    private long checkpointIntervalMs;
+
+    private Path checkpointFile;
+    private Path universeFile;
+    private int threads;
+    private int threshold;
+
+    private final Object lifecycleLock = new Object();
+    private volatile Audit current;         // Protegido por lifecycleLock al cambiarlo
+    private volatile AuditState state = AuditState.IDLE;
+    private volatile String lastError;
+    private Thread coordinator;             // Protegido por lifecycleLock
+
+    private final Object checkpointLock = new Object();
+
+    // Par de huellas de empleados distintos con disimilitud bajo el umbral
+    public static final class Finding {
+        private final int huellaIdA;
+        private final int empleadoIdA;
+        private final int huellaIdB;
+        private final int empleadoIdB;
+        private final int score;
+
+        Finding(int huellaIdA, int empleadoIdA, int huellaIdB, int empleadoIdB, int score) {
+            this.huellaIdA = huellaIdA;
+            this.empleadoIdA = empleadoIdA;
+            this.huellaIdB = huellaIdB;
+            this.empleadoIdB = empleadoIdB;
+            this.score = score;
+        }
+
+        public int getHuellaIdA() { return huellaIdA; }
+        public int getEmpleadoIdA() { return empleadoIdA; }
+        public int getHuellaIdB() { return huellaIdB; }
+        public int getEmpleadoIdB() { return empleadoIdB; }
+        public int getScore() { return score; }
+    }
+
+    // Templates de un bloque presentes en la galería actual, con su posición en el universo de la auditoría
+    private static final class Block {
+        final Fmd[] fmds;
+        final int[] universe;
+
+        Block(Fmd[] fmds, int[] universe) {
+            this.fmds = fmds;
+            this.universe = universe;
+        }
+    }
+
+    // Estado de una auditoría. El universo (huellaIds ordenados y su empleado) se fija al iniciarla
+    private static final class Audit {
+        final int[] huellaIds;
+        final int[] empleadoIds;
+        final int blockSize;
+        final int threshold;
+        final int blockCount;
+        final int tileCount;
+        final LocalDateTime startedAt;
+        final long previousElapsedMs;
+        final int tilesAtResume;
+        final int universeHash;                                          // Enlaza el archivo de control con su universo
+        AuditState savedState;                                           // Estado leído del archivo de control
+
+        final BitSet doneTiles;                                          // Protegido por this
+        final Map<Long, Finding> findings = new LinkedHashMap<>();       // Protegido por this
+        long droppedFindings;                                            // Protegido por this
+        final LongAdder comparisons = new LongAdder();
+        final LongAdder yieldedNanos = new LongAdder();
+        volatile long resumedAtNanos = System.nanoTime();
+        volatile long endNanos;                                          // 0 mientras corre
+        volatile long lastCheckpointNanos = System.nanoTime();
+        volatile boolean stopRequested;
+        Block[] blocks;
+
+        Audit(int[] huellaIds, int[] empleadoIds, int blockSize, int threshold, LocalDateTime startedAt,
+              long previousElapsedMs, BitSet doneTiles) {
+            this.huellaIds = huellaIds;
+            this.empleadoIds = empleadoIds;
+            this.blockSize = blockSize;
+            this.threshold = threshold;
+            this.blockCount = (huellaIds.length + blockSize - 1) / blockSize;
+            this.tileCount = blockCount * (blockCount + 1) / 2;
+            this.startedAt = startedAt;
+            this.previousElapsedMs = previousElapsedMs;
+            this.doneTiles = doneTiles;
+            this.tilesAtResume = doneTiles.cardinality();
+            this.universeHash = universeHash(huellaIds, empleadoIds);
+        }
+
+        long elapsedMs() {
+            long end = endNanos != 0 ? endNanos : System.nanoTime();
+            return previousElapsedMs + (end - resumedAtNanos) / 1_000_000;
+        }
+
+        synchronized int tilesDone() {
+            return doneTiles.cardinality();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        threads = configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+        threshold = configuredThreshold > 0 ? configuredThreshold : IdentificationOptions.DEFAULT_THRESHOLD;
+        checkpointFile = Paths.get(checkpointPath).toAbsolutePath();
+        universeFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".universe");
+        // Los resultados de una auditoría anterior siguen disponibles tras reiniciar la API
+        Audit saved = readCheckpoint();
+        if (saved != null) {
+            current = saved;
+            state = saved.savedState == AuditState.COMPLETED ? AuditState.COMPLETED : AuditState.STOPPED;
+            logger.info("Auditoría de duplicados anterior ({}): {}/{} mosaicos, {} hallazgos.",
+                    state, saved.tilesDone(), saved.tileCount, saved.findings.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Thread running;
+        synchronized (lifecycleLock) {
+            running = coordinator;
+        }
+        if (running != null && running.isAlive()) {
+            stop();
+            try {
+                running.join(5000); // Da tiempo a guardar el archivo de control
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Inicia la auditoría sobre la galería actual, o la continúa desde el archivo de control.
+     *
+     * @param restart true descarta el archivo de control y empieza de cero.
+     * @return false si ya hay una auditoría en curso.
+     */
+    public boolean start(boolean restart) {
+        synchronized (lifecycleLock) {
+            if (coordinator != null && coordinator.isAlive()) {
+                return false;
+            }
+            GallerySnapshot snapshot = userService.getGallerySnapshot();
+            Audit audit = restart ? null : readCheckpoint();
+            if (audit != null && audit.savedState == AuditState.COMPLETED) {
+                audit = null; // Una auditoría terminada no se continúa: se hace una nueva
+            } else if (audit != null && audit.threshold != threshold) {
+                logger.info("El umbral de la auditoría cambió ({} -> {}); se empieza de cero.", audit.threshold, threshold);
+                audit = null;
+            }
+            if (audit == null) {
+                audit = newAudit(snapshot);
+                logger.info("Auditoría de duplicados iniciada: {} templates, {} mosaicos de {} templates, {} hilos.",
+                        audit.huellaIds.length, audit.tileCount, audit.blockSize, threads);
+            } else {
+                logger.info("Auditoría de duplicados reanudada: {}/{} mosaicos ya comparados, {} hallazgos.",
+                        audit.tilesDone(), audit.tileCount, audit.findings.size());
+            }
+            if (partition.isPartitioned()) {
+                logger.warn("Galería particionada (partición {} de {}): la auditoría solo compara los templates de esta partición.",
+                        partition.getPartitionIndex(), partition.getPartitionCount());
+            }
+            audit.blocks = buildBlocks(audit, snapshot);
+            audit.resumedAtNanos = System.nanoTime();
+            audit.endNanos = 0;
+            current = audit;
+            state = AuditState.RUNNING;
+            lastError = null;
+            Audit started = audit;
+            coordinator = new Thread(() -> run(started), "duplicate-audit");
+            coordinator.setDaemon(true);
+            coordinator.start();
+            return true;
+        }
+    }
+
+    /**
+     * Detiene la auditoría en curso; los mosaicos terminados quedan en el archivo de control.
+     *
+     * @return false si no había auditoría en curso.
+     */
+    public boolean stop() {
+        Audit audit = current;
+        if (audit == null || state != AuditState.RUNNING) {
+            return false;
+        }
+        audit.stopRequested = true;
+        logger.info("Deteniendo la auditoría de duplicados...");
+        return true;
+    }
+
+    private Audit newAudit(GallerySnapshot snapshot) {
+        int n = snapshot.size();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingInt(snapshot::getHuellaId));
+        int[] huellaIds = new int[n];
+        int[] empleadoIds = new int[n];
+        for (int i = 0; i < n; i++) {
+            huellaIds[i] = snapshot.getHuellaId(order[i]);
+            empleadoIds[i] = snapshot.getEmpleadoId(order[i]);
+        }
+        Audit audit = new Audit(huellaIds, empleadoIds, Math.max(1, blockSize), threshold, LocalDateTime.now(), 0, new BitSet());
+        deleteCheckpoint();
+        writeUniverse(audit);
+        return audit;
+    }
+
+    // Bloques del universo con los templates que siguen en la galería (las bajas posteriores se omiten)
+    private Block[] buildBlocks(Audit audit, GallerySnapshot snapshot) {
+        Map<Integer, Integer> positions = new HashMap<>(snapshot.size() * 2);
+        for (int i = 0; i < snapshot.size(); i++) {
+            positions.put(snapshot.getHuellaId(i), i);
+        }
+        Block[] blocks = new Block[audit.blockCount];
+        for (int b = 0; b < audit.blockCount; b++) {
+            int from = b * audit.blockSize;
+            int to = Math.min(audit.huellaIds.length, from + audit.blockSize);
+            Fmd[] fmds = new Fmd[to - from];
+            int[] universe = new int[to - from];
+            int count = 0;
+            for (int u = from; u < to; u++) {
+                Integer position = positions.get(audit.huellaIds[u]);
+                if (position == null) continue;
+                fmds[count] = snapshot.getFmd(position);
+                universe[count] = u;
+                count++;
+            }
+            blocks[b] = new Block(Arrays.copyOf(fmds, count), Arrays.copyOf(universe, count));
+        }
+        return blocks;
+    }
+
+    private void run(Audit audit) {
+        // Mosaicos pendientes en orden de fila: los primeros bloques fila tienen más columnas
+        List<int[]> pending = new ArrayList<>();
+        int tile = 0;
+        for (int r = 0; r < audit.blockCount; r++) {
+            for (int c = r; c < audit.blockCount; c++, tile++) {
+                if (!audit.doneTiles.get(tile)) pending.add(new int[]{tile, r, c});
+            }
+        }
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "duplicate-audit-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < threads; w++) {
+            futures.add(workers.submit(() -> {
+                int index;
+                while (!audit.stopRequested && (index = next.getAndIncrement()) < pending.size()) {
+                    int[] work = pending.get(index);
+                    if (compareTile(audit, audit.blocks[work[1]], audit.blocks[work[2]], work[1] == work[2])) {
+                        synchronized (audit) {
+                            audit.doneTiles.set(work[0]);
+                        }
+                        maybeCheckpoint(audit);
+                    }
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            audit.endNanos = System.nanoTime();
+            boolean completed = audit.tilesDone() == audit.tileCount;
+            state = completed ? AuditState.COMPLETED : AuditState.STOPPED;
+            writeCheckpoint(audit, state);
+            logger.info("Auditoría de duplicados {}: {}/{} mosaicos, {} comparaciones, {} hallazgos en {} s.",
+                    completed ? "terminada" : "detenida", audit.tilesDone(), audit.tileCount,
+                    audit.comparisons.sum(), audit.findings.size(), audit.elapsedMs() / 1000);
+        } catch (Exception e) {
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            logger.error("Error en la auditoría de duplicados: {}", cause.getMessage(), cause);
+            audit.stopRequested = true;
+            audit.endNanos = System.nanoTime();
+            lastError = cause.getMessage();
+            state = AuditState.FAILED;
+            writeCheckpoint(audit, AuditState.STOPPED); // Lo terminado se conserva para continuar
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    // Compara cada template del bloque fila contra el bloque columna. Devuelve false si se detuvo antes de terminar
+    private boolean compareTile(Audit audit, Block rows, Block columns, boolean diagonal) throws UareUException, InterruptedException {
+        if (rows.fmds.length == 0 || columns.fmds.length == 0) {
+            return true;
+        }
+        // Bloques de un solo uso: fuera de la caché de importación para no desplazar los shards del checador
+        Fmd[] probes = templateStorage.matcherInputs(rows.fmds, false);
+        Fmd[] gallery = diagonal ? probes : templateStorage.matcherInputs(columns.fmds, false);
+        for (int i = 0; i < probes.length; i++) {
+            if (!yieldToIdentification(audit)) {
+                return false;
+            }
+            // Todos los candidatos bajo el umbral (pocos: casi siempre el mismo template u otras huellas del mismo
+            // empleado); se filtran antes de quedarse con los mejores para que esos no ocupen los lugares
+            MatchCandidate[] matches = matcher.identifyTopK(probes[i], gallery, audit.threshold, gallery.length);
+            audit.comparisons.add(gallery.length);
+            int a = rows.universe[i];
+            int reported = 0;
+            for (MatchCandidate match : matches) {
+                int b = columns.universe[match.getIndex()];
+                // Cada par una sola vez, y solo entre empleados distintos (varias huellas del mismo dedo son normales)
+                if (b <= a || audit.empleadoIds[a] == audit.empleadoIds[b]) continue;
+                addFinding(audit, new Finding(audit.huellaIds[a], audit.empleadoIds[a], audit.huellaIds[b], audit.empleadoIds[b], match.getScore()));
+                if (++reported == maxMatchesPerTemplate) break;
+            }
+        }
+        return true;
+    }
+
+    // Cede la CPU mientras haya identificaciones en curso. Devuelve false si la auditoría se detuvo
+    private boolean yieldToIdentification(Audit audit) throws InterruptedException {
+        long start = 0;
+        while (!audit.stopRequested && userService.getActiveSearches() > 0) {
+            if (start == 0) start = System.nanoTime();
+            Thread.sleep(yieldMs);
+        }
+        if (start != 0) {
+            audit.yieldedNanos.add(System.nanoTime() - start);
+        }
+        return !audit.stopRequested;
+    }
+
+    private void addFinding(Audit audit, Finding finding) {
+        long key = ((long) finding.huellaIdA << 32) | (finding.huellaIdB & 0xFFFFFFFFL);
+        synchronized (audit) {
+            // Un mosaico interrumpido se repite al continuar: el mismo par no se cuenta dos veces
+            if (audit.findings.containsKey(key)) return;
+            if (audit.findings.size() >= maxFindings) {
+                audit.droppedFindings++;
+                return;
+            }
+            audit.findings.put(key, finding);
+        }
+        logger.info("Posible duplicado: huella {} (empleado {}) y huella {} (empleado {}), score {}.",
+                finding.huellaIdA, finding.empleadoIdA, finding.huellaIdB, finding.empleadoIdB, finding.score);
+    }
+
+    private void maybeCheckpoint(Audit audit) {
+        long now = System.nanoTime();
+        if (now - audit.lastCheckpointNanos < TimeUnit.MILLISECONDS.toNanos(checkpointIntervalMs)) {
+            return;
+        }
+        audit.lastCheckpointNanos = now;
+        writeCheckpoint(audit, AuditState.RUNNING);
+    }
+
+    // ----- Archivo de control -----
+
+    private void writeCheckpoint(Audit audit, AuditState savedState) {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("format", FORMAT_VERSION);
+        root.put("state", savedState.name());
+        root.put("blockSize", audit.blockSize);
+        root.put("threshold", audit.threshold);
+        root.put("startedAt", audit.startedAt.toString());
+        root.put("elapsedMs", audit.elapsedMs());
+        root.put("templates", audit.huellaIds.length);
+        root.put("universeHash", audit.universeHash);
+        ArrayNode findings = root.putArray("findings");
+        synchronized (audit) {
+            root.put("comparisons", audit.comparisons.sum());
+            root.put("droppedFindings", audit.droppedFindings);
+            root.put("doneTiles", audit.doneTiles.toByteArray()); // Jackson lo escribe en Base64
+            for (Finding f : audit.findings.values()) {
+                findings.addObject()
+                        .put("huellaIdA", f.huellaIdA).put("empleadoIdA", f.empleadoIdA)
+                        .put("huellaIdB", f.huellaIdB).put("empleadoIdB", f.empleadoIdB)
+                        .put("score", f.score);
+            }
+        }
+        synchronized (checkpointLock) {
+            try {
+                Files.createDirectories(checkpointFile.getParent());
+                Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+                objectMapper.writeValue(tmp.toFile(), root);
+                Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.warn("No se pudo guardar el archivo de control de la auditoría {}: {}", checkpointFile, e.getMessage());
+            }
+        }
+    }
+
+    // Auditoría guardada en el archivo de control, o null si no hay o no se puede leer
+    private Audit readCheckpoint() {
+        synchronized (checkpointLock) {
+            if (!Files.exists(checkpointFile)) {
+                return null;
+            }
+            try {
+                JsonNode root = objectMapper.readTree(checkpointFile.toFile());
+                if (root.path("format").asInt() != FORMAT_VERSION) {
+                    return null;
+                }
+                int[][] universe = readUniverse(root.path("templates").asInt());
+                Audit audit = new Audit(universe[0], universe[1], Math.max(1, root.path("blockSize").asInt()), root.path("threshold").asInt(),
+                        LocalDateTime.parse(root.path("startedAt").asText()), root.path("elapsedMs").asLong(),
+                        BitSet.valueOf(root.path("doneTiles").binaryValue()));
+                if (audit.universeHash != root.path("universeHash").asInt()) {
+                    throw new IOException("el universo no corresponde al archivo de control");
+                }
+                audit.savedState = AuditState.valueOf(root.path("state").asText());
+                audit.endNanos = audit.resumedAtNanos; // Sin correr: el tiempo no avanza
+                audit.comparisons.add(root.path("comparisons").asLong());
+                audit.droppedFindings = root.path("droppedFindings").asLong();
+                for (JsonNode f : root.path("findings")) {
+                    Finding finding = new Finding(f.get("huellaIdA").asInt(), f.get("empleadoIdA").asInt(),
+                            f.get("huellaIdB").asInt(), f.get("empleadoIdB").asInt(), f.get("score").asInt());
+                    audit.findings.put(((long) finding.huellaIdA << 32) | (finding.huellaIdB & 0xFFFFFFFFL), finding);
+                }
+                return audit;
+            } catch (Exception e) {
+                logger.warn("Archivo de control de la auditoría ilegible ({}): {}", checkpointFile, e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    // El universo se escribe una vez al iniciar la auditoría: el archivo de control solo lleva el avance
+    private void writeUniverse(Audit audit) {
+        synchronized (checkpointLock) {
+            try {
+                Files.createDirectories(universeFile.getParent());
+                Path tmp = universeFile.resolveSibling(universeFile.getFileName() + ".tmp");
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeInt(audit.huellaIds.length);
+                    for (int i = 0; i < audit.huellaIds.length; i++) {
+                        out.writeInt(audit.huellaIds[i]);
+                        out.writeInt(audit.empleadoIds[i]);
+                    }
+                }
+                Files.move(tmp, universeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.warn("No se pudo guardar el universo de la auditoría {}: {}", universeFile, e.getMessage());
+            }
+        }
+    }
+
+    // huellaIds y empleadoIds del universo; falla si el archivo no tiene los templates esperados
+    private int[][] readUniverse(int expected) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(universeFile)))) {
+            if (in.readInt() != FORMAT_VERSION || in.readInt() != expected) {
+                throw new IOException("universo de otra auditoría");
+            }
+            int[] huellaIds = new int[expected];
+            int[] empleadoIds = new int[expected];
+            for (int i = 0; i < expected; i++) {
+                huellaIds[i] = in.readInt();
+                empleadoIds[i] = in.readInt();
+            }
+            return new int[][]{huellaIds, empleadoIds};
+        }
+    }
+
+    private static int universeHash(int[] huellaIds, int[] empleadoIds) {
+        return 31 * Arrays.hashCode(huellaIds) + Arrays.hashCode(empleadoIds);
+    }
+
+    private void deleteCheckpoint() {
+        synchronized (checkpointLock) {
+            try {
+                Files.deleteIfExists(checkpointFile);
+                Files.deleteIfExists(universeFile);
+            } catch (IOException e) {
+                logger.warn("No se pudo borrar el archivo de control de la auditoría {}: {}", checkpointFile, e.getMessage());
+            }
+        }
+    }
+
+    // ----- Consulta -----
+
+    public AuditState getState() {
+        return state;
+    }
+
+    public Map<String, Object> getProgress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("state", state);
+        progress.put("threads", threads);
+        progress.put("threshold", threshold);
+        progress.put("checkpoint", Files.exists(checkpointFile));
+        Audit audit = current;
+        if (audit == null) {
+            return progress;
+        }
+        long n = audit.huellaIds.length;
+        int tilesDone = audit.tilesDone();
+        long comparisons = audit.comparisons.sum();
+        long elapsedMs = audit.elapsedMs();
+        progress.put("startedAt", audit.startedAt.toString());
+        progress.put("templates", n);
+        progress.put("blockSize", audit.blockSize);
+        progress.put("tiles", audit.tileCount);
+        progress.put("tilesDone", tilesDone);
+        progress.put("percent", audit.tileCount == 0 ? 100.0 : Math.round(tilesDone * 1000.0 / audit.tileCount) / 10.0);
+        progress.put("comparisons", comparisons);
+        progress.put("totalComparisons", n * (n - 1) / 2);
+        progress.put("elapsedMs", elapsedMs);
+        progress.put("yieldedMs", audit.yieldedNanos.sum() / 1_000_000);
+        // Ritmo de este arranque; los mosaicos del borde son más chicos, así que es una estimación
+        int sessionTiles = tilesDone - audit.tilesAtResume;
+        if (state == AuditState.RUNNING && sessionTiles > 0) {
+            long sessionMs = (System.nanoTime() - audit.resumedAtNanos) / 1_000_000;
+            progress.put("etaSeconds", (audit.tileCount - tilesDone) * sessionMs / sessionTiles / 1000);
+        }
+        synchronized (audit) {
+            progress.put("findings", audit.findings.size());
+            progress.put("droppedFindings", audit.droppedFindings);
+        }
+        if (lastError != null) {
+            progress.put("error", lastError);
+        }
+        return progress;
+    }
+
+    /**
+     * Posibles duplicados agrupados por par de empleados, del más parecido al menos parecido.
+     */
+    public List<Map<String, Object>> getDuplicates() {
+        Audit audit = current;
+        if (audit == null) {
+            return List.of();
+        }
+        List<Finding> findings;
+        synchronized (audit) {
+            findings = new ArrayList<>(audit.findings.values());
+        }
+        Map<Long, List<Finding>> byPair = new LinkedHashMap<>();
+        for (Finding f : findings) {
+            int low = Math.min(f.empleadoIdA, f.empleadoIdB);
+            int high = Math.max(f.empleadoIdA, f.empleadoIdB);
+            byPair.computeIfAbsent(((long) low << 32) | (high & 0xFFFFFFFFL), k -> new ArrayList<>()).add(f);
+        }
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (List<Finding> pair : byPair.values()) {
+            pair.sort(Comparator.comparingInt(Finding::getScore));
+            Finding best = pair.get(0);
+            int low = Math.min(best.empleadoIdA, best.empleadoIdB);
+            int high = Math.max(best.empleadoIdA, best.empleadoIdB);
+            List<Map<String, Object>> matches = new ArrayList<>();
+            for (Finding f : pair) {
+                boolean swap = f.empleadoIdA != low;
+                Map<String, Object> match = new LinkedHashMap<>();
+                match.put("huellaIdA", swap ? f.huellaIdB : f.huellaIdA);
+                match.put("huellaIdB", swap ? f.huellaIdA : f.huellaIdB);
+                match.put("score", f.score);
+                matches.add(match);
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("empleadoA", describe(low));
+            entry.put("empleadoB", describe(high));
+            entry.put("bestScore", best.score);
+            entry.put("matches", matches);
+            result.add(entry);
+        }
+        result.sort(Comparator.comparingInt(e -> (Integer) e.get("bestScore")));
+        return result;
+    }
+
+    private Map<String, Object> describe(int empleadoId) {
+        Map<String, Object> empleado = new LinkedHashMap<>();
+        empleado.put("id", empleadoId);
+        EmpleadoIdentity identity = identityCache.getIfPresent(empleadoId);
+        if (identity != null) {
+            empleado.put("nombreCompleto", identity.getNombreCompleto());
+            empleado.put("rfc", identity.getRfc());
+        }
+        return empleado;
+    }
+}
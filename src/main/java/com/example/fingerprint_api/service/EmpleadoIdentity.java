@@ -0,0 +1,44 @@
+package com.example.fingerprint_api.service;
+
+import com.example.fingerprint_api.model.Empleado;
+
+/**
+ * Datos mínimos e inmutables de un empleado para resolver una identificación
+ * (lo que necesita un ChecadorEvent) sin consultar la BD.
+ */
+public final class EmpleadoIdentity {
+
+    private final int id;
+    private final String nombreCompleto;
+    private final String rfc;
+    private final Integer estatusId;
+    private final String estatusNombre;
+    // Departamentos, para asignar el empleado a las galerías por sede/departamento
+    private final Integer departamentoAcademicoId;
+    private final Integer departamentoAdministrativoId;
+
+    public EmpleadoIdentity(int id, String nombreCompleto, String rfc, Integer estatusId, String estatusNombre,
+                            Integer departamentoAcademicoId, Integer departamentoAdministrativoId) {
+        this.id = id;
+        this.nombreCompleto = nombreCompleto;
+        this.rfc = rfc;
+        this.estatusId = estatusId;
+        this.estatusNombre = estatusNombre;
+        this.departamentoAcademicoId = departamentoAcademicoId;
+        this.departamentoAdministrativoId = departamentoAdministrativoId;
+    }
+
+    public static EmpleadoIdentity fromEntity(Empleado empleado) {
+        return new EmpleadoIdentity(empleado.getId(), empleado.getNombreCompleto(), empleado.getRfc(),
+                empleado.getEstatusId(), empleado.getEstatusNombre(),
+                empleado.getDepartamentoAcademicoId(), empleado.getDepartamentoAdministrativoId());
+    }
+
+    public int getId() { return id; }
+    public String getNombreCompleto() { return nombreCompleto; }
+    public String getRfc() { return rfc; }
+    public Integer getEstatusId() { return estatusId; }
+    public String getEstatusNombre() { return estatusNombre; }
+    public Integer getDepartamentoAcademicoId() { return departamentoAcademicoId; }
+    public Integer getDepartamentoAdministrativoId() { return departamentoAdministrativoId; }
+}
@@ -0,0 +1,160 @@
+package com.example.fingerprint_api.service;
+
+import com.example.fingerprint_api.model.Empleado;
+import com.example.fingerprint_api.repository.EmpleadoRepository;
+import com.example.fingerprint_api.util.TransactionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché en memoria de la identidad de los empleados (id, nombre, RFC, estatus),
+ * para que una checada identificada no tenga que ir a MySQL.
+ * Se llena junto con la galería y se actualiza cuando se confirma un alta o edición de empleado.
+ */
+@Component
+public class EmpleadoIdentityCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmpleadoIdentityCache.class);
+
+    @Autowired
+    private EmpleadoRepository empleadoRepository;
+
+    private volatile Map<Integer, EmpleadoIdentity> identities = new ConcurrentHashMap<>();
+
+    // Se incrementa cuando cambian los departamentos de algún empleado (lo único que usan las galerías por sede)
+    private final AtomicLong version = new AtomicLong();
+    // Avisados tras cada cambio de departamentos; deben volver enseguida (se llaman en el hilo del cambio)
+    private final List<Runnable> departmentListeners = new CopyOnWriteArrayList<>();
+
+    // Cambios confirmados mientras corre una recarga: se aplican sobre lo leído antes de publicarlo
+    private final Object reloadLock = new Object();
+    private Map<Integer, EmpleadoIdentity> reloadJournal;   // Protegido por reloadLock; null sin recarga en curso
+    // Consultas a la BD durante la recarga: solo cubren empleados que la lectura completa no trajo
+    private Map<Integer, EmpleadoIdentity> reloadFills;     // Protegido por reloadLock
+
+    /**
+     * Recarga la caché completa desde la BD y la publica de una sola vez. Los cambios confirmados durante la
+     * lectura no se pierden: prevalecen sobre la fila leída, que puede ser anterior a ellos.
+     */
+    public void reload() {
+        synchronized (reloadLock) {
+            reloadJournal = new HashMap<>();
+            reloadFills = new HashMap<>();
+        }
+        try {
+            List<Empleado> empleados = empleadoRepository.findAll();
+            Map<Integer, EmpleadoIdentity> loaded = new ConcurrentHashMap<>(Math.max(16, empleados.size() * 2));
+            for (Empleado empleado : empleados) {
+                loaded.put(empleado.getId(), EmpleadoIdentity.fromEntity(empleado));
+            }
+            int replayed;
+            synchronized (reloadLock) {
+                replayed = reloadJournal.size();
+                loaded.putAll(reloadJournal);
+                reloadFills.forEach(loaded::putIfAbsent);
+                identities = loaded;
+            }
+            departmentsChanged();
+            logger.info("Caché de identidades cargada con {} empleados ({} cambios aplicados durante la carga).",
+                    loaded.size(), replayed);
+        } finally {
+            synchronized (reloadLock) {
+                reloadJournal = null;
+                reloadFills = null;
+            }
+        }
+    }
+
+    /**
+     * Busca la identidad en memoria; si no está (p. ej. durante el arranque), la consulta en la BD y la guarda.
+     */
+    public Optional<EmpleadoIdentity> get(int empleadoId) {
+        EmpleadoIdentity identity = identities.get(empleadoId);
+        if (identity != null) {
+            return Optional.of(identity);
+        }
+        logger.debug("Identidad de empleado ID {} no encontrada en caché; consultando BD.", empleadoId);
+        Optional<EmpleadoIdentity> fromDb = empleadoRepository.findById(empleadoId).map(EmpleadoIdentity::fromEntity);
+        fromDb.ifPresent(i -> {
+            EmpleadoIdentity previous;
+            synchronized (reloadLock) {
+                previous = identities.putIfAbsent(empleadoId, i); // Un cambio confirmado mientras tanto prevalece
+                if (reloadFills != null) {
+                    reloadFills.put(empleadoId, i);
+                }
+            }
+            if (previous == null && hasDepartments(i)) {
+                departmentsChanged();
+            }
+        });
+        return fromDb;
+    }
+
+    /**
+     * Busca la identidad solo en memoria, sin consultar la BD.
+     */
+    public EmpleadoIdentity getIfPresent(int empleadoId) {
+        return identities.get(empleadoId);
+    }
+
+    /**
+     * Actualiza la caché cuando la transacción actual se confirme (o de inmediato si no hay transacción).
+     */
+    public void putAfterCommit(Empleado empleado) {
+        EmpleadoIdentity identity = EmpleadoIdentity.fromEntity(empleado);
+        TransactionUtils.afterCommit(() -> {
+            EmpleadoIdentity previous;
+            synchronized (reloadLock) {
+                previous = identities.put(identity.getId(), identity);
+                if (reloadJournal != null) {
+                    reloadJournal.put(identity.getId(), identity);
+                }
+            }
+            if (previous == null ? hasDepartments(identity) : !sameDepartments(previous, identity)) {
+                departmentsChanged();
+            }
+        });
+    }
+
+    /**
+     * Registra una acción que se ejecuta cada vez que cambian los departamentos de algún empleado.
+     */
+    public void addDepartmentListener(Runnable listener) {
+        departmentListeners.add(listener);
+    }
+
+    private void departmentsChanged() {
+        version.incrementAndGet();
+        for (Runnable listener : departmentListeners) {
+            listener.run();
+        }
+    }
+
+    private static boolean hasDepartments(EmpleadoIdentity identity) {
+        return identity.getDepartamentoAcademicoId() != null || identity.getDepartamentoAdministrativoId() != null;
+    }
+
+    private static boolean sameDepartments(EmpleadoIdentity a, EmpleadoIdentity b) {
+        return Objects.equals(a.getDepartamentoAcademicoId(), b.getDepartamentoAcademicoId())
+                && Objects.equals(a.getDepartamentoAdministrativoId(), b.getDepartamentoAdministrativoId());
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public int size() {
+        return identities.size();
+    }
+}
@@ -6,8 +6,10 @@ import com.example.fingerprint_api.exception.ApiException;
 import com.example.fingerprint_api.exception.ResourceNotFoundException;
 import com.example.fingerprint_api.model.Empleado;
 import com.example.fingerprint_api.model.Huella;
+import com.example.fingerprint_api.model.RhEstatus;
 import com.example.fingerprint_api.repository.EmpleadoRepository;
 import com.example.fingerprint_api.repository.HuellaRepository;
+import com.example.fingerprint_api.repository.RhEstatusRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,6 +35,15 @@ public class EmpleadoService {
     @Autowired
     private UserService userService; // Asumo que existe para manejo de huellas en memoria
 
+    @Autowired
+    private EmpleadoIdentityCache identityCache;
+
+    @Autowired
+    private RhEstatusRepository rhEstatusRepository;
+
+    @Autowired
+    private HuellaChangeOutbox changeOutbox;
+
     @Transactional(readOnly = true)
     public List<Empleado> getAllEmpleados() {
         logger.debug("Solicitando todos los empleados");
@@ -78,6 +89,7 @@ public class EmpleadoService {
 
         Empleado savedEmpleado = empleadoRepository.save(nuevoEmpleado);
         logger.info("Empleado creado con ID: {}", savedEmpleado.getId());
+        identityCache.putAfterCommit(savedEmpleado);
         return savedEmpleado;
     }
 
@@ -91,6 +103,7 @@ public class EmpleadoService {
         Empleado empleado = getEmpleadoById(empleadoId);
 
         logger.info("Actualizando empleado con ID: {}", empleadoId);
+        Integer estatusAnterior = empleado.getEstatusId();
 
         // 2. Validar Unicidad y Actualizar RFC (si cambió y el DTO lo trae)
         if (updateDto.getRfc() != null && !updateDto.getRfc().equalsIgnoreCase(empleado.getRfc())) {
@@ -125,14 +138,29 @@ public class EmpleadoService {
         Optional.ofNullable(updateDto.getTipoNombramientoPrincipal()).ifPresent(empleado::setTipoNombramientoPrincipal);
         Optional.ofNullable(updateDto.getTipoNombramientoSecundario()).ifPresent(empleado::setTipoNombramientoSecundario);
 
+        // Estatus: además del nombre denormalizado, se ajusta la galería de huellas en memoria
+        boolean estatusCambio = updateDto.getEstatusId() != null && !updateDto.getEstatusId().equals(empleado.getEstatusId());
+        if (estatusCambio) {
+            RhEstatus estatus = rhEstatusRepository.findById(updateDto.getEstatusId())
+                    .orElseThrow(() -> new ApiException("No existe el estatus con ID: " + updateDto.getEstatusId(), HttpStatus.BAD_REQUEST));
+            empleado.setEstatusId(estatus.getId());
+            empleado.setEstatusNombre(estatus.getNombre());
+        }
+
         // --- Campos Opcionales (Descomentar si los añades al DTO y quieres editarlos) ---
-        // Optional.ofNullable(updateDto.getEstatusId()).ifPresent(empleado::setEstatusId);
         // Optional.ofNullable(updateDto.getCorreoInstitucional()).ifPresent(empleado::setCorreoInstitucional);
 
         // 5. Guardar cambios (Hibernate detecta cambios y ejecuta UPDATE)
         // El @PreUpdate en la entidad Empleado actualizará updatedAt automáticamente
         Empleado updatedEmpleado = empleadoRepository.save(empleado);
         logger.info("Empleado ID: {} actualizado.", empleadoId);
+        identityCache.putAfterCommit(updatedEmpleado);
+        if (estatusCambio) {
+            boolean eraActivo = userService.isEstatusActivo(estatusAnterior);
+            if (eraActivo != userService.isEstatusActivo(updatedEmpleado.getEstatusId())) {
+                userService.onEmpleadoEstatusChanged(empleadoId, updatedEmpleado.getEstatusId());
+            }
+        }
         return updatedEmpleado;
     }
 
@@ -165,6 +193,7 @@ public class EmpleadoService {
         }
 
         huellaRepository.delete(huella);
+        changeOutbox.recordBaja(huellaId, empleadoId); // Las demás instancias la retiran de su galería
         userService.removeFmdDataFromMemory(huellaId); // Notificar al servicio en memoria
         logger.info("Huella ID: {} eliminada para empleado ID: {}", huellaId, empleadoId);
     }
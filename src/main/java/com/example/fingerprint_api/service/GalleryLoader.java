@@ -0,0 +1,290 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fmd;
+import com.digitalpersona.uareu.UareUException;
+import com.example.fingerprint_api.engine.FeatureExtractor;
+import com.example.fingerprint_api.engine.TemplateBins;
+import com.example.fingerprint_api.repository.HuellaRepository;
+import com.example.fingerprint_api.repository.HuellaTemplateProjection;
+import com.example.fingerprint_api.util.CryptoUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Carga los templates de la BD en memoria de forma paralela.
+ * Lee páginas de una proyección mínima (id, rh_personal_id, template_fmd) mientras un pool de
+ * trabajadores desencripta e importa las páginas anteriores, y reporta el progreso.
+ */
+@Component
+public class GalleryLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(GalleryLoader.class);
+
+    @Autowired
+    private HuellaRepository huellaRepository;
+    @Autowired
+    private FeatureExtractor featureExtractor;
+    @Autowired
+    private GalleryTemplateStorage templateStorage;
+    @Autowired
+    private GalleryPartition partition;
+
+    // Hilos para desencriptar/importar (<= 0 usa el número de núcleos)
+    @Value("${fingerprint.gallery.loader-threads:0}")
+    private int configuredThreads;
+
+    // Filas por página leída de la BD
+    @Value("${fingerprint.gallery.loader-page-size:1000}")
+    private int pageSize;
+
+    private ExecutorService loaderExecutor;
+    private int threads;
+
+    // Progreso de la carga en curso (o de la última realizada)
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    // Resultado de importar un bloque de filas, en el mismo orden en que se leyeron
+    private static class Chunk {
+        final Fmd[] fmds;
+        final int[] empleadoIds;
+        final int[] huellaIds;
+        final int[] binKeys;
+        int count;
+
+        Chunk(int capacity) {
+            fmds = new Fmd[capacity];
+            empleadoIds = new int[capacity];
+            huellaIds = new int[capacity];
+            binKeys = new int[capacity];
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        threads = configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCounter = new AtomicInteger();
+        loaderExecutor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "gallery-loader-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loaderExecutor.shutdownNow();
+    }
+
+    /**
+     * Lee todas las huellas de la BD y construye una galería nueva, sin publicarla.
+     */
+    public GallerySnapshot loadGallery(long version, int maxShards, int minShardSize, Set<Integer> activeEstatusIds) {
+        return loadGallery(version, maxShards, minShardSize, activeEstatusIds, null);
+    }
+
+    /**
+     * Igual que {@link #loadGallery(long, int, int, Set)}, pero entrega galerías parciales a {@code partialListener}
+     * a medida que avanza la carga (aprox. cada 10% del total), útil durante el arranque.
+     */
+    public GallerySnapshot loadGallery(long version, int maxShards, int minShardSize, Set<Integer> activeEstatusIds,
+                                       Consumer<GallerySnapshot> partialListener) {
+        long start = System.currentTimeMillis();
+        // Sin estatus configurados se cargan las huellas de todos los empleados
+        boolean filterByEstatus = activeEstatusIds != null && !activeEstatusIds.isEmpty();
+        running.set(true);
+        total.set((int) (filterByEstatus ? huellaRepository.countTemplatesByEstatus(activeEstatusIds) : huellaRepository.countTemplates()));
+        processed.set(0);
+        failed.set(0);
+        logger.info("Carga paralela de galería: {} huellas, {} hilos, páginas de {}.", total.get(), threads, pageSize);
+
+        OffHeapTemplateStore store = templateStorage.newStore(); // Arena nueva: la recarga compacta las bajas
+        List<Future<Chunk>> futures = new ArrayList<>();
+        // Limita las páginas leídas pero aún no procesadas (cada una retiene sus BLOBs encriptados)
+        Semaphore inFlight = new Semaphore(threads * 2);
+        try {
+            int afterId = 0;
+            int partialStep = Math.max(pageSize, total.get() / 10);
+            int lastPartial = 0;
+            while (true) {
+                List<HuellaTemplateProjection> page = filterByEstatus
+                        ? huellaRepository.findTemplatesAfterByEstatus(afterId, activeEstatusIds, PageRequest.of(0, pageSize))
+                        : huellaRepository.findTemplatesAfter(afterId, PageRequest.of(0, pageSize));
+                if (page.isEmpty()) break;
+                afterId = page.get(page.size() - 1).getId();
+
+                int chunkSize = Math.max(1, (page.size() + threads - 1) / threads);
+                for (int from = 0; from < page.size(); from += chunkSize) {
+                    List<HuellaTemplateProjection> rows = page.subList(from, Math.min(page.size(), from + chunkSize));
+                    inFlight.acquire();
+                    futures.add(loaderExecutor.submit(() -> {
+                        try {
+                            return importChunk(rows, store);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }));
+                }
+                logger.debug("Progreso de carga de galería: {}/{} procesadas.", processed.get(), total.get());
+                if (partialListener != null && processed.get() - lastPartial >= partialStep) {
+                    lastPartial = processed.get();
+                    partialListener.accept(assemble(completedPrefix(futures), version, maxShards, minShardSize));
+                }
+                if (page.size() < pageSize) break;
+            }
+
+            List<Chunk> chunks = new ArrayList<>(futures.size());
+            for (Future<Chunk> future : futures) {
+                chunks.add(future.get());
+            }
+            GallerySnapshot loaded = assemble(chunks, version, maxShards, minShardSize);
+            templateStorage.publish(store);
+            logger.info("Carga paralela terminada: {} importadas, {} con error, en {} ms.",
+                    loaded.size(), failed.get(), System.currentTimeMillis() - start);
+            return loaded;
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Carga de galería interrumpida", e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("Error en la carga paralela de la galería", e.getCause());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // Bloques ya terminados al inicio de la lista (se respeta el orden de lectura)
+    private List<Chunk> completedPrefix(List<Future<Chunk>> futures) throws InterruptedException, ExecutionException {
+        List<Chunk> done = new ArrayList<>();
+        for (Future<Chunk> future : futures) {
+            if (!future.isDone()) break;
+            done.add(future.get());
+        }
+        return done;
+    }
+
+    private GallerySnapshot assemble(List<Chunk> chunks, long version, int maxShards, int minShardSize) {
+        int size = 0;
+        for (Chunk chunk : chunks) {
+            size += chunk.count;
+        }
+        Fmd[] fmds = new Fmd[size];
+        int[] empleadoIds = new int[size];
+        int[] huellaIds = new int[size];
+        int[] binKeys = new int[size];
+        int pos = 0;
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.fmds, 0, fmds, pos, chunk.count);
+            System.arraycopy(chunk.empleadoIds, 0, empleadoIds, pos, chunk.count);
+            System.arraycopy(chunk.huellaIds, 0, huellaIds, pos, chunk.count);
+            System.arraycopy(chunk.binKeys, 0, binKeys, pos, chunk.count);
+            pos += chunk.count;
+        }
+        return GallerySnapshot.of(version, fmds, empleadoIds, huellaIds, binKeys, maxShards, minShardSize);
+    }
+
+    private Chunk importChunk(List<HuellaTemplateProjection> rows, OffHeapTemplateStore store) {
+        Chunk chunk = new Chunk(rows.size());
+        for (HuellaTemplateProjection row : rows) {
+            try {
+                if (row.getEmpleadoId() == null) {
+                    logger.warn("Huella ID {} omitida: empleado nulo.", row.getId());
+                    failed.incrementAndGet();
+                    continue;
+                }
+                if (!partition.owns(row.getEmpleadoId())) {
+                    continue; // Otro nodo del clúster guarda a este empleado
+                }
+                byte[] decryptedFmdBytes = CryptoUtils.decrypt(row.getTemplateFmd());
+                importInto(chunk, row.getId(), row.getEmpleadoId(), decryptedFmdBytes, store);
+            } catch (UareUException e) {
+                failed.incrementAndGet();
+                logger.error("Error UareU al importar FMD para huella ID {}: {}", row.getId(), e.getMessage());
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                logger.error("Error al desencriptar o importar FMD para huella ID {}: {}", row.getId(), e.getMessage(), e);
+            } finally {
+                processed.incrementAndGet();
+            }
+        }
+        return chunk;
+    }
+
+    private void importInto(Chunk chunk, int huellaId, int empleadoId, byte[] decryptedFmdBytes,
+                            OffHeapTemplateStore store) throws UareUException {
+        Fmd fmd = featureExtractor.importFmd(decryptedFmdBytes);
+        chunk.fmds[chunk.count] = templateStorage.toGalleryFmd(fmd, decryptedFmdBytes, store);
+        chunk.empleadoIds[chunk.count] = empleadoId;
+        chunk.huellaIds[chunk.count] = huellaId;
+        // La clave de bin se calcula aquí, en los hilos de carga, y no al ensamblar
+        chunk.binKeys[chunk.count] = TemplateBins.keyOf(fmd);
+        chunk.count++;
+    }
+
+    /**
+     * Construye una galería a partir de templates ya desencriptados (p. ej. del archivo local de galería),
+     * importándolos en paralelo en el pool de carga. Los que no se pueden importar se omiten.
+     */
+    public GallerySnapshot importTemplates(int[] huellaIds, int[] empleadoIds, byte[][] templates,
+                                           long version, int maxShards, int minShardSize) {
+        OffHeapTemplateStore store = templateStorage.newStore();
+        int chunkSize = Math.max(1, (templates.length + threads - 1) / threads);
+        List<Future<Chunk>> futures = new ArrayList<>();
+        for (int from = 0; from < templates.length; from += chunkSize) {
+            final int start = from;
+            final int end = Math.min(templates.length, from + chunkSize);
+            futures.add(loaderExecutor.submit(() -> {
+                Chunk chunk = new Chunk(end - start);
+                for (int i = start; i < end; i++) {
+                    if (!partition.owns(empleadoIds[i])) {
+                        continue;
+                    }
+                    try {
+                        importInto(chunk, huellaIds[i], empleadoIds[i], templates[i], store);
+                    } catch (UareUException e) {
+                        logger.error("Error UareU al importar FMD para huella ID {}: {}", huellaIds[i], e.getMessage());
+                    }
+                }
+                return chunk;
+            }));
+        }
+        try {
+            List<Chunk> chunks = new ArrayList<>(futures.size());
+            for (Future<Chunk> future : futures) {
+                chunks.add(future.get());
+            }
+            GallerySnapshot imported = assemble(chunks, version, maxShards, minShardSize);
+            templateStorage.publish(store);
+            return imported;
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Importación de galería interrumpida", e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("Error en la importación paralela de la galería", e.getCause());
+        }
+    }
+
+    public boolean isRunning() { return running.get(); }
+    public int getTotal() { return total.get(); }
+    public int getProcessed() { return processed.get(); }
+    public int getFailed() { return failed.get(); }
+}
@@ -0,0 +1,84 @@
+package com.example.fingerprint_api.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Partición de la galería en modo clúster: cada nodo guarda solo los templates de los empleados
+ * cuyo hash cae en su partición (todos los templates de un empleado quedan juntos).
+ * Los nodos se listan en el mismo orden en todas las instancias; la posición de cada uno es su partición.
+ */
+@Component
+public class GalleryPartition {
+
+    private static final Logger logger = LoggerFactory.getLogger(GalleryPartition.class);
+
+    @Value("${fingerprint.cluster.enabled:false}")
+    private boolean enabled;
+
+    // URL base de cada nodo (p. ej. http://10.0.0.5:8080); el índice en la lista es la partición
+    @Value("${fingerprint.cluster.nodes:}")
+    private List<String> nodes;
+
+    @Value("${fingerprint.cluster.node-index:0}")
+    private int nodeIndex;
+
+    @PostConstruct
+    public void init() {
+        if (!isPartitioned()) {
+            return;
+        }
+        if (nodeIndex < 0 || nodeIndex >= nodes.size()) {
+            throw new IllegalStateException("fingerprint.cluster.node-index=" + nodeIndex
+                    + " fuera de rango para " + nodes.size() + " nodos.");
+        }
+        logger.info("Modo clúster: este nodo guarda la partición {} de {} ({}).", nodeIndex, nodes.size(), nodes.get(nodeIndex));
+    }
+
+    public boolean isPartitioned() {
+        return enabled && nodes != null && nodes.size() > 1;
+    }
+
+    public int getPartitionCount() {
+        return isPartitioned() ? nodes.size() : 1;
+    }
+
+    public int getPartitionIndex() {
+        return isPartitioned() ? nodeIndex : 0;
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public int partitionOf(int empleadoId) {
+        return Math.floorMod(mix(empleadoId), getPartitionCount());
+    }
+
+    /**
+     * Si los templates del empleado pertenecen a la galería de este nodo (siempre, fuera del modo clúster).
+     */
+    public boolean owns(int empleadoId) {
+        return !isPartitioned() || partitionOf(empleadoId) == nodeIndex;
+    }
+
+    // Clave de la partición para invalidar copias locales de la galería hechas con otra configuración
+    public int key() {
+        return isPartitioned() ? 31 * nodes.size() + nodeIndex + 1 : 0;
+    }
+
+    // Mezcla de bits (finalizador de MurmurHash3): reparte parejo aunque los ids sigan un patrón
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.fingerprint_api.service;
+
+/**
+ * Estado de preparación de la galería de huellas en memoria.
+ */
+public enum GalleryReadiness {
+    LOADING,  // Carga inicial en curso, aún sin templates publicados
+    PARTIAL,  // Carga inicial en curso con parte de los templates ya publicados
+    READY,    // Galería completa
+    FAILED    // La carga inicial falló (se puede reintentar con una recarga)
+}
@@ -0,0 +1,427 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fmd;
+import com.example.fingerprint_api.engine.TemplateBins;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * Vista inmutable y versionada de la galería de huellas en memoria.
+ * Guarda los FMDs ya construidos junto con arreglos paralelos de empleadoId, huellaId y clave de bin
+ * ({@link TemplateBins}), y las particiones (shards) precalculadas para la identificación 1:N.
+ * Cada alta o baja produce una nueva instancia; nunca se modifica una existente,
+ * así que un índice devuelto por el motor siempre se resuelve contra la misma vista que se buscó.
+ */
+public final class GallerySnapshot {
+
+    private final long version;
+    private final Fmd[] fmds;
+    private final int[] empleadoIds;
+    private final int[] huellaIds;
+    private final int[] binKeys;
+
+    // Particionado para la búsqueda paralela
+    private final int maxShards;
+    private final int minShardSize;
+    private final Fmd[][] shards;
+    private final int[] shardOffsets;
+
+    private static final int[] NO_INDICES = new int[0];
+    // Índice empleadoId -> posiciones en la galería, construido bajo demanda
+    private volatile Map<Integer, int[]> empleadoIndex;
+    // Máximo de templates de un mismo empleado, calculado bajo demanda (0 = aún no)
+    private volatile int maxPerEmpleado;
+    // Índice clave de bin -> templates del bin, construido bajo demanda
+    private volatile Map<Integer, Bin> binIndex;
+
+    /**
+     * Templates de un bin con sus posiciones en la galería.
+     */
+    public static final class Bin {
+        private final int key;
+        private final Fmd[] fmds;
+        private final int[] positions;
+
+        Bin(int key, Fmd[] fmds, int[] positions) {
+            this.key = key;
+            this.fmds = fmds;
+            this.positions = positions;
+        }
+
+        public int getKey() { return key; }
+        public Fmd[] getFmds() { return fmds; }
+        public int getPosition(int index) { return positions[index]; }
+        public int size() { return fmds.length; }
+    }
+
+    private GallerySnapshot(long version, Fmd[] fmds, int[] empleadoIds, int[] huellaIds, int[] binKeys,
+                            int maxShards, int minShardSize) {
+        this.version = version;
+        this.fmds = fmds;
+        this.empleadoIds = empleadoIds;
+        this.huellaIds = huellaIds;
+        this.binKeys = binKeys;
+        this.maxShards = Math.max(1, maxShards);
+        this.minShardSize = Math.max(1, minShardSize);
+
+        int shardTotal = Math.min(this.maxShards, Math.max(1, fmds.length / this.minShardSize));
+        int shardSize = Math.max(1, (fmds.length + shardTotal - 1) / shardTotal);
+        this.shards = new Fmd[shardTotal][];
+        this.shardOffsets = new int[shardTotal];
+        for (int i = 0; i < shardTotal; i++) {
+            int from = Math.min(fmds.length, i * shardSize);
+            int to = Math.min(fmds.length, from + shardSize);
+            shardOffsets[i] = from;
+            shards[i] = shardTotal == 1 ? fmds : Arrays.copyOfRange(fmds, from, to);
+        }
+    }
+
+    // Copia con otra versión que comparte arreglos y particiones (todos inmutables)
+    private GallerySnapshot(GallerySnapshot source, long version) {
+        this.version = version;
+        this.fmds = source.fmds;
+        this.empleadoIds = source.empleadoIds;
+        this.huellaIds = source.huellaIds;
+        this.binKeys = source.binKeys;
+        this.maxShards = source.maxShards;
+        this.minShardSize = source.minShardSize;
+        this.shards = source.shards;
+        this.shardOffsets = source.shardOffsets;
+        this.empleadoIndex = source.empleadoIndex;
+        this.binIndex = source.binIndex;
+    }
+
+    /**
+     * Crea una galería vacía con la configuración de particionado indicada.
+     */
+    public static GallerySnapshot empty(int maxShards, int minShardSize) {
+        return new GallerySnapshot(0, new Fmd[0], new int[0], new int[0], new int[0], maxShards, minShardSize);
+    }
+
+    /**
+     * Crea una galería a partir de arreglos ya construidos (los arreglos pasan a ser propiedad de la instancia).
+     */
+    public static GallerySnapshot of(long version, Fmd[] fmds, int[] empleadoIds, int[] huellaIds, int maxShards, int minShardSize) {
+        int[] binKeys = new int[fmds.length];
+        for (int i = 0; i < fmds.length; i++) {
+            binKeys[i] = TemplateBins.keyOf(fmds[i]);
+        }
+        return of(version, fmds, empleadoIds, huellaIds, binKeys, maxShards, minShardSize);
+    }
+
+    /**
+     * Igual que {@link #of(long, Fmd[], int[], int[], int, int)} con las claves de bin ya calculadas.
+     */
+    public static GallerySnapshot of(long version, Fmd[] fmds, int[] empleadoIds, int[] huellaIds, int[] binKeys,
+                                     int maxShards, int minShardSize) {
+        if (fmds.length != empleadoIds.length || fmds.length != huellaIds.length || fmds.length != binKeys.length) {
+            throw new IllegalArgumentException("Los arreglos de la galería deben tener la misma longitud.");
+        }
+        return new GallerySnapshot(version, fmds, empleadoIds, huellaIds, binKeys, maxShards, minShardSize);
+    }
+
+    /**
+     * Devuelve una nueva versión con la huella añadida. Si la huella ya existía se reemplaza.
+     * Los índices por empleado y por bin ya construidos pasan a la nueva versión cambiando solo las entradas afectadas.
+     */
+    public GallerySnapshot withAdded(Fmd fmd, int empleadoId, int huellaId) {
+        int binKey = TemplateBins.keyOf(fmd);
+        int existing = indexOfHuella(huellaId);
+        if (existing >= 0) {
+            Fmd[] newFmds = fmds.clone();
+            int[] newEmpleados = empleadoIds.clone();
+            int[] newBinKeys = binKeys.clone();
+            newFmds[existing] = fmd;
+            newEmpleados[existing] = empleadoId;
+            newBinKeys[existing] = binKey;
+            GallerySnapshot next = new GallerySnapshot(version + 1, newFmds, newEmpleados, huellaIds, newBinKeys, maxShards, minShardSize);
+            Map<Integer, int[]> empleados = empleadoIndex;
+            if (empleados != null) {
+                empleados = new HashMap<>(empleados);
+                removePosition(empleados, empleadoIds[existing], existing);
+                addPosition(empleados, empleadoId, existing);
+                next.empleadoIndex = empleados;
+            }
+            Map<Integer, Bin> bins = binIndex;
+            if (bins != null) {
+                bins = new HashMap<>(bins);
+                removeFromBin(bins, binKeys[existing], existing);
+                addToBin(bins, binKey, fmd, existing);
+                next.binIndex = bins;
+            }
+            return next;
+        }
+        int n = fmds.length;
+        Fmd[] newFmds = Arrays.copyOf(fmds, n + 1);
+        int[] newEmpleados = Arrays.copyOf(empleadoIds, n + 1);
+        int[] newHuellas = Arrays.copyOf(huellaIds, n + 1);
+        int[] newBinKeys = Arrays.copyOf(binKeys, n + 1);
+        newFmds[n] = fmd;
+        newEmpleados[n] = empleadoId;
+        newHuellas[n] = huellaId;
+        newBinKeys[n] = binKey;
+        GallerySnapshot next = new GallerySnapshot(version + 1, newFmds, newEmpleados, newHuellas, newBinKeys, maxShards, minShardSize);
+        Map<Integer, int[]> empleados = empleadoIndex;
+        if (empleados != null) {
+            empleados = new HashMap<>(empleados);
+            addPosition(empleados, empleadoId, n);
+            next.empleadoIndex = empleados;
+        }
+        Map<Integer, Bin> bins = binIndex;
+        if (bins != null) {
+            bins = new HashMap<>(bins);
+            addToBin(bins, binKey, fmd, n);
+            next.binIndex = bins;
+        }
+        return next;
+    }
+
+    /**
+     * Devuelve una nueva versión sin la huella indicada, o esta misma instancia si no estaba.
+     * El último template ocupa el hueco, así que solo cambian dos posiciones y los índices ya construidos
+     * se actualizan en lugar de reconstruirse.
+     */
+    public GallerySnapshot withoutHuella(int huellaId) {
+        int index = indexOfHuella(huellaId);
+        if (index < 0) {
+            return this;
+        }
+        int last = fmds.length - 1;
+        Fmd[] newFmds = Arrays.copyOf(fmds, last);
+        int[] newEmpleados = Arrays.copyOf(empleadoIds, last);
+        int[] newHuellas = Arrays.copyOf(huellaIds, last);
+        int[] newBinKeys = Arrays.copyOf(binKeys, last);
+        if (index != last) {
+            newFmds[index] = fmds[last];
+            newEmpleados[index] = empleadoIds[last];
+            newHuellas[index] = huellaIds[last];
+            newBinKeys[index] = binKeys[last];
+        }
+        GallerySnapshot next = new GallerySnapshot(version + 1, newFmds, newEmpleados, newHuellas, newBinKeys, maxShards, minShardSize);
+        Map<Integer, int[]> empleados = empleadoIndex;
+        if (empleados != null) {
+            empleados = new HashMap<>(empleados);
+            removePosition(empleados, empleadoIds[index], index);
+            if (index != last) {
+                removePosition(empleados, empleadoIds[last], last);
+                addPosition(empleados, empleadoIds[last], index);
+            }
+            next.empleadoIndex = empleados;
+        }
+        Map<Integer, Bin> bins = binIndex;
+        if (bins != null) {
+            bins = new HashMap<>(bins);
+            removeFromBin(bins, binKeys[index], index);
+            if (index != last) {
+                removeFromBin(bins, binKeys[last], last);
+                addToBin(bins, binKeys[last], fmds[last], index);
+            }
+            next.binIndex = bins;
+        }
+        return next;
+    }
+
+    /**
+     * Devuelve una nueva versión sin ningún template del empleado indicado, o esta misma instancia si no tenía.
+     */
+    public GallerySnapshot withoutEmpleado(int empleadoId) {
+        if (getIndicesOfEmpleado(empleadoId).length == 0) {
+            return this;
+        }
+        return filterByEmpleado(id -> id != empleadoId).withVersion(version + 1);
+    }
+
+    /**
+     * Devuelve una sub-galería (misma versión) con solo los templates de los empleados que cumplen el filtro.
+     */
+    public GallerySnapshot filterByEmpleado(IntPredicate empleadoFilter) {
+        int n = fmds.length;
+        Fmd[] newFmds = new Fmd[n];
+        int[] newEmpleados = new int[n];
+        int[] newHuellas = new int[n];
+        int[] newBinKeys = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (empleadoFilter.test(empleadoIds[i])) {
+                newFmds[count] = fmds[i];
+                newEmpleados[count] = empleadoIds[i];
+                newHuellas[count] = huellaIds[i];
+                newBinKeys[count] = binKeys[i];
+                count++;
+            }
+        }
+        return new GallerySnapshot(version, Arrays.copyOf(newFmds, count), Arrays.copyOf(newEmpleados, count),
+                Arrays.copyOf(newHuellas, count), Arrays.copyOf(newBinKeys, count), maxShards, minShardSize);
+    }
+
+    /**
+     * Devuelve la misma galería con otro número de versión (sin copiar datos).
+     */
+    public GallerySnapshot withVersion(long newVersion) {
+        return newVersion == version ? this : new GallerySnapshot(this, newVersion);
+    }
+
+    public int indexOfHuella(int huellaId) {
+        for (int i = 0; i < huellaIds.length; i++) {
+            if (huellaIds[i] == huellaId) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Posiciones en la galería de los templates del empleado indicado (vacío si no tiene).
+     */
+    public int[] getIndicesOfEmpleado(int empleadoId) {
+        Map<Integer, int[]> index = empleadoIndex;
+        if (index == null) {
+            index = buildEmpleadoIndex();
+            empleadoIndex = index; // Carrera benigna: cualquier hilo construye el mismo índice
+        }
+        return index.getOrDefault(empleadoId, NO_INDICES);
+    }
+
+    /**
+     * Máximo de templates de un mismo empleado en la galería (al menos 1). Lo usa el ranking top-k por empleado
+     * para saber cuántos templates pedir al comparador.
+     */
+    public int getMaxTemplatesPerEmpleado() {
+        int max = maxPerEmpleado;
+        if (max == 0) {
+            getIndicesOfEmpleado(0); // Construye el índice si hace falta
+            max = 1;
+            for (int[] indices : empleadoIndex.values()) {
+                max = Math.max(max, indices.length);
+            }
+            maxPerEmpleado = max; // Carrera benigna, igual que los índices
+        }
+        return max;
+    }
+
+    private Map<Integer, int[]> buildEmpleadoIndex() {
+        Map<Integer, int[]> index = new HashMap<>();
+        for (int i = 0; i < empleadoIds.length; i++) {
+            int[] current = index.get(empleadoIds[i]);
+            int[] updated = current == null ? new int[1] : Arrays.copyOf(current, current.length + 1);
+            updated[updated.length - 1] = i;
+            index.put(empleadoIds[i], updated);
+        }
+        return index;
+    }
+
+    /**
+     * Templates agrupados por clave de bin (ver {@link TemplateBins}).
+     */
+    public Collection<Bin> getBins() {
+        Map<Integer, Bin> index = binIndex;
+        if (index == null) {
+            index = buildBinIndex();
+            binIndex = index; // Carrera benigna, igual que el índice por empleado
+        }
+        return index.values();
+    }
+
+    private Map<Integer, Bin> buildBinIndex() {
+        Map<Integer, int[]> positions = new HashMap<>();
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (int i = 0; i < binKeys.length; i++) {
+            int count = counts.merge(binKeys[i], 1, Integer::sum);
+            int[] current = positions.computeIfAbsent(binKeys[i], k -> new int[8]);
+            if (count > current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                positions.put(binKeys[i], current);
+            }
+            current[count - 1] = i;
+        }
+        Map<Integer, Bin> index = new HashMap<>();
+        positions.forEach((key, binPositions) -> {
+            int[] trimmed = Arrays.copyOf(binPositions, counts.get(key));
+            Fmd[] binFmds = new Fmd[trimmed.length];
+            for (int j = 0; j < trimmed.length; j++) {
+                binFmds[j] = fmds[trimmed[j]];
+            }
+            index.put(key, new Bin(key, binFmds, trimmed));
+        });
+        return index;
+    }
+
+    // Mantenimiento incremental de los índices: cada operación copia solo la entrada (empleado o bin) que cambia
+
+    private static void addPosition(Map<Integer, int[]> index, int key, int position) {
+        int[] current = index.getOrDefault(key, NO_INDICES);
+        int[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = position;
+        index.put(key, updated);
+    }
+
+    private static void removePosition(Map<Integer, int[]> index, int key, int position) {
+        int[] current = index.get(key);
+        int at = indexOf(current, position);
+        if (at < 0) {
+            return;
+        }
+        if (current.length == 1) {
+            index.remove(key);
+            return;
+        }
+        int[] updated = new int[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, at);
+        System.arraycopy(current, at + 1, updated, at, current.length - at - 1);
+        index.put(key, updated);
+    }
+
+    private static void addToBin(Map<Integer, Bin> index, int key, Fmd fmd, int position) {
+        Bin current = index.get(key);
+        int size = current == null ? 0 : current.size();
+        Fmd[] binFmds = current == null ? new Fmd[1] : Arrays.copyOf(current.fmds, size + 1);
+        int[] binPositions = current == null ? new int[1] : Arrays.copyOf(current.positions, size + 1);
+        binFmds[size] = fmd;
+        binPositions[size] = position;
+        index.put(key, new Bin(key, binFmds, binPositions));
+    }
+
+    private static void removeFromBin(Map<Integer, Bin> index, int key, int position) {
+        Bin current = index.get(key);
+        int at = current == null ? -1 : indexOf(current.positions, position);
+        if (at < 0) {
+            return;
+        }
+        int size = current.size();
+        if (size == 1) {
+            index.remove(key);
+            return;
+        }
+        Fmd[] binFmds = new Fmd[size - 1];
+        int[] binPositions = new int[size - 1];
+        System.arraycopy(current.fmds, 0, binFmds, 0, at);
+        System.arraycopy(current.fmds, at + 1, binFmds, at, size - at - 1);
+        System.arraycopy(current.positions, 0, binPositions, 0, at);
+        System.arraycopy(current.positions, at + 1, binPositions, at, size - at - 1);
+        index.put(key, new Bin(key, binFmds, binPositions));
+    }
+
+    private static int indexOf(int[] values, int value) {
+        if (values == null) {
+            return -1;
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) return i;
+        }
+        return -1;
+    }
+
+    public long getVersion() { return version; }
+    public int size() { return fmds.length; }
+    public boolean isEmpty() { return fmds.length == 0; }
+    public Fmd getFmd(int index) { return fmds[index]; }
+    public int getEmpleadoId(int index) { return empleadoIds[index]; }
+    public int getHuellaId(int index) { return huellaIds[index]; }
+    public int getBinKey(int index) { return binKeys[index]; }
+
+    public int getShardCount() { return shards.length; }
+    public Fmd[] getShard(int shard) { return shards[shard]; }
+    public int getShardOffset(int shard) { return shardOffsets[shard]; }
+}
@@ -0,0 +1,512 @@
+package com.example.fingerprint_api.service;
+
+import com.example.fingerprint_api.repository.HuellaHighWaterMark;
+import com.example.fingerprint_api.repository.HuellaRepository;
+import com.example.fingerprint_api.repository.HuellaTemplateProjection;
+import com.example.fingerprint_api.repository.HuellaVersionProjection;
+import com.example.fingerprint_api.util.CryptoUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copia local, encriptada y versionada de la galería, para arrancar sin leer todos los BLOBs de MySQL.
+ *
+ * El archivo tiene un encabezado en claro (formato, estatus activos, número de templates, marca de agua
+ * de updatedAt e IV) y un cuerpo AES-256/GCM con los templates desencriptados (huellaId, empleadoId, bytes).
+ * El encabezado va como AAD del cuerpo, así que la etiqueta GCM detecta cualquier cambio en el archivo,
+ * no solo en el cuerpo. Las altas y bajas confirmadas se agregan a un registro de cambios (mismo nombre + ".log"),
+ * una entrada AES/GCM por cambio, y el archivo se reescribe completo tras una carga desde la BD o cuando el
+ * registro crece.
+ *
+ * Al arrancar se lee el archivo (mapeado, para no copiar los datos cifrados al heap) y se descifra el cuerpo
+ * completo en el heap: GCM solo entrega los datos tras verificar la etiqueta, y de todos modos cada template
+ * termina importado por el motor. Luego se aplica el registro y se valida contra la marca de agua de la BD
+ * (id máximo, total y updatedAt máximo): si coincide no se lee nada más; si no, se comparan los ids y fechas de
+ * las huellas (sin BLOBs) y solo se traen las filas nuevas o modificadas. La BD sigue siendo la fuente de verdad:
+ * un cambio que no llegó al archivo se detecta en esta validación.
+ */
+@Component
+public class GallerySnapshotFile {
+
+    private static final Logger logger = LoggerFactory.getLogger(GallerySnapshotFile.class);
+
+    private static final int MAGIC = 0x46504753; // "FPGS"
+    private static final int FORMAT_VERSION = 2;
+    // magic, formato, clave de estatus, templates, marca de agua, IV (todo esto es el AAD), longitud del cuerpo
+    private static final int IV_SIZE = CryptoUtils.GCM_IV_SIZE;
+    private static final int AAD_SIZE = 4 + 4 + 4 + 4 + 8 + IV_SIZE;
+    private static final int HEADER_SIZE = AAD_SIZE + 4;
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_REMOVE_EMPLEADO = 3;
+
+    // MySQL redondea DATETIME al segundo: una fecha tomada en memoria puede quedar hasta 1 s por debajo de la de la BD
+    private static final long UPDATED_AT_TOLERANCE_SECONDS = 1;
+    // Ids por consulta al traer las filas modificadas
+    private static final int FETCH_BATCH = 500;
+
+    @Autowired
+    private HuellaRepository huellaRepository;
+    @Autowired
+    private GalleryLoader galleryLoader;
+    @Autowired
+    private GalleryPartition partition;
+
+    @Value("${fingerprint.gallery.snapshot.enabled:false}")
+    private boolean enabled;
+
+    @Value("${fingerprint.gallery.snapshot.path:data/gallery.snap}")
+    private String path;
+
+    // Los mismos estatus que filtran la galería; si cambian, el archivo deja de ser válido
+    @Value("${fingerprint.gallery.active-estatus-ids:1}")
+    private Set<Integer> activeEstatusIds;
+
+    // Entradas del registro de cambios a partir de las cuales se reescribe el archivo completo
+    @Value("${fingerprint.gallery.snapshot.compact-after:1000}")
+    private int compactAfter;
+
+    private Path snapshotPath;
+    private Path logPath;
+    private ExecutorService writer;
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+    private final SecureRandom random = new SecureRandom();
+
+    private final Object fileLock = new Object();
+    private FileChannel logChannel;  // Protegido por fileLock
+    private int logEntries;          // Protegido por fileLock
+    private long watermark;          // updatedAt máximo conocido, en segundos; protegido por fileLock
+    private volatile boolean rewriteNeeded;
+
+    /**
+     * Marca de agua de la tabla de huellas en un momento dado.
+     */
+    public static final class HighWaterMark {
+        final int maxId;
+        final long count;
+        final long updatedAtSeconds;
+
+        HighWaterMark(int maxId, long count, long updatedAtSeconds) {
+            this.maxId = maxId;
+            this.count = count;
+            this.updatedAtSeconds = updatedAtSeconds;
+        }
+    }
+
+    // Template guardado en el archivo
+    private static final class Record {
+        final int empleadoId;
+        final byte[] template;
+
+        Record(int empleadoId, byte[] template) {
+            this.empleadoId = empleadoId;
+            this.template = template;
+        }
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        snapshotPath = Paths.get(path).toAbsolutePath();
+        logPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".log");
+        Files.createDirectories(snapshotPath.getParent());
+        writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "gallery-snapshot-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        logger.info("Archivo local de galería: {}", snapshotPath);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (writer != null) {
+            writer.shutdown();
+            writer.awaitTermination(30, TimeUnit.SECONDS); // Terminar una escritura en curso
+        }
+        synchronized (fileLock) {
+            closeLog();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Si el archivo restaurado tuvo que completarse con la BD o con el registro de cambios.
+     */
+    public boolean isRewriteNeeded() {
+        return rewriteNeeded;
+    }
+
+    public boolean isCompactionDue() {
+        synchronized (fileLock) {
+            return enabled && logEntries >= compactAfter;
+        }
+    }
+
+    public HighWaterMark readHighWaterMark() {
+        HuellaHighWaterMark mark = filterByEstatus()
+                ? huellaRepository.findHighWaterMarkByEstatus(activeEstatusIds)
+                : huellaRepository.findHighWaterMark();
+        return new HighWaterMark(mark.getMaxId() == null ? 0 : mark.getMaxId(),
+                mark.getCount() == null ? 0 : mark.getCount(), seconds(mark.getMaxUpdatedAt()));
+    }
+
+    /**
+     * Restaura la galería desde el archivo local, completándola con la BD.
+     *
+     * @return La galería restaurada, o null si no hay archivo utilizable (hay que cargar desde la BD).
+     */
+    public GallerySnapshot restore(long version, int maxShards, int minShardSize, HighWaterMark mark) {
+        if (!enabled || !Files.exists(snapshotPath)) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            Map<Integer, Record> records = new LinkedHashMap<>();
+            long fileWatermark = readSnapshot(records);
+            if (fileWatermark < 0) {
+                return null;
+            }
+            long[] logWatermark = {fileWatermark};
+            int replayed = replayLog(records, logWatermark);
+            fileWatermark = logWatermark[0];
+
+            int maxId = records.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+            boolean upToDate = mark.maxId == maxId && mark.count == records.size()
+                    && mark.updatedAtSeconds <= fileWatermark + UPDATED_AT_TOLERANCE_SECONDS;
+            int fetched = 0;
+            int dropped = 0;
+            if (!upToDate) {
+                int before = records.size();
+                fetched = syncWithDatabase(records, fileWatermark);
+                dropped = before + fetched - records.size();
+            }
+
+            int n = records.size();
+            int[] huellaIds = new int[n];
+            int[] empleadoIds = new int[n];
+            byte[][] templates = new byte[n][];
+            int i = 0;
+            for (Map.Entry<Integer, Record> entry : records.entrySet()) {
+                huellaIds[i] = entry.getKey();
+                empleadoIds[i] = entry.getValue().empleadoId;
+                templates[i] = entry.getValue().template;
+                i++;
+            }
+            GallerySnapshot restored = galleryLoader.importTemplates(huellaIds, empleadoIds, templates,
+                    version, maxShards, minShardSize);
+            synchronized (fileLock) {
+                watermark = Math.max(watermark, Math.max(fileWatermark, mark.updatedAtSeconds));
+            }
+            rewriteNeeded = replayed > 0 || !upToDate;
+            logger.info("Galería restaurada del archivo local en {} ms: {} templates, {} cambios del registro, "
+                            + "{} filas traídas de la BD, {} descartadas{}.",
+                    System.currentTimeMillis() - start, restored.size(), replayed, fetched, dropped,
+                    upToDate ? " (al día con la BD)" : "");
+            return restored;
+        } catch (Exception e) {
+            logger.warn("No se pudo usar el archivo local de galería ({}); se carga desde la BD.", e.getMessage());
+            return null;
+        }
+    }
+
+    // Lee el archivo mapeado y descifra el cuerpo en el heap. Devuelve su marca de agua, o -1 si no es utilizable
+    private long readSnapshot(Map<Integer, Record> records) throws Exception {
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer aad = map.duplicate().limit(Math.min(AAD_SIZE, map.limit()));
+            if (map.remaining() < HEADER_SIZE || map.getInt() != MAGIC || map.getInt() != FORMAT_VERSION) {
+                logger.warn("El archivo local de galería {} no tiene un formato reconocido.", snapshotPath);
+                return -1;
+            }
+            if (map.getInt() != estatusKey()) {
+                logger.info("Cambiaron los estatus activos o la partición desde que se escribió el archivo local de galería.");
+                return -1;
+            }
+            int count = map.getInt();
+            long fileWatermark = map.getLong();
+            byte[] iv = new byte[IV_SIZE];
+            map.get(iv);
+            int bodyLength = map.getInt();
+            if (map.remaining() != bodyLength) {
+                logger.warn("El archivo local de galería está truncado.");
+                return -1;
+            }
+
+            Cipher cipher = CryptoUtils.authenticatedCipher(Cipher.DECRYPT_MODE, iv);
+            cipher.updateAAD(aad);
+            ByteBuffer body = ByteBuffer.allocate(cipher.getOutputSize(bodyLength));
+            try {
+                cipher.doFinal(map, body);
+            } catch (AEADBadTagException e) {
+                logger.warn("El archivo local de galería no pasó la verificación de integridad.");
+                return -1;
+            }
+            body.flip();
+            for (int i = 0; i < count; i++) {
+                int huellaId = body.getInt();
+                int empleadoId = body.getInt();
+                byte[] template = new byte[body.getInt()];
+                body.get(template);
+                records.put(huellaId, new Record(empleadoId, template));
+            }
+            return fileWatermark;
+        }
+    }
+
+    // Aplica el registro de cambios; una entrada incompleta o ilegible al final (escritura interrumpida) lo termina
+    private int replayLog(Map<Integer, Record> records, long[] logWatermark) throws IOException {
+        byte[] log;
+        synchronized (fileLock) {
+            if (!Files.exists(logPath)) return 0;
+            log = Files.readAllBytes(logPath);
+        }
+        ByteBuffer buf = ByteBuffer.wrap(log);
+        int applied = 0;
+        while (buf.remaining() >= 4) {
+            int length = buf.getInt();
+            if (length <= 0 || length > buf.remaining()) break;
+            byte[] encrypted = new byte[length];
+            buf.get(encrypted);
+            ByteBuffer entry;
+            try {
+                entry = ByteBuffer.wrap(CryptoUtils.decryptAuthenticated(encrypted));
+            } catch (Exception e) {
+                logger.warn("Entrada ilegible en el registro de cambios de la galería; se ignora el resto.");
+                break;
+            }
+            byte op = entry.get();
+            int huellaId = entry.getInt();
+            int empleadoId = entry.getInt();
+            long updatedAt = entry.getLong();
+            if (op == OP_ADD) {
+                byte[] template = new byte[entry.getInt()];
+                entry.get(template);
+                records.put(huellaId, new Record(empleadoId, template));
+                logWatermark[0] = Math.max(logWatermark[0], updatedAt);
+            } else if (op == OP_REMOVE) {
+                records.remove(huellaId);
+            } else if (op == OP_REMOVE_EMPLEADO) {
+                records.values().removeIf(r -> r.empleadoId == empleadoId);
+            }
+            applied++;
+        }
+        synchronized (fileLock) {
+            logEntries = applied;
+        }
+        return applied;
+    }
+
+    // Compara ids, empleado y updatedAt de la BD con el archivo y trae solo las filas nuevas o modificadas
+    private int syncWithDatabase(Map<Integer, Record> records, long fileWatermark) throws Exception {
+        List<HuellaVersionProjection> versions = filterByEstatus()
+                ? huellaRepository.findTemplateVersionsByEstatus(activeEstatusIds)
+                : huellaRepository.findTemplateVersions();
+        Set<Integer> live = new HashSet<>(versions.size() * 2);
+        List<Integer> changed = new ArrayList<>();
+        for (HuellaVersionProjection v : versions) {
+            if (v.getEmpleadoId() == null || !partition.owns(v.getEmpleadoId())) continue;
+            live.add(v.getId());
+            Record record = records.get(v.getId());
+            if (record == null || record.empleadoId != v.getEmpleadoId()
+                    || seconds(v.getUpdatedAt()) > fileWatermark + UPDATED_AT_TOLERANCE_SECONDS) {
+                changed.add(v.getId());
+            }
+        }
+        records.keySet().retainAll(live); // Huellas borradas o de empleados que dejaron de estar activos
+
+        int fetched = 0;
+        for (int from = 0; from < changed.size(); from += FETCH_BATCH) {
+            List<Integer> ids = changed.subList(from, Math.min(changed.size(), from + FETCH_BATCH));
+            for (HuellaTemplateProjection row : huellaRepository.findTemplatesByIdIn(ids)) {
+                try {
+                    records.put(row.getId(), new Record(row.getEmpleadoId(), CryptoUtils.decrypt(row.getTemplateFmd())));
+                    fetched++;
+                } catch (Exception e) {
+                    records.remove(row.getId());
+                    logger.error("Error al desencriptar FMD para huella ID {}: {}", row.getId(), e.getMessage());
+                }
+            }
+        }
+        return fetched;
+    }
+
+    /**
+     * Reescribe el archivo completo (en segundo plano) con la galería indicada y vacía el registro de cambios.
+     *
+     * @param mark Marca de agua leída antes de construir la galería, o null para conservar la conocida.
+     */
+    public void save(GallerySnapshot gallery, HighWaterMark mark) {
+        if (!enabled) {
+            return;
+        }
+        if (mark != null) {
+            synchronized (fileLock) {
+                watermark = Math.max(watermark, mark.updatedAtSeconds);
+            }
+        }
+        if (!writeScheduled.compareAndSet(false, true)) {
+            return; // Ya hay una escritura pendiente; lo que falte queda en el registro de cambios
+        }
+        writer.execute(() -> {
+            try {
+                write(gallery);
+            } catch (Exception e) {
+                logger.warn("No se pudo escribir el archivo local de galería: {}", e.getMessage(), e);
+            } finally {
+                writeScheduled.set(false);
+            }
+        });
+    }
+
+    private void write(GallerySnapshot gallery) throws Exception {
+        long start = System.currentTimeMillis();
+        long fileWatermark;
+        synchronized (fileLock) {
+            fileWatermark = watermark;
+        }
+        byte[] iv = new byte[IV_SIZE];
+        random.nextBytes(iv);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(estatusKey()).putInt(gallery.size())
+                .putLong(fileWatermark).put(iv);
+        Cipher cipher = CryptoUtils.authenticatedCipher(Cipher.ENCRYPT_MODE, iv);
+        cipher.updateAAD(header.array(), 0, AAD_SIZE);
+        Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+
+        try (OutputStream file = Files.newOutputStream(tmp)) {
+            file.write(new byte[HEADER_SIZE]); // Se completa al final, con la longitud del cuerpo
+            DataOutputStream out = new DataOutputStream(
+                    new CipherOutputStream(new BufferedOutputStream(file, 1 << 16), cipher));
+            for (int i = 0; i < gallery.size(); i++) {
+                byte[] template = gallery.getFmd(i).getData();
+                out.writeInt(gallery.getHuellaId(i));
+                out.writeInt(gallery.getEmpleadoId(i));
+                out.writeInt(template.length);
+                out.write(template);
+            }
+            out.close(); // Escribe el último bloque cifrado y la etiqueta GCM
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            header.putInt((int) (channel.size() - HEADER_SIZE));
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Los cambios registrados ya están en el archivo; uno que llegue entre la captura de la galería y este
+        // punto se pierde del archivo, pero la validación contra la BD al arrancar lo recupera
+        synchronized (fileLock) {
+            closeLog();
+            Files.deleteIfExists(logPath);
+            logEntries = 0;
+        }
+        rewriteNeeded = false;
+        logger.info("Archivo local de galería escrito: {} templates (versión {}) en {} ms.",
+                gallery.size(), gallery.getVersion(), System.currentTimeMillis() - start);
+    }
+
+    public void appendAdd(int huellaId, int empleadoId, byte[] template, LocalDateTime updatedAt) {
+        append(OP_ADD, huellaId, empleadoId, seconds(updatedAt), template);
+    }
+
+    public void appendRemove(int huellaId) {
+        append(OP_REMOVE, huellaId, 0, 0, null);
+    }
+
+    public void appendRemoveEmpleado(int empleadoId) {
+        append(OP_REMOVE_EMPLEADO, 0, empleadoId, 0, null);
+    }
+
+    private void append(byte op, int huellaId, int empleadoId, long updatedAtSeconds, byte[] template) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            ByteBuffer entry = ByteBuffer.allocate(1 + 4 + 4 + 8 + (template == null ? 0 : 4 + template.length));
+            entry.put(op).putInt(huellaId).putInt(empleadoId).putLong(updatedAtSeconds);
+            if (template != null) {
+                entry.putInt(template.length).put(template);
+            }
+            byte[] encrypted = CryptoUtils.encryptAuthenticated(entry.array());
+            ByteBuffer framed = ByteBuffer.allocate(4 + encrypted.length).putInt(encrypted.length).put(encrypted);
+            framed.flip();
+            synchronized (fileLock) {
+                if (logChannel == null) {
+                    logChannel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.APPEND);
+                }
+                while (framed.hasRemaining()) {
+                    logChannel.write(framed);
+                }
+                logEntries++;
+                watermark = Math.max(watermark, updatedAtSeconds);
+            }
+        } catch (Exception e) {
+            // La BD sigue siendo la fuente de verdad: el cambio se recupera al validar en el próximo arranque
+            logger.warn("No se pudo registrar el cambio en el archivo local de galería: {}", e.getMessage());
+        }
+    }
+
+    private void closeLog() {
+        if (logChannel != null) {
+            try {
+                logChannel.close();
+            } catch (IOException e) {
+                logger.debug("Error al cerrar el registro de cambios de la galería: {}", e.getMessage());
+            }
+            logChannel = null;
+        }
+    }
+
+    // Sin estatus configurados la galería tiene a todos los empleados (igual que en la carga desde la BD)
+    private boolean filterByEstatus() {
+        return activeEstatusIds != null && !activeEstatusIds.isEmpty();
+    }
+
+    // Estatus activos y partición del clúster con los que se escribió el archivo
+    private int estatusKey() {
+        int key = activeEstatusIds == null ? 0 : new TreeSet<>(activeEstatusIds).toString().hashCode();
+        return 31 * key + partition.key();
+    }
+
+    private static long seconds(LocalDateTime dateTime) {
+        return dateTime == null ? 0 : dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+}
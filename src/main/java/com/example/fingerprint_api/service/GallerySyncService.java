@@ -0,0 +1,191 @@
+package com.example.fingerprint_api.service;
+
+import com.example.fingerprint_api.model.HuellaCambio;
+import com.example.fingerprint_api.repository.HuellaCambioRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sincronización incremental de la galería entre instancias de la API.
+ * Cada pocos segundos lee el feed de cambios ({@link HuellaCambio}) posterior a su marca de agua y aplica
+ * a la galería local las altas, bajas y cambios de estatus que originaron las demás instancias, sin recarga completa.
+ * <p>
+ * Los ids del outbox se asignan al insertar pero las transacciones pueden confirmarse en otro orden, así que
+ * un id menor puede aparecer después de uno mayor. Los cambios se aplican en cuanto son visibles; la marca de agua
+ * solo avanza sobre ids consecutivos y un hueco (transacción en curso o revertida) se da por perdido tras
+ * {@code gap-timeout-ms}. Aplicar un cambio dos veces no tiene efecto, así que releer es seguro.
+ */
+@Service
+public class GallerySyncService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GallerySyncService.class);
+
+    @Autowired
+    private HuellaCambioRepository cambioRepository;
+    @Autowired
+    private HuellaChangeOutbox changeOutbox;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private GalleryPartition partition;
+
+    @Value("${fingerprint.sync.batch-size:500}")
+    private int batchSize;
+
+    @Value("${fingerprint.sync.gap-timeout-ms:30000}")
+    private long gapTimeoutMs;
+
+    @Value("${fingerprint.sync.retention-hours:72}")
+    private long retentionHours;
+
+    // Todo id <= watermark ya se aplicó (o se dio por perdido). -1 = aún sin inicializar
+    private long watermark = -1;                                         // Protegido por this
+    // Ids > watermark ya aplicados -> instante (ms) en que se vieron; detrás de ellos hay un hueco
+    private final TreeMap<Long, Long> appliedAhead = new TreeMap<>();   // Protegido por this
+
+    private long applied;            // Protegido por this
+    private long ownSkipped;         // Protegido por this
+    private long lostIds;            // Protegido por this
+    private long lastLagMs = -1;     // Protegido por this
+    private LocalDateTime lastPollAt; // Protegido por this
+
+    @PostConstruct
+    public void init() {
+        if (changeOutbox.isEnabled()) {
+            logger.info("Sincronización de galería entre instancias activa (nodo {}).", changeOutbox.getNodeId());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${fingerprint.sync.poll-ms:2000}", initialDelayString = "${fingerprint.sync.poll-ms:2000}")
+    public void scheduledPoll() {
+        // Mientras la galería se carga los cambios esperan en la tabla; la marca de agua no avanza
+        if (!changeOutbox.isEnabled() || userService.getReadiness() != GalleryReadiness.READY) {
+            return;
+        }
+        try {
+            poll();
+        } catch (Exception e) {
+            logger.error("Error al sincronizar la galería con el feed de cambios: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Lee y aplica los cambios pendientes.
+     *
+     * @return Número de cambios aplicados en esta pasada.
+     */
+    public synchronized int poll() {
+        if (watermark < 0) {
+            // Empieza donde terminó la carga inicial (id leído antes de cargar); sin ella aún no hay nada que aplicar
+            long start = changeOutbox.getStartWatermark();
+            if (start < 0) {
+                return 0;
+            }
+            watermark = start;
+            logger.info("Feed de cambios de galería: se aplican los cambios posteriores al id {}.", watermark);
+        }
+        long now = System.currentTimeMillis();
+        int appliedNow = 0;
+        long afterId = watermark;
+        List<HuellaCambio> page;
+        do {
+            page = cambioRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, batchSize));
+            for (HuellaCambio cambio : page) {
+                afterId = cambio.getId();
+                if (appliedAhead.containsKey(cambio.getId())) {
+                    continue;
+                }
+                if (apply(cambio)) {
+                    appliedNow++;
+                }
+                appliedAhead.put(cambio.getId(), now);
+            }
+        } while (page.size() == batchSize);
+        advanceWatermark(now);
+        lastPollAt = LocalDateTime.now();
+        return appliedNow;
+    }
+
+    // Avanza la marca de agua sobre los ids consecutivos ya aplicados y salta los huecos vencidos
+    private void advanceWatermark(long now) {
+        while (!appliedAhead.isEmpty()) {
+            Map.Entry<Long, Long> first = appliedAhead.firstEntry();
+            long next = first.getKey();
+            if (next != watermark + 1) {
+                // El hueco (watermark, next) existe al menos desde que se vio next
+                if (now - first.getValue() < gapTimeoutMs) {
+                    return;
+                }
+                lostIds += next - watermark - 1;
+                logger.warn("Feed de cambios de galería: ids {}..{} no aparecieron en {} ms; se dan por perdidos.",
+                        watermark + 1, next - 1, gapTimeoutMs);
+            }
+            watermark = next;
+            appliedAhead.pollFirstEntry();
+        }
+    }
+
+    private boolean apply(HuellaCambio cambio) {
+        if (changeOutbox.getNodeId().equals(cambio.getNodo())) {
+            ownSkipped++; // Esta instancia ya lo aplicó al hacer el cambio
+            return false;
+        }
+        if (!partition.owns(cambio.getEmpleadoId())) {
+            return false; // Empleado de otra partición del clúster
+        }
+        switch (cambio.getTipo()) {
+            case ALTA -> userService.applyHuellaAlta(cambio.getHuellaId());
+            case BAJA -> userService.removeFmdDataFromMemory(cambio.getHuellaId());
+            // El estatus del cambio puede llegar fuera del orden de confirmación: se usa el vigente en la BD
+            case ESTATUS -> userService.applyEmpleadoEstatusFromDb(cambio.getEmpleadoId());
+        }
+        applied++;
+        if (cambio.getCreatedAt() != null) {
+            lastLagMs = Math.max(0, Duration.between(cambio.getCreatedAt(), LocalDateTime.now()).toMillis());
+        }
+        return true;
+    }
+
+    /**
+     * Borra los cambios que todas las instancias ya aplicaron (más antiguos que retention-hours).
+     */
+    @Scheduled(cron = "${fingerprint.sync.cleanup-cron:0 30 3 * * *}")
+    public void cleanup() {
+        if (!changeOutbox.isEnabled()) {
+            return;
+        }
+        try {
+            int deleted = cambioRepository.deleteCreatedBefore(LocalDateTime.now().minusHours(retentionHours));
+            logger.info("Feed de cambios de galería: {} cambios antiguos eliminados.", deleted);
+        } catch (Exception e) {
+            logger.error("Error al limpiar el feed de cambios de galería: {}", e.getMessage(), e);
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", changeOutbox.isEnabled());
+        stats.put("nodeId", changeOutbox.getNodeId());
+        stats.put("watermark", watermark);
+        stats.put("appliedAhead", appliedAhead.size());
+        stats.put("applied", applied);
+        stats.put("ownSkipped", ownSkipped);
+        stats.put("lostIds", lostIds);
+        stats.put("lastLagMs", lastLagMs);
+        stats.put("lastPollAt", lastPollAt == null ? null : lastPollAt.toString());
+        return stats;
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fmd;
+import com.digitalpersona.uareu.UareUException;
+import com.example.fingerprint_api.engine.FeatureExtractor;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dónde vive cada template de la galería:
+ * HEAP guarda el objeto que devuelve el motor (listo para comparar); OFF_HEAP guarda solo los bytes
+ * ANSI 378 en memoria directa ({@link OffHeapTemplateStore}) y construye la entrada del comparador
+ * bajo demanda. OFF_HEAP cambia memoria de heap (y trabajo del GC) por CPU al identificar.
+ * <p>
+ * Para no importar cada template en cada búsqueda, la entrada importada de cada template se guarda en una caché
+ * LRU por template ({@link StoredFmd} por identidad), así que sobrevive a las copias de shards, bins y particiones
+ * de cada versión nueva de la galería: un alta solo importa su propio template. El límite es una fracción del
+ * tamaño de la galería publicada; los templates dados de baja dejan de usarse y son los primeros en salir.
+ * La parte en caché vuelve a ocupar heap; con la caché en 0 cada búsqueda importa todo otra vez
+ * (aceptable para procesos por lotes, no para el checador).
+ */
+@Component
+public class GalleryTemplateStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(GalleryTemplateStorage.class);
+
+    public enum StorageMode {
+        HEAP,
+        OFF_HEAP
+    }
+
+    // Heap por template además del objeto: referencia en fmds + empleadoId + huellaId + clave de bin (oops comprimidos)
+    private static final int SNAPSHOT_SLOT_BYTES = 16;
+    // Tamaño de un StoredFmd: encabezado de objeto + referencia + 2 int
+    private static final int STORED_FMD_BYTES = 24;
+    // Entrada de la caché de importación (LinkedHashMap con orden de acceso) además del objeto importado
+    private static final int IMPORT_CACHE_ENTRY_BYTES = 40;
+    // Templates que se miden para estimar el tamaño promedio
+    private static final int FOOTPRINT_SAMPLE = 1000;
+
+    @Autowired
+    private FeatureExtractor featureExtractor;
+
+    @Value("${fingerprint.gallery.storage:HEAP}")
+    private StorageMode mode;
+
+    @Value("${fingerprint.gallery.offheap.segment-mb:16}")
+    private int segmentMb;
+
+    // Templates importados que se conservan entre búsquedas, como fracción de la galería publicada (0 desactiva la caché)
+    @Value("${fingerprint.gallery.offheap.import-cache-ratio:1.0}")
+    private double importCacheRatio;
+
+    // Template de la galería (por identidad) -> entrada ya importada, en orden de uso
+    private final LinkedHashMap<StoredFmd, Fmd> importCache = new LinkedHashMap<>(16, 0.75f, true);
+    private int importCacheLimit;
+    private final LongAdder importCacheHits = new LongAdder();
+    private final LongAdder importCacheMisses = new LongAdder();
+    private final LongAdder importedTemplates = new LongAdder();
+
+    // Arena de la última carga completa; las altas posteriores se añaden aquí
+    private volatile OffHeapTemplateStore current;
+
+    @PostConstruct
+    public void init() {
+        logger.info("Almacenamiento de templates de la galería: {}.", mode);
+    }
+
+    public boolean isOffHeap() {
+        return mode == StorageMode.OFF_HEAP;
+    }
+
+    /**
+     * Arena nueva para una carga completa (null en modo HEAP). Se vuelve la actual con {@link #publish}.
+     */
+    public OffHeapTemplateStore newStore() {
+        return isOffHeap() ? new OffHeapTemplateStore(segmentMb * 1024 * 1024) : null;
+    }
+
+    public void publish(OffHeapTemplateStore store) {
+        if (store != null) {
+            current = store;
+        }
+    }
+
+    /**
+     * Lo que se guarda en la galería para un template ya importado (y validado) por el motor.
+     *
+     * @param store Arena de destino; null usa la actual.
+     */
+    public Fmd toGalleryFmd(Fmd imported, byte[] data, OffHeapTemplateStore store) {
+        if (!isOffHeap()) {
+            return imported;
+        }
+        if (store == null) {
+            store = currentStore();
+        }
+        return store.put(data);
+    }
+
+    private synchronized OffHeapTemplateStore currentStore() {
+        if (current == null) {
+            current = newStore();
+        }
+        return current;
+    }
+
+    /**
+     * Ajusta el límite de la caché de importación al tamaño de la galería publicada y descarta lo que sobre
+     * (primero los templates que ya no se buscan).
+     */
+    public void onGalleryPublished(GallerySnapshot snapshot) {
+        if (!isOffHeap()) {
+            return;
+        }
+        synchronized (importCache) {
+            importCacheLimit = (int) Math.min(Integer.MAX_VALUE, Math.ceil(snapshot.size() * Math.max(0, importCacheRatio)));
+            evictOverLimit();
+        }
+    }
+
+    /**
+     * Entrada para el comparador de un arreglo de la galería (shard, bin, partición): importa los templates
+     * guardados fuera del heap y deja el resto igual. Cada template importado se guarda en caché por su identidad,
+     * así que un arreglo nuevo con los mismos templates (otra versión de la galería) no vuelve a importarlos.
+     * Devuelve el mismo arreglo si no hay nada que importar.
+     */
+    public Fmd[] matcherInputs(Fmd[] templates) throws UareUException {
+        return matcherInputs(templates, true);
+    }
+
+    /**
+     * Igual que {@link #matcherInputs(Fmd[])}; con {@code cached} en false no usa la caché (arreglos de un solo uso,
+     * como los bloques de la auditoría de duplicados).
+     */
+    public Fmd[] matcherInputs(Fmd[] templates, boolean cached) throws UareUException {
+        if (!isOffHeap()) {
+            return templates;
+        }
+        Fmd[] inputs = null;
+        int[] missing = null;
+        int missingCount = 0;
+        boolean cacheable = cached && importCacheRatio > 0;
+        synchronized (importCache) {
+            for (int i = 0; i < templates.length; i++) {
+                if (!(templates[i] instanceof StoredFmd)) {
+                    continue;
+                }
+                if (inputs == null) {
+                    inputs = templates.clone();
+                }
+                Fmd hit = cacheable ? importCache.get(templates[i]) : null;
+                if (hit != null) {
+                    inputs[i] = hit;
+                    continue;
+                }
+                if (missing == null) {
+                    missing = new int[templates.length - i];
+                }
+                missing[missingCount++] = i;
+            }
+        }
+        if (inputs == null) {
+            return templates;
+        }
+        if (cacheable) {
+            importCacheHits.add(templates.length - missingCount);
+            importCacheMisses.add(missingCount);
+        }
+        // Importación fuera del candado: dos búsquedas simultáneas pueden importar el mismo template (benigno)
+        for (int m = 0; m < missingCount; m++) {
+            inputs[missing[m]] = featureExtractor.importFmd(templates[missing[m]].getData());
+        }
+        importedTemplates.add(missingCount);
+        if (cacheable && missingCount > 0) {
+            synchronized (importCache) {
+                for (int m = 0; m < missingCount; m++) {
+                    importCache.put((StoredFmd) templates[missing[m]], inputs[missing[m]]);
+                }
+                evictOverLimit();
+            }
+        }
+        return inputs;
+    }
+
+    // Llamar con el candado de la caché tomado
+    private void evictOverLimit() {
+        Iterator<StoredFmd> eldest = importCache.keySet().iterator();
+        while (importCache.size() > importCacheLimit && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Huella de memoria por template de la galería indicada. En heap se estima con el tamaño del registro
+     * serializado (cota inferior: el objeto del motor guarda al menos esos bytes); fuera del heap es exacta.
+     */
+    public Map<String, Object> getStats(GallerySnapshot snapshot) {
+        int size = snapshot.size();
+        int step = Math.max(1, size / FOOTPRINT_SAMPLE);
+        long sampledBytes = 0;
+        int sampled = 0;
+        for (int i = 0; i < size; i += step) {
+            Fmd fmd = snapshot.getFmd(i);
+            sampledBytes += fmd instanceof StoredFmd ? ((StoredFmd) fmd).getLength() : fmd.getData().length;
+            sampled++;
+        }
+        long templateBytes = sampled == 0 ? 0 : sampledBytes / sampled;
+        int cachedImports;
+        synchronized (importCache) {
+            cachedImports = importCache.size();
+        }
+        // Las entradas importadas en caché vuelven a ocupar heap: se reparten entre los templates de la galería
+        long importCacheBytes = cachedImports * (templateBytes + IMPORT_CACHE_ENTRY_BYTES);
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", mode);
+        stats.put("templates", size);
+        stats.put("templateBytes", templateBytes);
+        stats.put("heapBytesPerTemplate", SNAPSHOT_SLOT_BYTES + (isOffHeap()
+                ? STORED_FMD_BYTES + (size == 0 ? 0 : importCacheBytes / size)
+                : templateBytes));
+        stats.put("offHeapBytesPerTemplate", isOffHeap() ? templateBytes : 0);
+        OffHeapTemplateStore store = current;
+        if (store != null) {
+            stats.put("offHeapAllocatedBytes", store.getAllocatedBytes());
+            stats.put("offHeapUsedBytes", store.getUsedBytes());
+            stats.put("offHeapSegments", store.getSegments());
+        }
+        if (isOffHeap()) {
+            stats.put("importCacheTemplates", cachedImports);
+            stats.put("importCacheHeapBytes", importCacheBytes);
+            stats.put("importCacheRatio", importCacheRatio);
+            synchronized (importCache) {
+                stats.put("importCacheLimit", importCacheLimit);
+            }
+            stats.put("importCacheHits", importCacheHits.sum());
+            stats.put("importCacheMisses", importCacheMisses.sum());
+            stats.put("importedTemplates", importedTemplates.sum());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fmd;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Conjuntos "calientes" por lector: los empleados identificados recientemente en cada lector
+ * (LRU acotado) y sus templates, para una primera búsqueda pequeña antes de recorrer toda la galería.
+ * También lleva las estadísticas de aciertos y latencia de cada nivel.
+ */
+@Component
+public class HotSetRegistry {
+
+    @Value("${fingerprint.identify.hot-set.enabled:true}")
+    private boolean enabled;
+
+    // Empleados recientes que se recuerdan por lector
+    @Value("${fingerprint.identify.hot-set.max-empleados:300}")
+    private int maxEmpleados;
+
+    private final Map<String, HotSet> hotSets = new ConcurrentHashMap<>();
+
+    private final LongAdder hotHits = new LongAdder();
+    private final LongAdder hotMisses = new LongAdder();
+    private final LongAdder hotNanos = new LongAdder();
+    private final LongAdder fullSearches = new LongAdder();
+    private final LongAdder fullNanos = new LongAdder();
+
+    /**
+     * Templates del conjunto caliente ya resueltos contra una versión concreta de la galería.
+     */
+    public static final class View {
+        final long galleryVersion;
+        final Fmd[] fmds;
+        final int[] empleadoIds;
+        final int[] huellaIds;
+
+        View(long galleryVersion, Fmd[] fmds, int[] empleadoIds, int[] huellaIds) {
+            this.galleryVersion = galleryVersion;
+            this.fmds = fmds;
+            this.empleadoIds = empleadoIds;
+            this.huellaIds = huellaIds;
+        }
+
+        public Fmd[] getFmds() { return fmds; }
+        public int getEmpleadoId(int index) { return empleadoIds[index]; }
+        public int getHuellaId(int index) { return huellaIds[index]; }
+    }
+
+    private final class HotSet {
+        // LRU en orden de acceso; protegido por el monitor del HotSet
+        private final LinkedHashMap<Integer, Boolean> recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                if (size() > maxEmpleados) {
+                    cached = null;
+                    return true;
+                }
+                return false;
+            }
+        };
+        private volatile View cached;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Devuelve los templates calientes del lector para la galería indicada, o null si no hay ninguno.
+     */
+    public View view(String key, GallerySnapshot snapshot) {
+        if (!enabled || key == null) return null;
+        HotSet hotSet = hotSets.get(key);
+        if (hotSet == null) return null;
+        View view = hotSet.cached;
+        if (view != null && view.galleryVersion == snapshot.getVersion()) {
+            return view.fmds.length == 0 ? null : view;
+        }
+        synchronized (hotSet) {
+            int total = 0;
+            for (Integer empleadoId : hotSet.recent.keySet()) {
+                total += snapshot.getIndicesOfEmpleado(empleadoId).length;
+            }
+            Fmd[] fmds = new Fmd[total];
+            int[] empleadoIds = new int[total];
+            int[] huellaIds = new int[total];
+            int pos = 0;
+            for (Integer empleadoId : hotSet.recent.keySet()) {
+                for (int index : snapshot.getIndicesOfEmpleado(empleadoId)) {
+                    fmds[pos] = snapshot.getFmd(index);
+                    empleadoIds[pos] = empleadoId;
+                    huellaIds[pos] = snapshot.getHuellaId(index);
+                    pos++;
+                }
+            }
+            view = new View(snapshot.getVersion(), fmds, empleadoIds, huellaIds);
+            hotSet.cached = view;
+        }
+        return view.fmds.length == 0 ? null : view;
+    }
+
+    /**
+     * Registra que el empleado fue identificado en el lector (lo añade o lo refresca en su LRU).
+     */
+    public void recordMatch(String key, int empleadoId) {
+        if (!enabled || key == null) return;
+        HotSet hotSet = hotSets.computeIfAbsent(key, k -> new HotSet());
+        synchronized (hotSet) {
+            if (hotSet.recent.put(empleadoId, Boolean.TRUE) == null) {
+                hotSet.cached = null; // Miembro nuevo: reconstruir la vista en la próxima búsqueda
+            }
+        }
+    }
+
+    public void recordHotSearch(boolean hit, long nanos) {
+        (hit ? hotHits : hotMisses).increment();
+        hotNanos.add(nanos);
+    }
+
+    public void recordFullSearch(long nanos) {
+        fullSearches.increment();
+        fullNanos.add(nanos);
+    }
+
+    /**
+     * Estadísticas acumuladas de ambos niveles (latencias promedio en microsegundos).
+     */
+    public Map<String, Object> getStats() {
+        long hits = hotHits.sum();
+        long hotTotal = hits + hotMisses.sum();
+        long full = fullSearches.sum();
+        return Map.of(
+                "enabled", enabled,
+                "readers", hotSets.size(),
+                "hotSearches", hotTotal,
+                "hotHits", hits,
+                "hotHitRate", hotTotal == 0 ? 0.0 : (double) hits / hotTotal,
+                "hotAvgMicros", hotTotal == 0 ? 0 : hotNanos.sum() / hotTotal / 1000,
+                "fullSearches", full,
+                "fullAvgMicros", full == 0 ? 0 : fullNanos.sum() / full / 1000
+        );
+    }
+}
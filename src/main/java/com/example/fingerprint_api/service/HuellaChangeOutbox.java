@@ -0,0 +1,85 @@
+package com.example.fingerprint_api.service;
+
+import com.example.fingerprint_api.model.HuellaCambio;
+import com.example.fingerprint_api.repository.HuellaCambioRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Registra los cambios de la galería en la tabla outbox {@link HuellaCambio}.
+ * Se llama dentro de la transacción del alta/baja, así el cambio y su registro se confirman juntos.
+ */
+@Component
+public class HuellaChangeOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(HuellaChangeOutbox.class);
+
+    @Autowired
+    private HuellaCambioRepository cambioRepository;
+
+    // Requiere la tabla rh_personal_huellas_cambios (src/main/resources/db/rh_personal_huellas_cambios.sql)
+    @Value("${fingerprint.sync.enabled:false}")
+    private boolean enabled;
+
+    // Identificador de esta instancia; por defecto uno aleatorio por arranque
+    private final String nodeId;
+
+    // Último id del feed antes de la carga inicial de la galería (-1 = aún sin leer)
+    private volatile long startWatermark = -1;
+
+    public HuellaChangeOutbox(@Value("${fingerprint.sync.node-id:}") String configuredNodeId) {
+        this.nodeId = configuredNodeId == null || configuredNodeId.isBlank()
+                ? UUID.randomUUID().toString()
+                : configuredNodeId;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Lee el último id del feed antes de que la carga de la galería lea la BD o el archivo local: todo cambio
+     * confirmado hasta ese id ya está en lo que se carga, y {@link GallerySyncService} empieza justo después.
+     * Solo cuenta la primera lectura (una recarga posterior no mueve el inicio).
+     */
+    public void captureStartWatermark() {
+        if (enabled && startWatermark < 0) {
+            startWatermark = cambioRepository.findMaxId();
+            logger.info("Feed de cambios de galería: la carga inicial cubre hasta el id {}.", startWatermark);
+        }
+    }
+
+    public long getStartWatermark() {
+        return startWatermark;
+    }
+
+    public void recordAlta(Integer huellaId, Integer empleadoId) {
+        record(new HuellaCambio(HuellaCambio.Tipo.ALTA, huellaId, empleadoId, null, nodeId));
+    }
+
+    public void recordBaja(Integer huellaId, Integer empleadoId) {
+        record(new HuellaCambio(HuellaCambio.Tipo.BAJA, huellaId, empleadoId, null, nodeId));
+    }
+
+    public void recordEstatus(Integer empleadoId, Integer estatusId) {
+        record(new HuellaCambio(HuellaCambio.Tipo.ESTATUS, null, empleadoId, estatusId, nodeId));
+    }
+
+    private void record(HuellaCambio cambio) {
+        if (!enabled) {
+            return;
+        }
+        cambioRepository.save(cambio);
+        logger.debug("Cambio de galería registrado: {} huella {} empleado {}.",
+                cambio.getTipo(), cambio.getHuellaId(), cambio.getEmpleadoId());
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fmd;
+import com.digitalpersona.uareu.UareUException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Agrupa en micro-lotes las identificaciones que llegan casi al mismo tiempo desde varios lectores
+ * checadores (p. ej. el cambio de turno) y las resuelve juntas: una tarea por shard para todo el lote y la
+ * preparación de cada bloque de la galería compartida. Las comparaciones siguen siendo por huella.
+ * Cada lote se cierra al cumplirse la ventana de espera o al llegar al tamaño máximo.
+ */
+@Component
+public class IdentificationDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdentificationDispatcher.class);
+
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private ClusterIdentificationService clusterService;
+    @Autowired
+    private EmpleadoIdentityCache identityCache;
+
+    @Value("${fingerprint.identify.batch.enabled:true}")
+    private boolean enabled;
+
+    // Tiempo máximo que la primera huella de un lote espera a otras
+    @Value("${fingerprint.identify.batch.window-ms:10}")
+    private long windowMs;
+
+    @Value("${fingerprint.identify.batch.max-size:32}")
+    private int maxSize;
+
+    // Espera máxima del resultado del lote; después el lector busca por su cuenta (despachador detenido o atascado)
+    @Value("${fingerprint.identify.batch.wait-timeout-ms:5000}")
+    private long waitTimeoutMs;
+
+    // Plazo de la identificación de los checadores (0 = sin plazo): al cumplirse se usa lo mejor encontrado
+    @Value("${fingerprint.identify.deadline-ms:0}")
+    private long deadlineMs;
+
+    private IdentificationOptions checadorOptions;
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private Thread dispatcherThread;
+    private volatile boolean running;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    private static final class Request {
+        final Fmd fmd;
+        final String readerName;
+        final IdentificationOptions options;
+        final long startNanos = System.nanoTime(); // El plazo corre desde que llega, incluida la espera del lote
+        final CompletableFuture<IdentificationResult> result = new CompletableFuture<>();
+
+        Request(Fmd fmd, String readerName, IdentificationOptions options) {
+            this.fmd = fmd;
+            this.readerName = readerName;
+            this.options = options;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        checadorOptions = IdentificationOptions.withDeadline(deadlineMs);
+        // En modo clúster un lote viaja entero a las demás particiones, que no aceptan más de MAX_PROBES
+        maxSize = Math.max(1, Math.min(maxSize, IdentificationOptions.MAX_PROBES));
+        if (!enabled) {
+            logger.info("Micro-lotes de identificación deshabilitados; cada lector identifica por separado.");
+            return;
+        }
+        running = true;
+        dispatcherThread = new Thread(this::dispatchLoop, "identify-dispatcher");
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+        logger.info("Micro-lotes de identificación: ventana {} ms, máximo {} huellas por lote.", windowMs, maxSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (dispatcherThread != null) {
+            dispatcherThread.interrupt();
+        }
+        Request pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.cancel(false);
+        }
+    }
+
+    /**
+     * Identifica la huella capturada por un lector, compartiendo la búsqueda con otras huellas que
+     * lleguen dentro de la misma ventana. Bloquea hasta tener el resultado.
+     */
+    public Optional<EmpleadoIdentity> identify(Fmd fmd, String readerName) throws UareUException {
+        IdentificationMatch best = identify(fmd, readerName, checadorOptions).getBest();
+        return best == null ? Optional.empty() : identityCache.get(best.getEmpleadoId());
+    }
+
+    /**
+     * Identificación con candidatos puntuados, umbral y plazo propios. Solo comparte lote con solicitudes
+     * que tengan las mismas opciones.
+     */
+    public IdentificationResult identify(Fmd fmd, String readerName, IdentificationOptions options) throws UareUException {
+        if (!running) {
+            return search(new Fmd[]{fmd}, new String[]{readerName}, options, System.nanoTime())[0];
+        }
+        Request request = new Request(fmd, readerName, options);
+        queue.add(request);
+        // Con plazo, la espera cubre al menos la ventana del lote más el plazo
+        long waitMs = Math.max(waitTimeoutMs, windowMs + options.getDeadlineMs());
+        try {
+            return request.result.get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Si el lote ya terminó entre el timeout y el cancel, se usa su resultado
+            if (!request.result.cancel(false)) {
+                return resultOf(request);
+            }
+            logger.warn("Sin resultado del despachador de lotes tras {} ms (lector {}); se identifica directamente.",
+                    waitMs, readerName);
+            return searchDirectly(request);
+        } catch (CancellationException e) {
+            // Solicitudes pendientes al apagar el despachador
+            logger.debug("Solicitud de identificación cancelada en el despachador (lector {}); se identifica directamente.", readerName);
+            return searchDirectly(request);
+        } catch (InterruptedException e) {
+            request.result.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new UareUException(96075787);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UareUException) {
+                throw (UareUException) e.getCause();
+            }
+            UareUException ex = new UareUException(96075787);
+            ex.initCause(e.getCause());
+            throw ex;
+        }
+    }
+
+    // Resultado de una solicitud que ya terminó
+    private IdentificationResult resultOf(Request request) throws UareUException {
+        try {
+            return request.result.join();
+        } catch (CancellationException e) {
+            return searchDirectly(request);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UareUException) {
+                throw (UareUException) e.getCause();
+            }
+            UareUException ex = new UareUException(96075787);
+            ex.initCause(e.getCause());
+            throw ex;
+        }
+    }
+
+    private IdentificationResult searchDirectly(Request request) throws UareUException {
+        fallbacks.increment();
+        return search(new Fmd[]{request.fmd}, new String[]{request.readerName}, request.options, request.startNanos)[0];
+    }
+
+    /**
+     * Identifica un lote ya armado (p. ej. una solicitud REST con varios templates) sin pasar por la cola.
+     */
+    public IdentificationResult[] identifyBatch(Fmd[] probes, String[] readerNames, IdentificationOptions options) throws UareUException {
+        return search(probes, readerNames, options, System.nanoTime());
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            List<Request> batch = new ArrayList<>(maxSize);
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMs);
+                while (batch.size() < maxSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, maxSize - batch.size());
+                        break;
+                    }
+                    Request next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                batch.forEach(r -> r.result.cancel(false));
+                Thread.currentThread().interrupt();
+                return;
+            }
+            // Las solicitudes cuyo lector ya se rindió no se buscan
+            batch.removeIf(r -> r.result.isDone());
+            Map<IdentificationOptions, List<Request>> byOptions = new LinkedHashMap<>();
+            for (Request request : batch) {
+                byOptions.computeIfAbsent(request.options, o -> new ArrayList<>()).add(request);
+            }
+            byOptions.values().forEach(this::dispatch);
+        }
+    }
+
+    private void dispatch(List<Request> batch) {
+        Fmd[] probes = new Fmd[batch.size()];
+        String[] readers = new String[batch.size()];
+        long startNanos = batch.get(0).startNanos; // La más antigua: el lote respeta el plazo más cercano
+        for (int i = 0; i < batch.size(); i++) {
+            probes[i] = batch.get(i).fmd;
+            readers[i] = batch.get(i).readerName;
+        }
+        batches.increment();
+        requests.add(batch.size());
+        if (batch.size() > 1) {
+            logger.debug("Lote de identificación con {} huellas.", batch.size());
+        }
+        try {
+            IdentificationResult[] results = search(probes, readers, batch.get(0).options, startNanos);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(results[i]);
+            }
+        } catch (Exception e) {
+            logger.error("Error al identificar un lote de {} huellas: {}", batch.size(), e.getMessage());
+            batch.forEach(r -> r.result.completeExceptionally(e));
+        }
+    }
+
+    // En modo clúster la búsqueda abarca todas las particiones
+    private IdentificationResult[] search(Fmd[] probes, String[] readers, IdentificationOptions options,
+                                          long startNanos) throws UareUException {
+        return clusterService.isEnabled()
+                ? clusterService.identifyBatch(probes, readers, options, startNanos)
+                : userService.identifyBatch(probes, readers, options, startNanos);
+    }
+
+    public boolean isEnabled() { return running; }
+    public long getBatches() { return batches.sum(); }
+    public long getRequests() { return requests.sum(); }
+    public int getQueued() { return queue.size(); }
+    public long getFallbacks() { return fallbacks.sum(); }
+}
@@ -0,0 +1,31 @@
+package com.example.fingerprint_api.service;
+
+/**
+ * Candidato de una identificación 1:N: huella de la galería que coincidió y su puntuación de disimilitud
+ * (más baja = más parecida). Permite combinar los resultados de varias particiones.
+ */
+public final class IdentificationMatch {
+
+    private final int empleadoId;
+    private final int huellaId;
+    private final int score;
+
+    public IdentificationMatch(int empleadoId, int huellaId, int score) {
+        this.empleadoId = empleadoId;
+        this.huellaId = huellaId;
+        this.score = score;
+    }
+
+    public int getEmpleadoId() { return empleadoId; }
+    public int getHuellaId() { return huellaId; }
+    public int getScore() { return score; }
+
+    /**
+     * El mejor (menor puntuación) de dos candidatos; cualquiera puede ser null.
+     */
+    public static IdentificationMatch best(IdentificationMatch a, IdentificationMatch b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return b.score < a.score ? b : a;
+    }
+}
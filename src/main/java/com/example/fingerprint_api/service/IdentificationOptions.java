@@ -0,0 +1,95 @@
+package com.example.fingerprint_api.service;
+
+import com.example.fingerprint_api.engine.FingerprintMatcher;
+
+import java.util.Objects;
+
+/**
+ * Parámetros de una identificación 1:N: cuántos candidatos devolver, umbral de disimilitud y plazo.
+ * Con k = 1 se usan todos los atajos (conjunto caliente, bins); con k > 1 se omiten para no truncar el ranking.
+ */
+public final class IdentificationOptions {
+
+    // Umbral por defecto (más bajo = más estricto). FAR 1 en 100k
+    public static final int DEFAULT_THRESHOLD = FingerprintMatcher.PROBABILITY_ONE / 100000;
+
+    public static final int MAX_K = 20;
+
+    // Huellas por solicitud de identificación (API y particiones del clúster); también tope de los micro-lotes
+    public static final int MAX_PROBES = 64;
+
+    private static final IdentificationOptions DEFAULTS = new IdentificationOptions(1, DEFAULT_THRESHOLD, 0);
+
+    private final int k;
+    private final int threshold;
+    private final long deadlineMs;
+
+    /**
+     * @param k          Candidatos a devolver (1..{@link #MAX_K}).
+     * @param threshold  Disimilitud máxima aceptada (0..PROBABILITY_ONE).
+     * @param deadlineMs Plazo de la búsqueda en milisegundos; 0 = sin plazo.
+     */
+    public IdentificationOptions(int k, int threshold, long deadlineMs) {
+        if (k < 1 || k > MAX_K) {
+            throw new IllegalArgumentException("k debe estar entre 1 y " + MAX_K);
+        }
+        if (threshold <= 0 || threshold > FingerprintMatcher.PROBABILITY_ONE) {
+            throw new IllegalArgumentException("El umbral debe estar entre 1 y " + FingerprintMatcher.PROBABILITY_ONE);
+        }
+        if (deadlineMs < 0) {
+            throw new IllegalArgumentException("El plazo no puede ser negativo");
+        }
+        this.k = k;
+        this.threshold = threshold;
+        this.deadlineMs = deadlineMs;
+    }
+
+    public static IdentificationOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Opciones a partir de parámetros opcionales de una solicitud; los null toman el valor por defecto.
+     *
+     * @throws IllegalArgumentException Si algún valor está fuera de rango.
+     */
+    public static IdentificationOptions of(Integer k, Integer threshold, Long deadlineMs) {
+        return new IdentificationOptions(k == null ? 1 : k, threshold == null ? DEFAULT_THRESHOLD : threshold,
+                deadlineMs == null ? 0 : deadlineMs);
+    }
+
+    public static IdentificationOptions withDeadline(long deadlineMs) {
+        return deadlineMs <= 0 ? DEFAULTS : new IdentificationOptions(1, DEFAULT_THRESHOLD, deadlineMs);
+    }
+
+    public int getK() { return k; }
+    public int getThreshold() { return threshold; }
+    public long getDeadlineMs() { return deadlineMs; }
+    public boolean hasDeadline() { return deadlineMs > 0; }
+
+    /**
+     * Instante límite (en la escala de System.nanoTime) para una búsqueda que empezó en {@code startNanos}.
+     */
+    public long deadlineNanos(long startNanos) {
+        return startNanos + deadlineMs * 1_000_000L;
+    }
+
+    // Las solicitudes con las mismas opciones comparten micro-lote
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IdentificationOptions)) return false;
+        IdentificationOptions other = (IdentificationOptions) o;
+        return k == other.k && threshold == other.threshold && deadlineMs == other.deadlineMs;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(k, threshold, deadlineMs);
+    }
+
+    @Override
+    public String toString() {
+        return "IdentificationOptions{k=" + k + ", threshold=" + threshold + ", deadlineMs=" + deadlineMs + "}";
+    }
+}
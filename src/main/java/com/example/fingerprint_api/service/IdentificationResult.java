@@ -0,0 +1,56 @@
+package com.example.fingerprint_api.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resultado de una identificación 1:N: candidatos de menor a mayor disimilitud y si la búsqueda
+ * quedó incompleta (se cumplió el plazo o no respondió alguna partición del clúster).
+ */
+public final class IdentificationResult {
+
+    private static final IdentificationResult EMPTY = new IdentificationResult(Collections.emptyList(), false);
+
+    private final List<IdentificationMatch> candidates;
+    private final boolean partial;
+
+    public IdentificationResult(List<IdentificationMatch> candidates, boolean partial) {
+        this.candidates = Collections.unmodifiableList(candidates);
+        this.partial = partial;
+    }
+
+    public static IdentificationResult empty() {
+        return EMPTY;
+    }
+
+    public List<IdentificationMatch> getCandidates() { return candidates; }
+    public boolean isPartial() { return partial; }
+
+    /**
+     * El mejor candidato, o null si no hubo coincidencias.
+     */
+    public IdentificationMatch getBest() {
+        return candidates.isEmpty() ? null : candidates.get(0);
+    }
+
+    /**
+     * Combina resultados de distintas búsquedas (p. ej. particiones): los k mejores con un solo candidato
+     * por empleado (su huella de menor puntuación), como el ranking de cada búsqueda.
+     */
+    public static IdentificationResult merge(List<IdentificationResult> results, int k, boolean partial) {
+        Map<Integer, IdentificationMatch> byEmpleado = new LinkedHashMap<>();
+        for (IdentificationResult result : results) {
+            partial |= result.partial;
+            for (IdentificationMatch match : result.candidates) {
+                byEmpleado.merge(match.getEmpleadoId(), match, IdentificationMatch::best);
+            }
+        }
+        List<IdentificationMatch> merged = new ArrayList<>(byEmpleado.values());
+        merged.sort(Comparator.comparingInt(IdentificationMatch::getScore));
+        return new IdentificationResult(merged.size() > k ? new ArrayList<>(merged.subList(0, k)) : merged, partial);
+    }
+}
@@ -1,21 +1,22 @@
 package com.example.fingerprint_api.service;
 
 import com.digitalpersona.uareu.*;
+import com.example.fingerprint_api.engine.FeatureExtractor;
 import com.example.fingerprint_api.model.Empleado;
-import com.example.fingerprint_api.util.CaptureThread;
-import com.example.fingerprint_api.util.FingerprintImageUtils;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger; // *** CAMBIO: Importar SLF4J Logger ***
 import org.slf4j.LoggerFactory; // *** CAMBIO: Importar SLF4J LoggerFactory ***
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 // import java.util.logging.Level; // ELIMINAR
 // import java.util.logging.Logger; // ELIMINAR
 
@@ -25,21 +26,57 @@ public class MultiReaderFingerprintService {
     // *** CAMBIO: Usar SLF4J Logger ***
     private static final Logger logger = LoggerFactory.getLogger(MultiReaderFingerprintService.class);
 
-    // --- Variables de instancia (sin cambios) ---
-    private final Map<String, Reader> validReaders = new ConcurrentHashMap<>();
-    private final Map<String, Future<?>> captureTasks = new ConcurrentHashMap<>();
-    private final ExecutorService captureExecutor = Executors.newFixedThreadPool(10);
-    private final Map<String, String> lastFingerprintData = new ConcurrentHashMap<>();
+    private static final String CHECADOR_PREFIX = "checador_";
+
+    // Lectores conocidos (conectados o no), cada uno con su estado y su propio candado
+    private final Map<String, ReaderSlot> slots = new ConcurrentHashMap<>();
+    // Solo serializa los escaneos de lectores entre sí; no bloquea operaciones sobre lectores ya conectados
+    private final Object refreshLock = new Object();
+    // Un hilo por lector en captura (los bucles de Capture son bloqueantes y ocupan su hilo mientras corren).
+    // Sin cola: si se llega al límite la tarea se rechaza en lugar de quedar esperando sin arrancar
+    private ThreadPoolExecutor captureExecutor;
     private final Map<String, EnrollmentSession> enrollmentSessions = new ConcurrentHashMap<>();
-    private final Set<String> inUseReaders = ConcurrentHashMap.newKeySet();
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-    private final Map<String, String> sessionReservations = new ConcurrentHashMap<>();
+
+    /**
+     * Estado de un lector. Las transiciones (y las altas/bajas de su reserva en el registro) se hacen con el
+     * candado del lector; las lecturas (estado, tarea) son volátiles y no lo necesitan.
+     */
+    private static final class ReaderSlot {
+        final String name;
+        final ReentrantLock lock = new ReentrantLock();
+        volatile Reader reader;                          // null mientras está desconectado
+        volatile ReaderState state = ReaderState.DISCONNECTED;
+        volatile Future<?> task;                         // Bucle de captura continua/checador
+        volatile CompletableFuture<Fmd> singleCapture;   // Captura puntual en curso (estado ENROLLING)
+        long generation;                                 // Distingue el bucle vigente de uno ya detenido
+
+        ReaderSlot(String name) { this.name = name; }
+
+        boolean isConnected() {
+            return state != ReaderState.DISCONNECTED;
+        }
+    }
 
     // --- Inyecciones (sin cambios) ---
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
     @Autowired
     private UserService userService;
+    @Autowired
+    private FeatureExtractor featureExtractor;
+    @Autowired
+    private CapturePipeline capturePipeline;
+    @Autowired
+    private ReaderReservationRegistry reservations;
+
+    // Máximo de capturas simultáneas (bucles continuos/checador más capturas puntuales de enrolamiento)
+    @Value("${fingerprint.capture.max-readers:64}")
+    private int maxCaptureThreads;
+
+    // Tiempo de espera del SDK en una captura puntual (enrolamiento)
+    @Value("${fingerprint.capture.single-timeout-ms:8000}")
+    private int singleCaptureTimeoutMs;
 
     // --- Métodos (con logging actualizado) ---
 
@@ -47,6 +84,14 @@ public class MultiReaderFingerprintService {
     public void initService() {
         // *** CAMBIO: Logging SLF4J ***
         logger.info("Inicializando MultiReaderFingerprintService con enrolamiento y checador.");
+        AtomicInteger threadCounter = new AtomicInteger();
+        captureExecutor = new ThreadPoolExecutor(0, Math.max(1, maxCaptureThreads), 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, "capture-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        logger.info("Capturas simultáneas permitidas: {}.", captureExecutor.getMaximumPoolSize());
         try {
             refreshConnectedReaders();
             scheduler.scheduleAtFixedRate(this::checkReaders, 30, 30, TimeUnit.SECONDS);
@@ -69,18 +114,25 @@ public class MultiReaderFingerprintService {
         }
     }
 
-    public synchronized List<String> refreshConnectedReaders() throws UareUException {
+    public List<String> refreshConnectedReaders() throws UareUException {
+        synchronized (refreshLock) {
+            return scanReaders();
+        }
+    }
+
+    // Abre los lectores nuevos o reconectados y marca como desconectados los que ya no aparecen.
+    // Cada cambio toma solo el candado de ese lector, así que un escaneo no detiene a los demás lectores
+    private List<String> scanReaders() throws UareUException {
         logger.debug("Refrescando lista de lectores conectados...");
         ReaderCollection readers = UareUGlobal.GetReaderCollection();
         readers.GetReaders(); // Actualiza la lista interna del SDK
 
-        List<String> currentlyConnectedNames = new ArrayList<>();
         if (readers.isEmpty()) {
             logger.warn("No se encontraron lectores conectados por el SDK.");
         }
 
-        // Usamos esta lista para saber cuáles de los 'validReaders' previos ya no están conectados
-        List<String> readersToRemove = new ArrayList<>(validReaders.keySet());
+        // Usamos este conjunto para saber cuáles de los lectores conectados ya no aparecen
+        Set<String> readersToRemove = new HashSet<>(getValidReaderNames());
 
         for (Reader r : readers) {
             String readerName = "[Error al obtener nombre]"; // Default
@@ -93,50 +145,48 @@ public class MultiReaderFingerprintService {
                     continue; // Saltar este lector si no hay descripción
                 }
                 readerName = desc.name;
+                readersToRemove.remove(readerName); // Si está conectado, no lo marcamos como desconectado
 
-                readersToRemove.remove(readerName); // Si está conectado, no lo eliminamos de los válidos
-
-                if (validReaders.containsKey(readerName)) {
-                    // Ya lo teníamos y sigue conectado.
-                    currentlyConnectedNames.add(readerName);
+                ReaderSlot slot = slots.computeIfAbsent(readerName, ReaderSlot::new);
+                if (slot.isConnected()) {
                     logger.trace("Lector {} ya validado y sigue conectado.", readerName);
                     continue; // Procesar siguiente lector
                 }
 
                 // --- Es un lector nuevo o reconectado ---
                 logger.debug("Nuevo lector detectado: {}. Intentando abrir y verificar...", readerName);
-                Reader readerToUse = null; // Referencia al lector abierto si tiene éxito
                 boolean openedSuccessfully = false;
                 try {
                     // 1. Intentar Abrir PRIMERO
                     r.Open(Reader.Priority.EXCLUSIVE);
                     openedSuccessfully = true;
-                    readerToUse = r; // Usar la misma instancia 'r' que abrimos
                     logger.debug("Lector {} abierto correctamente.", readerName);
 
                     // 2. Verificar compatibilidad (AHORA con lector abierto)
-                    if (isCompatibleReader(readerToUse, desc)) { // Pasamos descripción para evitar volver a llamarla
+                    if (isCompatibleReader(r, desc)) { // Pasamos descripción para evitar volver a llamarla
                         logger.info("Lector {} es compatible. Añadiendo a lectores válidos.", readerName);
-                        validReaders.put(readerName, readerToUse); // Añadir el lector ABIERTO
-                        currentlyConnectedNames.add(readerName);
+                        slot.lock.lock();
+                        try {
+                            slot.reader = r; // El lector ABIERTO
+                            slot.state = ReaderState.IDLE;
+                        } finally {
+                            slot.lock.unlock();
+                        }
                     } else {
                         // No es compatible, cerrar el lector que abrimos
                         logger.warn("Lector {} abierto pero NO compatible. Cerrando.", readerName);
-                        readerToUse.Close();
+                        r.Close();
                     }
                 } catch (UareUException e) {
                     // Error al abrir o durante isCompatibleReader
                     logger.warn("No se pudo abrir o verificar lector {}: Código {}, Mensaje: {}", readerName, e.getCode(), e.getMessage());
-                    // Asegurarse de cerrar si se abrió pero falló después
-                    if (openedSuccessfully && readerToUse != null) {
-                        try { readerToUse.Close(); } catch (Exception ignore) {}
+                    if (openedSuccessfully) {
+                        try { r.Close(); } catch (Exception ignore) {}
                     }
-                    // Si falló Open(), openedSuccessfully será false, no hay nada que cerrar
                 } catch (Exception ex) {
                     logger.error("Error inesperado procesando lector {}: {}", readerName, ex.getMessage(), ex);
-                    // Intentar cerrar si se llegó a abrir
-                    if (openedSuccessfully && readerToUse != null) {
-                        try { readerToUse.Close(); } catch (Exception ignore) {}
+                    if (openedSuccessfully) {
+                        try { r.Close(); } catch (Exception ignore) {}
                     }
                 }
 
@@ -145,59 +195,173 @@ public class MultiReaderFingerprintService {
             }
         } // Fin del bucle for
 
-        // Detectar y manejar desconexiones (lectores que estaban en validReaders pero no en la lista actual)
+        // Detectar y manejar desconexiones
         for (String readerNameToRemove : readersToRemove) {
             logger.info("Lector desconectado detectado: {}", readerNameToRemove);
-            stopCaptureForReader(readerNameToRemove); // Detener tareas si las hay
+            disconnect(slots.get(readerNameToRemove));
+        }
+
+        logger.info("Lectores VÁLIDOS actuales: {}", getValidReaderNames());
+        logger.info("Lectores RESERVADOS actuales: {}", reservations.getStats().get("active"));
+        return new ArrayList<>(getValidReaderNames());
+    }
+
+    // Detiene la captura del lector, lo cierra y quita su reserva
+    private void disconnect(ReaderSlot slot) {
+        slot.lock.lock();
+        try {
+            stopTask(slot);
+            // Una captura puntual en curso se cancela en el SDK antes de cerrar el lector
+            CompletableFuture<Fmd> capture = slot.singleCapture;
+            if (capture != null) {
+                capture.completeExceptionally(new UareUException(96075797));
+                slot.singleCapture = null;
+            }
+            Reader removedReader = slot.reader;
+            slot.reader = null;
             try {
-                Reader removedReader = validReaders.remove(readerNameToRemove); // Remover de válidos
-                if (removedReader != null) removedReader.Close(); // Cerrar
+                if (removedReader != null) removedReader.Close();
             } catch (Exception ignore) {}
-            inUseReaders.remove(readerNameToRemove); // Remover de ocupados
-            sessionReservations.values().remove(readerNameToRemove); // Remover reservas
+            clearReservation(slot);
+            slot.state = ReaderState.DISCONNECTED;
+        } finally {
+            slot.lock.unlock();
         }
+    }
 
-        logger.info("Lectores VÁLIDOS actuales: {}", validReaders.keySet());
-        logger.info("Lectores OCUPADOS actuales: {}", inUseReaders);
-        // Devolver los nombres de los lectores que están actualmente en el mapa de válidos
-        return new ArrayList<>(validReaders.keySet());
+    // Lector conectado con ese nombre, o null
+    private ReaderSlot connectedSlot(String readerName) {
+        ReaderSlot slot = readerName == null ? null : slots.get(readerName);
+        return slot != null && slot.isConnected() ? slot : null;
     }
 
-    public synchronized boolean reserveReader(String readerName, String sessionId) {
-        if (sessionReservations.containsKey(sessionId)) {
-            String previousReader = sessionReservations.get(sessionId);
-            inUseReaders.remove(previousReader);
+    public boolean reserveReader(String readerName, String sessionId) {
+        ReaderSlot slot = connectedSlot(readerName);
+        if (slot == null) {
+            logger.warn("No se pudo reservar lector: {} para sesión: {} (No válido)", readerName, sessionId);
+            return false;
+        }
+        String previousReader = reservations.readerOf(sessionId);
+        if (previousReader != null && !previousReader.equals(readerName)) {
             // *** CAMBIO: Logging SLF4J ***
             logger.info("Liberando lector previo: {} para sesión: {}", previousReader, sessionId);
+            releaseReservation(previousReader, sessionId);
         }
-        if (validReaders.containsKey(readerName) && !inUseReaders.contains(readerName)) {
-            //inUseReaders.add(readerName);
-            sessionReservations.put(sessionId, readerName);
+        slot.lock.lock();
+        try {
+            if (!slot.isConnected()) {
+                logger.warn("No se pudo reservar lector: {} para sesión: {} (desconectado)", readerName, sessionId);
+                return false;
+            }
+            if (!reservations.reserve(readerName, sessionId, true)) {
+                logger.warn("No se pudo reservar lector: {} para sesión: {} (en uso por {})", readerName, sessionId, reservations.ownerOf(readerName));
+                return false;
+            }
+            if (slot.state == ReaderState.IDLE) {
+                slot.state = ReaderState.RESERVED;
+            }
             // *** CAMBIO: Logging SLF4J ***
             logger.info("[Lector reservado]: [{}] para sesión: {}", readerName, sessionId);
             return true;
+        } finally {
+            slot.lock.unlock();
         }
-        // *** CAMBIO: Logging SLF4J ***
-        logger.warn("No se pudo reservar lector: {} para sesión: {} (No válido o en uso)", readerName, sessionId);
-        return false;
     }
 
-    public synchronized void releaseReaderBySession(String sessionId) {
-        String readerName = sessionReservations.remove(sessionId);
-        if (readerName != null) {
-            inUseReaders.remove(readerName);
+    /**
+     * Renueva el lease de la reserva de la sesión (los clientes lo llaman mientras tienen el lector abierto).
+     */
+    public boolean renewReservation(String sessionId) {
+        return reservations.renew(sessionId);
+    }
+
+    public void releaseReaderBySession(String sessionId) {
+        String readerName = reservations.readerOf(sessionId);
+        if (readerName != null && releaseReservation(readerName, sessionId)) {
             // *** CAMBIO: Logging SLF4J ***
             logger.info("Lector liberado: {} por desconexión de sesión: {}", readerName, sessionId);
         }
     }
 
-    public synchronized void releaseReader(String readerName) {
-        inUseReaders.remove(readerName);
-        sessionReservations.entrySet().removeIf(entry -> entry.getValue().equals(readerName));
+    public void releaseReader(String readerName) {
+        ReaderSlot slot = slots.get(readerName);
+        if (slot != null) {
+            slot.lock.lock();
+            try {
+                clearReservation(slot);
+            } finally {
+                slot.lock.unlock();
+            }
+        } else {
+            reservations.release(readerName);
+        }
         // *** CAMBIO: Logging SLF4J ***
         logger.info("Lector liberado manualmente: {}", readerName);
     }
 
+    // Quita la reserva del lector solo si sigue siendo de esa sesión
+    private boolean releaseReservation(String readerName, String sessionId) {
+        ReaderSlot slot = slots.get(readerName);
+        if (slot == null) {
+            return reservations.release(readerName, sessionId);
+        }
+        slot.lock.lock();
+        try {
+            if (!reservations.release(readerName, sessionId)) {
+                return false;
+            }
+            settleReservedState(slot);
+            return true;
+        } finally {
+            slot.lock.unlock();
+        }
+    }
+
+    // Requiere el candado del lector
+    private void clearReservation(ReaderSlot slot) {
+        reservations.release(slot.name);
+        settleReservedState(slot);
+    }
+
+    // Requiere el candado del lector: RESERVED sin reserva vuelve a IDLE
+    private void settleReservedState(ReaderSlot slot) {
+        if (slot.state == ReaderState.RESERVED && !reservations.isReserved(slot.name)) {
+            slot.state = ReaderState.IDLE;
+        }
+    }
+
+    // Estado sin captura en curso
+    private ReaderState restingState(ReaderSlot slot) {
+        return reservations.isReserved(slot.name) ? ReaderState.RESERVED : ReaderState.IDLE;
+    }
+
+    /**
+     * Libera las reservas cuyo lease venció: sesiones que desaparecieron sin desconectar el WebSocket
+     * (pestaña cerrada a la fuerza, red caída) y que si no dejarían el lector reservado para siempre.
+     */
+    @Scheduled(fixedDelayString = "${fingerprint.reservation.sweep-ms:15000}", initialDelayString = "${fingerprint.reservation.sweep-ms:15000}")
+    public void expireReservations() {
+        for (ReaderReservationRegistry.Reservation reservation : reservations.findExpired()) {
+            ReaderSlot slot = slots.get(reservation.getReaderName());
+            boolean expired;
+            if (slot == null) {
+                expired = reservations.expire(reservation);
+            } else {
+                slot.lock.lock();
+                try {
+                    expired = reservations.expire(reservation);
+                    if (expired) settleReservedState(slot);
+                } finally {
+                    slot.lock.unlock();
+                }
+            }
+            if (expired) {
+                logger.info("Reserva del lector {} vencida (sesión {} sin renovar en {} ms). Lector liberado.",
+                        reservation.getReaderName(), reservation.getSessionId(), reservations.getLeaseMs());
+            }
+        }
+    }
+
     private boolean isCompatibleReader(Reader r, Reader.Description desc) {
         // Asume que 'r' ya está abierto y 'desc' no es null
         String readerName = (desc != null && desc.name != null) ? desc.name : "[Lector Abierto]";
@@ -247,70 +411,90 @@ public class MultiReaderFingerprintService {
         }
     }
 
-    public synchronized void startContinuousCaptureForAll() {
+    public void startContinuousCaptureForAll() {
         // *** CAMBIO: Logging SLF4J ***
         logger.info("Intentando iniciar captura continua en todos los lectores válidos y disponibles...");
-        for (Map.Entry<String, Reader> entry : validReaders.entrySet()) {
-            String readerName = entry.getKey();
-            if (!captureTasks.containsKey(readerName) && !inUseReaders.contains(readerName)) {
-                startTaskForReader(readerName, entry.getValue(), false);
-            } else {
-                logger.debug("Omitiendo inicio en lector {} (ya activo o reservado).", readerName);
+        for (ReaderSlot slot : slots.values()) {
+            slot.lock.lock();
+            try {
+                if (slot.state != ReaderState.IDLE) {
+                    logger.debug("Omitiendo inicio en lector {} (estado {}).", slot.name, slot.state);
+                    continue;
+                }
+                if (!startTaskForReader(slot, false)) {
+                    break; // Límite alcanzado: los demás lectores tampoco tendrían hilo
+                }
+            } finally {
+                slot.lock.unlock();
             }
         }
     }
 
-    public synchronized boolean startContinuousCaptureForReader(String readerName) {
+    public boolean startContinuousCaptureForReader(String readerName) {
         // *** CAMBIO: Logging SLF4J ***
         logger.info("Intentando iniciar captura continua en: {}", readerName);
-        Reader existing = validReaders.get(readerName);
-        if (existing == null) {
+        ReaderSlot slot = connectedSlot(readerName);
+        if (slot == null) {
             logger.warn("Lector {} no encontrado en lectores válidos.", readerName);
             return false;
         }
-        if (inUseReaders.contains(readerName)) {
-            logger.warn("No se puede iniciar captura normal en lector {} porque está reservado.", readerName);
-            return false;
-        }
-        if (captureTasks.containsKey(readerName)) {
-            logger.info("Ya existe tarea de captura para {}", readerName);
-            return true;
+        slot.lock.lock();
+        try {
+            switch (slot.state) {
+                case IDLE:
+                case RESERVED:
+                    return startTaskForReader(slot, false);
+                case CAPTURING:
+                    logger.info("Ya existe tarea de captura para {}", readerName);
+                    return true;
+                default:
+                    logger.warn("No se puede iniciar captura normal en lector {} (estado {}).", readerName, slot.state);
+                    return false;
+            }
+        } finally {
+            slot.lock.unlock();
         }
-        startTaskForReader(readerName, existing, false);
-        return true;
     }
 
-    public synchronized boolean startChecadorForReader(String readerName) {
+    public boolean startChecadorForReader(String readerName) {
         // *** CAMBIO: Logging SLF4J ***
         logger.info("Intentando iniciar modo checador en: {}", readerName);
-        Reader existing = validReaders.get(readerName);
-        if (existing == null) {
+        ReaderSlot slot = connectedSlot(readerName);
+        if (slot == null) {
             logger.warn("Lector {} no encontrado en lectores válidos.", readerName);
             return false;
         }
-        String checadorSessionId = "checador_" + readerName;
-        if (!reserveReader(readerName, checadorSessionId)) {
-            // reserveReader ya loguea la razón
-            return false;
-        }
-
-        if (captureTasks.containsKey(readerName)) {
-            logger.info("Ya existe tarea de captura (checador) para {}. Asegurando reserva.", readerName);
-            // La reserva ya se hizo o se reafirmó arriba
+        String checadorSessionId = CHECADOR_PREFIX + readerName;
+        slot.lock.lock();
+        try {
+            if (slot.state == ReaderState.CHECADOR) {
+                logger.info("Ya existe tarea de captura (checador) para {}.", readerName);
+                return true;
+            }
+            if (slot.state != ReaderState.IDLE || !reservations.reserve(readerName, checadorSessionId, false)) {
+                logger.warn("No se puede iniciar modo checador en {} (estado {}, reservado por {}).", readerName, slot.state, reservations.ownerOf(readerName));
+                return false;
+            }
+            logger.info("Iniciando tarea modo checador para lector: {}", readerName);
+            if (!startTaskForReader(slot, true)) {
+                clearReservation(slot);
+                return false;
+            }
             return true;
+        } finally {
+            slot.lock.unlock();
         }
-        logger.info("Iniciando tarea modo checador para lector: {}", readerName);
-        startTaskForReader(readerName, existing, true);
-        return true;
     }
 
-    // --- startTaskForReader (Logging Interno Actualizado) ---
-    private void startTaskForReader(String readerName, Reader reader, boolean modoChecador) {
+    // --- startTaskForReader: requiere el candado del lector ---
+    private boolean startTaskForReader(ReaderSlot slot, boolean modoChecador) {
+        String readerName = slot.name;
+        Reader reader = slot.reader;
         // *** CAMBIO: Logging SLF4J ***
         logger.info("Creando tarea para: {}. Checador={}", readerName, modoChecador);
-        // ... (resto del método con llamadas a logger.info/warn/error/debug como se mostró antes) ...
         final int MAX_CONSECUTIVE_ERRORS = 5;
         AtomicInteger consecutiveErrors = new AtomicInteger(0);
+        long generation = ++slot.generation;
 
         Runnable captureLoop = () -> {
             // *** CAMBIO: Logging SLF4J ***
@@ -321,31 +505,14 @@ public class MultiReaderFingerprintService {
                             Fid.Format.ANSI_381_2004, Reader.ImageProcessing.IMG_PROC_DEFAULT, 500, -1);
 
                     if (cr != null && cr.image != null && cr.quality == Reader.CaptureQuality.GOOD) {
-                        String base64Image = FingerprintImageUtils.convertFidToBase64(cr.image);
-                        lastFingerprintData.put(readerName, base64Image);
-                        String reservationId = sessionReservations.entrySet().stream()
-                                .filter(entry -> entry.getValue().equals(readerName))
-                                .map(Map.Entry::getKey).findFirst().orElse("");
-                        publishFingerprintEvent(readerName, reservationId, base64Image);
-
-                        if (modoChecador) {
-                            Engine engine = UareUGlobal.GetEngine();
-                            Fmd fmd = engine.CreateFmd(cr.image, Fmd.Format.ANSI_378_2004);
-                            Optional<Empleado> empleadoOpt = userService.identifyUser(fmd);
-                            String encodedReaderName = URLEncoder.encode(readerName, StandardCharsets.UTF_8.toString());
-                            String topic = "/topic/checador/" + encodedReaderName;
-
-                            if (empleadoOpt.isPresent()) {
-                                Empleado empleado = empleadoOpt.get();
-                                ChecadorEvent evt = new ChecadorEvent(readerName, empleado);
-                                logger.info("Empleado identificado: ID {}, Lector: {}. Enviando a topic: {}", empleado.getId(), readerName, topic);
-                                messagingTemplate.convertAndSend(topic, evt);
-                            } else {
-                                // *** CAMBIO: Logging SLF4J ***
-                                logger.debug("Huella no identificada en modo checador (Lector: {})", readerName);
-                                // Enviar evento "no identificado"
-                                messagingTemplate.convertAndSend(topic, new ChecadorEvent(readerName)); // Usa constructor para no identificado
-                            }
+                        // Codificación, extracción e identificación siguen en el pipeline; el lector vuelve a capturar
+                        String reservationId = reservations.ownerOf(readerName);
+                        reservations.renewReader(readerName); // Lector en uso: la reserva no vence
+                        if (!capturePipeline.submitPreview(readerName, reservationId, cr.image)) {
+                            logger.debug("Vista previa descartada en {}: etapa de codificación llena.", readerName);
+                        }
+                        if (modoChecador && !capturePipeline.submitPunch(readerName, cr.image)) {
+                            logger.warn("Checada descartada en {}: etapa de extracción llena.", readerName);
                         }
                         consecutiveErrors.set(0);
                     } else {
@@ -392,159 +559,264 @@ public class MultiReaderFingerprintService {
             }
             // *** CAMBIO: Logging SLF4J ***
             logger.info("Tarea de captura finalizada para: {}", readerName);
-            captureTasks.remove(readerName);
-            if (modoChecador) {
-                releaseReader(readerName); // Libera la reserva "checador_..."
+            // Si el bucle terminó solo (errores, cancelación del SDK), el lector vuelve a reposo
+            slot.lock.lock();
+            try {
+                if (slot.generation == generation && slot.task != null) {
+                    slot.task = null;
+                    endCaptureState(slot);
+                }
+            } finally {
+                slot.lock.unlock();
             }
         };
 
-        Future<?> future = captureExecutor.submit(captureLoop);
-        captureTasks.put(readerName, future);
+        try {
+            slot.task = captureExecutor.submit(captureLoop);
+            slot.state = modoChecador ? ReaderState.CHECADOR : ReaderState.CAPTURING;
+            return true;
+        } catch (RejectedExecutionException e) {
+            logger.error("No se pudo iniciar la captura en {}: se alcanzó el límite de {} capturas simultáneas (fingerprint.capture.max-readers).",
+                    readerName, captureExecutor.getMaximumPoolSize());
+            return false;
+        }
     }
 
-    // --- doIdentifyUserChecador (Logging Actualizado) ---
-    private void doIdentifyUserChecador(String readerName) { // Mantener si se necesita identificación puntual
-        try {
-            Fmd fmd = captureSingleFingerprintFmd(readerName);
-            Optional<Empleado> empleadoOpt = userService.identifyUser(fmd);
-            String encodedReaderName = URLEncoder.encode(readerName, StandardCharsets.UTF_8.toString());
-            String destination = "/topic/checador/" + encodedReaderName;
-            ChecadorEvent evt;
-
-            if (empleadoOpt.isPresent()) {
-                Empleado empleado = empleadoOpt.get();
-                evt = new ChecadorEvent(readerName, empleado);
-                // *** CAMBIO: Logging SLF4J ***
-                logger.info("Usuario identificado (puntual): ID {}, Lector: {}", empleado.getId(), readerName);
-            } else {
-                evt = new ChecadorEvent(readerName); // Evento no identificado
-                // *** CAMBIO: Logging SLF4J ***
-                logger.info("Usuario no identificado (puntual) en checador (Lector: {})", readerName);
-            }
-            messagingTemplate.convertAndSend(destination, evt);
+    // Requiere el candado del lector: al terminar el modo checador se libera su reserva interna
+    private void endCaptureState(ReaderSlot slot) {
+        if (slot.state == ReaderState.CHECADOR) {
+            reservations.release(slot.name, CHECADOR_PREFIX + slot.name);
+        }
+        if (slot.state == ReaderState.CAPTURING || slot.state == ReaderState.CHECADOR) {
+            slot.state = restingState(slot);
+        }
+    }
 
-        } catch (UareUException | InterruptedException e) {
-            // *** CAMBIO: Logging SLF4J ***
-            logger.warn("Error al capturar/identificar (puntual) en checador {}: {}", readerName, e.getMessage(), e);
-            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
-        } catch (Exception ex){
-            // *** CAMBIO: Logging SLF4J ***
-            logger.error("Error inesperado en identificación puntual de checador {}: {}", readerName, ex.getMessage(), ex);
+    // Requiere el candado del lector. Devuelve false si no había tarea
+    private boolean stopTask(ReaderSlot slot) {
+        Future<?> task = slot.task;
+        if (task == null) {
+            return false;
+        }
+        slot.task = null;
+        slot.generation++;
+        task.cancel(true);
+        if (slot.reader != null) {
+            cancelSdkCapture(slot.name, slot.reader);
         }
+        endCaptureState(slot);
+        return true;
     }
 
     // --- stopContinuousCaptureForAll (Logging Actualizado) ---
-    public synchronized void stopContinuousCaptureForAll() {
+    public void stopContinuousCaptureForAll() {
         // *** CAMBIO: Logging SLF4J ***
         logger.info("Intentando detener todas las capturas continuas...");
-        captureTasks.values().forEach(task -> task.cancel(true));
-        for (Map.Entry<String, Reader> entry : validReaders.entrySet()) {
+        for (ReaderSlot slot : slots.values()) {
+            slot.lock.lock();
             try {
-                entry.getValue().CancelCapture();
-            } catch (UareUException e) {
-                if(e.getCode() != 15302914) { // Loguear solo si no es error esperado al cancelar
-                    // *** CAMBIO: Logging SLF4J ***
-                    logger.warn("Error al cancelar captura SDK en {}: Código {}, Mensaje {}", entry.getKey(), e.getCode(), e.getMessage());
-                }
-            } catch (Exception e) {
-                logger.warn("Error inesperado al cancelar captura SDK en {}: {}", entry.getKey(), e.getMessage(), e);
+                stopTask(slot);
+            } finally {
+                slot.lock.unlock();
             }
         }
-        captureTasks.clear();
-        sessionReservations.entrySet().stream()
-                .filter(entry -> entry.getKey().startsWith("checador_"))
-                .map(Map.Entry::getValue).distinct()
-                .forEach(this::releaseReader);
         // *** CAMBIO: Logging SLF4J ***
         logger.info("Todas las capturas continuas detenidas.");
     }
 
     // --- stopCaptureForReader (Logging Actualizado) ---
-    public synchronized void stopCaptureForReader(String readerName) {
-        Future<?> task = captureTasks.remove(readerName);
-        if (task != null) {
+    public void stopCaptureForReader(String readerName) {
+        ReaderSlot slot = slots.get(readerName);
+        if (slot == null) {
+            logger.info("No había tarea de captura activa para: {}", readerName);
+            return;
+        }
+        slot.lock.lock();
+        try {
             // *** CAMBIO: Logging SLF4J ***
             logger.info("Deteniendo tarea de captura para: {}", readerName);
-            task.cancel(true);
-            Reader reader = validReaders.get(readerName);
-            if (reader != null) {
-                try {
-                    reader.CancelCapture();
-                } catch (UareUException e) {
-                    if(e.getCode() != 15302914) {
-                        // *** CAMBIO: Logging SLF4J ***
-                        logger.warn("Error al cancelar captura SDK en {}: Código {}, Mensaje {}", readerName, e.getCode(), e.getMessage());
-                    }
-                } catch (Exception e) {
-                    logger.warn("Error inesperado al cancelar captura SDK en {}: {}", readerName, e.getMessage(), e);
-                }
-            }
-            String checadorSessionId = "checador_" + readerName;
-            if (sessionReservations.containsKey(checadorSessionId)) {
-                releaseReader(readerName);
+            if (!stopTask(slot)) {
+                logger.info("No había tarea de captura activa para: {}", readerName);
             }
-        } else {
-            // *** CAMBIO: Logging SLF4J ***
-            logger.info("No había tarea de captura activa para: {}", readerName);
+        } finally {
+            slot.lock.unlock();
         }
     }
 
-    // --- captureSingleFingerprintFmd (Logging Actualizado) ---
-    public Fmd captureSingleFingerprintFmd(String readerName) throws UareUException, InterruptedException {
-        // ... (lógica igual, pero los logs internos usarán SLF4J) ...
-        Reader reader = validReaders.get(readerName);
-        if (reader == null) {
+    /**
+     * Captura puntual asíncrona. La captura y la extracción corren en el pool de captura; el future termina con
+     * el FMD o con una {@link UareUException} (96075788 si vence el tiempo). Cancelar el future cancela la
+     * captura en el SDK.
+     *
+     * @param timeoutMs tiempo de espera de esta captura; null o <= 0 usa fingerprint.capture.single-timeout-ms.
+     */
+    public CompletableFuture<Fmd> captureSingleFingerprintFmdAsync(String readerName, Integer timeoutMs) {
+        int captureTimeoutMs = resolveCaptureTimeout(timeoutMs);
+        ReaderSlot slot = connectedSlot(readerName);
+        if (slot == null) {
             logger.warn("Intento de captura puntual en lector no válido/encontrado: {}", readerName);
-            throw new UareUException(96075797);
+            return CompletableFuture.failedFuture(new UareUException(96075797));
+        }
+        CompletableFuture<Fmd> result = new CompletableFuture<>();
+        // Una captura puntual no puede compartir el lector con un bucle de captura ni con otra captura puntual
+        slot.lock.lock();
+        try {
+            if (slot.state != ReaderState.IDLE && slot.state != ReaderState.RESERVED) {
+                logger.warn("Captura puntual rechazada en {}: el lector está en estado {}.", readerName, slot.state);
+                return CompletableFuture.failedFuture(new UareUException(15302914)); // UAREU_E_INVALID_OPERATION
+            }
+            slot.state = ReaderState.ENROLLING;
+            slot.singleCapture = result;
+        } finally {
+            slot.lock.unlock();
+        }
+        reservations.renewReader(readerName);
+
+        Reader reader = slot.reader;
+        AtomicBoolean finished = new AtomicBoolean();
+        Runnable captureTask = () -> {
+            Fmd fmd = null;
+            Throwable error = null;
+            try {
+                fmd = captureFmd(readerName, reader, captureTimeoutMs);
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                finished.set(true);
+                // El lector queda libre antes de responder: el cliente puede pedir la siguiente captura enseguida
+                endSingleCapture(slot, result);
+            }
+            if (error == null) result.complete(fmd);
+            else result.completeExceptionally(error);
+        };
+
+        // La captura corre en el pool de captura (mismo límite que los bucles continuos), no en un hilo propio
+        Future<?> task;
+        try {
+            task = captureExecutor.submit(captureTask);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Captura puntual rechazada en {}: se alcanzó el límite de {} capturas simultáneas.",
+                    readerName, captureExecutor.getMaximumPoolSize());
+            endSingleCapture(slot, result);
+            result.completeExceptionally(new UareUException(96075787));
+            return result;
         }
-        // ... (verificación de reserva igual) ...
-        boolean reservedByOther = sessionReservations.entrySet().stream()
-                .anyMatch(entry -> entry.getValue().equals(readerName) && !entry.getKey().startsWith("checador_"));
-        /*if (inUseReaders.contains(readerName) && reservedByOther) {
-            logger.warn("Intento de captura puntual en lector {} que está reservado por otra sesión.", readerName);
-            throw new UareUException(15302914);
-        }*/
 
+        // Red de seguridad por si el SDK no respeta su propio timeout
+        long deadlineMs = captureTimeoutMs + 1000L;
+        ScheduledFuture<?> timeout = scheduler.schedule(() -> {
+            if (result.completeExceptionally(new UareUException(96075788))) {
+                logger.warn("Captura puntual en {} sin respuesta del SDK tras {} ms; se cancela.", readerName, deadlineMs);
+            }
+        }, deadlineMs, TimeUnit.MILLISECONDS);
+
+        // Si el future termina antes que la tarea (cancelación, timeout), se cancela la captura en el SDK
+        result.whenComplete((fmd, ex) -> {
+            timeout.cancel(false);
+            if (!finished.get()) {
+                logger.info("Captura puntual en {} cancelada antes de terminar.", readerName);
+                cancelSdkCapture(readerName, reader);
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Cancela la captura puntual en curso en el lector.
+     *
+     * @return false si no había captura puntual en curso.
+     */
+    public boolean cancelSingleCapture(String readerName) {
+        ReaderSlot slot = slots.get(readerName);
+        CompletableFuture<Fmd> capture = slot == null ? null : slot.singleCapture;
+        return capture != null && capture.cancel(true);
+    }
+
+    public int resolveCaptureTimeout(Integer timeoutMs) {
+        return timeoutMs != null && timeoutMs > 0 ? timeoutMs : singleCaptureTimeoutMs;
+    }
+
+    private void endSingleCapture(ReaderSlot slot, CompletableFuture<Fmd> capture) {
+        slot.lock.lock();
+        try {
+            if (slot.singleCapture == capture) {
+                slot.singleCapture = null;
+                if (slot.state == ReaderState.ENROLLING) {
+                    slot.state = restingState(slot);
+                }
+            }
+        } finally {
+            slot.lock.unlock();
+        }
+    }
+
+    /**
+     * Causa de un future de captura como UareUException (los códigos que ya entiende el controlador).
+     */
+    public static UareUException asUareUException(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof UareUException) {
+            return (UareUException) error;
+        }
+        UareUException ex = new UareUException(96075787);
+        ex.initCause(error);
+        return ex;
+    }
+
+    // Se ejecuta en un hilo del pool de captura
+    private Fmd captureFmd(String readerName, Reader reader, int timeoutMs) throws UareUException {
         logger.debug("Realizando captura puntual en: {}", readerName);
-        CaptureThread capture = new CaptureThread(reader, false, Fid.Format.ANSI_381_2004, Reader.ImageProcessing.IMG_PROC_DEFAULT, 500, 8000 );
-        capture.start(null);
-        capture.join(9000);
-        CaptureThread.CaptureEvent event = capture.getLastCaptureEvent();
-
-        if (event != null && event.capture_result != null && event.capture_result.image != null && event.capture_result.quality == Reader.CaptureQuality.GOOD) {
-            Engine engine = UareUGlobal.GetEngine();
-            return engine.CreateFmd(event.capture_result.image, Fmd.Format.ANSI_378_2004);
-        } else {
-            String reason = "Razón desconocida";
-            // ... (código para determinar la razón) ...
-            if (event == null) reason = "Evento nulo";
-            else if (event.capture_result == null) reason = "CaptureResult nulo";
-            else if (event.capture_result.image == null) reason = "Imagen nula";
-            else if (event.capture_result.quality != Reader.CaptureQuality.GOOD) reason = "Calidad insuficiente: " + event.capture_result.quality;
-            else if (event.exception != null) reason = "Excepción: " + event.exception.getMessage();
+        Reader.CaptureResult cr = captureOnce(reader, readerName, timeoutMs);
 
-            // *** CAMBIO: Logging SLF4J ***
-            logger.warn("Captura puntual fallida en {}: {}", readerName, reason);
-            // Lanzar excepción UareU apropiada o genérica si event.exception es null
-            if(event != null && event.exception instanceof UareUException) throw (UareUException) event.exception;
-            if(event != null && event.capture_result != null && event.capture_result.quality == Reader.CaptureQuality.TIMED_OUT) throw new UareUException(96075788); // TIMEOUT (ejemplo)
-            throw new UareUException(96075787); // FAILURE genérico
+        if (cr != null && cr.image != null && cr.quality == Reader.CaptureQuality.GOOD) {
+            return featureExtractor.createFmd(cr.image);
+        }
+        String reason;
+        if (cr == null) reason = "CaptureResult nulo";
+        else if (cr.image == null) reason = "Imagen nula";
+        else reason = "Calidad insuficiente: " + cr.quality;
+        logger.warn("Captura puntual fallida en {}: {}", readerName, reason);
+        if (cr != null && cr.quality == Reader.CaptureQuality.TIMED_OUT) throw new UareUException(96075788); // TIMEOUT
+        throw new UareUException(96075787); // FAILURE genérico
+    }
+
+    // Una captura con el lector listo; null si el lector no está listo (ocupado, sin calibrar...)
+    private Reader.CaptureResult captureOnce(Reader reader, String readerName, int timeoutMs) throws UareUException {
+        Reader.Status rs = reader.GetStatus();
+        if (rs == null || rs.status == null || rs.status == Reader.ReaderStatus.FAILURE) {
+            logger.error("Lector {} no disponible o en estado de fallo.", readerName);
+            throw new UareUException(96075787);
+        }
+        if (rs.status != Reader.ReaderStatus.READY && rs.status != Reader.ReaderStatus.NEED_CALIBRATION) {
+            logger.warn("Lector {} no está listo: {}", readerName, rs.status);
+            return null;
+        }
+        logger.debug("Capturando huella en {} (timeout {} ms)...", readerName, timeoutMs);
+        return reader.Capture(Fid.Format.ANSI_381_2004, Reader.ImageProcessing.IMG_PROC_DEFAULT, 500, timeoutMs);
+    }
+
+    private void cancelSdkCapture(String readerName, Reader reader) {
+        try {
+            reader.CancelCapture();
+        } catch (UareUException e) {
+            if (e.getCode() != 15302914) {
+                logger.warn("Error al cancelar captura SDK en {}: Código {}, Mensaje {}", readerName, e.getCode(), e.getMessage());
+            }
+        } catch (Exception e) {
+            logger.warn("Error inesperado al cancelar captura SDK en {}: {}", readerName, e.getMessage(), e);
         }
     }
 
     // --- startEnrollment (Logging Actualizado) ---
-    public synchronized String startEnrollment(String readerName) throws UareUException {
+    public String startEnrollment(String readerName) throws UareUException {
         // ... (verificaciones iguales) ...
-        if (!validReaders.containsKey(readerName)) {
+        if (connectedSlot(readerName) == null) {
             logger.warn("Intento de iniciar enrolamiento en lector no válido: {}", readerName);
             throw new UareUException(96075797); // READER_NOT_FOUND
         }
-        boolean reservedByOther = sessionReservations.entrySet().stream()
-                .anyMatch(entry -> entry.getValue().equals(readerName) && !entry.getKey().startsWith("checador_"));
-        /*if (inUseReaders.contains(readerName) && reservedByOther) {
-            logger.warn("Intento de iniciar enrolamiento en lector {} que está reservado.", readerName);
-            throw new UareUException(15302914); // UAREU_E_INVALID_OPERATION
-        }*/
 
         String sessionId = UUID.randomUUID().toString();
         EnrollmentSession session = new EnrollmentSession(sessionId);
@@ -555,36 +827,58 @@ public class MultiReaderFingerprintService {
     }
 
     // --- captureForEnrollment (Logging Actualizado) ---
-    public Map<String, Object> captureForEnrollment(String readerName, String sessionId) throws UareUException, InterruptedException {
-        Map<String, Object> response = new HashMap<>();
+    /**
+     * Captura asíncrona para una sesión de enrolamiento. El future termina con
+     * {complete: boolean, remaining?: int, template?: string}; cancelarlo cancela la captura en el lector.
+     */
+    public CompletableFuture<Map<String, Object>> captureForEnrollmentAsync(String readerName, String sessionId, Integer timeoutMs) {
         EnrollmentSession session = enrollmentSessions.get(sessionId);
         if (session == null) {
             // *** CAMBIO: Logging SLF4J ***
             logger.warn("Intento de captura para sesión de enrolamiento inválida: {}", sessionId);
-            throw new UareUException(96075796);
+            return CompletableFuture.failedFuture(new UareUException(96075796));
         }
 
-        Fmd fmd = captureSingleFingerprintFmd(readerName);
-        boolean complete = session.addCapture(fmd);
+        CompletableFuture<Fmd> capture = captureSingleFingerprintFmdAsync(readerName, timeoutMs);
+        CompletableFuture<Map<String, Object>> result = capture.thenApply(fmd -> {
+            try {
+                return addEnrollmentCapture(session, fmd);
+            } catch (UareUException e) {
+                throw new CompletionException(e);
+            }
+        });
+        // Cancelar (o vencer) el resultado cancela la captura de la que depende
+        result.whenComplete((response, ex) -> {
+            if (ex != null) capture.completeExceptionally(ex);
+        });
+        return result;
+    }
 
-        if (complete) {
-            Fmd enrollmentFmd = session.createEnrollmentFmd();
-            enrollmentSessions.remove(sessionId);
-            response.put("complete", true);
-            response.put("template", Base64.getEncoder().encodeToString(enrollmentFmd.getData()));
-            // *** CAMBIO: Logging SLF4J ***
-            logger.info("Enrolamiento completado para sesión {}. Template listo.", sessionId);
-        } else {
-            int remaining = session.getRequired() - session.getCaptureCount();
-            response.put("complete", false);
-            response.put("remaining", remaining);
-            // *** CAMBIO: Logging SLF4J ***
-            logger.info("Enrolamiento en progreso para sesión {}. Faltan {} capturas.", sessionId, remaining);
+    private Map<String, Object> addEnrollmentCapture(EnrollmentSession session, Fmd fmd) throws UareUException {
+        Map<String, Object> response = new HashMap<>();
+        String sessionId = session.id;
+        synchronized (session) {
+            boolean complete = session.addCapture(fmd);
+
+            if (complete) {
+                Fmd enrollmentFmd = session.createEnrollmentFmd();
+                enrollmentSessions.remove(sessionId);
+                response.put("complete", true);
+                response.put("template", Base64.getEncoder().encodeToString(enrollmentFmd.getData()));
+                // *** CAMBIO: Logging SLF4J ***
+                logger.info("Enrolamiento completado para sesión {}. Template listo.", sessionId);
+            } else {
+                int remaining = session.getRequired() - session.getCaptureCount();
+                response.put("complete", false);
+                response.put("remaining", remaining);
+                // *** CAMBIO: Logging SLF4J ***
+                logger.info("Enrolamiento en progreso para sesión {}. Faltan {} capturas.", sessionId, remaining);
+            }
         }
         return response;
     }
 
-    // --- EnrollmentSession / EnrollmentCallbackImpl (Logging Interno Actualizado) ---
+    // --- EnrollmentSession (Logging Interno Actualizado) ---
     private class EnrollmentSession {
         // ... (campos iguales) ...
         private final List<Fmd> fmds = new ArrayList<>();
@@ -604,34 +898,20 @@ public class MultiReaderFingerprintService {
         Fmd createEnrollmentFmd() throws UareUException {
             // *** CAMBIO: Logging SLF4J ***
             logger.debug("Creando FMD final de enrolamiento para sesión {}", id); // Cambiado a debug
-            Engine engine = UareUGlobal.GetEngine();
-            return engine.CreateEnrollmentFmd(Fmd.Format.ANSI_378_2004, new EnrollmentCallbackImpl(fmds));
-        }
-    }
-    private class EnrollmentCallbackImpl implements Engine.EnrollmentCallback {
-        // ... (código igual, sin logs internos) ...
-        private final Iterator<Fmd> iterator;
-        EnrollmentCallbackImpl(List<Fmd> fmds) { this.iterator = fmds.iterator(); }
-        @Override
-        public Engine.PreEnrollmentFmd GetFmd(Fmd.Format format) {
-            if (iterator.hasNext()) {
-                Fmd fmd = iterator.next();
-                Engine.PreEnrollmentFmd pre = new Engine.PreEnrollmentFmd();
-                pre.fmd = fmd;
-                pre.view_index = 0;
-                return pre;
-            }
-            return null;
+            return featureExtractor.createEnrollmentFmd(fmds);
         }
     }
-
     // --- shutdown (Logging Actualizado) ---
     public void shutdown() {
         // *** CAMBIO: Logging SLF4J ***
         logger.info("Iniciando apagado de MultiReaderFingerprintService...");
         stopContinuousCaptureForAll();
         scheduler.shutdown();
-        for (Reader reader : validReaders.values()) {
+        for (ReaderSlot slot : slots.values()) {
+            Reader reader = slot.reader;
+            if (reader == null) continue;
+            slot.reader = null;
+            slot.state = ReaderState.DISCONNECTED;
             try { reader.Close(); } catch (UareUException e) {
                 // *** CAMBIO: Logging SLF4J ***
                 logger.warn("Error al cerrar lector durante apagado: Código {}, Mensaje {}", e.getCode(), e.getMessage());
@@ -639,7 +919,6 @@ public class MultiReaderFingerprintService {
                 logger.warn("Error inesperado al cerrar lector durante apagado.", e);
             }
         }
-        validReaders.clear();
         captureExecutor.shutdown();
         try {
             if (!captureExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -672,6 +951,18 @@ public class MultiReaderFingerprintService {
                 this.identificado = false;
             }
         }
+        // Constructor para éxito a partir de la caché de identidades
+        public ChecadorEvent(String readerName, EmpleadoIdentity empleado) {
+            this.readerName = readerName;
+            if (empleado != null) {
+                this.identificado = true;
+                this.empleadoId = empleado.getId();
+                this.nombreCompleto = empleado.getNombreCompleto();
+                this.rfc = empleado.getRfc();
+            } else {
+                this.identificado = false;
+            }
+        }
         // Constructor para no identificado
         public ChecadorEvent(String readerName) {
             this.readerName = readerName;
@@ -684,37 +975,58 @@ public class MultiReaderFingerprintService {
 
     // --- Métodos restantes (isCaptureActive, getLastCapturedFingerprint, getValidReaderNames, getAvailableReaderNames): Sin cambios lógicos ---
     // ... (código sin cambios lógicos, ya usan logging SLF4J si aplica) ...
-    public synchronized boolean isCaptureActive(String readerName) {
-        Future<?> task = captureTasks.get(readerName);
-        return task != null && !task.isDone();
+    // Hilos del pool de captura frente al límite configurado
+    public Map<String, Object> getCaptureStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxThreads", captureExecutor.getMaximumPoolSize());
+        stats.put("threads", captureExecutor.getPoolSize());
+        stats.put("active", captureExecutor.getActiveCount());
+        stats.put("readers", getValidReaderNames().size());
+        stats.put("continuousTasks", slots.values().stream().filter(slot -> slot.task != null).count());
+        return stats;
     }
-    public synchronized String getLastCapturedFingerprint(String readerName) {
-        return lastFingerprintData.get(readerName);
+
+    /**
+     * Estado de cada lector conocido (sin tomar candados: es una foto, no una transacción).
+     */
+    public Map<String, Map<String, Object>> getReaderStates() {
+        Map<String, Map<String, Object>> states = new TreeMap<>();
+        for (ReaderSlot slot : slots.values()) {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("state", slot.state);
+            state.put("reservedBy", reservations.ownerOf(slot.name));
+            states.put(slot.name, state);
+        }
+        return states;
     }
-    public synchronized Set<String> getValidReaderNames() {
-        return new HashSet<>(validReaders.keySet());
+
+    public ReaderState getReaderState(String readerName) {
+        ReaderSlot slot = slots.get(readerName);
+        return slot == null ? ReaderState.DISCONNECTED : slot.state;
+    }
+
+    public boolean isCaptureActive(String readerName) {
+        ReaderSlot slot = slots.get(readerName);
+        Future<?> task = slot == null ? null : slot.task;
+        return task != null && !task.isDone();
+    }
+    public String getLastCapturedFingerprint(String readerName) {
+        return capturePipeline.getLastImage(readerName);
     }
-    public synchronized Set<String> getAvailableReaderNames() {
-        Set<String> result = new HashSet<>(validReaders.keySet());
-        result.removeAll(inUseReaders);
+    public Set<String> getValidReaderNames() {
+        Set<String> result = new HashSet<>();
+        for (ReaderSlot slot : slots.values()) {
+            if (slot.isConnected()) result.add(slot.name);
+        }
         return result;
     }
-
-    private void publishFingerprintEvent(String readerName, String reservationId, String base64Fingerprint) {
-        // Asegurarse que reservationId no sea null para el path, usar "" si es null o vacío
-        String safeReservationId = (reservationId == null || reservationId.isEmpty()) ? "_" : reservationId; // Usar "_" u otro placeholder si está vacío
-
-        // Destino: /topic/fingerprints/{reservationId}/{readerName}
-        // Ejemplo: /topic/fingerprints/session123/LectorHuellas01
-        // Ejemplo: /topic/fingerprints/_/LectorHuellas01 (si no hay reserva)
-        String destination = "/topic/fingerprints/" + safeReservationId + "/" + readerName;
-
-        // Crear el payload usando la clase interna actualizada
-        var payload = new FingerprintImageEvent(readerName, safeReservationId, base64Fingerprint);
-
-        // Enviar por WebSocket
-        messagingTemplate.convertAndSend(destination, payload);
-        logger.debug("Evento de imagen enviado a {}", destination); // Log opcional
+    // Conectados y sin reserva
+    public Set<String> getAvailableReaderNames() {
+        Set<String> result = new HashSet<>();
+        for (ReaderSlot slot : slots.values()) {
+            if (slot.isConnected() && !reservations.isReserved(slot.name)) result.add(slot.name);
+        }
+        return result;
     }
 
     // Asegúrate que la clase interna FingerprintImageEvent esté definida (ya la incluí antes):
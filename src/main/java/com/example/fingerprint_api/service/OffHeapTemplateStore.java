@@ -0,0 +1,48 @@
+package com.example.fingerprint_api.service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arena de memoria directa (fuera del heap) para los bytes ANSI 378 de la galería.
+ * Los templates se copian uno tras otro en segmentos de {@code segmentBytes} (ByteBuffer directos)
+ * y cada uno queda representado en el heap solo por un {@link StoredFmd} de tamaño fijo.
+ * Solo se añade: las bajas dejan su espacio sin usar hasta la siguiente recarga completa,
+ * que construye una arena nueva (la anterior se libera cuando ninguna galería la referencia).
+ */
+public final class OffHeapTemplateStore {
+
+    private final int segmentBytes;
+    private final List<ByteBuffer> segments = new ArrayList<>(); // Protegido por this
+    private ByteBuffer current;                                   // Protegido por this
+    private long allocatedBytes;                                  // Protegido por this
+    private long usedBytes;                                       // Protegido por this
+    private int templates;                                        // Protegido por this
+
+    public OffHeapTemplateStore(int segmentBytes) {
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Copia el template a la arena y devuelve su referencia.
+     */
+    public synchronized StoredFmd put(byte[] data) {
+        if (current == null || current.remaining() < data.length) {
+            // Un template mayor que el segmento recibe un segmento propio
+            current = ByteBuffer.allocateDirect(Math.max(segmentBytes, data.length));
+            segments.add(current);
+            allocatedBytes += current.capacity();
+        }
+        int offset = current.position();
+        current.put(data);
+        usedBytes += data.length;
+        templates++;
+        return new StoredFmd(current, offset, data.length);
+    }
+
+    public synchronized long getAllocatedBytes() { return allocatedBytes; }
+    public synchronized long getUsedBytes() { return usedBytes; }
+    public synchronized int getTemplates() { return templates; }
+    public synchronized int getSegments() { return segments.size(); }
+}
@@ -0,0 +1,197 @@
+package com.example.fingerprint_api.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reservas de lectores por sesión, indexadas en los dos sentidos (lector -> reserva y sesión -> lector),
+ * así que el bucle de captura, la liberación por desconexión y las consultas no recorren todas las reservas.
+ * <p>
+ * Una sesión tiene a lo sumo un lector y un lector a lo sumo una sesión. Con lease-ms > 0 las reservas de
+ * sesiones de cliente vencen: el lease se renueva al volver a reservar, con {@link #renew(String)} y con la
+ * actividad del lector ({@link #renewReader(String)}: capturas y enrolamiento); si la sesión desaparece sin
+ * desconectar el WebSocket, el barrido periódico de {@link MultiReaderFingerprintService} la libera al vencer.
+ * Por defecto no vencen: la desconexión del WebSocket ya libera el lector. Las reservas internas (modo checador)
+ * nunca vencen.
+ * <p>
+ * El registro es seguro entre hilos, pero la coherencia con el estado del lector la da el llamador: todas las
+ * altas y bajas de un lector se hacen con el candado de ese lector.
+ */
+@Component
+public class ReaderReservationRegistry {
+
+    // <= 0 desactiva el vencimiento
+    @Value("${fingerprint.reservation.lease-ms:0}")
+    private long leaseMs;
+
+    private final Map<String, Reservation> byReader = new ConcurrentHashMap<>();
+    private final Map<String, String> bySession = new ConcurrentHashMap<>();
+
+    private final LongAdder reserved = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public static final class Reservation {
+        private final String readerName;
+        private final String sessionId;
+        private final boolean expiring;
+        private volatile long expiresAt;
+
+        Reservation(String readerName, String sessionId, boolean expiring, long expiresAt) {
+            this.readerName = readerName;
+            this.sessionId = sessionId;
+            this.expiring = expiring;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getReaderName() { return readerName; }
+        public String getSessionId() { return sessionId; }
+
+        boolean isExpired(long now) {
+            return expiring && now >= expiresAt;
+        }
+    }
+
+    /**
+     * Reserva el lector para la sesión, o renueva el lease si ya era suyo.
+     *
+     * @param expiring false para reservas internas que no vencen.
+     * @return false si el lector está reservado por otra sesión.
+     */
+    public boolean reserve(String readerName, String sessionId, boolean expiring) {
+        long expiresAt = expiring && leaseMs > 0 ? System.currentTimeMillis() + leaseMs : Long.MAX_VALUE;
+        Reservation created = new Reservation(readerName, sessionId, expiring && leaseMs > 0, expiresAt);
+        Reservation current = byReader.compute(readerName, (name, existing) -> {
+            if (existing == null) {
+                return created;
+            }
+            if (existing.sessionId.equals(sessionId)) {
+                existing.expiresAt = expiresAt;
+            }
+            return existing;
+        });
+        if (current != created && !current.sessionId.equals(sessionId)) {
+            rejected.increment();
+            return false;
+        }
+        if (current == created) {
+            bySession.put(sessionId, readerName);
+            reserved.increment();
+        }
+        return true;
+    }
+
+    /**
+     * Libera el lector solo si sigue reservado por esa sesión.
+     */
+    public boolean release(String readerName, String sessionId) {
+        Reservation current = byReader.get(readerName);
+        if (current == null || !current.sessionId.equals(sessionId)) {
+            return false;
+        }
+        return remove(current);
+    }
+
+    /**
+     * Libera el lector sea cual sea la sesión que lo tiene.
+     *
+     * @return la sesión que lo tenía reservado, o null.
+     */
+    public String release(String readerName) {
+        Reservation current = byReader.get(readerName);
+        return current != null && remove(current) ? current.sessionId : null;
+    }
+
+    // Quita la reserva solo si sigue siendo la misma (no una nueva del mismo lector)
+    private boolean remove(Reservation reservation) {
+        if (!byReader.remove(reservation.readerName, reservation)) {
+            return false;
+        }
+        bySession.remove(reservation.sessionId, reservation.readerName);
+        released.increment();
+        return true;
+    }
+
+    /**
+     * Renueva el lease de la reserva de la sesión.
+     *
+     * @return false si la sesión no tiene lector reservado.
+     */
+    public boolean renew(String sessionId) {
+        String readerName = bySession.get(sessionId);
+        return readerName != null && reserve(readerName, sessionId, true);
+    }
+
+    /**
+     * Renueva el lease de la reserva del lector por actividad en él, sea cual sea la sesión que lo tiene.
+     *
+     * @return false si el lector no tiene una reserva que venza.
+     */
+    public boolean renewReader(String readerName) {
+        Reservation current = byReader.get(readerName);
+        if (current == null || !current.expiring) {
+            return false;
+        }
+        current.expiresAt = System.currentTimeMillis() + leaseMs;
+        return true;
+    }
+
+    public String ownerOf(String readerName) {
+        Reservation reservation = byReader.get(readerName);
+        return reservation == null ? null : reservation.sessionId;
+    }
+
+    public String readerOf(String sessionId) {
+        return bySession.get(sessionId);
+    }
+
+    public boolean isReserved(String readerName) {
+        return byReader.containsKey(readerName);
+    }
+
+    /**
+     * Reservas con el lease vencido (recorre todas: es para el barrido periódico, no para el camino de captura).
+     */
+    public List<Reservation> findExpired() {
+        long now = System.currentTimeMillis();
+        List<Reservation> result = new ArrayList<>();
+        for (Reservation reservation : byReader.values()) {
+            if (reservation.isExpired(now)) result.add(reservation);
+        }
+        return result;
+    }
+
+    /**
+     * Libera la reserva si sigue vencida (una renovación concurrente la conserva).
+     */
+    public boolean expire(Reservation reservation) {
+        if (!reservation.isExpired(System.currentTimeMillis()) || !remove(reservation)) {
+            return false;
+        }
+        expired.increment();
+        return true;
+    }
+
+    public long getLeaseMs() {
+        return leaseMs;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("active", byReader.size());
+        stats.put("leaseMs", leaseMs);
+        stats.put("reserved", reserved.sum());
+        stats.put("released", released.sum());
+        stats.put("expired", expired.sum());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+}
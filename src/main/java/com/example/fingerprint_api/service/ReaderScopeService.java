@@ -0,0 +1,168 @@
+package com.example.fingerprint_api.service;
+
+import com.example.fingerprint_api.config.ReaderScopeProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resuelve el alcance (sede/departamentos) de cada lector y mantiene la partición de la galería
+ * correspondiente. Las particiones se construyen fuera del camino de la checada: al publicarse una galería
+ * ({@link #onGalleryPublished}) y, en segundo plano, cuando cambian los departamentos de algún empleado.
+ */
+@Service
+public class ReaderScopeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReaderScopeService.class);
+
+    @Autowired
+    private ReaderScopeProperties properties;
+    @Autowired
+    private EmpleadoIdentityCache identityCache;
+
+    private final Map<String, ReaderScopeProperties.Scope> scopesByName = new ConcurrentHashMap<>();
+    private final Map<String, String> readerScopes = new ConcurrentHashMap<>();
+    // Partición de la galería de cada alcance (misma versión que la galería sobre la que se construyó)
+    private final Map<String, GallerySnapshot> partitions = new ConcurrentHashMap<>();
+
+    // Última galería publicada, sobre la que se construyen las particiones. Protegido por this al cambiarla
+    private volatile GallerySnapshot latestGallery;
+    // Reconstrucción por cambio de departamentos, en un hilo propio y agrupando los avisos seguidos
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "reader-scope-rebuild");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+
+    @PostConstruct
+    public void init() {
+        for (ReaderScopeProperties.Scope scope : properties.getDefinitions()) {
+            if (scope.getName() == null || scope.getName().isBlank()) {
+                logger.warn("Alcance de lectores sin nombre en la configuración; se omite.");
+                continue;
+            }
+            scopesByName.put(scope.getName(), scope);
+            for (String reader : scope.getReaders()) {
+                readerScopes.put(reader, scope.getName());
+            }
+        }
+        if (!scopesByName.isEmpty()) {
+            identityCache.addDepartmentListener(this::requestRebuild);
+            logger.info("Alcances de lectores configurados: {} (lectores asignados: {}, fallback global: {}).",
+                    scopesByName.keySet(), readerScopes, properties.isGlobalFallback());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    public boolean isGlobalFallback() {
+        return properties.isGlobalFallback();
+    }
+
+    public String getScopeOfReader(String readerName) {
+        return readerName == null ? null : readerScopes.get(readerName);
+    }
+
+    /**
+     * Asigna (o quita, con scopeName null) el alcance de un lector en tiempo de ejecución.
+     *
+     * @return false si el alcance no existe.
+     */
+    public boolean assignReader(String readerName, String scopeName) {
+        if (scopeName == null) {
+            readerScopes.remove(readerName);
+            logger.info("Lector {} sin alcance: identificará contra la galería completa.", readerName);
+            return true;
+        }
+        if (!scopesByName.containsKey(scopeName)) {
+            return false;
+        }
+        readerScopes.put(readerName, scopeName);
+        logger.info("Lector {} asignado al alcance {}.", readerName, scopeName);
+        return true;
+    }
+
+    /**
+     * Devuelve la partición de la galería para el alcance del lector, o null si el lector no tiene alcance o su
+     * partición aún no se construyó (la checada usa entonces la galería completa). No reconstruye nada: tras una
+     * publicación la partición ya corresponde a la galería nueva.
+     */
+    public GallerySnapshot scopedGallery(String readerName, GallerySnapshot snapshot) {
+        String scopeName = getScopeOfReader(readerName);
+        if (scopeName == null) return null;
+        return partitions.get(scopeName);
+    }
+
+    /**
+     * Reconstruye las particiones de todos los alcances sobre una galería recién publicada. Lo llama quien publica
+     * (alta, baja, recarga), no la checada; una versión anterior a la ya construida se ignora.
+     */
+    public synchronized void onGalleryPublished(GallerySnapshot snapshot) {
+        if (scopesByName.isEmpty()) return;
+        GallerySnapshot latest = latestGallery;
+        if (latest != null && snapshot.getVersion() < latest.getVersion()) return;
+        latestGallery = snapshot;
+        rebuildPartitions(snapshot);
+    }
+
+    // Cambio de departamentos: la reconstrucción corre en su hilo, nunca en el del cambio (puede ser una checada)
+    private void requestRebuild() {
+        if (!rebuildPending.compareAndSet(false, true)) return;
+        try {
+            rebuildExecutor.execute(() -> {
+                rebuildPending.set(false);
+                synchronized (this) {
+                    GallerySnapshot latest = latestGallery;
+                    if (latest != null) rebuildPartitions(latest);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rebuildPending.set(false); // Deteniéndose
+        }
+    }
+
+    private void rebuildPartitions(GallerySnapshot snapshot) {
+        for (ReaderScopeProperties.Scope scope : scopesByName.values()) {
+            GallerySnapshot scoped = snapshot.filterByEmpleado(empleadoId -> belongsTo(scope, empleadoId));
+            partitions.put(scope.getName(), scoped);
+            logger.debug("Partición del alcance {} reconstruida: {} de {} templates.", scope.getName(), scoped.size(), snapshot.size());
+        }
+    }
+
+    private boolean belongsTo(ReaderScopeProperties.Scope scope, int empleadoId) {
+        if (scope.getEmpleados().contains(empleadoId)) return true;
+        EmpleadoIdentity identity = identityCache.getIfPresent(empleadoId);
+        if (identity == null) return false;
+        return (identity.getDepartamentoAcademicoId() != null && scope.getDepartamentos().contains(identity.getDepartamentoAcademicoId()))
+                || (identity.getDepartamentoAdministrativoId() != null && scope.getDepartamentos().contains(identity.getDepartamentoAdministrativoId()));
+    }
+
+    /**
+     * Resumen para diagnóstico: alcance -> templates en su partición actual, y lectores asignados.
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> sizes = new HashMap<>();
+        partitions.forEach((name, p) -> sizes.put(name, p.size()));
+        return Map.of(
+                "scopes", scopesByName.keySet(),
+                "readers", Map.copyOf(readerScopes),
+                "partitionSizes", sizes,
+                "globalFallback", properties.isGlobalFallback()
+        );
+    }
+}
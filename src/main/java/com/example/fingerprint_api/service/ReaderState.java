@@ -0,0 +1,14 @@
+package com.example.fingerprint_api.service;
+
+/**
+ * Estado de un lector de huellas. Cada lector tiene su propio estado y su propio candado, así que una
+ * operación sobre un lector nunca espera a otro.
+ */
+public enum ReaderState {
+    IDLE,         // Conectado, libre
+    RESERVED,     // Reservado por una sesión, sin captura en curso
+    CAPTURING,    // Captura continua (vista previa), con o sin reserva
+    CHECADOR,     // Captura continua con identificación (reserva interna "checador_<lector>")
+    ENROLLING,    // Captura puntual de enrolamiento en curso
+    DISCONNECTED  // Ya no aparece en el SDK; se reabre si vuelve a conectarse
+}
@@ -0,0 +1,54 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fmd;
+import com.example.fingerprint_api.engine.AnsiFmd;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Referencia a un template ANSI 378-2004 guardado en un {@link OffHeapTemplateStore}.
+ * Los campos del encabezado se leen directamente de la memoria directa; los bytes completos solo se copian
+ * al heap bajo demanda ({@link #getData()}), por ejemplo para construir la entrada del comparador.
+ */
+public final class StoredFmd implements Fmd {
+
+    private final ByteBuffer segment;
+    private final int offset;
+    private final int length;
+
+    StoredFmd(ByteBuffer segment, int offset, int length) {
+        this.segment = segment;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    // Los campos tras la longitud del registro se desplazan 4 bytes en el formato largo (longitud 0 + 4 bytes)
+    private int headerBase() {
+        return offset + (segment.getShort(offset + 8) == 0 ? 14 : 10);
+    }
+
+    private int unsignedShort(int relative) {
+        return segment.getShort(headerBase() + relative) & 0xFFFF;
+    }
+
+    @Override public int getCbeffId() { return segment.getInt(headerBase()); }
+    @Override public int getCaptureEquipmentCompliance() { return unsignedShort(4) >>> 12; }
+    @Override public int getCaptureEquipmentId() { return unsignedShort(4) & 0x0FFF; }
+    @Override public int getWidth() { return unsignedShort(6); }
+    @Override public int getHeight() { return unsignedShort(8); }
+    @Override public int getResolution() { return unsignedShort(10); }
+    @Override public int getViewCnt() { return segment.get(headerBase() + 14) & 0xFF; }
+    @Override public Format getFormat() { return Format.ANSI_378_2004; }
+    @Override public Fmv[] getViews() { return AnsiFmd.parse(getData()).getViews(); }
+
+    @Override
+    public byte[] getData() {
+        byte[] data = new byte[length];
+        segment.get(offset, data);
+        return data;
+    }
+}
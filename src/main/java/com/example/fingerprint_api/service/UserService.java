@@ -1,25 +1,37 @@
 package com.example.fingerprint_api.service;
 
-import com.digitalpersona.uareu.Engine;
 import com.digitalpersona.uareu.Fmd;
-import com.digitalpersona.uareu.UareUGlobal;
 import com.digitalpersona.uareu.UareUException;
+import com.example.fingerprint_api.engine.FeatureExtractor;
+import com.example.fingerprint_api.engine.FingerprintMatcher;
+import com.example.fingerprint_api.engine.MatchCandidate;
+import com.example.fingerprint_api.engine.TemplateBins;
+import com.example.fingerprint_api.engine.TopCandidates;
 import com.example.fingerprint_api.exception.ResourceNotFoundException; // Necesitaremos crear esta excepción
 import com.example.fingerprint_api.model.Empleado;
 import com.example.fingerprint_api.model.Huella;
 import com.example.fingerprint_api.repository.EmpleadoRepository;
 import com.example.fingerprint_api.repository.HuellaRepository;
 import com.example.fingerprint_api.util.CryptoUtils;
+import com.example.fingerprint_api.util.TransactionUtils;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional; // Para operaciones de escritura
 
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList; // Para seguridad en concurrencia
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntUnaryOperator;
+import java.util.function.UnaryOperator;
 
 @Service
 public class UserService {
@@ -31,109 +43,727 @@ public class UserService {
     private HuellaRepository huellaRepository;
     @Autowired
     private EmpleadoRepository empleadoRepository;
+    @Autowired
+    private GalleryLoader galleryLoader;
+    @Autowired
+    private EmpleadoIdentityCache identityCache;
+    @Autowired
+    private HotSetRegistry hotSetRegistry;
+    @Autowired
+    private ReaderScopeService readerScopeService;
+    @Autowired
+    private CandidateBinning candidateBinning;
+    @Autowired
+    private GalleryTemplateStorage templateStorage;
+    @Autowired
+    private GallerySnapshotFile snapshotFile;
+    @Autowired
+    private HuellaChangeOutbox changeOutbox;
+    @Autowired
+    private GalleryPartition partition;
+    @Autowired
+    private FingerprintMatcher matcher;
+    @Autowired
+    private FeatureExtractor featureExtractor;
+
+    // Galería en memoria para identificación rápida [FMD + empleadoId + huellaId].
+    // Es una vista inmutable que se reemplaza atómicamente en cada alta/baja, así la identificación
+    // trabaja siempre sobre una versión consistente sin bloquear a los escritores.
+    private final AtomicReference<GallerySnapshot> gallery = new AtomicReference<>(GallerySnapshot.empty(1, 1));
+
+    // Recarga con doble buffer: mientras se construye la nueva galería, las altas/bajas se aplican
+    // a la galería viva y además se registran aquí para volver a aplicarlas antes del intercambio.
+    private final Object galleryWriteLock = new Object();
+    private final AtomicBoolean reloading = new AtomicBoolean(false);
+    private List<UnaryOperator<GallerySnapshot>> reloadJournal; // Protegido por galleryWriteLock
+
+    // Estatus (ids de rh_estatus) cuyos empleados entran en la galería. Vacío = todos.
+    @Value("${fingerprint.gallery.active-estatus-ids:1}")
+    private Set<Integer> activeEstatusIds;
+
+    // Calentamiento en segundo plano: el contexto de Spring (y la API de empleados) no espera a la galería
+    public enum WarmupPolicy {
+        WAIT,    // La identificación espera a la galería completa hasta warmup-wait-ms
+        PARTIAL  // La identificación usa lo que ya esté cargado
+    }
+
+    @Value("${fingerprint.gallery.warmup-policy:WAIT}")
+    private WarmupPolicy warmupPolicy;
+
+    @Value("${fingerprint.gallery.warmup-wait-ms:5000}")
+    private long warmupWaitMs;
+
+    private volatile GalleryReadiness readiness = GalleryReadiness.LOADING;
+    private final CountDownLatch readyLatch = new CountDownLatch(1);
+
+    // Número de particiones (shards) en las que se divide la galería para la identificación 1:N.
+    // Si es <= 0 se usa el número de núcleos disponibles.
+    @Value("${fingerprint.identify.shards:0}")
+    private int configuredShards;
+
+    // Por debajo de este número de FMDs por shard no vale la pena paralelizar.
+    @Value("${fingerprint.identify.min-shard-size:256}")
+    private int minShardSize;
+
+    // Con plazo, cada shard se recorre en bloques de este tamaño y el plazo se revisa entre bloques
+    @Value("${fingerprint.identify.deadline-block-size:1024}")
+    private int deadlineBlockSize;
+
+    // Pool dedicado a la identificación (no usamos el commonPool para no competir con otras tareas)
+    private ExecutorService identifyExecutor;
+    private int shardCount;
 
-    // Estructura en memoria para identificación rápida [FMD + empleadoId + huellaId]
-    // Usamos CopyOnWriteArrayList para seguridad en lecturas concurrentes durante la identificación
-    // mientras ocurren escrituras (nuevas huellas/eliminaciones)
-    private final List<FmdData> fmdDataList = new CopyOnWriteArrayList<>();
+    // Búsquedas que se cortaron por el plazo
+    private final LongAdder partialSearches = new LongAdder();
+    // Identificaciones en curso (las tareas de fondo, como la auditoría de duplicados, les ceden la CPU)
+    private final AtomicInteger activeSearches = new AtomicInteger();
 
-    // Clase interna para almacenar los datos necesarios en memoria
-    private static class FmdData {
-        final Fmd fmd;
-        final Integer empleadoId;
-        final Integer huellaId;
+    // Búsqueda en curso: opciones y plazo comunes a todos los niveles y shards
+    private static final class Search {
+        final IdentificationOptions options;
+        final long deadline;
+        volatile boolean expired;
 
-        FmdData(Fmd fmd, Integer empleadoId, Integer huellaId) {
-            this.fmd = fmd;
-            this.empleadoId = empleadoId;
-            this.huellaId = huellaId;
+        Search(IdentificationOptions options, long startNanos) {
+            this.options = options;
+            this.deadline = options.deadlineNanos(startNanos);
+        }
+
+        boolean isExpired() {
+            if (!expired && options.hasDeadline() && System.nanoTime() - deadline >= 0) {
+                expired = true;
+            }
+            return expired;
         }
     }
 
     @PostConstruct
-    @Transactional(readOnly = true) // Buena práctica para operaciones de solo lectura
     public void init() {
-        loadFmdsIntoMemory();
-    }
-
-    public void loadFmdsIntoMemory() {
-        logger.info("Cargando FMDs de huellas en memoria...");
-        fmdDataList.clear(); // Limpiamos antes de recargar
-        List<Huella> allHuellas = huellaRepository.findAll();
-        int count = 0;
-        for (Huella huella : allHuellas) {
-            if (huella.getTemplateFmd() != null && huella.getEmpleado() != null) {
-                try {
-                    byte[] decryptedFmdBytes = CryptoUtils.decrypt(huella.getTemplateFmd());
-                    Fmd fmd = UareUGlobal.GetImporter().ImportFmd(
-                            decryptedFmdBytes,
-                            Fmd.Format.ANSI_378_2004, // Formato estándar para comparación
-                            Fmd.Format.ANSI_378_2004
-                    );
-                    // Añadimos a la lista concurrente
-                    fmdDataList.add(new FmdData(fmd, huella.getEmpleado().getId(), huella.getId()));
-                    count++;
-                } catch (UareUException e) {
-                    logger.error("Error UareU al importar FMD para huella ID {}: {}", huella.getId(), e.getMessage());
-                } catch (Exception e) {
-                    logger.error("Error al desencriptar o importar FMD para huella ID {}: {}", huella.getId(), e.getMessage(), e);
+        shardCount = configuredShards > 0 ? configuredShards : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCounter = new AtomicInteger();
+        identifyExecutor = Executors.newFixedThreadPool(shardCount, r -> {
+            Thread t = new Thread(r, "identify-shard-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        gallery.set(GallerySnapshot.empty(shardCount, minShardSize));
+        logger.info("Identificación 1:N configurada con {} shards (mínimo {} FMDs por shard).", shardCount, minShardSize);
+
+        Thread warmup = new Thread(this::warmUpGallery, "gallery-warmup");
+        warmup.setDaemon(true);
+        warmup.start();
+    }
+
+    // Carga inicial en segundo plano publicando galerías parciales mientras avanza
+    private void warmUpGallery() {
+        try {
+            loadFmdsIntoMemory(true);
+        } catch (Exception e) {
+            logger.error("Error en la carga inicial de la galería: {}", e.getMessage(), e);
+            if (readiness != GalleryReadiness.READY) {
+                readiness = GalleryReadiness.FAILED;
+                readyLatch.countDown(); // No dejar esperando a los checadores
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (identifyExecutor != null) {
+            identifyExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Recarga la galería desde la BD sin interrumpir la identificación.
+     * La nueva galería se construye aparte mientras la actual sigue atendiendo a los checadores,
+     * y se publica con un único intercambio atómico. Las altas/bajas ocurridas durante la recarga
+     * se vuelven a aplicar sobre la nueva galería antes de publicarla.
+     *
+     * @return La galería publicada, o null si ya había una recarga en curso.
+     */
+    public GallerySnapshot loadFmdsIntoMemory() {
+        return loadFmdsIntoMemory(false);
+    }
+
+    // En el arranque (publishPartial) se intenta primero el archivo local de galería
+    private GallerySnapshot loadFmdsIntoMemory(boolean publishPartial) {
+        if (!reloading.compareAndSet(false, true)) {
+            logger.warn("Ya hay una recarga de galería en curso; se omite la solicitud.");
+            return null;
+        }
+        try {
+            synchronized (galleryWriteLock) {
+                reloadJournal = new ArrayList<>();
+            }
+            long start = System.currentTimeMillis();
+            logger.info("Cargando FMDs de huellas en memoria...");
+            // Antes de leer nada: los cambios del feed posteriores a este id los aplica la sincronización
+            changeOutbox.captureStartWatermark();
+            identityCache.reload(); // Las identidades se cargan junto con la galería
+            // La marca de agua se lee antes de cargar: lo que cambie durante la carga queda por encima de ella
+            GallerySnapshotFile.HighWaterMark mark = snapshotFile.isEnabled() ? snapshotFile.readHighWaterMark() : null;
+            GallerySnapshot loaded = publishPartial && mark != null
+                    ? snapshotFile.restore(gallery.get().getVersion() + 1, shardCount, minShardSize, mark)
+                    : null;
+            boolean restored = loaded != null;
+            if (!restored) {
+                loaded = galleryLoader.loadGallery(gallery.get().getVersion() + 1, shardCount, minShardSize,
+                        activeEstatusIds, publishPartial ? this::publishPartialGallery : null);
+            }
+
+            GallerySnapshot published;
+            synchronized (galleryWriteLock) {
+                published = loaded;
+                for (UnaryOperator<GallerySnapshot> change : reloadJournal) {
+                    published = change.apply(published);
                 }
-            } else {
-                logger.warn("Huella ID {} omitida: template o empleado nulo.", huella.getId());
+                if (!reloadJournal.isEmpty()) {
+                    logger.info("Se reaplicaron {} cambios ocurridos durante la recarga.", reloadJournal.size());
+                }
+                // La versión publicada siempre es posterior a la que estaba viva
+                published = published.withVersion(gallery.get().getVersion() + 1);
+                gallery.set(published);
+                reloadJournal = null;
+            }
+            onGalleryPublished(published);
+            if (readiness != GalleryReadiness.READY) {
+                readiness = GalleryReadiness.READY;
+                readyLatch.countDown();
+            }
+            logger.info("Se cargaron {} FMDs en memoria (versión de galería {}) en {} ms.",
+                    published.size(), published.getVersion(), System.currentTimeMillis() - start);
+            if (mark != null && (!restored || snapshotFile.isRewriteNeeded())) {
+                snapshotFile.save(published, mark);
+            }
+            return published;
+        } finally {
+            synchronized (galleryWriteLock) {
+                reloadJournal = null;
+            }
+            reloading.set(false);
+        }
+    }
+
+    // Publica una galería parcial durante el calentamiento (con los cambios registrados aplicados)
+    private void publishPartialGallery(GallerySnapshot partial) {
+        synchronized (galleryWriteLock) {
+            GallerySnapshot published = partial;
+            if (reloadJournal != null) {
+                for (UnaryOperator<GallerySnapshot> change : reloadJournal) {
+                    published = change.apply(published);
+                }
+            }
+            gallery.set(published.withVersion(gallery.get().getVersion() + 1));
+        }
+        onGalleryPublished(gallery.get());
+        readiness = GalleryReadiness.PARTIAL;
+        logger.info("Galería parcial publicada: {}/{} templates.", partial.size(), galleryLoader.getTotal());
+    }
+
+    public GalleryReadiness getReadiness() {
+        return readiness;
+    }
+
+    /**
+     * Resincronización periódica opcional con la BD (deshabilitada por defecto, cron "-").
+     */
+    @Scheduled(cron = "${fingerprint.gallery.resync-cron:-}")
+    public void scheduledResync() {
+        try {
+            logger.info("Resincronización programada de la galería de huellas.");
+            loadFmdsIntoMemory();
+        } catch (Exception e) {
+            logger.error("Error en la resincronización programada de la galería: {}", e.getMessage(), e);
+        }
+    }
+
+    public boolean isReloading() {
+        return reloading.get();
+    }
+
+    /**
+     * Aplica un cambio a la galería viva y, si hay una recarga en curso, lo registra para reaplicarlo.
+     */
+    private GallerySnapshot applyGalleryChange(UnaryOperator<GallerySnapshot> change) {
+        GallerySnapshot before;
+        synchronized (galleryWriteLock) {
+            before = gallery.getAndUpdate(change);
+            if (reloadJournal != null) {
+                reloadJournal.add(change);
             }
         }
-        logger.info("Se cargaron {} FMDs en memoria.", count);
+        // La caché de importación y las particiones por sede se ajustan aquí, no en la siguiente checada
+        onGalleryPublished(gallery.get());
+        return before;
+    }
+
+    /**
+     * Devuelve la versión actual de la galería en memoria (útil para diagnóstico).
+     */
+    public GallerySnapshot getGallerySnapshot() {
+        return gallery.get();
     }
 
     /**
      * Identifica un FMD capturado contra las huellas cargadas en memoria.
-     * Devuelve el Empleado correspondiente si se encuentra una coincidencia.
+     * Devuelve la identidad del empleado correspondiente (desde la caché en memoria) si se encuentra una coincidencia.
      *
      * @param capturedFmd El FMD capturado a identificar.
-     * @return Optional<Empleado> con el empleado si se identifica, Optional.empty() si no.
+     * @return Optional<EmpleadoIdentity> con el empleado si se identifica, Optional.empty() si no.
      * @throws UareUException Si ocurre un error en el motor de comparación.
      */
-    // No necesita synchronized explícito por usar CopyOnWriteArrayList (optimizado para lecturas)
-    public Optional<Empleado> identifyUser(Fmd capturedFmd) throws UareUException {
-        if (fmdDataList.isEmpty()) {
+    // No necesita synchronized: trabaja sobre una versión inmutable de la galería
+    public Optional<EmpleadoIdentity> identifyUser(Fmd capturedFmd) throws UareUException {
+        return identifyUser(capturedFmd, null);
+    }
+
+    /**
+     * Identificación en niveles: primero contra el conjunto caliente del lector (empleados
+     * identificados recientemente ahí), luego contra la partición de su alcance (si tiene) y
+     * por último contra toda la galería. Todos los niveles usan el mismo umbral, así que la
+     * tasa de falsa aceptación no cambia.
+     *
+     * @param capturedFmd El FMD capturado a identificar.
+     * @param readerName  Lector que capturó la huella (null para omitir conjunto caliente y alcance).
+     */
+    public Optional<EmpleadoIdentity> identifyUser(Fmd capturedFmd, String readerName) throws UareUException {
+        return identifyBatch(new Fmd[]{capturedFmd}, new String[]{readerName}).get(0);
+    }
+
+    /**
+     * Identificación con los k mejores candidatos, umbral propio y plazo: al cumplirse el plazo la búsqueda
+     * se detiene y devuelve lo mejor encontrado hasta entonces, marcado como parcial.
+     */
+    public IdentificationResult identify(Fmd capturedFmd, String readerName, IdentificationOptions options) throws UareUException {
+        return identifyBatch(new Fmd[]{capturedFmd}, new String[]{readerName}, options, System.nanoTime())[0];
+    }
+
+    /**
+     * Identifica varias huellas (posiblemente de distintos lectores) juntas: una tarea por shard recorre
+     * todas las huellas pendientes, en lugar de una tarea por huella y shard. El motor compara cada huella
+     * por separado; lo compartido es el reparto en shards y la preparación de cada bloque.
+     *
+     * @param probes      FMDs capturados.
+     * @param readerNames Lector de cada FMD (mismo orden; puede contener null).
+     * @return Un resultado por FMD, en el mismo orden.
+     */
+    public List<Optional<EmpleadoIdentity>> identifyBatch(Fmd[] probes, String[] readerNames) throws UareUException {
+        IdentificationResult[] matches = identifyBatch(probes, readerNames, IdentificationOptions.defaults(), System.nanoTime());
+        List<Optional<EmpleadoIdentity>> results = new ArrayList<>(matches.length);
+        for (IdentificationResult match : matches) {
+            results.add(match.getBest() == null ? Optional.empty() : identityCache.get(match.getBest().getEmpleadoId()));
+        }
+        return results;
+    }
+
+    /**
+     * Igual que {@link #identifyBatch(Fmd[], String[])}, con candidatos puntuados, umbral y plazo comunes al lote.
+     *
+     * @param startNanos Inicio de la solicitud (System.nanoTime), desde el que corre el plazo.
+     * @return Un resultado por FMD, en el mismo orden.
+     */
+    public IdentificationResult[] identifyBatch(Fmd[] probes, String[] readerNames, IdentificationOptions options,
+                                                long startNanos) throws UareUException {
+        activeSearches.incrementAndGet();
+        try {
+            return searchTiers(probes, readerNames, options, startNanos);
+        } finally {
+            activeSearches.decrementAndGet();
+        }
+    }
+
+    // Niveles de la identificación: conjunto caliente, alcance del lector y galería completa
+    private IdentificationResult[] searchTiers(Fmd[] probes, String[] readerNames, IdentificationOptions options,
+                                               long startNanos) throws UareUException {
+        awaitGalleryIfWarmingUp();
+        GallerySnapshot snapshot = gallery.get();
+        IdentificationResult[] results = new IdentificationResult[probes.length];
+        Arrays.fill(results, IdentificationResult.empty());
+        if (snapshot.isEmpty()) {
             logger.warn("Intento de identificación sin FMDs en memoria.");
-            return Optional.empty();
-        }
-
-        // Extraer solo los FMDs para la comparación
-        Fmd[] fmdsToCompare = fmdDataList.stream().map(data -> data.fmd).toArray(Fmd[]::new);
-
-        Engine engine = UareUGlobal.GetEngine();
-        // Ajusta el umbral según sea necesario (más bajo = más estricto)
-        int threshold = Engine.PROBABILITY_ONE / 100000; // FAR 1 en 100k
-
-        logger.debug("Iniciando identificación 1:N con {} FMDs en memoria.", fmdsToCompare.length);
-
-        Engine.Candidate[] candidates = engine.Identify(
-                capturedFmd,
-                0, // first view
-                fmdsToCompare,
-                threshold,
-                1 // Máximo 1 resultado (el mejor)
-        );
-
-        if (candidates.length > 0) {
-            int bestMatchIndex = candidates[0].fmd_index;
-            // Validar índice (aunque CopyOnWriteArrayList es estable durante la iteración)
-            if (bestMatchIndex >= 0 && bestMatchIndex < fmdDataList.size()) {
-                FmdData matchedData = fmdDataList.get(bestMatchIndex); // Obtener datos del índice coincidente
-                Integer empleadoId = matchedData.empleadoId;
-                logger.info("Huella identificada! Índice: {}, Huella ID: {}, Empleado ID: {}", bestMatchIndex, matchedData.huellaId, empleadoId);
-                // Buscar el empleado completo en la BD
-                return empleadoRepository.findById(empleadoId);
+            return results;
+        }
+        Search search = new Search(options, startNanos);
+        List<List<IdentificationMatch>> found = new ArrayList<>(probes.length);
+        for (int i = 0; i < probes.length; i++) {
+            found.add(null);
+        }
+        boolean[] partial = new boolean[probes.length];
+        // Con k > 1 los atajos (conjunto caliente, bins) truncarían el ranking
+        boolean shortcuts = options.getK() == 1;
+
+        // Nivel 1: conjunto caliente de cada lector
+        for (int i = 0; i < probes.length && shortcuts; i++) {
+            HotSetRegistry.View hotView = hotSetRegistry.view(readerNames[i], snapshot);
+            if (hotView == null) continue;
+            long hotStart = System.nanoTime();
+            MatchCandidate hotMatch = identifyShard(probes[i], hotView.getFmds(), options.getThreshold());
+            hotSetRegistry.recordHotSearch(hotMatch != null, System.nanoTime() - hotStart);
+            if (hotMatch != null) {
+                int empleadoId = hotView.getEmpleadoId(hotMatch.getIndex());
+                int huellaId = hotView.getHuellaId(hotMatch.getIndex());
+                logger.info("Huella identificada (conjunto caliente de {})! Score: {}, Huella ID: {}, Empleado ID: {}",
+                        readerNames[i], hotMatch.getScore(), huellaId, empleadoId);
+                hotSetRegistry.recordMatch(readerNames[i], empleadoId);
+                found.set(i, List.of(new IdentificationMatch(empleadoId, huellaId, hotMatch.getScore())));
+            }
+        }
+
+        // Nivel 2: partición del alcance del lector (sede/departamentos), agrupando huellas del mismo alcance
+        Map<GallerySnapshot, List<Integer>> byScope = new IdentityHashMap<>();
+        List<Integer> global = new ArrayList<>();
+        for (int i = 0; i < probes.length; i++) {
+            if (found.get(i) != null) continue;
+            GallerySnapshot scoped = readerScopeService.scopedGallery(readerNames[i], snapshot);
+            if (scoped != null) {
+                byScope.computeIfAbsent(scoped, k -> new ArrayList<>()).add(i);
             } else {
-                logger.error("Índice de candidato inválido ({}) fuera de rango (0-{}).", bestMatchIndex, fmdDataList.size() - 1);
-                return Optional.empty(); // Índice inválido
+                global.add(i);
+            }
+        }
+        for (Map.Entry<GallerySnapshot, List<Integer>> entry : byScope.entrySet()) {
+            searchGallery(probes, readerNames, entry.getValue(), entry.getKey(), search, shortcuts, found, partial);
+            if (readerScopeService.isGlobalFallback()) {
+                for (Integer i : entry.getValue()) {
+                    if (found.get(i) == null) {
+                        logger.debug("Sin coincidencia en el alcance del lector {}; se busca en la galería completa.", readerNames[i]);
+                        global.add(i);
+                    }
+                }
             }
         }
 
-        logger.debug("Identificación 1:N no encontró coincidencias.");
-        return Optional.empty();
+        // Nivel 3: galería completa
+        searchGallery(probes, readerNames, global, snapshot, search, shortcuts, found, partial);
+
+        for (int i = 0; i < probes.length; i++) {
+            if (found.get(i) != null || partial[i]) {
+                results[i] = new IdentificationResult(found.get(i) == null ? List.of() : found.get(i), partial[i]);
+            }
+            if (partial[i]) {
+                partialSearches.increment();
+                logger.warn("Identificación cortada por el plazo de {} ms (lector {}): {} candidato(s) hasta ese momento.",
+                        options.getDeadlineMs(), readerNames[i], results[i].getCandidates().size());
+            }
+        }
+        return results;
+    }
+
+    // Búsqueda 1:N (paralela por shards) de las huellas indicadas contra una galería o partición
+    private void searchGallery(Fmd[] probes, String[] readerNames, List<Integer> pending, GallerySnapshot snapshot,
+                               Search search, boolean shortcuts, List<List<IdentificationMatch>> found,
+                               boolean[] partial) throws UareUException {
+        if (pending.isEmpty() || snapshot.isEmpty()) {
+            return;
+        }
+        logger.debug("Iniciando identificación 1:N de {} huella(s) con {} FMDs en memoria (versión {}).",
+                pending.size(), snapshot.size(), snapshot.getVersion());
+
+        // Prefiltro por bins del encabezado ANSI: las huellas sin coincidencia clara en sus bins siguen al resto de la
+        // galería (sin repetir los bins ya comparados) y sus candidatos de los bins compiten con los de ese resto
+        List<Integer> remaining = pending;
+        Map<Integer, TopCandidates> binCandidates = Map.of();
+        Map<Integer, Set<Integer>> visitedBins = Map.of();
+        if (shortcuts && candidateBinning.appliesTo(snapshot)) {
+            remaining = new ArrayList<>(pending.size());
+            binCandidates = new HashMap<>();
+            visitedBins = new HashMap<>();
+            for (Integer i : pending) {
+                long binStart = System.nanoTime();
+                Set<Integer> visited = new HashSet<>();
+                TopCandidates binTop = searchBins(probes[i], snapshot, search, visited);
+                if (!isConfident(binTop, search.options.getThreshold())) {
+                    binCandidates.put(i, binTop);
+                    if (visited.isEmpty()) {
+                        remaining.add(i); // Sin bins recorridos el resto es la galería completa, junto con las demás
+                    } else {
+                        visitedBins.put(i, visited);
+                    }
+                    continue;
+                }
+                hotSetRegistry.recordFullSearch(System.nanoTime() - binStart);
+                resolveMatches(i, readerNames[i], snapshot, binTop, found);
+            }
+        }
+
+        for (Map.Entry<Integer, Set<Integer>> entry : visitedBins.entrySet()) {
+            int i = entry.getKey();
+            long restStart = System.nanoTime();
+            TopCandidates best = identifyOutsideBins(probes[i], snapshot, entry.getValue(), search);
+            hotSetRegistry.recordFullSearch(System.nanoTime() - restStart);
+            finishSearch(i, readerNames[i], snapshot, search, best, binCandidates.get(i), found, partial);
+        }
+        if (remaining.isEmpty()) {
+            return;
+        }
+
+        Fmd[] batch = new Fmd[remaining.size()];
+        for (int j = 0; j < batch.length; j++) {
+            batch[j] = probes[remaining.get(j)];
+        }
+        long fullStart = System.nanoTime();
+        TopCandidates[] best = identifySharded(batch, snapshot, search);
+        long perProbeNanos = (System.nanoTime() - fullStart) / batch.length;
+
+        for (int j = 0; j < batch.length; j++) {
+            int i = remaining.get(j);
+            hotSetRegistry.recordFullSearch(perProbeNanos);
+            finishSearch(i, readerNames[i], snapshot, search, best[j], binCandidates.get(i), found, partial);
+        }
+    }
+
+    // Combina los candidatos de los bins (si hubo) con los del resto de la galería y resuelve la huella
+    private void finishSearch(int i, String readerName, GallerySnapshot snapshot, Search search, TopCandidates best,
+                              TopCandidates binTop, List<List<IdentificationMatch>> found, boolean[] partial) {
+        partial[i] |= search.isExpired();
+        if (binTop != null) {
+            for (MatchCandidate candidate : binTop.toArray()) {
+                best.offer(candidate.getIndex(), candidate.getScore(), snapshot.getEmpleadoId(candidate.getIndex()));
+            }
+        }
+        if (best.size() == 0) {
+            logger.debug("Identificación 1:N no encontró coincidencias (lector {}).", readerName);
+            return;
+        }
+        resolveMatches(i, readerName, snapshot, best, found);
+    }
+
+    // Los índices se resuelven contra la misma versión que se buscó
+    private void resolveMatches(int i, String readerName, GallerySnapshot snapshot, TopCandidates top,
+                                List<List<IdentificationMatch>> found) {
+        MatchCandidate[] candidates = top.toArray();
+        List<IdentificationMatch> matches = new ArrayList<>(candidates.length);
+        for (MatchCandidate candidate : candidates) {
+            matches.add(new IdentificationMatch(snapshot.getEmpleadoId(candidate.getIndex()),
+                    snapshot.getHuellaId(candidate.getIndex()), candidate.getScore()));
+        }
+        IdentificationMatch best = matches.get(0);
+        logger.info("Huella identificada! Índice: {}, Score: {}, Huella ID: {}, Empleado ID: {}",
+                candidates[0].getIndex(), best.getScore(), best.getHuellaId(), best.getEmpleadoId());
+        hotSetRegistry.recordMatch(readerName, best.getEmpleadoId());
+        found.set(i, matches);
+    }
+
+    /**
+     * Busca la huella en los bins de la galería más parecidos a su encabezado, etapa por etapa
+     * (primero los de distancia 0), y se queda con el mejor candidato de todas las etapas recorridas.
+     * Solo se detiene antes de la última etapa con una coincidencia clara (ver {@link CandidateBinning#isConfident})
+     * o al cumplirse el plazo, así que un falso positivo débil de un bin cercano no tapa al verdadero de otro bin.
+     *
+     * @param visited Recibe las claves de los bins comparados, para no repetirlos en el resto de la galería.
+     * @return El mejor candidato (índice global en la galería); vacío si ningún bin coincidió.
+     */
+    private TopCandidates searchBins(Fmd probe, GallerySnapshot snapshot, Search search, Set<Integer> visited)
+            throws UareUException {
+        long binnedCompared = 0;
+        int threshold = search.options.getThreshold();
+        TopCandidates top = new TopCandidates(1); // Los bins solo se usan con k = 1
+        for (List<GallerySnapshot.Bin> stage : candidateBinning.stages(snapshot, TemplateBins.keyOf(probe))) {
+            for (GallerySnapshot.Bin bin : stage) {
+                if (search.isExpired()) {
+                    break;
+                }
+                binnedCompared += bin.size();
+                visited.add(bin.getKey());
+                MatchCandidate match = identifyShard(probe, bin.getFmds(), top.bar(threshold));
+                if (match != null) {
+                    top.offer(bin.getPosition(match.getIndex()), match.getScore());
+                }
+            }
+            if (search.isExpired() || isConfident(top, threshold)) {
+                break;
+            }
+        }
+        candidateBinning.record(binnedCompared, isConfident(top, threshold), snapshot.size());
+        return top;
+    }
+
+    private boolean isConfident(TopCandidates top, int threshold) {
+        return top.size() > 0 && candidateBinning.isConfident(top.toArray()[0].getScore(), threshold);
+    }
+
+    /**
+     * Busca la huella en los bins que {@link #searchBins} no recorrió, en paralelo como la galería completa.
+     */
+    private TopCandidates identifyOutsideBins(Fmd probe, GallerySnapshot snapshot, Set<Integer> visited, Search search)
+            throws UareUException {
+        List<GallerySnapshot.Bin> rest = new ArrayList<>();
+        int total = 0;
+        for (GallerySnapshot.Bin bin : snapshot.getBins()) {
+            if (!visited.contains(bin.getKey())) {
+                rest.add(bin);
+                total += bin.size();
+            }
+        }
+        TopCandidates best = new TopCandidates(search.options.getK());
+        if (total == 0) {
+            return best;
+        }
+        Fmd[] fmds = new Fmd[total];
+        int[] positions = new int[total];
+        int at = 0;
+        for (GallerySnapshot.Bin bin : rest) {
+            System.arraycopy(bin.getFmds(), 0, fmds, at, bin.size());
+            for (int j = 0; j < bin.size(); j++) {
+                positions[at + j] = bin.getPosition(j);
+            }
+            at += bin.size();
+        }
+        // Tantos trozos como shards tenga la galería; las entradas importadas se reutilizan por template
+        int chunks = Math.min(snapshot.getShardCount(), total);
+        int chunkSize = (total + chunks - 1) / chunks;
+        List<Fmd[]> arrays = new ArrayList<>(chunks);
+        List<Integer> offsets = new ArrayList<>(chunks);
+        for (int from = 0; from < total; from += chunkSize) {
+            arrays.add(Arrays.copyOfRange(fmds, from, Math.min(total, from + chunkSize)));
+            offsets.add(from);
+        }
+        TopCandidates found = identifyParallel(new Fmd[]{probe}, arrays, offsets, search,
+                i -> snapshot.getEmpleadoId(positions[i]), snapshot.getMaxTemplatesPerEmpleado())[0];
+        for (MatchCandidate candidate : found.toArray()) {
+            int position = positions[candidate.getIndex()];
+            best.offer(position, candidate.getScore(), snapshot.getEmpleadoId(position));
+        }
+        return best;
+    }
+
+    // Ajustes que dependen de la galería publicada (límite de la caché de importación, particiones por sede)
+    private void onGalleryPublished(GallerySnapshot published) {
+        templateStorage.onGalleryPublished(published);
+        readerScopeService.onGalleryPublished(published);
+    }
+
+    // Según la política, espera (con límite) a que termine la carga inicial antes de identificar
+    private void awaitGalleryIfWarmingUp() {
+        if (readiness == GalleryReadiness.READY || warmupPolicy != WarmupPolicy.WAIT) {
+            return;
+        }
+        try {
+            if (!readyLatch.await(warmupWaitMs, TimeUnit.MILLISECONDS)) {
+                logger.warn("La galería sigue cargando ({}) tras {} ms; se identifica con {} templates.",
+                        readiness, warmupWaitMs, gallery.get().size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Busca las huellas en todos los shards de la galería en paralelo y combina los k mejores de cada una,
+     * un candidato por empleado (el de menor puntuación entre sus templates). Con plazo, cada shard se detiene por sí solo entre bloques, así que la espera termina a lo sumo un bloque después.
+     */
+    private TopCandidates[] identifySharded(Fmd[] probes, GallerySnapshot snapshot, Search search) throws UareUException {
+        int shards = snapshot.getShardCount();
+        List<Fmd[]> arrays = new ArrayList<>(shards);
+        List<Integer> offsets = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            arrays.add(snapshot.getShard(i));
+            offsets.add(snapshot.getShardOffset(i));
+        }
+        return identifyParallel(probes, arrays, offsets, search, snapshot::getEmpleadoId,
+                snapshot.getMaxTemplatesPerEmpleado());
+    }
+
+    // Un arreglo por hilo del pool de identificación; los índices de cada arreglo se desplazan por su offset y
+    // empleadoOf da el empleado de cada índice, para que el ranking tenga un solo lugar por empleado
+    private TopCandidates[] identifyParallel(Fmd[] probes, List<Fmd[]> arrays, List<Integer> offsets, Search search,
+                                             IntUnaryOperator empleadoOf, int perEmpleado) throws UareUException {
+        if (arrays.size() <= 1) {
+            return identifyShardBatch(probes, arrays.get(0), offsets.get(0), search, empleadoOf, perEmpleado);
+        }
+
+        List<Future<TopCandidates[]>> futures = new ArrayList<>(arrays.size());
+        for (int i = 0; i < arrays.size(); i++) {
+            final Fmd[] shard = arrays.get(i);
+            final int offset = offsets.get(i);
+            futures.add(identifyExecutor.submit(() -> identifyShardBatch(probes, shard, offset, search, empleadoOf, perEmpleado)));
+        }
+
+        TopCandidates[] best = new TopCandidates[probes.length];
+        for (int j = 0; j < probes.length; j++) {
+            best[j] = new TopCandidates(search.options.getK());
+        }
+        try {
+            for (Future<TopCandidates[]> future : futures) {
+                TopCandidates[] matches = future.get();
+                for (int j = 0; j < probes.length; j++) {
+                    for (MatchCandidate candidate : matches[j].toArray()) {
+                        best[j].offer(candidate.getIndex(), candidate.getScore(), empleadoOf.applyAsInt(candidate.getIndex()));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new UareUException(96075787);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof UareUException) {
+                throw (UareUException) e.getCause();
+            }
+            UareUException ex = new UareUException(96075787);
+            ex.initCause(e.getCause());
+            throw ex;
+        }
+        return best;
+    }
+
+    // Recorre un shard para todas las huellas: cada bloque se prepara una vez y luego se compara huella por huella.
+    // Sin plazo es un único bloque (el shard completo). Con k > 1 se piden al comparador k templates por cada
+    // template que pueda tener un mismo empleado, para que los duplicados de uno no desplacen a los demás
+    private TopCandidates[] identifyShardBatch(Fmd[] probes, Fmd[] shard, int offset, Search search,
+                                               IntUnaryOperator empleadoOf, int perEmpleado) throws UareUException {
+        IdentificationOptions options = search.options;
+        TopCandidates[] matches = new TopCandidates[probes.length];
+        for (int j = 0; j < probes.length; j++) {
+            matches[j] = new TopCandidates(options.getK());
+        }
+        // Una vez por shard (las entradas importadas quedan en caché por template), no por bloque ni por huella
+        Fmd[] inputs = templateStorage.matcherInputs(shard);
+        int block = options.hasDeadline() ? Math.max(1, deadlineBlockSize) : Math.max(1, shard.length);
+        for (int from = 0; from < shard.length; from += block) {
+            if (search.isExpired()) {
+                break;
+            }
+            int to = Math.min(shard.length, from + block);
+            Fmd[] slice = from == 0 && to == shard.length ? inputs : Arrays.copyOfRange(inputs, from, to);
+            for (int j = 0; j < probes.length; j++) {
+                TopCandidates top = matches[j];
+                if (options.getK() == 1) {
+                    MatchCandidate candidate = matcher.identify(probes[j], slice, top.bar(options.getThreshold()));
+                    if (candidate != null) {
+                        int index = offset + from + candidate.getIndex();
+                        top.offer(index, candidate.getScore(), empleadoOf.applyAsInt(index));
+                    }
+                } else {
+                    int fetch = (int) Math.min(slice.length, (long) options.getK() * perEmpleado);
+                    for (MatchCandidate candidate : matcher.identifyTopK(probes[j], slice, top.bar(options.getThreshold()), fetch)) {
+                        int index = offset + from + candidate.getIndex();
+                        top.offer(index, candidate.getScore(), empleadoOf.applyAsInt(index));
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Busca en un conjunto pequeño (conjunto caliente, bin) y devuelve el mejor candidato con su puntuación.
+     */
+    private MatchCandidate identifyShard(Fmd probe, Fmd[] shard, int threshold) throws UareUException {
+        if (shard.length == 0) {
+            return null;
+        }
+        return matcher.identify(probe, templateStorage.matcherInputs(shard), threshold);
+    }
+
+    public long getPartialSearches() {
+        return partialSearches.sum();
+    }
+
+    public int getActiveSearches() {
+        return activeSearches.get();
     }
 
     /**
@@ -164,18 +794,30 @@ public class UserService {
         // 3. Guardar en BD
         Huella savedHuella = huellaRepository.save(nuevaHuella);
         logger.info("Nueva huella guardada en BD con ID: {}", savedHuella.getId());
+        // Las demás instancias la añaden a su galería al leer el cambio (misma transacción que el alta)
+        changeOutbox.recordAlta(savedHuella.getId(), empleadoId);
 
-
-        // 4. Añadir a la memoria (importante!)
+        // 4. Añadir a la memoria (importante!), solo si el empleado está activo
+        if (!isEstatusActivo(empleado.getEstatusId())) {
+            logger.info("Empleado ID {} con estatus {} no activo: la huella ID {} no se añade a la galería.",
+                    empleadoId, empleado.getEstatusId(), savedHuella.getId());
+            return savedHuella;
+        }
+        if (!partition.owns(empleadoId)) {
+            logger.info("Huella ID {} pertenece a la partición {} del clúster: no se añade a esta galería.",
+                    savedHuella.getId(), partition.partitionOf(empleadoId));
+            return savedHuella;
+        }
         try {
-            Fmd fmdInMemory = UareUGlobal.GetImporter().ImportFmd(
-                    fmdBytes, // Usamos los bytes originales (sin encriptar) para la memoria
-                    Fmd.Format.ANSI_378_2004,
-                    Fmd.Format.ANSI_378_2004
-            );
-            // Añadir a la lista concurrente
-            fmdDataList.add(new FmdData(fmdInMemory, empleadoId, savedHuella.getId()));
-            logger.info("FMD para huella ID {} añadido a la memoria.", savedHuella.getId());
+            Fmd imported = featureExtractor.importFmd(fmdBytes); // Usamos los bytes originales (sin encriptar) para la memoria
+            Fmd fmdInMemory = templateStorage.toGalleryFmd(imported, fmdBytes, null);
+            // La galería y el archivo local solo reciben altas confirmadas: si la transacción se revierte no queda rastro
+            TransactionUtils.afterCommit(() -> {
+                applyGalleryChange(g -> g.withAdded(fmdInMemory, empleadoId, savedHuella.getId()));
+                snapshotFile.appendAdd(savedHuella.getId(), empleadoId, fmdBytes, savedHuella.getUpdatedAt());
+                compactSnapshotFileIfDue();
+                logger.info("FMD para huella ID {} añadido a la memoria.", savedHuella.getId());
+            });
         } catch(UareUException e){
             logger.error("Error UareU al importar FMD a memoria para nueva huella ID {}: {}", savedHuella.getId(), e.getMessage());
             // Considerar si lanzar una excepción aquí o solo loggear,
@@ -187,17 +829,136 @@ public class UserService {
 
     /**
      * Elimina los datos de una huella de la caché en memoria.
-     * Debe ser llamado DESPUÉS de que la huella se haya eliminado de la BD.
+     * Debe ser llamado DESPUÉS de que la huella se haya eliminado de la BD; dentro de una transacción se aplica
+     * al confirmarse (si se revierte, la huella sigue en la galería).
      *
      * @param huellaId El ID de la Huella que fue eliminada.
      */
     public void removeFmdDataFromMemory(Integer huellaId) {
-        boolean removed = fmdDataList.removeIf(data -> data.huellaId.equals(huellaId));
-        if (removed) {
-            logger.info("FMD para huella ID {} eliminado de la memoria.", huellaId);
+        TransactionUtils.afterCommit(() -> {
+            GallerySnapshot before = applyGalleryChange(g -> g.withoutHuella(huellaId));
+            snapshotFile.appendRemove(huellaId);
+            compactSnapshotFileIfDue();
+            if (before.indexOfHuella(huellaId) >= 0) {
+                logger.info("FMD para huella ID {} eliminado de la memoria.", huellaId);
+            } else {
+                logger.warn("No se encontró FMD en memoria para la huella ID {} al intentar eliminar.", huellaId);
+                // Podría ser útil recargar todo si esto pasa inesperadamente: loadFmdsIntoMemory();
+            }
+        });
+    }
+
+    public boolean isEstatusActivo(Integer estatusId) {
+        return activeEstatusIds.isEmpty() || (estatusId != null && activeEstatusIds.contains(estatusId));
+    }
+
+    /**
+     * Ajusta la galería tras un cambio de estatus de un empleado, sin recarga completa:
+     * si deja de estar activo se quitan sus templates; si pasa a activo se cargan desde la BD.
+     * Se aplica cuando la transacción actual se confirma.
+     */
+    public void onEmpleadoEstatusChanged(Integer empleadoId, Integer nuevoEstatusId) {
+        changeOutbox.recordEstatus(empleadoId, nuevoEstatusId);
+        TransactionUtils.afterCommit(() -> applyEmpleadoEstatus(empleadoId, nuevoEstatusId));
+    }
+
+    /**
+     * Aplica a la galería local el estatus de un empleado (idempotente). No registra el cambio en el outbox:
+     * lo usa también {@link GallerySyncService} para los cambios que originó otra instancia.
+     */
+    public void applyEmpleadoEstatus(Integer empleadoId, Integer estatusId) {
+        if (isEstatusActivo(estatusId)) {
+            addEmpleadoTemplatesToMemory(empleadoId);
         } else {
-            logger.warn("No se encontró FMD en memoria para la huella ID {} al intentar eliminar.", huellaId);
-            // Podría ser útil recargar todo si esto pasa inesperadamente: loadFmdsIntoMemory();
+            GallerySnapshot before = applyGalleryChange(g -> g.withoutEmpleado(empleadoId));
+            snapshotFile.appendRemoveEmpleado(empleadoId);
+            compactSnapshotFileIfDue();
+            logger.info("Empleado ID {} ya no está activo (estatus {}): {} templates retirados de la galería.",
+                    empleadoId, estatusId, before.getIndicesOfEmpleado(empleadoId).length);
+        }
+    }
+
+    /**
+     * Aplica a la galería local el estatus vigente de un empleado según la BD (cambios de estatus de otra instancia,
+     * que pueden leerse en otro orden que el de confirmación). Si el empleado ya no existe no hace nada.
+     */
+    @Transactional(readOnly = true)
+    public void applyEmpleadoEstatusFromDb(Integer empleadoId) {
+        Optional<Empleado> empleado = empleadoRepository.findById(empleadoId);
+        if (empleado.isEmpty()) {
+            logger.debug("Empleado ID {} ya no existe en la BD: se omite el cambio de estatus remoto.", empleadoId);
+            return;
+        }
+        applyEmpleadoEstatus(empleadoId, empleado.get().getEstatusId());
+    }
+
+    /**
+     * Añade a la galería local una huella dada de alta por otra instancia (idempotente: si ya está se reemplaza).
+     * Lee el template y el estatus del empleado desde la BD; si la huella ya no existe no hace nada.
+     *
+     * @return true si la huella quedó en la galería.
+     */
+    @Transactional(readOnly = true)
+    public boolean applyHuellaAlta(Integer huellaId) {
+        Optional<Huella> found = huellaRepository.findById(huellaId);
+        if (found.isEmpty() || found.get().getTemplateFmd() == null) {
+            logger.debug("Huella ID {} ya no existe en la BD: se omite el alta remota.", huellaId);
+            return false;
+        }
+        Huella huella = found.get();
+        Empleado empleado = huella.getEmpleado();
+        if (!isEstatusActivo(empleado.getEstatusId()) || !partition.owns(empleado.getId())) {
+            return false;
+        }
+        try {
+            byte[] decryptedFmdBytes = CryptoUtils.decrypt(huella.getTemplateFmd());
+            Fmd imported = featureExtractor.importFmd(decryptedFmdBytes);
+            Fmd fmdInMemory = templateStorage.toGalleryFmd(imported, decryptedFmdBytes, null);
+            applyGalleryChange(g -> g.withAdded(fmdInMemory, empleado.getId(), huellaId));
+            snapshotFile.appendAdd(huellaId, empleado.getId(), decryptedFmdBytes, huella.getUpdatedAt());
+            compactSnapshotFileIfDue();
+            logger.info("FMD para huella ID {} (alta en otra instancia) añadido a la memoria.", huellaId);
+            return true;
+        } catch (Exception e) {
+            logger.error("Error al desencriptar o importar FMD para huella ID {}: {}", huellaId, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private void addEmpleadoTemplatesToMemory(Integer empleadoId) {
+        if (!partition.owns(empleadoId)) {
+            return; // Sus templates viven en otro nodo del clúster
+        }
+        List<Huella> huellas = huellaRepository.findByEmpleadoId(empleadoId);
+        List<Fmd> fmds = new ArrayList<>();
+        List<Integer> huellaIds = new ArrayList<>();
+        for (Huella huella : huellas) {
+            if (huella.getTemplateFmd() == null) continue;
+            try {
+                byte[] decryptedFmdBytes = CryptoUtils.decrypt(huella.getTemplateFmd());
+                Fmd imported = featureExtractor.importFmd(decryptedFmdBytes);
+                fmds.add(templateStorage.toGalleryFmd(imported, decryptedFmdBytes, null));
+                huellaIds.add(huella.getId());
+                snapshotFile.appendAdd(huella.getId(), empleadoId, decryptedFmdBytes, huella.getUpdatedAt());
+            } catch (Exception e) {
+                logger.error("Error al desencriptar o importar FMD para huella ID {}: {}", huella.getId(), e.getMessage(), e);
+            }
+        }
+        applyGalleryChange(g -> {
+            GallerySnapshot updated = g;
+            for (int i = 0; i < fmds.size(); i++) {
+                updated = updated.withAdded(fmds.get(i), empleadoId, huellaIds.get(i));
+            }
+            return updated;
+        });
+        compactSnapshotFileIfDue();
+        logger.info("Empleado ID {} activo: {} templates añadidos a la galería.", empleadoId, fmds.size());
+    }
+
+    // Reescribe el archivo local de galería cuando su registro de cambios creció (nunca con una galería parcial)
+    private void compactSnapshotFileIfDue() {
+        if (readiness == GalleryReadiness.READY && !reloading.get() && snapshotFile.isCompactionDue()) {
+            snapshotFile.save(gallery.get(), null);
         }
     }
 
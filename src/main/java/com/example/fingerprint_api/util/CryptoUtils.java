@@ -2,6 +2,7 @@ package com.example.fingerprint_api.util;
 
 import io.github.cdimascio.dotenv.Dotenv;
 import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.ByteArrayOutputStream;
@@ -14,6 +15,10 @@ public class CryptoUtils {
     // Usamos AES/CBC/PKCS5Padding
     private static final String ALGORITHM = "AES/CBC/PKCS5Padding";
     private static final String KEY_ALGORITHM = "AES";
+    // AES/GCM para datos que además deben autenticarse (archivo local de galería)
+    private static final String AUTHENTICATED_ALGORITHM = "AES/GCM/NoPadding";
+    public static final int GCM_IV_SIZE = 12;
+    private static final int GCM_TAG_BITS = 128;
 
     // Cargar el archivo .env usando Dotenv
     private static final Dotenv dotenv = Dotenv.load();
@@ -56,6 +61,40 @@ public class CryptoUtils {
         return outputStream.toByteArray();
     }
 
+    /**
+     * Cifrador AES-256 en modo GCM con la clave del servicio, para cifrar o descifrar por partes
+     * datos grandes (p. ej. un archivo) sin pasar por un solo arreglo. A diferencia de CBC, GCM autentica:
+     * al descifrar, doFinal falla (AEADBadTagException) si los datos cifrados o el AAD cambiaron.
+     *
+     * @param mode Cipher.ENCRYPT_MODE o Cipher.DECRYPT_MODE.
+     * @param iv   Vector de inicialización ({@link #GCM_IV_SIZE} bytes); al cifrar debe ser aleatorio y no repetirse.
+     */
+    public static Cipher authenticatedCipher(int mode, byte[] iv) throws Exception {
+        Cipher cipher = Cipher.getInstance(AUTHENTICATED_ALGORITHM);
+        cipher.init(mode, new SecretKeySpec(KEY, KEY_ALGORITHM), new GCMParameterSpec(GCM_TAG_BITS, iv));
+        return cipher;
+    }
+
+    /**
+     * Cifra y autentica los datos con AES-256/GCM. Igual que {@link #encrypt}, el IV aleatorio se antepone al resultado.
+     */
+    public static byte[] encryptAuthenticated(byte[] plainData) throws Exception {
+        byte[] iv = new byte[GCM_IV_SIZE];
+        new SecureRandom().nextBytes(iv);
+        byte[] encrypted = authenticatedCipher(Cipher.ENCRYPT_MODE, iv).doFinal(plainData);
+        byte[] result = Arrays.copyOf(iv, GCM_IV_SIZE + encrypted.length);
+        System.arraycopy(encrypted, 0, result, GCM_IV_SIZE, encrypted.length);
+        return result;
+    }
+
+    /**
+     * Descifra datos de {@link #encryptAuthenticated}; falla si fueron alterados.
+     */
+    public static byte[] decryptAuthenticated(byte[] encryptedData) throws Exception {
+        byte[] iv = Arrays.copyOfRange(encryptedData, 0, GCM_IV_SIZE);
+        return authenticatedCipher(Cipher.DECRYPT_MODE, iv).doFinal(encryptedData, GCM_IV_SIZE, encryptedData.length - GCM_IV_SIZE);
+    }
+
     /**
      * Descifra los datos previamente cifrados.
      * Se extrae el IV de los primeros bytes del arreglo recibido.
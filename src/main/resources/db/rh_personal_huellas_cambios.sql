@@ -0,0 +1,16 @@
+-- Feed de cambios de la galería (outbox, entidad HuellaCambio) para la sincronización entre instancias
+-- (fingerprint.sync.enabled). Cada alta, baja o cambio de estatus inserta una fila en la misma transacción;
+-- las demás instancias la leen en orden de id. La limpieza (fingerprint.sync.cleanup-cron) borra por created_at.
+-- MySQL 8 / InnoDB. Ejecutar una vez antes de activar la sincronización.
+
+CREATE TABLE IF NOT EXISTS rh_personal_huellas_cambios (
+    id             BIGINT      NOT NULL AUTO_INCREMENT,
+    tipo           VARCHAR(10) NOT NULL,           -- ALTA, BAJA o ESTATUS
+    huella_id      INT         NULL,               -- NULL en ESTATUS
+    rh_personal_id INT         NOT NULL,
+    estatus        INT         NULL,               -- Solo en ESTATUS
+    nodo           VARCHAR(64) NOT NULL,           -- Instancia que originó el cambio
+    created_at     DATETIME(6) NOT NULL,
+    PRIMARY KEY (id),
+    KEY idx_huellas_cambios_created (created_at)
+) ENGINE = InnoDB;
@@ -0,0 +1,65 @@
+package com.example.fingerprint_api.controller;
+
+import com.digitalpersona.uareu.UareUException;
+import com.example.fingerprint_api.engine.FeatureExtractor;
+import com.example.fingerprint_api.service.ClusterIdentificationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ClusterControllerTest {
+
+    private final ClusterIdentificationService clusterService = mock(ClusterIdentificationService.class);
+    private final FeatureExtractor featureExtractor = mock(FeatureExtractor.class);
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        ClusterController controller = new ClusterController();
+        ReflectionTestUtils.setField(controller, "clusterService", clusterService);
+        ReflectionTestUtils.setField(controller, "featureExtractor", featureExtractor);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+        when(clusterService.isEnabled()).thenReturn(true);
+        when(clusterService.isAuthorized("s3cret")).thenReturn(true);
+    }
+
+    @Test
+    void rejectsMissingToken() throws Exception {
+        mockMvc.perform(post("/api/cluster/identify").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"templates\": [\"AAEC\"]}"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void invalidBase64IsBadRequest() throws Exception {
+        mockMvc.perform(post("/api/cluster/identify").contentType(MediaType.APPLICATION_JSON)
+                        .header(ClusterIdentificationService.TOKEN_HEADER, "s3cret")
+                        .content("{\"templates\": [\"no es base64!\"]}"))
+                .andExpect(status().isBadRequest());
+
+        verify(clusterService, never()).identifyPartition(any(), any(), any());
+    }
+
+    @Test
+    void base64ThatIsNotAnAnsiRecordIsBadRequest() throws Exception {
+        when(featureExtractor.importFmd(any(byte[].class))).thenThrow(new UareUException(96075787));
+
+        mockMvc.perform(post("/api/cluster/identify").contentType(MediaType.APPLICATION_JSON)
+                        .header(ClusterIdentificationService.TOKEN_HEADER, "s3cret")
+                        .content("{\"templates\": [\"AAEC\"]}"))
+                .andExpect(status().isBadRequest());
+
+        verify(clusterService, never()).identifyPartition(any(), any(), any());
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.fingerprint_api.controller;
+
+import com.digitalpersona.uareu.UareUException;
+import com.example.fingerprint_api.engine.FeatureExtractor;
+import com.example.fingerprint_api.service.IdentificationDispatcher;
+import com.example.fingerprint_api.service.IdentificationOptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class IdentificationControllerTest {
+
+    private final IdentificationDispatcher dispatcher = mock(IdentificationDispatcher.class);
+    private final FeatureExtractor featureExtractor = mock(FeatureExtractor.class);
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        IdentificationController controller = new IdentificationController();
+        ReflectionTestUtils.setField(controller, "identificationDispatcher", dispatcher);
+        ReflectionTestUtils.setField(controller, "featureExtractor", featureExtractor);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).setControllerAdvice(new GlobalExceptionHandler()).build();
+    }
+
+    @Test
+    void malformedTemplateIsBadRequest() throws Exception {
+        when(featureExtractor.importFmd(any(byte[].class))).thenThrow(new UareUException(96075797));
+
+        mockMvc.perform(post("/api/identify").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"templates\": [\"AAEC\"]}"))
+                .andExpect(status().isBadRequest());
+
+        verify(dispatcher, never()).identifyBatch(any(), any(), any());
+    }
+
+    @Test
+    void tooManyTemplatesIsBadRequest() throws Exception {
+        String templates = String.join(",", Collections.nCopies(IdentificationOptions.MAX_PROBES + 1, "\"AAEC\""));
+
+        mockMvc.perform(post("/api/identify").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"templates\": [" + templates + "]}"))
+                .andExpect(status().isBadRequest());
+
+        verify(featureExtractor, never()).importFmd(any(byte[].class));
+    }
+}
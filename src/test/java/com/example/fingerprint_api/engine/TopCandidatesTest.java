@@ -0,0 +1,41 @@
+package com.example.fingerprint_api.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TopCandidatesTest {
+
+    @Test
+    void keepsTheKBestInOrder() {
+        TopCandidates top = new TopCandidates(2);
+        top.offer(1, 30);
+        top.offer(2, 10);
+        top.offer(3, 20);
+
+        assertArrayEquals(new int[]{2, 3}, indices(top));
+        assertEquals(20, top.bar(100));
+    }
+
+    @Test
+    void oneSlotPerGroup() {
+        TopCandidates top = new TopCandidates(3);
+        // Índices 1-3 del grupo 7 (un empleado con varias huellas enroladas)
+        top.offer(1, 10, 7);
+        top.offer(2, 12, 7);
+        top.offer(3, 5, 7);
+        top.offer(4, 40, 8);
+        top.offer(5, 50, 9);
+        top.offer(6, 60, 10);
+
+        assertArrayEquals(new int[]{3, 4, 5}, indices(top));
+        assertEquals(50, top.bar(100));
+    }
+
+    private static int[] indices(TopCandidates top) {
+        return Arrays.stream(top.toArray()).mapToInt(MatchCandidate::getIndex).toArray();
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fid;
+import com.example.fingerprint_api.engine.FeatureExtractor;
+import com.example.fingerprint_api.util.FingerprintImageUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CapturePipelineTest {
+
+    private final List<CapturePipeline.Stage> stages = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        stages.forEach(stage -> stage.shutdown(0));
+    }
+
+    // Un hilo, cola de 2 y seis tareas de 50 ms: la primera corre y las demás compiten por la cola
+    @Test
+    void dropOldestKeepsTheFirstAndTheLastTwo() throws Exception {
+        assertEquals(List.of(1, 5, 6), runSix(CapturePipeline.OverflowPolicy.DROP_OLDEST));
+    }
+
+    @Test
+    void dropNewestKeepsTheFirstThree() throws Exception {
+        assertEquals(List.of(1, 2, 3), runSix(CapturePipeline.OverflowPolicy.DROP_NEWEST));
+    }
+
+    @Test
+    void blockRunsAllSixAndMakesTheProducerWait() throws Exception {
+        long start = System.nanoTime();
+        assertEquals(List.of(1, 2, 3, 4, 5, 6), runSix(CapturePipeline.OverflowPolicy.BLOCK));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 250);
+    }
+
+    @Test
+    void shutdownDrainsQueuedTasksAndReportsWhatItCouldNotRun() throws Exception {
+        CapturePipeline.Stage drained = stage(CapturePipeline.OverflowPolicy.BLOCK);
+        AtomicInteger ran = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            drained.submit(() -> sleepThen(20, ran::incrementAndGet));
+        }
+        assertEquals(0, drained.shutdown(5000));
+        assertEquals(3, ran.get());
+
+        CapturePipeline.Stage cut = stage(CapturePipeline.OverflowPolicy.BLOCK);
+        AtomicInteger droppedCallbacks = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            cut.submit(() -> sleepThen(200, () -> 0), droppedCallbacks::incrementAndGet);
+            while (i == 0 && !cut.executor.getQueue().isEmpty()) {
+                Thread.sleep(1);
+            }
+        }
+        assertEquals(2, cut.shutdown(0));
+        assertEquals(2, droppedCallbacks.get());
+    }
+
+    @Test
+    void newPreviewReplacesOnlyTheSameReadersPendingImage() throws Exception {
+        SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+        CapturePipeline pipeline = new CapturePipeline();
+        ReflectionTestUtils.setField(pipeline, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(pipeline, "identificationDispatcher", mock(IdentificationDispatcher.class));
+        ReflectionTestUtils.setField(pipeline, "featureExtractor", mock(FeatureExtractor.class));
+        ReflectionTestUtils.setField(pipeline, "encodeThreads", 1);
+        ReflectionTestUtils.setField(pipeline, "encodeQueue", 1);
+        ReflectionTestUtils.setField(pipeline, "encodeOverflow", CapturePipeline.OverflowPolicy.DROP_NEWEST);
+        ReflectionTestUtils.setField(pipeline, "extractThreads", 1);
+        ReflectionTestUtils.setField(pipeline, "extractQueue", 1);
+        ReflectionTestUtils.setField(pipeline, "extractOverflow", CapturePipeline.OverflowPolicy.BLOCK);
+        ReflectionTestUtils.setField(pipeline, "identifyThreads", 1);
+        ReflectionTestUtils.setField(pipeline, "identifyQueue", 1);
+        ReflectionTestUtils.setField(pipeline, "identifyOverflow", CapturePipeline.OverflowPolicy.BLOCK);
+        pipeline.init();
+        try {
+            // Ocupa el único hilo de encode mientras llegan las imágenes
+            CountDownLatch release = new CountDownLatch(1);
+            CapturePipeline.Stage encode = (CapturePipeline.Stage) ReflectionTestUtils.getField(pipeline, "encodeStage");
+            encode.submit(() -> awaitQuietly(release));
+
+            Fid first = image(1);
+            Fid latest = image(2);
+            assertTrue(pipeline.submitPreview("A", "r1", first));
+            assertFalse(pipeline.submitPreview("B", "r2", image(3))); // Cola llena: se descarta la de B, no la de A
+            assertTrue(pipeline.submitPreview("A", "r1", latest));    // Reemplaza la pendiente de A
+            release.countDown();
+
+            verify(messagingTemplate, timeout(2000)).convertAndSend(eq("/topic/fingerprints/r1/A"), any(Object.class));
+            assertEquals(FingerprintImageUtils.convertFidToBase64(latest), pipeline.getLastImage("A"));
+            verify(messagingTemplate, never()).convertAndSend(eq("/topic/fingerprints/r2/B"), any(Object.class));
+
+            // El lugar de B quedó libre: su siguiente imagen vuelve a encolarse
+            assertTrue(pipeline.submitPreview("B", "r2", image(4)));
+            verify(messagingTemplate, timeout(2000)).convertAndSend(eq("/topic/fingerprints/r2/B"), any(Object.class));
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    void punchStagesRejectDropPolicies() {
+        CapturePipeline pipeline = new CapturePipeline();
+        ReflectionTestUtils.setField(pipeline, "encodeOverflow", CapturePipeline.OverflowPolicy.DROP_NEWEST);
+        ReflectionTestUtils.setField(pipeline, "extractOverflow", CapturePipeline.OverflowPolicy.BLOCK);
+        ReflectionTestUtils.setField(pipeline, "identifyOverflow", CapturePipeline.OverflowPolicy.DROP_OLDEST);
+
+        assertThrows(IllegalStateException.class, pipeline::init);
+    }
+
+    private List<Integer> runSix(CapturePipeline.OverflowPolicy overflow) throws Exception {
+        CapturePipeline.Stage stage = stage(overflow);
+        List<Integer> ran = new CopyOnWriteArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            int task = i;
+            stage.submit(() -> sleepThen(50, () -> ran.add(task)));
+            while (task == 1 && !stage.executor.getQueue().isEmpty()) {
+                Thread.sleep(1); // La primera ya corre: las demás compiten por la cola
+            }
+        }
+        stage.shutdown(5000);
+        return ran;
+    }
+
+    private CapturePipeline.Stage stage(CapturePipeline.OverflowPolicy overflow) {
+        CapturePipeline.Stage stage = new CapturePipeline.Stage("test", 1, 2, overflow);
+        stages.add(stage);
+        return stage;
+    }
+
+    private static Fid image(int seed) {
+        byte[] pixels = new byte[4 * 4];
+        Arrays.fill(pixels, (byte) seed);
+        Fid.Fiv view = mock(Fid.Fiv.class);
+        when(view.getWidth()).thenReturn(4);
+        when(view.getHeight()).thenReturn(4);
+        when(view.getImageData()).thenReturn(pixels);
+        Fid fid = mock(Fid.class);
+        when(fid.getViews()).thenReturn(new Fid.Fiv[]{view});
+        return fid;
+    }
+
+    private static void sleepThen(long ms, Supplier<?> action) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        action.get();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
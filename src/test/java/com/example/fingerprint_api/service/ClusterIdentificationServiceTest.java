@@ -0,0 +1,83 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fmd;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ClusterIdentificationServiceTest {
+
+    private final UserService userService = mock(UserService.class);
+    private final HuellaChangeOutbox changeOutbox = mock(HuellaChangeOutbox.class);
+    private ClusterIdentificationService clusterService;
+
+    @BeforeEach
+    void setUp() {
+        GalleryPartition partition = new GalleryPartition();
+        ReflectionTestUtils.setField(partition, "enabled", true);
+        ReflectionTestUtils.setField(partition, "nodes", List.of("http://localhost:8081", "http://localhost:8082"));
+        ReflectionTestUtils.setField(partition, "nodeIndex", 0);
+        clusterService = new ClusterIdentificationService();
+        ReflectionTestUtils.setField(clusterService, "userService", userService);
+        ReflectionTestUtils.setField(clusterService, "partition", partition);
+        ReflectionTestUtils.setField(clusterService, "changeOutbox", changeOutbox);
+        when(changeOutbox.isEnabled()).thenReturn(true);
+        ReflectionTestUtils.setField(clusterService, "timeoutMs", 500L);
+        ReflectionTestUtils.setField(clusterService, "token", "");
+    }
+
+    @Test
+    void refusesToStartWithoutToken() {
+        assertThrows(IllegalStateException.class, clusterService::init);
+        assertFalse(clusterService.isAuthorized(""));
+        assertFalse(clusterService.isAuthorized(null));
+    }
+
+    @Test
+    void refusesToStartWithoutTheChangeFeed() {
+        ReflectionTestUtils.setField(clusterService, "token", "s3cret");
+        when(changeOutbox.isEnabled()).thenReturn(false);
+
+        assertThrows(IllegalStateException.class, clusterService::init);
+    }
+
+    @Test
+    void acceptsOnlyTheSharedToken() {
+        ReflectionTestUtils.setField(clusterService, "token", "s3cret");
+        clusterService.init();
+
+        assertTrue(clusterService.isAuthorized("s3cret"));
+        assertFalse(clusterService.isAuthorized("otro"));
+        assertFalse(clusterService.isAuthorized(null));
+    }
+
+    @Test
+    void partitionSearchIsBoundedByTimeout() throws Exception {
+        when(userService.identifyBatch(any(Fmd[].class), any(String[].class), any(IdentificationOptions.class), anyLong()))
+                .thenReturn(new IdentificationResult[]{new IdentificationResult(List.of(), false)});
+
+        Fmd[] probes = {mock(Fmd.class)};
+        clusterService.identifyPartition(probes, new String[]{null}, IdentificationOptions.of(3, null, null));
+        clusterService.identifyPartition(probes, new String[]{null}, IdentificationOptions.of(3, null, 200L));
+
+        ArgumentCaptor<IdentificationOptions> options = ArgumentCaptor.forClass(IdentificationOptions.class);
+        verify(userService, times(2)).identifyBatch(any(Fmd[].class), any(String[].class), options.capture(), anyLong());
+        assertEquals(500, options.getAllValues().get(0).getDeadlineMs());
+        assertEquals(200, options.getAllValues().get(1).getDeadlineMs());
+        assertEquals(3, options.getAllValues().get(0).getK());
+    }
+}
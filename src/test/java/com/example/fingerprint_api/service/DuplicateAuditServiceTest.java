@@ -0,0 +1,101 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fmd;
+import com.example.fingerprint_api.engine.SimulatedFingerprintEngine;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DuplicateAuditServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final UserService userService = mock(UserService.class);
+    private final GalleryTemplateStorage templateStorage = mock(GalleryTemplateStorage.class);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // Empleado 10 con seis huellas del mismo dedo; el empleado 20 enroló ese mismo dedo después
+        int[] huellaIds = {1, 2, 3, 4, 5, 6, 7};
+        int[] empleadoIds = {10, 10, 10, 10, 10, 10, 20};
+        Fmd[] fmds = new Fmd[huellaIds.length];
+        for (int i = 0; i < fmds.length; i++) {
+            fmds[i] = SimulatedFingerprintEngine.syntheticTemplate(1, i + 1);
+        }
+        when(userService.getGallerySnapshot()).thenReturn(GallerySnapshot.of(1, fmds, empleadoIds, huellaIds, 1, 1));
+        when(templateStorage.matcherInputs(any(Fmd[].class), eq(false))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void sameEmployeeMatchesDoNotTakeTheReportedSlots() throws Exception {
+        DuplicateAuditService audit = newService();
+
+        runToCompletion(audit);
+
+        List<Map<String, Object>> duplicates = audit.getDuplicates();
+        assertEquals(1, duplicates.size());
+        assertEquals(10, ((Map<?, ?>) duplicates.get(0).get("empleadoA")).get("id"));
+        assertEquals(20, ((Map<?, ?>) duplicates.get(0).get("empleadoB")).get("id"));
+        // Cada huella del empleado 10 encuentra la del 20 aunque tenga cinco huellas propias más parecidas
+        assertEquals(6, ((List<?>) duplicates.get(0).get("matches")).size());
+    }
+
+    @Test
+    void checkpointKeepsOnlyTheProgressAndTheUniverseIsWrittenOnce() throws Exception {
+        DuplicateAuditService audit = newService();
+        runToCompletion(audit);
+
+        String checkpoint = Files.readString(dir.resolve("audit.json"));
+        assertFalse(checkpoint.contains("huellaIds"));
+        assertTrue(Files.exists(dir.resolve("audit.json.universe")));
+
+        // Tras reiniciar, el universo se lee de su archivo
+        DuplicateAuditService restarted = newService();
+        assertEquals(DuplicateAuditService.AuditState.COMPLETED, restarted.getState());
+        assertEquals(7L, restarted.getProgress().get("templates"));
+        assertEquals(6, restarted.getProgress().get("findings"));
+    }
+
+    private DuplicateAuditService newService() {
+        DuplicateAuditService audit = new DuplicateAuditService();
+        ReflectionTestUtils.setField(audit, "userService", userService);
+        ReflectionTestUtils.setField(audit, "matcher", new SimulatedFingerprintEngine());
+        ReflectionTestUtils.setField(audit, "templateStorage", templateStorage);
+        ReflectionTestUtils.setField(audit, "partition", new GalleryPartition());
+        ReflectionTestUtils.setField(audit, "identityCache", mock(EmpleadoIdentityCache.class));
+        ReflectionTestUtils.setField(audit, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(audit, "configuredThreads", 2);
+        ReflectionTestUtils.setField(audit, "blockSize", 512); // Un solo mosaico: todo en la diagonal
+        ReflectionTestUtils.setField(audit, "maxMatchesPerTemplate", 1);
+        ReflectionTestUtils.setField(audit, "maxFindings", 100);
+        ReflectionTestUtils.setField(audit, "checkpointPath", dir.resolve("audit.json").toString());
+        ReflectionTestUtils.setField(audit, "checkpointIntervalMs", 0L);
+        audit.init();
+        return audit;
+    }
+
+    private static void runToCompletion(DuplicateAuditService audit) throws InterruptedException {
+        assertTrue(audit.start(true));
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (audit.getState() == DuplicateAuditService.AuditState.RUNNING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(DuplicateAuditService.AuditState.COMPLETED, audit.getState());
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.fingerprint_api.service;
+
+import com.example.fingerprint_api.model.Empleado;
+import com.example.fingerprint_api.repository.EmpleadoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EmpleadoIdentityCacheTest {
+
+    private final EmpleadoRepository empleadoRepository = mock(EmpleadoRepository.class);
+    private EmpleadoIdentityCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new EmpleadoIdentityCache();
+        ReflectionTestUtils.setField(cache, "empleadoRepository", empleadoRepository);
+    }
+
+    @Test
+    void changeCommittedDuringReloadIsNotOverwrittenByTheOlderRow() {
+        when(empleadoRepository.findAll()).thenAnswer(invocation -> {
+            // La edición se confirma después de que la lectura completa ya leyó la fila
+            cache.putAfterCommit(empleado(1, "RFC-NUEVO"));
+            return List.of(empleado(1, "RFC-VIEJO"), empleado(2, "RFC-2"));
+        });
+
+        cache.reload();
+
+        assertEquals("RFC-NUEVO", cache.getIfPresent(1).getRfc());
+        assertEquals("RFC-2", cache.getIfPresent(2).getRfc());
+    }
+
+    @Test
+    void lookupDuringReloadSurvivesForEmployeesTheReloadDidNotRead() {
+        when(empleadoRepository.findById(3)).thenReturn(Optional.of(empleado(3, "RFC-3")));
+        when(empleadoRepository.findAll()).thenAnswer(invocation -> {
+            assertTrue(cache.get(3).isPresent()); // Alta posterior a la lectura completa
+            return List.of(empleado(1, "RFC-1"));
+        });
+
+        cache.reload();
+
+        assertEquals("RFC-3", cache.getIfPresent(3).getRfc());
+        assertEquals(2, cache.size());
+    }
+
+    private static Empleado empleado(int id, String rfc) {
+        Empleado empleado = new Empleado();
+        empleado.setId(id);
+        empleado.setRfc(rfc);
+        return empleado;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fmd;
+import com.example.fingerprint_api.engine.SimulatedFingerprintEngine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GallerySnapshotFileTest {
+
+    private static final long WATERMARK = LocalDateTime.of(2026, 1, 1, 8, 0).toEpochSecond(ZoneOffset.UTC);
+
+    @TempDir
+    Path dir;
+
+    private final GalleryLoader galleryLoader = mock(GalleryLoader.class);
+    private GallerySnapshot gallery;
+    private Path snapshotPath;
+
+    @BeforeEach
+    void setUp() {
+        Fmd[] fmds = new Fmd[3];
+        for (int i = 0; i < fmds.length; i++) {
+            fmds[i] = SimulatedFingerprintEngine.syntheticTemplate(i, 1);
+        }
+        gallery = GallerySnapshot.of(1, fmds, new int[]{10, 10, 20}, new int[]{1, 2, 3}, 1, 1);
+        snapshotPath = dir.resolve("gallery.snap");
+        when(galleryLoader.importTemplates(any(), any(), any(), anyLong(), anyInt(), anyInt())).thenReturn(gallery);
+    }
+
+    @Test
+    void restoresWhatWasWritten() throws Exception {
+        write();
+
+        assertNotNull(newFile().restore(2, 1, 1, mark(3, 3)));
+
+        ArgumentCaptor<int[]> huellaIds = ArgumentCaptor.forClass(int[].class);
+        ArgumentCaptor<int[]> empleadoIds = ArgumentCaptor.forClass(int[].class);
+        ArgumentCaptor<byte[][]> templates = ArgumentCaptor.forClass(byte[][].class);
+        verify(galleryLoader).importTemplates(huellaIds.capture(), empleadoIds.capture(), templates.capture(),
+                anyLong(), anyInt(), anyInt());
+        assertArrayEquals(new int[]{1, 2, 3}, huellaIds.getValue());
+        assertArrayEquals(new int[]{10, 10, 20}, empleadoIds.getValue());
+        assertArrayEquals(gallery.getFmd(2).getData(), templates.getValue()[2]);
+    }
+
+    @Test
+    void rejectsModifiedHeader() throws Exception {
+        write();
+        // Marca de agua del encabezado en claro (autenticada como AAD)
+        flipByte(16 + 7);
+
+        assertNull(newFile().restore(2, 1, 1, mark(3, 3)));
+    }
+
+    @Test
+    void rejectsModifiedBody() throws Exception {
+        write();
+        flipByte((int) Files.size(snapshotPath) - 20);
+
+        assertNull(newFile().restore(2, 1, 1, mark(3, 3)));
+    }
+
+    @Test
+    void replaysConfirmedChangesFromTheLog() throws Exception {
+        write();
+        GallerySnapshotFile file = newFile();
+        file.appendRemove(2);
+        file.appendAdd(4, 20, new byte[]{1, 2, 3}, LocalDateTime.of(2026, 1, 1, 9, 0));
+        file.shutdown();
+
+        assertNotNull(newFile().restore(2, 1, 1, new GallerySnapshotFile.HighWaterMark(4, 3,
+                LocalDateTime.of(2026, 1, 1, 9, 0).toEpochSecond(ZoneOffset.UTC))));
+
+        ArgumentCaptor<int[]> huellaIds = ArgumentCaptor.forClass(int[].class);
+        verify(galleryLoader).importTemplates(huellaIds.capture(), any(), any(), anyLong(), anyInt(), anyInt());
+        assertArrayEquals(new int[]{1, 3, 4}, huellaIds.getValue());
+    }
+
+    private void write() throws Exception {
+        GallerySnapshotFile file = newFile();
+        file.save(gallery, mark(3, 3));
+        file.shutdown(); // Espera la escritura en segundo plano
+    }
+
+    private GallerySnapshotFile newFile() throws Exception {
+        GallerySnapshotFile file = new GallerySnapshotFile();
+        ReflectionTestUtils.setField(file, "galleryLoader", galleryLoader);
+        ReflectionTestUtils.setField(file, "partition", new GalleryPartition());
+        ReflectionTestUtils.setField(file, "enabled", true);
+        ReflectionTestUtils.setField(file, "path", snapshotPath.toString());
+        ReflectionTestUtils.setField(file, "activeEstatusIds", Set.of(1));
+        ReflectionTestUtils.setField(file, "compactAfter", 1000);
+        file.init();
+        return file;
+    }
+
+    private static GallerySnapshotFile.HighWaterMark mark(int maxId, long count) {
+        return new GallerySnapshotFile.HighWaterMark(maxId, count, WATERMARK);
+    }
+
+    private void flipByte(int position) throws Exception {
+        byte[] data = Files.readAllBytes(snapshotPath);
+        data[position] ^= 1;
+        Files.write(snapshotPath, data);
+    }
+}
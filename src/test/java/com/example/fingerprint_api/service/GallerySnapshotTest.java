@@ -0,0 +1,104 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fmd;
+import com.example.fingerprint_api.engine.SimulatedFingerprintEngine;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GallerySnapshotTest {
+
+    @Test
+    void incrementalIndexesMatchRebuiltIndexes() {
+        SplittableRandom random = new SplittableRandom(7);
+        int initial = 200;
+        Fmd[] fmds = new Fmd[initial];
+        int[] empleados = new int[initial];
+        int[] huellas = new int[initial];
+        for (int i = 0; i < initial; i++) {
+            fmds[i] = SimulatedFingerprintEngine.syntheticTemplate(i, 1 + random.nextInt(5));
+            empleados[i] = 1 + random.nextInt(60);
+            huellas[i] = i + 1;
+        }
+        GallerySnapshot snapshot = GallerySnapshot.of(1, fmds, empleados, huellas, 4, 16);
+        int nextHuella = initial + 1;
+
+        for (int step = 0; step < 300; step++) {
+            // Índices construidos antes de cada cambio para que la nueva versión los herede
+            snapshot.getBins();
+            snapshot.getIndicesOfEmpleado(1);
+            int op = random.nextInt(3);
+            if (op == 0 || snapshot.isEmpty()) {
+                snapshot = snapshot.withAdded(SimulatedFingerprintEngine.syntheticTemplate(1000 + step, 1),
+                        1 + random.nextInt(60), nextHuella++);
+            } else if (op == 1) {
+                int position = random.nextInt(snapshot.size());
+                snapshot = snapshot.withAdded(SimulatedFingerprintEngine.syntheticTemplate(2000 + step, 2),
+                        1 + random.nextInt(60), snapshot.getHuellaId(position));
+            } else {
+                snapshot = snapshot.withoutHuella(snapshot.getHuellaId(random.nextInt(snapshot.size())));
+            }
+            assertIndexesConsistent(snapshot);
+        }
+    }
+
+    @Test
+    void withoutHuellaMovesLastTemplateIntoTheGap() {
+        Fmd[] fmds = new Fmd[3];
+        for (int i = 0; i < fmds.length; i++) {
+            fmds[i] = SimulatedFingerprintEngine.syntheticTemplate(i, 1);
+        }
+        GallerySnapshot snapshot = GallerySnapshot.of(1, fmds, new int[]{10, 20, 30}, new int[]{1, 2, 3}, 1, 1);
+        snapshot.getIndicesOfEmpleado(30);
+
+        GallerySnapshot next = snapshot.withoutHuella(1);
+
+        assertEquals(2, next.size());
+        assertEquals(2, next.getVersion());
+        assertEquals(3, next.getHuellaId(0));
+        assertEquals(30, next.getEmpleadoId(0));
+        assertEquals(fmds[2], next.getFmd(0));
+        assertEquals(0, next.getIndicesOfEmpleado(10).length);
+        assertEquals(0, next.getIndicesOfEmpleado(30)[0]);
+    }
+
+    // Compara los índices (heredados) con los que se construirían desde cero sobre los arreglos de la versión
+    private static void assertIndexesConsistent(GallerySnapshot snapshot) {
+        Map<Integer, int[]> expectedByEmpleado = new HashMap<>();
+        Map<Integer, int[]> expectedByBin = new HashMap<>();
+        for (int i = 0; i < snapshot.size(); i++) {
+            append(expectedByEmpleado, snapshot.getEmpleadoId(i), i);
+            append(expectedByBin, snapshot.getBinKey(i), i);
+        }
+        for (Map.Entry<Integer, int[]> entry : expectedByEmpleado.entrySet()) {
+            int[] actual = snapshot.getIndicesOfEmpleado(entry.getKey()).clone();
+            Arrays.sort(actual);
+            assertEquals(Arrays.toString(entry.getValue()), Arrays.toString(actual), "empleado " + entry.getKey());
+        }
+        int binned = 0;
+        for (GallerySnapshot.Bin bin : snapshot.getBins()) {
+            int[] actual = new int[bin.size()];
+            for (int j = 0; j < bin.size(); j++) {
+                actual[j] = bin.getPosition(j);
+                assertEquals(snapshot.getFmd(actual[j]), bin.getFmds()[j], "bin " + bin.getKey());
+            }
+            Arrays.sort(actual);
+            assertEquals(Arrays.toString(expectedByBin.get(bin.getKey())), Arrays.toString(actual), "bin " + bin.getKey());
+            binned += bin.size();
+        }
+        assertEquals(snapshot.size(), binned);
+        assertEquals(expectedByBin.size(), snapshot.getBins().size());
+    }
+
+    private static void append(Map<Integer, int[]> index, int key, int position) {
+        int[] current = index.getOrDefault(key, new int[0]);
+        int[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = position;
+        index.put(key, updated);
+    }
+}
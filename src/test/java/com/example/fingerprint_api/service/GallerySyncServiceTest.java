@@ -0,0 +1,178 @@
+package com.example.fingerprint_api.service;
+
+import com.example.fingerprint_api.model.HuellaCambio;
+import com.example.fingerprint_api.repository.HuellaCambioRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Marca de agua y huecos del feed de cambios contra la tabla real (H2 en memoria).
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+class GallerySyncServiceTest {
+
+    private static final String OTHER_NODE = "otro-nodo";
+
+    @Autowired
+    private HuellaCambioRepository cambioRepository;
+    @Autowired
+    private EntityManager entityManager;
+
+    private final UserService userService = mock(UserService.class);
+    private final HuellaChangeOutbox changeOutbox = new HuellaChangeOutbox("este-nodo");
+    private GallerySyncService syncService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(changeOutbox, "cambioRepository", cambioRepository);
+        ReflectionTestUtils.setField(changeOutbox, "enabled", true);
+        syncService = new GallerySyncService();
+        ReflectionTestUtils.setField(syncService, "cambioRepository", cambioRepository);
+        ReflectionTestUtils.setField(syncService, "changeOutbox", changeOutbox);
+        ReflectionTestUtils.setField(syncService, "userService", userService);
+        ReflectionTestUtils.setField(syncService, "partition", new GalleryPartition());
+        ReflectionTestUtils.setField(syncService, "batchSize", 2);
+        ReflectionTestUtils.setField(syncService, "gapTimeoutMs", 60_000L);
+    }
+
+    @Test
+    void startsAfterTheLastChangeReadBeforeTheGalleryLoad() {
+        save(1, OTHER_NODE);
+        assertEquals(0, syncService.poll()); // La carga inicial aún no empieza: nada que aplicar
+        assertEquals(-1L, watermark());
+
+        changeOutbox.captureStartWatermark();
+        // Cambios confirmados mientras se carga la galería, por antiguos que sean sus relojes
+        long during = insert(2, OTHER_NODE, LocalDateTime.now().minusHours(1));
+        changeOutbox.captureStartWatermark(); // Una recarga posterior no mueve el inicio
+
+        assertEquals(1, syncService.poll());
+
+        assertEquals(during, watermark());
+        verify(userService, never()).applyHuellaAlta(1);
+        verify(userService).applyHuellaAlta(2);
+    }
+
+    @Test
+    void statusChangeAppliesTheCurrentStatusFromTheDatabase() {
+        long first = cambioRepository.saveAndFlush(
+                new HuellaCambio(HuellaCambio.Tipo.ESTATUS, null, 10, 2, OTHER_NODE)).getId();
+        startAfter(first - 1);
+
+        assertEquals(1, syncService.poll());
+
+        verify(userService).applyEmpleadoEstatusFromDb(10);
+        verify(userService, never()).applyEmpleadoEstatus(10, 2);
+    }
+
+    @Test
+    void watermarkAdvancesOverConsecutiveIdsAndReadsAreIdempotent() {
+        long first = save(1, OTHER_NODE);
+        save(2, OTHER_NODE);
+        save(3, "este-nodo");
+        long last = save(4, OTHER_NODE);
+        startAfter(first - 1);
+
+        // batch-size 2: el feed se lee en dos páginas
+        assertEquals(3, syncService.poll());
+        assertEquals(0, syncService.poll());
+
+        assertEquals(last, watermark());
+        verify(userService, times(1)).applyHuellaAlta(1);
+        verify(userService, never()).applyHuellaAlta(3); // Cambio propio: ya aplicado al hacerlo
+        assertEquals(1L, stats().get("ownSkipped"));
+    }
+
+    @Test
+    void gapHoldsWatermarkUntilTheLateChangeCommits() {
+        long first = save(1, OTHER_NODE);
+        long late = save(2, OTHER_NODE);
+        long last = save(3, OTHER_NODE);
+        startAfter(first - 1);
+        // Transacción aún sin confirmar: su fila todavía no es visible
+        delete(late);
+
+        assertEquals(2, syncService.poll());
+        assertEquals(first, watermark());
+        assertEquals(1, stats().get("appliedAhead"));
+
+        insert(late, 2, OTHER_NODE, LocalDateTime.now());
+        assertEquals(1, syncService.poll());
+
+        assertEquals(last, watermark());
+        assertEquals(0, stats().get("appliedAhead"));
+        assertEquals(0L, stats().get("lostIds"));
+        verify(userService, times(1)).applyHuellaAlta(3);
+        verify(userService, times(1)).applyHuellaAlta(2);
+    }
+
+    @Test
+    void expiredGapIsSkippedAndCounted() {
+        long first = save(1, OTHER_NODE);
+        long rolledBack = save(2, OTHER_NODE);
+        long last = save(3, OTHER_NODE);
+        startAfter(first - 1);
+        delete(rolledBack);
+        ReflectionTestUtils.setField(syncService, "gapTimeoutMs", 0L);
+
+        assertEquals(2, syncService.poll());
+
+        assertEquals(last, watermark());
+        assertEquals(1L, stats().get("lostIds"));
+    }
+
+    private long save(int huellaId, String nodo) {
+        HuellaCambio cambio = cambioRepository.saveAndFlush(new HuellaCambio(HuellaCambio.Tipo.ALTA, huellaId, 10, null, nodo));
+        return cambio.getId();
+    }
+
+    // Inserta con id y fecha explícitos (una fila que aparece tarde, o anterior al arranque)
+    private long insert(long id, int huellaId, String nodo, LocalDateTime createdAt) {
+        entityManager.createNativeQuery("insert into rh_personal_huellas_cambios "
+                        + "(id, tipo, huella_id, rh_personal_id, nodo, created_at) values (?, 'ALTA', ?, 10, ?, ?)")
+                .setParameter(1, id).setParameter(2, huellaId).setParameter(3, nodo).setParameter(4, createdAt)
+                .executeUpdate();
+        return id;
+    }
+
+    private long insert(int huellaId, String nodo, LocalDateTime createdAt) {
+        long id = save(huellaId, nodo);
+        entityManager.createNativeQuery("update rh_personal_huellas_cambios set created_at = ? where id = ?")
+                .setParameter(1, createdAt).setParameter(2, id).executeUpdate();
+        entityManager.clear();
+        return id;
+    }
+
+    private void delete(long id) {
+        cambioRepository.deleteById(id);
+        cambioRepository.flush();
+    }
+
+    private void startAfter(long id) {
+        ReflectionTestUtils.setField(syncService, "watermark", id);
+    }
+
+    private long watermark() {
+        return (Long) stats().get("watermark");
+    }
+
+    private Map<String, Object> stats() {
+        return syncService.getStats();
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fmd;
+import com.example.fingerprint_api.engine.FeatureExtractor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GalleryTemplateStorageTest {
+
+    private final FeatureExtractor featureExtractor = mock(FeatureExtractor.class);
+    private final OffHeapTemplateStore store = new OffHeapTemplateStore(4096);
+    private GalleryTemplateStorage storage;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(featureExtractor.importFmd(any(byte[].class))).thenAnswer(invocation -> mock(Fmd.class));
+        storage = new GalleryTemplateStorage();
+        ReflectionTestUtils.setField(storage, "featureExtractor", featureExtractor);
+        ReflectionTestUtils.setField(storage, "mode", GalleryTemplateStorage.StorageMode.OFF_HEAP);
+        ReflectionTestUtils.setField(storage, "importCacheRatio", 1.0);
+        storage.onGalleryPublished(gallery(stored(4))); // Límite: 4 templates
+    }
+
+    @Test
+    void templatesAreImportedOnce() throws Exception {
+        Fmd[] shard = stored(3);
+
+        Fmd[] first = storage.matcherInputs(shard);
+        Fmd[] second = storage.matcherInputs(shard);
+
+        assertNotSame(shard, first);
+        assertArrayEquals(first, second);
+        verify(featureExtractor, times(3)).importFmd(any(byte[].class));
+    }
+
+    @Test
+    void newGalleryVersionOnlyImportsTheAddedTemplate() throws Exception {
+        Fmd[] shard = stored(3);
+        storage.matcherInputs(shard);
+
+        // Un alta copia el shard: los templates que ya estaban siguen en caché
+        Fmd[] next = Arrays.copyOf(shard, 4);
+        next[3] = stored(1)[0];
+        Fmd[] inputs = storage.matcherInputs(next);
+
+        assertSame(storage.matcherInputs(shard)[0], inputs[0]);
+        verify(featureExtractor, times(4)).importFmd(any(byte[].class));
+    }
+
+    @Test
+    void uncachedArraysAreImportedEveryTime() throws Exception {
+        Fmd[] block = stored(2);
+
+        storage.matcherInputs(block, false);
+        storage.matcherInputs(block, false);
+
+        verify(featureExtractor, times(4)).importFmd(any(byte[].class));
+    }
+
+    @Test
+    void leastRecentlyUsedTemplatesAreEvictedOverTheLimit() throws Exception {
+        Fmd[] older = stored(2);
+        Fmd[] newer = stored(2);
+        Fmd[] latest = stored(2);
+
+        storage.matcherInputs(older);
+        storage.matcherInputs(newer);
+        storage.matcherInputs(latest); // 6 > 4: salen los menos usados
+        storage.matcherInputs(newer);
+        storage.matcherInputs(older);
+
+        verify(featureExtractor, times(8)).importFmd(any(byte[].class));
+    }
+
+    @Test
+    void cachedImportsCountInTheHeapStats() throws Exception {
+        Fmd[] fmds = stored(4);
+        GallerySnapshot snapshot = gallery(fmds);
+        long before = (long) storage.getStats(snapshot).get("heapBytesPerTemplate");
+
+        storage.matcherInputs(fmds);
+        Map<String, Object> stats = storage.getStats(snapshot);
+
+        assertEquals(4, stats.get("importCacheTemplates"));
+        assertTrue((long) stats.get("heapBytesPerTemplate") > before);
+
+        // Una galería más chica baja el límite y descarta lo que sobra
+        storage.onGalleryPublished(gallery(Arrays.copyOf(fmds, 2)));
+        assertEquals(2, storage.getStats(snapshot).get("importCacheTemplates"));
+    }
+
+    private static GallerySnapshot gallery(Fmd[] fmds) {
+        int[] ids = new int[fmds.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+        }
+        return GallerySnapshot.of(1, fmds, ids, ids, new int[fmds.length], 1, 1);
+    }
+
+    private Fmd[] stored(int count) {
+        Fmd[] fmds = new Fmd[count];
+        for (int i = 0; i < count; i++) {
+            fmds[i] = store.put(new byte[]{(byte) i, 1, 2, 3});
+        }
+        return fmds;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fmd;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IdentificationDispatcherTest {
+
+    private final UserService userService = mock(UserService.class);
+    private final IdentificationResult match = new IdentificationResult(List.of(new IdentificationMatch(7, 70, 10)), false);
+    private IdentificationDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(userService.identifyBatch(any(Fmd[].class), any(String[].class), any(IdentificationOptions.class), anyLong()))
+                .thenAnswer(invocation -> {
+                    Fmd[] probes = invocation.getArgument(0);
+                    IdentificationResult[] results = new IdentificationResult[probes.length];
+                    Arrays.fill(results, match);
+                    return results;
+                });
+        dispatcher = new IdentificationDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "userService", userService);
+        ReflectionTestUtils.setField(dispatcher, "clusterService", mock(ClusterIdentificationService.class));
+        ReflectionTestUtils.setField(dispatcher, "windowMs", 10L);
+        ReflectionTestUtils.setField(dispatcher, "maxSize", 32);
+        ReflectionTestUtils.setField(dispatcher, "waitTimeoutMs", 100L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void batchedRequestGetsDispatcherResult() throws Exception {
+        ReflectionTestUtils.setField(dispatcher, "enabled", true);
+        dispatcher.init();
+
+        IdentificationResult result = dispatcher.identify(mock(Fmd.class), "Lector 1", IdentificationOptions.defaults());
+
+        assertSame(match, result);
+        assertEquals(1, dispatcher.getBatches());
+        assertEquals(0, dispatcher.getFallbacks());
+    }
+
+    @Test
+    void stalledDispatcherFallsBackToDirectSearch() throws Exception {
+        // Despachador "activo" pero sin hilo: nadie atiende la cola
+        ReflectionTestUtils.setField(dispatcher, "running", true);
+
+        long start = System.nanoTime();
+        IdentificationResult result = dispatcher.identify(mock(Fmd.class), "Lector 1", IdentificationOptions.defaults());
+
+        assertSame(match, result);
+        assertEquals(1, dispatcher.getFallbacks());
+        assertEquals(0, dispatcher.getBatches());
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMs >= 100, "la espera debe durar wait-timeout-ms: " + elapsedMs);
+    }
+
+    @Test
+    void requestCancelledAtShutdownFallsBackToDirectSearch() throws Exception {
+        ReflectionTestUtils.setField(dispatcher, "running", true);
+        ReflectionTestUtils.setField(dispatcher, "waitTimeoutMs", 10_000L);
+
+        CompletableFuture<IdentificationResult> pending = CompletableFuture.supplyAsync(() -> {
+            try {
+                return dispatcher.identify(mock(Fmd.class), "Lector 1", IdentificationOptions.defaults());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (dispatcher.getQueued() == 0) {
+            Thread.sleep(5);
+        }
+        dispatcher.shutdown();
+
+        assertSame(match, pending.get(2, TimeUnit.SECONDS));
+        assertEquals(1, dispatcher.getFallbacks());
+    }
+}
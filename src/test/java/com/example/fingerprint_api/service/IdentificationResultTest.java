@@ -0,0 +1,27 @@
+package com.example.fingerprint_api.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdentificationResultTest {
+
+    @Test
+    void mergeKeepsOneCandidatePerEmployee() {
+        // Dos particiones; el empleado 1 tiene varias huellas entre los mejores
+        IdentificationResult first = new IdentificationResult(List.of(
+                new IdentificationMatch(1, 11, 5), new IdentificationMatch(1, 12, 8)), false);
+        IdentificationResult second = new IdentificationResult(List.of(
+                new IdentificationMatch(1, 13, 3), new IdentificationMatch(2, 21, 9), new IdentificationMatch(3, 31, 12)), true);
+
+        IdentificationResult merged = IdentificationResult.merge(List.of(first, second), 2, false);
+
+        assertEquals(2, merged.getCandidates().size());
+        assertEquals(13, merged.getBest().getHuellaId());
+        assertEquals(2, merged.getCandidates().get(1).getEmpleadoId());
+        assertTrue(merged.isPartial());
+    }
+}
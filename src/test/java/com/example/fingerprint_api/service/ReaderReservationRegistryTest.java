@@ -0,0 +1,90 @@
+package com.example.fingerprint_api.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReaderReservationRegistryTest {
+
+    @Test
+    void readerHeldByAnotherSessionIsRejected() {
+        ReaderReservationRegistry registry = registry(0);
+
+        assertTrue(registry.reserve("Lector 1", "s1", true));
+        assertFalse(registry.reserve("Lector 1", "s2", true));
+        assertTrue(registry.reserve("Lector 1", "s1", true)); // La misma sesión solo renueva
+
+        assertEquals("s1", registry.ownerOf("Lector 1"));
+        assertEquals("Lector 1", registry.readerOf("s1"));
+        assertFalse(registry.release("Lector 1", "s2"));
+        assertTrue(registry.release("Lector 1", "s1"));
+        assertNull(registry.readerOf("s1"));
+        assertEquals(1L, registry.getStats().get("rejected"));
+    }
+
+    @Test
+    void withoutLeaseReservationsNeverExpire() throws Exception {
+        ReaderReservationRegistry registry = registry(0);
+        registry.reserve("Lector 1", "s1", true);
+
+        Thread.sleep(20);
+
+        assertTrue(registry.findExpired().isEmpty());
+        assertFalse(registry.renewReader("Lector 1"));
+    }
+
+    @Test
+    void expiredReservationIsReleased() throws Exception {
+        ReaderReservationRegistry registry = registry(30);
+        registry.reserve("Lector 1", "s1", true);
+
+        Thread.sleep(60);
+
+        List<ReaderReservationRegistry.Reservation> expired = registry.findExpired();
+        assertEquals(1, expired.size());
+        assertTrue(registry.expire(expired.get(0)));
+        assertFalse(registry.isReserved("Lector 1"));
+        assertNull(registry.readerOf("s1"));
+        assertEquals(1L, registry.getStats().get("expired"));
+    }
+
+    @Test
+    void renewalAndReaderActivityKeepTheReservation() throws Exception {
+        ReaderReservationRegistry registry = registry(100);
+        registry.reserve("Lector 1", "s1", true);
+        registry.reserve("Lector 2", "s2", true);
+
+        for (int i = 0; i < 4; i++) {
+            Thread.sleep(40);
+            assertTrue(registry.renew("s1"));
+            assertTrue(registry.renewReader("Lector 2"));
+        }
+
+        assertTrue(registry.findExpired().isEmpty());
+        assertFalse(registry.renew("sin-reserva"));
+    }
+
+    @Test
+    void checadorReservationDoesNotExpire() throws Exception {
+        ReaderReservationRegistry registry = registry(30);
+        registry.reserve("Lector 1", "checador_Lector 1", false);
+
+        Thread.sleep(60);
+
+        assertTrue(registry.findExpired().isEmpty());
+        assertFalse(registry.renewReader("Lector 1"));
+        assertEquals("checador_Lector 1", registry.ownerOf("Lector 1"));
+    }
+
+    private static ReaderReservationRegistry registry(long leaseMs) {
+        ReaderReservationRegistry registry = new ReaderReservationRegistry();
+        ReflectionTestUtils.setField(registry, "leaseMs", leaseMs);
+        return registry;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.fingerprint_api.service;
+
+import com.digitalpersona.uareu.Fmd;
+import com.example.fingerprint_api.config.ReaderScopeProperties;
+import com.example.fingerprint_api.engine.SimulatedFingerprintEngine;
+import com.example.fingerprint_api.model.Empleado;
+import com.example.fingerprint_api.repository.EmpleadoRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReaderScopeServiceTest {
+
+    private final EmpleadoRepository empleadoRepository = mock(EmpleadoRepository.class);
+    private EmpleadoIdentityCache identityCache;
+    private ReaderScopeService scopes;
+
+    @BeforeEach
+    void setUp() {
+        identityCache = new EmpleadoIdentityCache();
+        ReflectionTestUtils.setField(identityCache, "empleadoRepository", empleadoRepository);
+        when(empleadoRepository.findAll()).thenReturn(List.of(empleado(1, 10), empleado(2, 20), empleado(3, 10)));
+        identityCache.reload();
+
+        ReaderScopeProperties.Scope norte = new ReaderScopeProperties.Scope();
+        norte.setName("norte");
+        norte.setDepartamentos(Set.of(10));
+        norte.setReaders(List.of("Lector Norte"));
+        ReaderScopeProperties properties = new ReaderScopeProperties();
+        properties.setDefinitions(List.of(norte));
+
+        scopes = new ReaderScopeService();
+        ReflectionTestUtils.setField(scopes, "properties", properties);
+        ReflectionTestUtils.setField(scopes, "identityCache", identityCache);
+        scopes.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scopes.shutdown();
+    }
+
+    @Test
+    void partitionIsBuiltWhenTheGalleryIsPublishedNotOnThePunch() {
+        GallerySnapshot gallery = gallery(1);
+        assertNull(scopes.scopedGallery("Lector Norte", gallery)); // Aún sin publicar: galería completa
+
+        scopes.onGalleryPublished(gallery);
+        GallerySnapshot scoped = scopes.scopedGallery("Lector Norte", gallery);
+
+        assertEquals(2, scoped.size());
+        // Una checada con otra versión no reconstruye nada
+        assertSame(scoped, scopes.scopedGallery("Lector Norte", gallery.withVersion(5)));
+        assertNull(scopes.scopedGallery("Lector Sur", gallery));
+    }
+
+    @Test
+    void olderGalleryVersionDoesNotReplaceTheCurrentPartition() {
+        scopes.onGalleryPublished(gallery(3));
+        GallerySnapshot current = scopes.scopedGallery("Lector Norte", null);
+
+        scopes.onGalleryPublished(gallery(2));
+
+        assertSame(current, scopes.scopedGallery("Lector Norte", null));
+    }
+
+    @Test
+    void departmentChangeRebuildsInTheBackground() throws Exception {
+        scopes.onGalleryPublished(gallery(1));
+        long version = identityCache.getVersion();
+
+        identityCache.putAfterCommit(empleado(2, 10)); // Sin transacción: se aplica de inmediato
+
+        assertEquals(version + 1, identityCache.getVersion());
+        long deadline = System.currentTimeMillis() + 2000;
+        while (scopes.scopedGallery("Lector Norte", null).size() != 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(3, scopes.scopedGallery("Lector Norte", null).size());
+    }
+
+    @Test
+    void identityChangesOutsideDepartmentsKeepTheVersion() {
+        long version = identityCache.getVersion();
+        Empleado renamed = empleado(1, 10);
+        renamed.setRfc("OTRO-RFC");
+
+        identityCache.putAfterCommit(renamed);
+        identityCache.get(1);
+
+        assertEquals(version, identityCache.getVersion());
+    }
+
+    // Empleados 1 y 3 en el departamento 10, empleado 2 en el 20: una huella cada uno
+    private static GallerySnapshot gallery(long version) {
+        Fmd[] fmds = new Fmd[3];
+        for (int i = 0; i < fmds.length; i++) {
+            fmds[i] = SimulatedFingerprintEngine.syntheticTemplate(i, 1);
+        }
+        return GallerySnapshot.of(version, fmds, new int[]{1, 2, 3}, new int[]{11, 12, 13}, 1, 1);
+    }
+
+    private static Empleado empleado(int id, int departamento) {
+        Empleado empleado = new Empleado();
+        empleado.setId(id);
+        empleado.setDepartamentoAcademicoId(departamento);
+        return empleado;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.fingerprint_api.engine;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernel de emparejamiento con la Vector API (incubadora en Java 17): cada minucia del probe se compara
+ * contra tantas minucias del candidato como carriles tenga el procesador (16 int con AVX-512).
+ * Solo se compila con el perfil Maven "vector" y {@link VectorMinutiaeEngine} solo lo carga si el módulo
+ * jdk.incubator.vector está en la JVM (--add-modules jdk.incubator.vector).
+ * Los arreglos del candidato tienen longitud múltiplo de los carriles ({@link MinutiaeTemplate#PADDING}).
+ */
+final class VectorMinutiaeKernel implements PairingKernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public String describe() {
+        return "Vector API, " + SPECIES.length() + " carriles int";
+    }
+
+    /**
+     * Cuenta las minucias del probe, desplazadas por (offsetX, offsetY), que tienen al menos una minucia del
+     * candidato dentro de la tolerancia de posición y ángulo.
+     */
+    @Override
+    public int countPaired(int[] px, int[] py, int[] pa, int n, int offsetX, int offsetY,
+                           int[] cx, int[] cy, int[] ca, int paddedLength,
+                           int positionTolerance, int angleTolerance) {
+        IntVector halfTurn = IntVector.broadcast(SPECIES, 180);
+        int paired = 0;
+        for (int i = 0; i < n; i++) {
+            IntVector vx = IntVector.broadcast(SPECIES, px[i] + offsetX);
+            IntVector vy = IntVector.broadcast(SPECIES, py[i] + offsetY);
+            IntVector va = IntVector.broadcast(SPECIES, pa[i]);
+            for (int j = 0; j < paddedLength; j += SPECIES.length()) {
+                IntVector dx = IntVector.fromArray(SPECIES, cx, j).sub(vx).abs();
+                VectorMask<Integer> near = dx.compare(VectorOperators.LE, positionTolerance);
+                if (!near.anyTrue()) continue;
+                IntVector dy = IntVector.fromArray(SPECIES, cy, j).sub(vy).abs();
+                near = near.and(dy.compare(VectorOperators.LE, positionTolerance));
+                if (!near.anyTrue()) continue;
+                IntVector da = IntVector.fromArray(SPECIES, ca, j).sub(va).abs();
+                da = da.min(halfTurn.sub(da));
+                if (near.and(da.compare(VectorOperators.LE, angleTolerance)).anyTrue()) {
+                    paired++;
+                    break;
+                }
+            }
+        }
+        return paired;
+    }
+}